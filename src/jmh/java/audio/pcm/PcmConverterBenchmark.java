@@ -0,0 +1,105 @@
+package audio.pcm;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the scalar PCM conversion loops with the Vector API path.
+ *
+ * <p>Each invocation converts one 64k-sample block, the default unit {@code FmodSampleReader}
+ * decodes, so scores are samples per millisecond. Run with {@code ./gradlew jmh
+ * -Pjmh.includes=PcmConverterBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OperationsPerInvocation(PcmConverterBenchmark.SAMPLES)
+public class PcmConverterBenchmark {
+
+    static final int SAMPLES = 65536;
+
+    @Param({"INT16", "INT24", "INT32", "FLOAT32"})
+    public String format;
+
+    private PcmFormat.Encoding encoding;
+    private int bitsPerSample;
+    private Arena arena;
+    private MemorySegment source;
+    private final float[] floats = new float[SAMPLES];
+    private final double[] doubles = new double[SAMPLES];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        encoding =
+                format.equals("FLOAT32")
+                        ? PcmFormat.Encoding.FLOAT
+                        : PcmFormat.Encoding.SIGNED_INT;
+        bitsPerSample = Integer.parseInt(format.replaceAll("\\D", ""));
+
+        arena = Arena.ofConfined();
+        source = arena.allocate((long) SAMPLES * bitsPerSample / 8);
+        byte[] noise = new byte[(int) source.byteSize()];
+        new Random(42).nextBytes(noise);
+        MemorySegment.copy(MemorySegment.ofArray(noise), 0, source, 0, noise.length);
+        if (encoding == PcmFormat.Encoding.FLOAT) {
+            // Random bytes include NaNs and huge values; keep floats in the audio range
+            for (int i = 0; i < SAMPLES; i++) {
+                source.setAtIndex(ValueLayout.JAVA_FLOAT, i, (i % 200 - 100) / 100f);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        arena.close();
+    }
+
+    @Benchmark
+    public double[] scalarToDouble() {
+        PcmConverter.scalarToDouble(
+                source, 0, encoding, bitsPerSample, ByteOrder.LITTLE_ENDIAN, doubles, 0, SAMPLES);
+        return doubles;
+    }
+
+    @Benchmark
+    public double[] vectorToDouble() {
+        PcmConverter.toDouble(
+                source, 0, encoding, bitsPerSample, ByteOrder.LITTLE_ENDIAN, doubles, 0, SAMPLES);
+        return doubles;
+    }
+
+    @Benchmark
+    public float[] scalarToFloat() {
+        PcmConverter.scalarToFloat(
+                source, 0, encoding, bitsPerSample, ByteOrder.LITTLE_ENDIAN, floats, 0, SAMPLES);
+        return floats;
+    }
+
+    @Benchmark
+    public float[] vectorToFloat() {
+        PcmConverter.toFloat(
+                source, 0, encoding, bitsPerSample, ByteOrder.LITTLE_ENDIAN, floats, 0, SAMPLES);
+        return floats;
+    }
+}
@@ -0,0 +1,72 @@
+package audio;
+
+import java.util.Objects;
+
+/** A {@link SampleView} over the array of an {@link AudioData}. */
+final class AudioDataView implements SampleView {
+
+    private final AudioData data;
+    private volatile boolean closed = false;
+
+    AudioDataView(AudioData data) {
+        this.data = data;
+    }
+
+    @Override
+    public int sampleRate() {
+        return data.sampleRate();
+    }
+
+    @Override
+    public int channelCount() {
+        return data.channelCount();
+    }
+
+    @Override
+    public long startFrame() {
+        return data.startFrame();
+    }
+
+    @Override
+    public long frameCount() {
+        return data.frameCount();
+    }
+
+    @Override
+    public double sample(long frame, int channel) {
+        checkOpen();
+        Objects.checkIndex(frame, data.frameCount());
+        Objects.checkIndex(channel, data.channelCount());
+        return data.samples()[(int) (frame * data.channelCount() + channel)];
+    }
+
+    @Override
+    public void read(long frame, double[] dest, int destOffset, int frames) {
+        checkOpen();
+        Objects.checkFromIndexSize(frame, frames, data.frameCount());
+        int channelCount = data.channelCount();
+        System.arraycopy(
+                data.samples(),
+                (int) (frame * channelCount),
+                dest,
+                destOffset,
+                frames * channelCount);
+    }
+
+    @Override
+    public AudioData toAudioData() {
+        checkOpen();
+        return data;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Sample view is closed");
+        }
+    }
+}
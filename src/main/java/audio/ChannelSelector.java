@@ -0,0 +1,167 @@
+package audio;
+
+import java.util.Arrays;
+import lombok.NonNull;
+
+/**
+ * Which channels a read returns: all of them, a subset in a chosen order, or a weighted mono
+ * downmix.
+ *
+ * <p>Readers apply the selection while copying out of their cached storage (see {@link
+ * SampleView#read(long, ChannelSelector, double[], int, int)}), so a mono consumer of a
+ * multichannel file allocates and fills only the samples it uses instead of de-interleaving a full
+ * copy itself.
+ */
+public final class ChannelSelector {
+
+    /** Frames converted at a time when selecting, small enough to stay in cache. */
+    static final int CHUNK_FRAMES = 4096;
+
+    /** Every channel, interleaved as stored. */
+    public static final ChannelSelector ALL = new ChannelSelector(null, null, false);
+
+    private final int[] channels;
+    private final double[] weights;
+    private final boolean average;
+
+    private ChannelSelector(int[] channels, double[] weights, boolean average) {
+        this.channels = channels;
+        this.weights = weights;
+        this.average = average;
+    }
+
+    /** A single channel, as mono. */
+    public static ChannelSelector channel(int channel) {
+        return channels(channel);
+    }
+
+    /**
+     * A subset of channels, interleaved in the given order. A channel may appear more than once.
+     *
+     * @param channels Source channel indexes
+     */
+    public static ChannelSelector channels(@NonNull int... channels) {
+        if (channels.length == 0) {
+            throw new IllegalArgumentException("Select at least one channel");
+        }
+        for (int channel : channels) {
+            if (channel < 0) {
+                throw new IllegalArgumentException("Channel cannot be negative: " + channel);
+            }
+        }
+        return new ChannelSelector(channels.clone(), null, false);
+    }
+
+    /** A mono downmix averaging every channel equally, whatever the file's channel count. */
+    public static ChannelSelector mono() {
+        return new ChannelSelector(null, null, true);
+    }
+
+    /**
+     * A mono downmix summing the channels with the given weights.
+     *
+     * @param weights One weight per source channel
+     */
+    public static ChannelSelector downmix(@NonNull double... weights) {
+        if (weights.length == 0) {
+            throw new IllegalArgumentException("Downmix needs a weight per channel");
+        }
+        return new ChannelSelector(null, weights.clone(), false);
+    }
+
+    /** Whether every channel is returned unchanged. */
+    public boolean isAll() {
+        return channels == null && weights == null && !average;
+    }
+
+    /**
+     * Number of channels the selection produces from a source.
+     *
+     * @param sourceChannels Channel count of the source
+     * @throws IllegalArgumentException if the selection does not fit the source
+     */
+    public int channelCount(int sourceChannels) {
+        if (channels != null) {
+            for (int channel : channels) {
+                if (channel >= sourceChannels) {
+                    throw new IllegalArgumentException(
+                            "Channel " + channel + " out of range for " + sourceChannels);
+                }
+            }
+            return channels.length;
+        }
+        if (weights != null) {
+            if (weights.length != sourceChannels) {
+                throw new IllegalArgumentException(
+                        weights.length + " downmix weights for " + sourceChannels + " channels");
+            }
+            return 1;
+        }
+        return average ? 1 : sourceChannels;
+    }
+
+    /**
+     * Applies the selection to a run of interleaved frames.
+     *
+     * @param source Interleaved source frames
+     * @param sourceOffset First index to read in the source
+     * @param sourceChannels Channel count of the source
+     * @param dest Destination for the selected frames
+     * @param destOffset First index to write in the destination
+     * @param frames Number of frames
+     */
+    void select(
+            double[] source,
+            int sourceOffset,
+            int sourceChannels,
+            double[] dest,
+            int destOffset,
+            int frames) {
+        if (channels != null) {
+            int out = destOffset;
+            for (int frame = 0; frame < frames; frame++) {
+                int base = sourceOffset + frame * sourceChannels;
+                for (int channel : channels) {
+                    dest[out++] = source[base + channel];
+                }
+            }
+        } else if (weights != null || average) {
+            double equal = 1.0 / sourceChannels;
+            for (int frame = 0; frame < frames; frame++) {
+                int base = sourceOffset + frame * sourceChannels;
+                double sum = 0;
+                for (int channel = 0; channel < sourceChannels; channel++) {
+                    sum += (weights != null ? weights[channel] : equal) * source[base + channel];
+                }
+                dest[destOffset + frame] = sum;
+            }
+        } else {
+            System.arraycopy(source, sourceOffset, dest, destOffset, frames * sourceChannels);
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof ChannelSelector selector
+                && average == selector.average
+                && Arrays.equals(channels, selector.channels)
+                && Arrays.equals(weights, selector.weights);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * Arrays.hashCode(channels) + Arrays.hashCode(weights))
+                + Boolean.hashCode(average);
+    }
+
+    @Override
+    public String toString() {
+        if (channels != null) {
+            return "ChannelSelector" + Arrays.toString(channels);
+        }
+        if (weights != null) {
+            return "ChannelSelector[downmix " + Arrays.toString(weights) + "]";
+        }
+        return average ? "ChannelSelector[mono]" : "ChannelSelector[all]";
+    }
+}
@@ -0,0 +1,199 @@
+package audio;
+
+/**
+ * Rational-ratio sample rate converter built from a Kaiser-windowed sinc filter split into
+ * polyphase branches.
+ *
+ * <p>A conversion from {@code sourceRate} to {@code targetRate} is reduced to {@code up/down} by
+ * their greatest common divisor. Output frame {@code n} lies at input position {@code n * down /
+ * up}; its integer part selects the input frames under the filter and its fractional part, one of
+ * {@code up} phases, selects the branch of precomputed coefficients. When downsampling, the
+ * cutoff moves down to the target's Nyquist frequency and the filter widens to match, so content
+ * that would alias is removed rather than folded back.
+ *
+ * <p>Each output frame depends only on the input frames within {@link #halfWidth()} of its
+ * position, so any output range can be computed independently of the others from {@link
+ * #inputStart} to {@link #inputEnd}. Instances are immutable and safe to share between threads.
+ */
+public final class PolyphaseResampler {
+
+    // Zero crossings of the sinc on each side at full bandwidth
+    private static final int HALF_ZERO_CROSSINGS = 32;
+
+    // Passband edge as a fraction of the lower Nyquist frequency; the rest is transition band
+    private static final double ROLLOFF = 0.95;
+
+    // About 90 dB of stopband attenuation
+    private static final double KAISER_BETA = 9.0;
+
+    // Ratios with more phases than this compute coefficients per frame instead of tabulating them
+    private static final int MAX_TABLE_PHASES = 4096;
+
+    private final int sourceRate;
+    private final int targetRate;
+    private final int up;
+    private final int down;
+    private final double cutoff;
+    private final int halfWidth;
+    private final double[][] phases;
+
+    /**
+     * Creates a converter between two rates.
+     *
+     * @param sourceRate Sample rate of the input in Hz
+     * @param targetRate Sample rate of the output in Hz
+     */
+    public PolyphaseResampler(int sourceRate, int targetRate) {
+        if (sourceRate <= 0 || targetRate <= 0) {
+            throw new IllegalArgumentException(
+                    "Sample rates must be positive: " + sourceRate + " -> " + targetRate);
+        }
+        this.sourceRate = sourceRate;
+        this.targetRate = targetRate;
+        int divisor = gcd(sourceRate, targetRate);
+        this.up = targetRate / divisor;
+        this.down = sourceRate / divisor;
+
+        double bandwidth = Math.min(1.0, (double) up / down);
+        this.cutoff = ROLLOFF * bandwidth;
+        this.halfWidth = (int) Math.ceil(HALF_ZERO_CROSSINGS / bandwidth);
+
+        if (up <= MAX_TABLE_PHASES) {
+            this.phases = new double[up][];
+            for (int phase = 0; phase < up; phase++) {
+                phases[phase] = coefficients(phase, new double[2 * halfWidth]);
+            }
+        } else {
+            this.phases = null;
+        }
+    }
+
+    public int sourceRate() {
+        return sourceRate;
+    }
+
+    public int targetRate() {
+        return targetRate;
+    }
+
+    /** Input frames the filter reaches on each side of an output frame's position. */
+    public int halfWidth() {
+        return halfWidth;
+    }
+
+    /** Number of output frames produced from an input of the given length. */
+    public long outputLength(long inputFrames) {
+        return Math.ceilDiv(Math.multiplyExact(inputFrames, up), down);
+    }
+
+    /** First input frame that contributes to an output frame. May be negative. */
+    public long inputStart(long outputFrame) {
+        return Math.multiplyExact(outputFrame, down) / up - halfWidth + 1;
+    }
+
+    /** Input frame just past the last one that contributes to an output frame. */
+    public long inputEnd(long outputFrame) {
+        return Math.multiplyExact(outputFrame, down) / up + halfWidth + 1;
+    }
+
+    /**
+     * Computes a run of output frames.
+     *
+     * <p>The input holds interleaved frames starting at {@code inputStart(outputStart)}; frames the
+     * filter needs beyond the end of the array, like those before the start of the file, are
+     * taken as silence.
+     *
+     * @param input Interleaved input frames from {@code inputStart(outputStart)} onwards
+     * @param channelCount Number of interleaved channels
+     * @param outputStart First output frame to compute
+     * @param dest Destination for the interleaved output frames
+     * @param destOffset First index to write in the destination
+     * @param frames Number of output frames to compute
+     */
+    public void process(
+            double[] input,
+            int channelCount,
+            long outputStart,
+            double[] dest,
+            int destOffset,
+            int frames) {
+        long origin = inputStart(outputStart);
+        int inputFrames = input.length / channelCount;
+        int taps = 2 * halfWidth;
+        double[] scratch = phases == null ? new double[taps] : null;
+
+        for (int n = 0; n < frames; n++) {
+            long position = Math.multiplyExact(outputStart + n, down);
+            int phase = (int) (position % up);
+            int first = (int) (position / up - halfWidth + 1 - origin);
+            double[] h = phases != null ? phases[phase] : coefficients(phase, scratch);
+
+            int from = Math.max(0, -first);
+            int to = Math.min(taps, inputFrames - first);
+            for (int channel = 0; channel < channelCount; channel++) {
+                double sum = 0;
+                int index = (first + from) * channelCount + channel;
+                for (int k = from; k < to; k++, index += channelCount) {
+                    sum += h[k] * input[index];
+                }
+                dest[destOffset + n * channelCount + channel] = sum;
+            }
+        }
+    }
+
+    /**
+     * Fills in the branch for one phase. Tap {@code k} weights input frame {@code k - halfWidth +
+     * 1} relative to the integer part of the output position. Each branch is normalized to unit
+     * gain so constant input stays constant whatever the phase.
+     */
+    private double[] coefficients(int phase, double[] dest) {
+        double fraction = (double) phase / up;
+        double sum = 0;
+        for (int k = 0; k < dest.length; k++) {
+            double x = fraction + halfWidth - 1 - k;
+            double value = cutoff * sinc(cutoff * x) * kaiser(x / halfWidth);
+            dest[k] = value;
+            sum += value;
+        }
+        for (int k = 0; k < dest.length; k++) {
+            dest[k] /= sum;
+        }
+        return dest;
+    }
+
+    private static double sinc(double x) {
+        if (x == 0) {
+            return 1.0;
+        }
+        double angle = Math.PI * x;
+        return Math.sin(angle) / angle;
+    }
+
+    private static double kaiser(double x) {
+        if (Math.abs(x) >= 1.0) {
+            return 0.0;
+        }
+        return besselI0(KAISER_BETA * Math.sqrt(1.0 - x * x)) / besselI0(KAISER_BETA);
+    }
+
+    /** Zeroth-order modified Bessel function of the first kind, by its power series. */
+    private static double besselI0(double x) {
+        double sum = 1.0;
+        double term = 1.0;
+        double quarterSquare = x * x / 4.0;
+        for (int k = 1; term > 1e-12 * sum; k++) {
+            term *= quarterSquare / ((double) k * k);
+            sum += term;
+        }
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int remainder = a % b;
+            a = b;
+            b = remainder;
+        }
+        return a;
+    }
+}
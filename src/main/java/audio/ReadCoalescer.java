@@ -0,0 +1,179 @@
+package audio;
+
+import audio.SampleReader.ReadRequest;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Serves a batch of range reads with as few underlying reads as possible.
+ *
+ * <p>Requests are sorted and merged into spans wherever they overlap or touch. Each span is read
+ * once as a {@link SampleView}, and each request's samples are copied out of its span, so frames
+ * shared by several requests are decoded once. The batch fails fast: the first span to fail fails
+ * the batch and cancels the spans still in flight, rather than letting them decode for nothing.
+ * Requests that select channels or a downmix share spans with those that do not; the selection is
+ * applied while copying out of the span.
+ */
+final class ReadCoalescer {
+
+    // Spans stop growing at this length so a long run of tiles does not become one huge read;
+    // a single request longer than this still gets a span of its own
+    static final long MAX_SPAN_FRAMES = 1L << 24;
+
+    /**
+     * A merged run of frames and the requests it serves.
+     *
+     * @param startFrame First frame of the span
+     * @param endFrame Frame just past the span
+     * @param requests Indexes of the requests contained in the span
+     */
+    record Span(long startFrame, long endFrame, List<Integer> requests) {}
+
+    private ReadCoalescer() {}
+
+    /**
+     * Merges requests into spans. Every request lies entirely inside one span.
+     *
+     * @param requests Requests in caller order
+     * @return Spans in file order
+     */
+    static List<Span> coalesce(List<ReadRequest> requests) {
+        List<Integer> order = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparingLong(i -> requests.get(i).startFrame()));
+
+        List<Span> spans = new ArrayList<>();
+        long spanStart = -1;
+        long spanEnd = -1;
+        List<Integer> members = new ArrayList<>();
+        for (int index : order) {
+            ReadRequest request = requests.get(index);
+            long start = request.startFrame();
+            long end = endOf(request);
+            boolean fits =
+                    !members.isEmpty()
+                            && start <= spanEnd
+                            && (end <= spanEnd || end - spanStart <= MAX_SPAN_FRAMES);
+            if (fits) {
+                spanEnd = Math.max(spanEnd, end);
+            } else {
+                if (!members.isEmpty()) {
+                    spans.add(new Span(spanStart, spanEnd, members));
+                }
+                spanStart = start;
+                spanEnd = end;
+                members = new ArrayList<>();
+            }
+            members.add(index);
+        }
+        if (!members.isEmpty()) {
+            spans.add(new Span(spanStart, spanEnd, members));
+        }
+        return spans;
+    }
+
+    /**
+     * Reads a batch of ranges through the reader's views.
+     *
+     * @param reader Reader to read spans from
+     * @param audioFile Path to the audio file
+     * @param requests Ranges to read
+     * @param priority Priority to read the spans at
+     * @return Future containing one result per request, in request order
+     */
+    static CompletableFuture<List<AudioData>> readMultiple(
+            SampleReader reader,
+            Path audioFile,
+            List<ReadRequest> requests,
+            ReadPriority priority) {
+        if (requests.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+
+        List<Span> spans = coalesce(requests);
+        List<CompletableFuture<SampleView>> reads = new ArrayList<>(spans.size());
+        for (Span span : spans) {
+            reads.add(
+                    reader.readView(
+                            audioFile,
+                            span.startFrame(),
+                            span.endFrame() - span.startFrame(),
+                            priority));
+        }
+
+        CompletableFuture<List<AudioData>> result = new CompletableFuture<>();
+        for (CompletableFuture<SampleView> read : reads) {
+            read.whenComplete(
+                    (_, error) -> {
+                        if (error != null) {
+                            result.completeExceptionally(error);
+                        }
+                    });
+        }
+
+        // On failure or cancellation, stop the spans still reading and close the ones that
+        // finished; on success the split below has closed them
+        result.whenComplete(
+                (_, error) -> {
+                    if (error == null) {
+                        return;
+                    }
+                    for (CompletableFuture<SampleView> read : reads) {
+                        if (!read.cancel(true)) {
+                            read.thenAccept(SampleView::close);
+                        }
+                    }
+                });
+
+        CompletableFuture.allOf(reads.toArray(CompletableFuture[]::new))
+                .thenRun(
+                        () -> {
+                            try {
+                                result.complete(split(spans, reads, requests));
+                            } catch (RuntimeException e) {
+                                result.completeExceptionally(e);
+                            }
+                        });
+        return result;
+    }
+
+    private static List<AudioData> split(
+            List<Span> spans,
+            List<CompletableFuture<SampleView>> reads,
+            List<ReadRequest> requests) {
+        AudioData[] results = new AudioData[requests.size()];
+        for (int i = 0; i < spans.size(); i++) {
+            try (SampleView view = reads.get(i).join()) {
+                for (int index : spans.get(i).requests()) {
+                    results[index] = copy(view, requests.get(index));
+                }
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /** Copies one request's frames and channels out of the view of its span. */
+    private static AudioData copy(SampleView view, ReadRequest request) {
+        int channelCount = request.channels().channelCount(view.channelCount());
+        long offset = request.startFrame() - view.startFrame();
+        long frames = Math.max(0, Math.min(request.frameCount(), view.frameCount() - offset));
+        double[] samples = new double[Math.toIntExact(frames * channelCount)];
+        if (frames > 0) {
+            view.read(offset, request.channels(), samples, 0, (int) frames);
+        }
+        return new AudioData(
+                samples, view.sampleRate(), channelCount, request.startFrame(), frames);
+    }
+
+    private static long endOf(ReadRequest request) {
+        // Requests may ask for everything to the end of the file with a huge count
+        long remaining = Long.MAX_VALUE - request.startFrame();
+        return request.startFrame() + Math.min(request.frameCount(), remaining);
+    }
+}
@@ -0,0 +1,21 @@
+package audio;
+
+/**
+ * How urgently a read is needed. A {@link ReadScheduler} always starts queued reads of a higher
+ * priority before any of a lower one.
+ */
+public enum ReadPriority {
+    /** Someone is waiting on the result, such as the visible part of a waveform. */
+    INTERACTIVE,
+
+    /** Likely to be needed soon, such as the region just ahead of the playhead or viewport. */
+    PREFETCH,
+
+    /** Nobody is waiting, such as building peak files or scanning a corpus. */
+    BATCH;
+
+    /** Whether this priority should run before another. */
+    public boolean outranks(ReadPriority other) {
+        return ordinal() < other.ordinal();
+    }
+}
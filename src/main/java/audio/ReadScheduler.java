@@ -0,0 +1,252 @@
+package audio;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.NonNull;
+
+/**
+ * Runs sample reads by priority on virtual threads, a bounded number at a time.
+ *
+ * <p>Queued reads start in {@link ReadPriority} order, oldest first within a priority, so reads for
+ * the visible viewport never wait behind prefetches or a corpus scan for more than the reads
+ * already running. Each read gets a fresh virtual thread; the concurrency limit rather than a pool
+ * bounds how many decode at once.
+ *
+ * <p>The queue is bounded. When it is full, a new read displaces the newest queued read of the
+ * lowest priority if it outranks it, and is rejected otherwise; either way the losing read's future
+ * fails with {@link RejectedExecutionException}.
+ *
+ * <p>Closing cancels every read, interrupting the running ones. Their threads may still be inside
+ * a decoder for a moment after, so owners of native resources the reads use should {@link
+ * #awaitTermination} before freeing them.
+ */
+public final class ReadScheduler implements Closeable {
+
+    private static final Comparator<ScheduledRead<?>> ORDER =
+            Comparator.<ScheduledRead<?>, ReadPriority>comparing(read -> read.priority)
+                    .thenComparingLong(read -> read.sequence);
+
+    private final int concurrency;
+    private final int queueCapacity;
+    private final ThreadFactory threads;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition drained = lock.newCondition();
+    private final PriorityQueue<ScheduledRead<?>> queue = new PriorityQueue<>(ORDER);
+    private final Set<ScheduledRead<?>> running = new HashSet<>();
+    private long nextSequence = 0;
+    private boolean closed = false;
+
+    /**
+     * Creates a scheduler.
+     *
+     * @param name Prefix for the names of read threads
+     * @param concurrency Maximum number of reads running at once
+     * @param queueCapacity Maximum number of reads waiting to start
+     */
+    public ReadScheduler(@NonNull String name, int concurrency, int queueCapacity) {
+        if (concurrency <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException(
+                    "Concurrency and queue capacity must be positive: "
+                            + concurrency
+                            + ", "
+                            + queueCapacity);
+        }
+        this.concurrency = concurrency;
+        this.queueCapacity = queueCapacity;
+        this.threads = Thread.ofVirtual().name(name + "-", 0).factory();
+    }
+
+    /**
+     * Queues a read.
+     *
+     * @param priority How urgently the result is needed
+     * @param task The read; its exceptions complete the returned future
+     * @return The queued read, already failed with RejectedExecutionException if it could not be
+     *     queued
+     */
+    public <T> ScheduledRead<T> submit(@NonNull ReadPriority priority, @NonNull Callable<T> task) {
+        ScheduledRead<T> read = new ScheduledRead<>(this, priority, task);
+        ScheduledRead<?> displaced = null;
+        String rejection = null;
+
+        lock.lock();
+        try {
+            if (closed) {
+                rejection = "Read scheduler is closed";
+            } else if (queue.size() >= queueCapacity) {
+                ScheduledRead<?> lowest = lowestQueued();
+                if (lowest != null && priority.outranks(lowest.priority)) {
+                    queue.remove(lowest);
+                    displaced = lowest;
+                } else {
+                    rejection = "Read queue is full";
+                }
+            }
+            if (rejection == null) {
+                read.sequence = nextSequence++;
+                queue.add(read);
+                dispatch();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        // Complete outside the lock; dependent stages run inline
+        if (displaced != null) {
+            displaced.completeExceptionally(
+                    new RejectedExecutionException("Displaced by a higher priority read"));
+        }
+        if (rejection != null) {
+            read.completeExceptionally(new RejectedExecutionException(rejection));
+        }
+        return read;
+    }
+
+    /**
+     * Returns a read that is already complete, for a result found without queueing a task, such
+     * as one held in a cache.
+     *
+     * @param result The result
+     * @return The completed read
+     */
+    public <T> ScheduledRead<T> completed(T result) {
+        ScheduledRead<T> read = new ScheduledRead<>(this, ReadPriority.BATCH, () -> result);
+        read.complete(result);
+        return read;
+    }
+
+    /** Returns the number of reads waiting to start. */
+    public int queuedCount() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns the number of reads currently running. */
+    public int runningCount() {
+        lock.lock();
+        try {
+            return running.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void reprioritize(ScheduledRead<?> read, ReadPriority priority) {
+        lock.lock();
+        try {
+            if (!priority.outranks(read.priority)) {
+                return;
+            }
+            // The queue orders by priority, so a queued read has to be re-inserted
+            boolean queued = queue.remove(read);
+            read.priority = priority;
+            if (queued) {
+                queue.add(read);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void withdraw(ScheduledRead<?> read) {
+        lock.lock();
+        try {
+            queue.remove(read);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Starts queued reads while there is capacity. Called with the lock held. */
+    private void dispatch() {
+        while (running.size() < concurrency && !queue.isEmpty()) {
+            ScheduledRead<?> next = queue.poll();
+            running.add(next);
+            threads.newThread(() -> run(next)).start();
+        }
+    }
+
+    private void run(ScheduledRead<?> read) {
+        try {
+            read.run();
+        } finally {
+            lock.lock();
+            try {
+                running.remove(read);
+                dispatch();
+                if (running.isEmpty()) {
+                    drained.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private ScheduledRead<?> lowestQueued() {
+        ScheduledRead<?> lowest = null;
+        for (ScheduledRead<?> read : queue) {
+            if (lowest == null || ORDER.compare(read, lowest) > 0) {
+                lowest = read;
+            }
+        }
+        return lowest;
+    }
+
+    /**
+     * Waits for the threads of running reads to return, such as after {@link #close}.
+     *
+     * @param timeout How long to wait
+     * @param unit Unit of the timeout
+     * @return Whether no read was running by the end of the wait
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, @NonNull TimeUnit unit)
+            throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (!running.isEmpty()) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = drained.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Stops accepting reads, cancels the queued ones and interrupts the running ones. */
+    @Override
+    public void close() {
+        List<ScheduledRead<?>> abandoned;
+        lock.lock();
+        try {
+            closed = true;
+            abandoned = new ArrayList<>(queue);
+            abandoned.addAll(running);
+            queue.clear();
+        } finally {
+            lock.unlock();
+        }
+        abandoned.forEach(read -> read.cancel(true));
+    }
+}
@@ -0,0 +1,228 @@
+package audio;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.NonNull;
+
+/**
+ * Serves reads resampled to a requested rate, caching the converted audio in fixed-size blocks.
+ *
+ * <p>Output is divided into blocks of {@link #BLOCK_FRAMES} frames at the target rate, keyed by
+ * (file, rate, block index). A block is computed with a {@link PolyphaseResampler} from a view of
+ * the source frames under it, including the filter's reach into the neighbouring blocks, so
+ * blocks are independent: overlapping or repeated windows reuse the cached blocks instead of
+ * filtering the same frames again, and a block can be computed out of order. Concurrent readers of
+ * one block share a single computation. The cache is bounded by the size of its blocks; a cache
+ * with no capacity computes every read afresh.
+ */
+public final class ResampleCache {
+
+    /** Output frames converted and cached together. */
+    static final int BLOCK_FRAMES = 1 << 16;
+
+    /** A cache that holds nothing, for readers without one of their own. */
+    public static final ResampleCache NONE = new ResampleCache(0);
+
+    private record BlockKey(Path file, int targetRate, long index) {}
+
+    private record RateKey(int sourceRate, int targetRate) {}
+
+    /** One file being converted, with its lengths at the source and target rates. */
+    private record Conversion(
+            SampleReader reader,
+            Path audioFile,
+            PolyphaseResampler resampler,
+            int channelCount,
+            long sourceFrames,
+            long outputFrames) {}
+
+    private final AsyncCache<BlockKey, double[]> blocks;
+
+    // Filters are pure functions of the rate pair, and few pairs are ever used
+    private final Map<RateKey, PolyphaseResampler> resamplers = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxBytes Upper bound on the size of the cached blocks, or 0 to cache nothing
+     */
+    public ResampleCache(long maxBytes) {
+        this.blocks =
+                maxBytes > 0
+                        ? Caffeine.newBuilder()
+                                .maximumWeight(maxBytes)
+                                .weigher((BlockKey key, double[] block) -> weightOf(block))
+                                .executor(Runnable::run)
+                                .buildAsync()
+                        : null;
+    }
+
+    /**
+     * Reads a range of a file converted to another sample rate.
+     *
+     * @param reader Reader of the source samples
+     * @param audioFile Path to the audio file
+     * @param startFrame First frame to read, counted at the target rate
+     * @param frameCount Number of frames to read at the target rate
+     * @param targetRate Sample rate to convert to, in Hz
+     * @param priority Priority of the underlying source reads
+     * @return Future containing the converted samples, fewer than requested at end of file
+     * @throws CompletionException wrapping AudioReadException on I/O errors
+     */
+    public CompletableFuture<AudioData> read(
+            @NonNull SampleReader reader,
+            @NonNull Path audioFile,
+            long startFrame,
+            long frameCount,
+            int targetRate,
+            @NonNull ReadPriority priority) {
+        if (startFrame < 0 || frameCount < 0) {
+            return CompletableFuture.failedFuture(
+                    new IllegalArgumentException("Negative frame values not allowed"));
+        }
+        if (targetRate <= 0) {
+            return CompletableFuture.failedFuture(
+                    new IllegalArgumentException("Sample rate must be positive: " + targetRate));
+        }
+
+        return reader.getMetadata(audioFile)
+                .thenCompose(
+                        metadata -> {
+                            if (metadata.sampleRate() == targetRate) {
+                                return reader.readSamples(
+                                        audioFile, startFrame, frameCount, priority);
+                            }
+                            return readResampled(
+                                    reader,
+                                    audioFile,
+                                    metadata,
+                                    startFrame,
+                                    frameCount,
+                                    targetRate,
+                                    priority);
+                        });
+    }
+
+    /** Forgets every cached block. */
+    public void clear() {
+        if (blocks != null) {
+            blocks.synchronous().invalidateAll();
+        }
+    }
+
+    private CompletableFuture<AudioData> readResampled(
+            SampleReader reader,
+            Path audioFile,
+            AudioMetadata metadata,
+            long startFrame,
+            long frameCount,
+            int targetRate,
+            ReadPriority priority) {
+        PolyphaseResampler resampler =
+                resamplers.computeIfAbsent(
+                        new RateKey(metadata.sampleRate(), targetRate),
+                        key -> new PolyphaseResampler(key.sourceRate(), key.targetRate()));
+        int channelCount = metadata.channelCount();
+        long totalFrames = resampler.outputLength(metadata.frameCount());
+        long endFrame = Math.min(totalFrames, startFrame + frameCount);
+        if (startFrame >= endFrame) {
+            return CompletableFuture.completedFuture(
+                    AudioData.empty(targetRate, channelCount, startFrame));
+        }
+        if ((endFrame - startFrame) * channelCount > Integer.MAX_VALUE - 8) {
+            return CompletableFuture.failedFuture(
+                    new IllegalArgumentException(
+                            "Read is too large: " + (endFrame - startFrame) + " frames"));
+        }
+
+        Conversion conversion =
+                new Conversion(
+                        reader,
+                        audioFile,
+                        resampler,
+                        channelCount,
+                        metadata.frameCount(),
+                        totalFrames);
+        long firstBlock = startFrame / BLOCK_FRAMES;
+        long lastBlock = (endFrame - 1) / BLOCK_FRAMES;
+        List<CompletableFuture<double[]>> parts = new ArrayList<>();
+        for (long index = firstBlock; index <= lastBlock; index++) {
+            parts.add(block(conversion, index, priority));
+        }
+
+        return CompletableFuture.allOf(parts.toArray(CompletableFuture[]::new))
+                .thenApply(
+                        _ -> {
+                            int frames = (int) (endFrame - startFrame);
+                            double[] samples = new double[frames * channelCount];
+                            for (int i = 0; i < parts.size(); i++) {
+                                long blockStart = (firstBlock + i) * BLOCK_FRAMES;
+                                double[] block = parts.get(i).join();
+                                long from = Math.max(startFrame, blockStart);
+                                long to = Math.min(endFrame, blockStart + BLOCK_FRAMES);
+                                System.arraycopy(
+                                        block,
+                                        (int) (from - blockStart) * channelCount,
+                                        samples,
+                                        (int) (from - startFrame) * channelCount,
+                                        (int) (to - from) * channelCount);
+                            }
+                            return new AudioData(
+                                    samples, targetRate, channelCount, startFrame, frames);
+                        });
+    }
+
+    private CompletableFuture<double[]> block(
+            Conversion conversion, long index, ReadPriority priority) {
+        if (blocks == null) {
+            return compute(conversion, index, priority);
+        }
+        BlockKey key =
+                new BlockKey(conversion.audioFile(), conversion.resampler().targetRate(), index);
+        return blocks.get(key, (_, _) -> compute(conversion, index, priority));
+    }
+
+    private static CompletableFuture<double[]> compute(
+            Conversion conversion, long index, ReadPriority priority) {
+        PolyphaseResampler resampler = conversion.resampler();
+        int channelCount = conversion.channelCount();
+        long outputStart = index * BLOCK_FRAMES;
+        int outputFrames = (int) Math.min(BLOCK_FRAMES, conversion.outputFrames() - outputStart);
+
+        // The filter reaches past both ends of the block; frames outside the file stay silent
+        long inputStart = resampler.inputStart(outputStart);
+        long inputEnd = resampler.inputEnd(outputStart + outputFrames - 1);
+        long readStart = Math.max(0, inputStart);
+        long readEnd = Math.min(conversion.sourceFrames(), inputEnd);
+
+        return conversion
+                .reader()
+                .readView(conversion.audioFile(), readStart, readEnd - readStart, priority)
+                .thenApply(
+                        view -> {
+                            try (SampleView source = view) {
+                                double[] input =
+                                        new double[(int) (inputEnd - inputStart) * channelCount];
+                                source.read(
+                                        0,
+                                        input,
+                                        (int) (readStart - inputStart) * channelCount,
+                                        (int) source.frameCount());
+                                double[] output = new double[outputFrames * channelCount];
+                                resampler.process(
+                                        input, channelCount, outputStart, output, 0, outputFrames);
+                                return output;
+                            }
+                        });
+    }
+
+    private static int weightOf(double[] block) {
+        return (int) Math.min(Integer.MAX_VALUE, (long) block.length * Double.BYTES);
+    }
+}
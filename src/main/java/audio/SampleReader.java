@@ -4,7 +4,6 @@ import java.io.Closeable;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.stream.Collectors;
 import lombok.NonNull;
 
 /**
@@ -60,6 +59,114 @@ public interface SampleReader extends Closeable {
     CompletableFuture<AudioData> readSamples(
             @NonNull Path audioFile, long startFrame, long frameCount);
 
+    /**
+     * Reads audio samples as a view that may share storage with the reader's cache.
+     *
+     * <p>Rendering and analysis code that revisits the same ranges should prefer this over {@link
+     * #readSamples}, which always copies into a new array. The default implementation wraps
+     * {@link #readSamples}; caching implementations override it to skip the copy. Callers must
+     * close the returned view.
+     *
+     * @param audioFile Path to the audio file
+     * @param startFrame Starting frame position (0-based)
+     * @param frameCount Number of frames to read
+     * @return Future containing a view of the audio data
+     * @throws CompletionException wrapping AudioReadException on I/O errors
+     */
+    @NonNull
+    default CompletableFuture<SampleView> readView(
+            @NonNull Path audioFile, long startFrame, long frameCount) {
+        return readSamples(audioFile, startFrame, frameCount).thenApply(SampleView::of);
+    }
+
+    /**
+     * Reads audio samples at a given priority.
+     *
+     * <p>Readers that queue their work start higher priority reads first, and stop a read when its
+     * future is cancelled. The default implementation ignores the priority. The overloads without
+     * a priority read at {@link ReadPriority#INTERACTIVE}.
+     *
+     * @param audioFile Path to the audio file
+     * @param startFrame Starting frame position (0-based)
+     * @param frameCount Number of frames to read
+     * @param priority How urgently the samples are needed
+     * @return Future containing the audio data
+     * @throws CompletionException wrapping AudioReadException on I/O errors
+     */
+    @NonNull
+    default CompletableFuture<AudioData> readSamples(
+            @NonNull Path audioFile,
+            long startFrame,
+            long frameCount,
+            @NonNull ReadPriority priority) {
+        return readSamples(audioFile, startFrame, frameCount);
+    }
+
+    /**
+     * Reads audio samples as a view at a given priority. See {@link #readView(Path, long, long)}
+     * and {@link #readSamples(Path, long, long, ReadPriority)}.
+     *
+     * @param audioFile Path to the audio file
+     * @param startFrame Starting frame position (0-based)
+     * @param frameCount Number of frames to read
+     * @param priority How urgently the samples are needed
+     * @return Future containing a view of the audio data
+     * @throws CompletionException wrapping AudioReadException on I/O errors
+     */
+    @NonNull
+    default CompletableFuture<SampleView> readView(
+            @NonNull Path audioFile,
+            long startFrame,
+            long frameCount,
+            @NonNull ReadPriority priority) {
+        return readView(audioFile, startFrame, frameCount);
+    }
+
+    /**
+     * Reads audio samples converted to another sample rate. See {@link #readSamples(Path, long,
+     * long, int, ReadPriority)}.
+     *
+     * @param audioFile Path to the audio file
+     * @param startFrame Starting frame position (0-based), counted at the target rate
+     * @param frameCount Number of frames to read at the target rate
+     * @param sampleRate Sample rate to convert to, in Hz
+     * @return Future containing the audio data at the target rate
+     * @throws CompletionException wrapping AudioReadException on I/O errors
+     */
+    @NonNull
+    default CompletableFuture<AudioData> readSamples(
+            @NonNull Path audioFile, long startFrame, long frameCount, int sampleRate) {
+        return readSamples(audioFile, startFrame, frameCount, sampleRate, ReadPriority.INTERACTIVE);
+    }
+
+    /**
+     * Reads audio samples converted to another sample rate, at a given priority.
+     *
+     * <p>Positions and lengths are counted in frames at the target rate, and the result reports
+     * that rate. Conversion uses a windowed-sinc {@link PolyphaseResampler}, which filters out
+     * content above the target's Nyquist frequency when downsampling. Files already at the target
+     * rate are read unchanged. The default implementation converts afresh on every call; caching
+     * implementations override it to keep the converted blocks (see {@link ResampleCache}).
+     *
+     * @param audioFile Path to the audio file
+     * @param startFrame Starting frame position (0-based), counted at the target rate
+     * @param frameCount Number of frames to read at the target rate
+     * @param sampleRate Sample rate to convert to, in Hz
+     * @param priority How urgently the samples are needed
+     * @return Future containing the audio data at the target rate
+     * @throws CompletionException wrapping AudioReadException on I/O errors
+     */
+    @NonNull
+    default CompletableFuture<AudioData> readSamples(
+            @NonNull Path audioFile,
+            long startFrame,
+            long frameCount,
+            int sampleRate,
+            @NonNull ReadPriority priority) {
+        return ResampleCache.NONE.read(
+                this, audioFile, startFrame, frameCount, sampleRate, priority);
+    }
+
     /**
      * Gets metadata about an audio file without reading samples.
      *
@@ -75,8 +182,10 @@ public interface SampleReader extends Closeable {
     /**
      * Reads multiple segments from the same file efficiently.
      *
-     * <p>Implementations may optimize this for bulk reads, but the default implementation simply
-     * reads each segment individually in parallel.
+     * <p>The default implementation sorts the requests and merges overlapping or adjacent ones, so
+     * each frame is read once however many requests cover it. Merged spans are read in parallel
+     * as views and split back into one result per request. If any span fails, the others are
+     * cancelled and the returned future fails with the first error.
      *
      * @param audioFile Path to the audio file
      * @param requests List of read requests for different segments
@@ -85,22 +194,34 @@ public interface SampleReader extends Closeable {
     @NonNull
     default CompletableFuture<List<AudioData>> readMultiple(
             @NonNull Path audioFile, @NonNull List<ReadRequest> requests) {
+        return readMultiple(audioFile, requests, ReadPriority.INTERACTIVE);
+    }
 
-        List<CompletableFuture<AudioData>> futures =
-                requests.stream()
-                        .map(req -> readSamples(audioFile, req.startFrame(), req.frameCount()))
-                        .collect(Collectors.toList());
-
-        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
-                .thenApply(
-                        _ ->
-                                futures.stream()
-                                        .map(CompletableFuture::join)
-                                        .collect(Collectors.toList()));
+    /**
+     * Reads multiple segments from the same file at a given priority. See {@link
+     * #readMultiple(Path, List)}.
+     *
+     * @param audioFile Path to the audio file
+     * @param requests List of read requests for different segments
+     * @param priority How urgently the samples are needed
+     * @return Future containing list of audio data in the same order as requests
+     */
+    @NonNull
+    default CompletableFuture<List<AudioData>> readMultiple(
+            @NonNull Path audioFile,
+            @NonNull List<ReadRequest> requests,
+            @NonNull ReadPriority priority) {
+        return ReadCoalescer.readMultiple(this, audioFile, requests, priority);
     }
 
-    /** Request for reading a segment of audio data. */
-    record ReadRequest(long startFrame, long frameCount) {
+    /**
+     * Request for reading a segment of audio data.
+     *
+     * @param startFrame Starting frame position (0-based)
+     * @param frameCount Number of frames to read
+     * @param channels Channels to return; the result's channel count is the selection's
+     */
+    record ReadRequest(long startFrame, long frameCount, @NonNull ChannelSelector channels) {
         public ReadRequest {
             if (startFrame < 0) {
                 throw new IllegalArgumentException("Start frame cannot be negative: " + startFrame);
@@ -109,6 +230,11 @@ public interface SampleReader extends Closeable {
                 throw new IllegalArgumentException("Frame count cannot be negative: " + frameCount);
             }
         }
+
+        /** Requests every channel. */
+        public ReadRequest(long startFrame, long frameCount) {
+            this(startFrame, frameCount, ChannelSelector.ALL);
+        }
     }
 
     /**
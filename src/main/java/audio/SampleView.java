@@ -0,0 +1,117 @@
+package audio;
+
+import lombok.NonNull;
+
+/**
+ * Read-only window over decoded samples, leased from a {@link SampleReader}.
+ *
+ * <p>Unlike {@link AudioData}, a view may read straight from the reader's cached storage instead of
+ * copying into a fresh array, which makes it the better fit for code that redraws or analyzes the
+ * same ranges repeatedly. The lease ends when the view is closed; reading a closed view throws
+ * {@link IllegalStateException}. Views are safe to read from multiple threads until closed.
+ *
+ * <pre>{@code
+ * try (SampleView view = reader.readView(path, 0, 44100).join()) {
+ *     for (long frame = 0; frame < view.frameCount(); frame++) {
+ *         peak = Math.max(peak, Math.abs(view.sample(frame, 0)));
+ *     }
+ * }
+ * }</pre>
+ */
+public interface SampleView extends AutoCloseable {
+
+    /** Sample rate in Hz. */
+    int sampleRate();
+
+    /** Number of interleaved channels. */
+    int channelCount();
+
+    /** Position of the first frame of this view in the original file. */
+    long startFrame();
+
+    /** Number of frames in this view (may be less than requested if EOF reached). */
+    long frameCount();
+
+    /**
+     * Returns one sample normalized to [-1.0, 1.0].
+     *
+     * @param frame Frame index relative to the start of this view
+     * @param channel Channel index
+     * @return The normalized sample value
+     */
+    double sample(long frame, int channel);
+
+    /**
+     * Copies a run of interleaved frames into a caller-supplied array, so a buffer can be reused
+     * across reads.
+     *
+     * @param frame First frame to copy, relative to the start of this view
+     * @param dest Destination array
+     * @param destOffset First index to write in the destination
+     * @param frames Number of frames to copy
+     */
+    void read(long frame, @NonNull double[] dest, int destOffset, int frames);
+
+    /**
+     * Copies a run of frames with only the selected channels, or their downmix, into a
+     * caller-supplied array. Frames are converted a short run at a time, so only the selected
+     * samples are ever allocated.
+     *
+     * @param frame First frame to copy, relative to the start of this view
+     * @param selector Channels to copy
+     * @param dest Destination array, receiving {@code selector.channelCount(channelCount())}
+     *     samples per frame
+     * @param destOffset First index to write in the destination
+     * @param frames Number of frames to copy
+     * @throws IllegalArgumentException if the selection does not fit this view's channels
+     */
+    default void read(
+            long frame,
+            @NonNull ChannelSelector selector,
+            @NonNull double[] dest,
+            int destOffset,
+            int frames) {
+        if (selector.isAll()) {
+            read(frame, dest, destOffset, frames);
+            return;
+        }
+        int channelCount = channelCount();
+        int selected = selector.channelCount(channelCount);
+        double[] chunk = new double[Math.min(frames, ChannelSelector.CHUNK_FRAMES) * channelCount];
+        for (int done = 0; done < frames; done += ChannelSelector.CHUNK_FRAMES) {
+            int run = Math.min(ChannelSelector.CHUNK_FRAMES, frames - done);
+            read(frame + done, chunk, 0, run);
+            selector.select(chunk, 0, channelCount, dest, destOffset + done * selected, run);
+        }
+    }
+
+    /** Ends the lease. Closing more than once has no effect. */
+    @Override
+    void close();
+
+    /**
+     * Copies the whole view into a standalone {@link AudioData}.
+     *
+     * @return The copied samples
+     */
+    default AudioData toAudioData() {
+        int channelCount = channelCount();
+        long samples = frameCount() * channelCount;
+        if (samples > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("View is too large to copy: " + samples + " samples");
+        }
+        double[] copy = new double[(int) samples];
+        read(0, copy, 0, (int) frameCount());
+        return new AudioData(copy, sampleRate(), channelCount, startFrame(), frameCount());
+    }
+
+    /**
+     * Wraps already-copied audio data as a view.
+     *
+     * @param data The samples to expose
+     * @return A view over the data's own array
+     */
+    static SampleView of(@NonNull AudioData data) {
+        return new AudioDataView(data);
+    }
+}
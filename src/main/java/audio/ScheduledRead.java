@@ -0,0 +1,135 @@
+package audio;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.NonNull;
+
+/**
+ * A read queued on a {@link ReadScheduler}, completed with its result once it has run.
+ *
+ * <p>Cancelling a read that has not started removes it from the queue, so it never runs.
+ * Cancelling one that is running interrupts its thread; decoders check for interruption between
+ * chunks and stop early. Each read runs on a thread of its own, so the interrupt cannot leak into
+ * other work.
+ *
+ * <p>Results shared by several callers, such as cached blocks, use {@link #retain} and {@link
+ * #release} instead of cancelling directly: the read is cancelled only once every caller that
+ * retained it has released it before it finished.
+ *
+ * @param <T> Type of the result
+ */
+public final class ScheduledRead<T> extends CompletableFuture<T> {
+
+    private final ReadScheduler scheduler;
+    private final Callable<T> task;
+
+    // Guarded by the scheduler's lock; read without it only to order the queue
+    volatile ReadPriority priority;
+    long sequence;
+
+    private volatile Thread runner;
+
+    // Callers still interested in the result, or -1 once the last of them has given up
+    private final AtomicInteger demand = new AtomicInteger();
+
+    ScheduledRead(ReadScheduler scheduler, ReadPriority priority, Callable<T> task) {
+        this.scheduler = scheduler;
+        this.priority = priority;
+        this.task = task;
+    }
+
+    public ReadPriority priority() {
+        return priority;
+    }
+
+    /**
+     * Raises the read's priority if it is still queued and the new priority is higher. Used when
+     * a read started as a prefetch turns out to be needed right away.
+     *
+     * @param priority The priority the read is now needed at
+     */
+    public void prioritize(@NonNull ReadPriority priority) {
+        if (!isDone() && priority.outranks(this.priority)) {
+            scheduler.reprioritize(this, priority);
+        }
+    }
+
+    /**
+     * Registers interest in the result.
+     *
+     * @return false if the read was cancelled, or is about to be because every earlier caller
+     *     released it; submit a new read in that case
+     */
+    public boolean retain() {
+        while (true) {
+            if (isDone()) {
+                return !isCancelled();
+            }
+            int current = demand.get();
+            if (current < 0) {
+                return false;
+            }
+            if (demand.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Withdraws interest registered with {@link #retain}, cancelling the read if it has not
+     * finished and no other caller still wants it.
+     */
+    public void release() {
+        while (!isDone()) {
+            int current = demand.get();
+            if (current <= 0) {
+                return;
+            }
+            int next = current == 1 ? -1 : current - 1;
+            if (demand.compareAndSet(current, next)) {
+                if (next < 0) {
+                    cancel(true);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Cancels the read, removing it from the queue or interrupting it if it is running.
+     *
+     * @param mayInterruptIfRunning Ignored; running reads are always interrupted
+     * @return true if this call cancelled the read
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled) {
+            scheduler.withdraw(this);
+            Thread thread = runner;
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+        return cancelled;
+    }
+
+    /** Runs the task on the current thread, unless the read was cancelled while queued. */
+    void run() {
+        if (isDone()) {
+            return;
+        }
+        runner = Thread.currentThread();
+        try {
+            // A cancel that raced with the runner being published may have missed it
+            if (!isDone()) {
+                complete(task.call());
+            }
+        } catch (Throwable e) {
+            completeExceptionally(e);
+        } finally {
+            runner = null;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package audio.catalog;
+
+import audio.AudioMetadata;
+import audio.SampleReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Index of the audio files under one or more directory trees, with the metadata of each.
+ *
+ * <p>A scan walks a tree in parallel, one virtual thread per directory, and reads the metadata of
+ * every file the {@link SampleReader} supports (see {@link SampleReader#isFormatSupported}).
+ * Entries are keyed by path and remember the size and modification time they were read at, so a
+ * rescan reads only files that are new or changed, and drops the entries of files that are gone.
+ * Files that cannot be read are recorded too, so they are not retried until they change. Metadata
+ * reads are bounded ({@code audio.catalog.max-concurrent-reads}) so a first scan of a large
+ * corpus does not flood the reader.
+ *
+ * <p>The index is saved to {@code audio.catalog.index-file} after every scan that changed it and
+ * loaded from there on startup, so queries are answered from the index alone. Failing to save is
+ * not an error; the index is kept in memory and saved after a later scan.
+ */
+@Slf4j
+public class AudioCatalog implements Closeable {
+
+    /**
+     * Outcome of one scan.
+     *
+     * @param files Supported files found under the directory
+     * @param updated Files whose metadata was read, being new or changed
+     * @param unreadable Files among the updated ones whose metadata could not be read
+     * @param removed Entries dropped because their file is gone
+     * @param elapsedMillis How long the scan took
+     */
+    public record ScanResult(
+            int files, int updated, int unreadable, int removed, long elapsedMillis) {}
+
+    private record Child(Path path, BasicFileAttributes attributes) {}
+
+    /** Progress of one scan, shared by the threads walking its tree. */
+    private record Progress(Set<String> seen, AtomicInteger updated, AtomicInteger unreadable) {}
+
+    private final SampleReader reader;
+    private final Path indexFile;
+    private final Semaphore reads;
+    private final ConcurrentMap<String, CatalogEntry> entries = new ConcurrentHashMap<>();
+    private final ExecutorService walkers = Executors.newVirtualThreadPerTaskExecutor();
+    private final Object saveLock = new Object();
+    private volatile boolean closed = false;
+
+    public AudioCatalog(@NonNull SampleReader reader, @NonNull CatalogProperties properties) {
+        this(
+                reader,
+                properties.indexFile().isBlank() ? null : Path.of(properties.indexFile()),
+                properties.maxConcurrentReads() > 0
+                        ? properties.maxConcurrentReads()
+                        : Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a catalog, loading its saved index if there is one.
+     *
+     * @param reader Reader to take metadata from
+     * @param indexFile File to save the index to, or null to keep it in memory only
+     * @param maxConcurrentReads Maximum number of metadata reads in flight during a scan
+     */
+    public AudioCatalog(@NonNull SampleReader reader, Path indexFile, int maxConcurrentReads) {
+        if (maxConcurrentReads <= 0) {
+            throw new IllegalArgumentException(
+                    "Concurrent reads must be positive: " + maxConcurrentReads);
+        }
+        this.reader = reader;
+        this.indexFile = indexFile;
+        this.reads = new Semaphore(maxConcurrentReads);
+        load();
+    }
+
+    /**
+     * Brings the index up to date with a directory tree.
+     *
+     * @param directory Root of the tree to scan
+     * @return Future containing what the scan found and changed
+     * @throws CompletionException wrapping NoSuchFileException or NotDirectoryException if the
+     *     directory does not exist or is not a directory
+     */
+    public CompletableFuture<ScanResult> scan(@NonNull Path directory) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Catalog is closed"));
+        }
+        Path root = directory.toAbsolutePath().normalize();
+        if (!Files.exists(root)) {
+            return CompletableFuture.failedFuture(new NoSuchFileException(root.toString()));
+        }
+        if (!Files.isDirectory(root)) {
+            return CompletableFuture.failedFuture(new NotDirectoryException(root.toString()));
+        }
+
+        long start = System.nanoTime();
+        Progress progress =
+                new Progress(
+                        ConcurrentHashMap.newKeySet(), new AtomicInteger(), new AtomicInteger());
+        return walk(root, progress)
+                .thenApply(
+                        _ -> {
+                            int removed = removeMissing(root, progress.seen());
+                            int updated = progress.updated().get();
+                            if (updated > 0 || removed > 0) {
+                                save();
+                            }
+                            var result =
+                                    new ScanResult(
+                                            progress.seen().size(),
+                                            updated,
+                                            progress.unreadable().get(),
+                                            removed,
+                                            (System.nanoTime() - start) / 1_000_000);
+                            log.info("Scanned {}: {}", root, result);
+                            return result;
+                        });
+    }
+
+    /**
+     * Lists the indexed files under a directory, in path order, without touching the files.
+     *
+     * @param directory Root of the tree to list, or null for every indexed file
+     * @return The entries, including those of files that could not be read
+     */
+    public List<CatalogEntry> query(Path directory) {
+        Path root = directory != null ? directory.toAbsolutePath().normalize() : null;
+        return entries.values().stream()
+                .filter(entry -> root == null || Path.of(entry.path()).startsWith(root))
+                .sorted(Comparator.comparing(CatalogEntry::path))
+                .toList();
+    }
+
+    /** Number of indexed files. */
+    public int size() {
+        return entries.size();
+    }
+
+    private CompletableFuture<Void> walk(Path directory, Progress progress) {
+        return CompletableFuture.supplyAsync(() -> list(directory), walkers)
+                .thenCompose(
+                        children -> {
+                            List<CompletableFuture<Void>> work = new ArrayList<>();
+                            for (Child child : children) {
+                                if (child.attributes().isDirectory()) {
+                                    work.add(walk(child.path(), progress));
+                                } else if (child.attributes().isRegularFile()
+                                        && reader.isFormatSupported(child.path())) {
+                                    work.add(visit(child, progress));
+                                }
+                            }
+                            return CompletableFuture.allOf(work.toArray(CompletableFuture[]::new));
+                        });
+    }
+
+    /** Indexes a file found by a scan, unless its entry is still current. */
+    private CompletableFuture<Void> visit(Child file, Progress progress) {
+        String key = file.path().toString();
+        progress.seen().add(key);
+        long size = file.attributes().size();
+        long modified = file.attributes().lastModifiedTime().toMillis();
+        CatalogEntry known = entries.get(key);
+        if (known != null && known.matches(size, modified)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(
+                () -> {
+                    if (!index(file.path(), size, modified)) {
+                        progress.unreadable().incrementAndGet();
+                    }
+                    progress.updated().incrementAndGet();
+                },
+                walkers);
+    }
+
+    private List<Child> list(Path directory) {
+        List<Child> children = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                try {
+                    // Links are not followed, so a link cycle cannot make the walk endless
+                    children.add(
+                            new Child(
+                                    path,
+                                    Files.readAttributes(
+                                            path,
+                                            BasicFileAttributes.class,
+                                            LinkOption.NOFOLLOW_LINKS)));
+                } catch (IOException e) {
+                    log.debug("Skipping {}: {}", path, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Cannot list {}: {}", directory, e.getMessage());
+        }
+        return children;
+    }
+
+    /** Reads one file's metadata into the index, returning whether it was readable. */
+    private boolean index(Path audioFile, long size, long modified) {
+        AudioMetadata metadata = null;
+        reads.acquireUninterruptibly();
+        try {
+            metadata = reader.getMetadata(audioFile).join();
+        } catch (CompletionException | CancellationException e) {
+            log.debug("Cannot read metadata of {}: {}", audioFile, e.getMessage());
+        } finally {
+            reads.release();
+        }
+        String key = audioFile.toString();
+        entries.put(key, new CatalogEntry(key, size, modified, metadata));
+        return metadata != null;
+    }
+
+    private int removeMissing(Path root, Set<String> seen) {
+        int removed = 0;
+        for (String key : entries.keySet()) {
+            if (!seen.contains(key) && Path.of(key).startsWith(root)) {
+                entries.remove(key);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private void load() {
+        if (indexFile == null || !Files.exists(indexFile)) {
+            return;
+        }
+        try {
+            for (CatalogEntry entry : CatalogIndex.read(indexFile)) {
+                entries.put(entry.path(), entry);
+            }
+            log.info("Loaded catalog of {} files from {}", entries.size(), indexFile);
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable catalog {}: {}", indexFile, e.getMessage());
+        }
+    }
+
+    private void save() {
+        if (indexFile == null) {
+            return;
+        }
+        synchronized (saveLock) {
+            try {
+                CatalogIndex.write(indexFile, List.copyOf(entries.values()));
+            } catch (IOException e) {
+                log.warn("Could not save catalog {}: {}", indexFile, e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        walkers.shutdownNow();
+    }
+}
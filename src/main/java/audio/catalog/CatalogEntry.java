@@ -0,0 +1,19 @@
+package audio.catalog;
+
+import audio.AudioMetadata;
+
+/**
+ * One audio file in an {@link AudioCatalog}, as of the scan that last saw it change.
+ *
+ * @param path Absolute, normalized path of the file
+ * @param size File size in bytes when it was read
+ * @param modified File modification time when it was read, in epoch millis
+ * @param metadata The file's metadata, or null if it could not be read
+ */
+public record CatalogEntry(String path, long size, long modified, AudioMetadata metadata) {
+
+    /** Whether the file is unchanged since this entry was made. */
+    boolean matches(long size, long modified) {
+        return this.size == size && this.modified == modified;
+    }
+}
@@ -0,0 +1,101 @@
+package audio.catalog;
+
+import audio.AudioMetadata;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Reads and writes the file an {@link AudioCatalog} is saved to.
+ *
+ * <p>The file is a big-endian header (magic, version, entry count) followed by one record per
+ * entry: path, size, modification time, and the metadata if the file was readable. It is always
+ * rewritten whole through a temporary file and an atomic rename, so a crash mid-save leaves the
+ * previous index intact.
+ */
+final class CatalogIndex {
+
+    private static final int MAGIC = 0x54524349; // "TRCI"
+    private static final int VERSION = 1;
+
+    private CatalogIndex() {}
+
+    static void write(Path indexFile, Collection<CatalogEntry> entries) throws IOException {
+        Path directory = indexFile.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, ".catalog", ".tmp");
+        try {
+            try (DataOutputStream out =
+                    new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                for (CatalogEntry entry : entries) {
+                    out.writeUTF(entry.path());
+                    out.writeLong(entry.size());
+                    out.writeLong(entry.modified());
+                    AudioMetadata metadata = entry.metadata();
+                    out.writeBoolean(metadata != null);
+                    if (metadata != null) {
+                        out.writeInt(metadata.sampleRate());
+                        out.writeInt(metadata.channelCount());
+                        out.writeInt(metadata.bitsPerSample());
+                        out.writeUTF(metadata.format() != null ? metadata.format() : "");
+                        out.writeLong(metadata.frameCount());
+                        out.writeDouble(metadata.durationSeconds());
+                    }
+                }
+            }
+            Files.move(
+                    temp,
+                    indexFile,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    static List<CatalogEntry> read(Path indexFile) throws IOException {
+        try (DataInputStream in =
+                new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a catalog index, or an unsupported version");
+            }
+            int count = in.readInt();
+            if (count < 0) {
+                throw new IOException("Corrupt catalog index header");
+            }
+
+            // Every record takes at least 19 bytes, which bounds the count before allocating
+            List<CatalogEntry> entries =
+                    new ArrayList<>((int) Math.min(count, Files.size(indexFile) / 19));
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                long modified = in.readLong();
+                AudioMetadata metadata = null;
+                if (in.readBoolean()) {
+                    metadata =
+                            new AudioMetadata(
+                                    in.readInt(),
+                                    in.readInt(),
+                                    in.readInt(),
+                                    in.readUTF(),
+                                    in.readLong(),
+                                    in.readDouble());
+                }
+                entries.add(new CatalogEntry(path, size, modified, metadata));
+            }
+            return entries;
+        }
+    }
+}
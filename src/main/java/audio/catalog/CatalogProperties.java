@@ -0,0 +1,15 @@
+package audio.catalog;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Configuration for {@link AudioCatalog}, bound from {@code audio.catalog.*}.
+ *
+ * @param indexFile File the catalog is saved to between sessions, or empty to keep it in memory
+ * @param maxConcurrentReads Maximum number of files read at once while scanning, or 0 for one per
+ *     processor
+ */
+@ConfigurationProperties(prefix = "audio.catalog")
+public record CatalogProperties(
+        @DefaultValue("") String indexFile, @DefaultValue("0") int maxConcurrentReads) {}
@@ -0,0 +1,363 @@
+package audio.codec;
+
+import audio.AudioData;
+import audio.AudioMetadata;
+import audio.AudioReadException;
+import audio.ReadPriority;
+import audio.ResampleCache;
+import audio.SampleReader;
+import audio.SampleView;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * SampleReader that routes each file to the fastest backend able to read it.
+ *
+ * <p>Backends come from {@link SampleReaderProvider}s, found with a {@link ServiceLoader}, and a
+ * fallback that reads everything, normally the native decoder. The first time a file is used, its
+ * format is detected from its magic bytes (see {@link ContainerFormat}) and it is offered to the
+ * providers supporting that format, highest priority first: the first whose {@link #getMetadata}
+ * succeeds gets the file, and the fallback gets it if none does. The route is remembered with the
+ * file's size and modification time, so later calls go straight to the backend and hand back its
+ * own futures until the file changes. A file whose format could not be detected, for instance
+ * because it does not exist yet, goes to the fallback without being remembered. The first call's
+ * future passes a cancellation on to the backend's, and closes a view the backend delivers too
+ * late.
+ *
+ * <p>Provider backends are wrapped in a {@link ScheduledSampleReader}, so their reads queue by
+ * {@link ReadPriority} as the fallback's do, and the blocks decoding backends produce are cached,
+ * up to {@value #BLOCK_CACHE_MAX_BYTES} bytes each. Resampled reads from every backend go through
+ * one {@link ResampleCache}, which the fallback may share so converted audio is cached once.
+ */
+@Slf4j
+public class CompositeSampleReader implements SampleReader {
+
+    private static final int MAX_ROUTES = 10_000;
+
+    // Decoded blocks kept for each provider backend that decodes
+    static final long BLOCK_CACHE_MAX_BYTES = 128_000_000;
+
+    private record Backend(SampleReaderProvider provider, SampleReader reader) {}
+
+    /** The backend chosen for a file, and the size and modification time it was chosen at. */
+    private record Route(SampleReader reader, long size, long modified) {}
+
+    /** The backends to offer a file to, and its attributes, or null if detection failed. */
+    private record Candidates(List<SampleReader> readers, BasicFileAttributes attributes) {}
+
+    private final List<Backend> backends;
+    private final SampleReader fallback;
+    private final ResampleCache resampled;
+    private final Cache<Path, Route> routes =
+            Caffeine.newBuilder().maximumSize(MAX_ROUTES).build();
+
+    // Detection reads the file, so it stays off the callers' threads
+    private final ExecutorService routing = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a reader over the providers on the class path.
+     *
+     * @param fallback Reader for every file no provider takes; closed with this reader
+     * @param resampled Cache for resampled reads from every backend
+     */
+    public CompositeSampleReader(@NonNull SampleReader fallback, @NonNull ResampleCache resampled) {
+        this(
+                fallback,
+                ServiceLoader.load(SampleReaderProvider.class).stream()
+                        .map(ServiceLoader.Provider::get)
+                        .toList(),
+                resampled);
+    }
+
+    /**
+     * Creates a reader over the given providers.
+     *
+     * @param fallback Reader for every file no provider takes; closed with this reader
+     * @param providers Backends to offer files to before the fallback
+     * @param resampled Cache for resampled reads from every backend
+     */
+    public CompositeSampleReader(
+            @NonNull SampleReader fallback,
+            @NonNull List<SampleReaderProvider> providers,
+            @NonNull ResampleCache resampled) {
+        this.fallback = fallback;
+        this.backends =
+                providers.stream()
+                        .sorted(Comparator.comparingInt(SampleReaderProvider::priority).reversed())
+                        .map(provider -> new Backend(provider, scheduled(provider)))
+                        .toList();
+        this.resampled = resampled;
+        log.info(
+                "Created composite sample reader ({} before {})",
+                backends.stream().map(backend -> backend.provider().name()).toList(),
+                fallback.getClass().getSimpleName());
+    }
+
+    /** Creates a provider's backend, wrapped so its reads are scheduled and cached. */
+    private static SampleReader scheduled(SampleReaderProvider provider) {
+        long cacheMaxBytes = provider.decodes() ? BLOCK_CACHE_MAX_BYTES : 0;
+        return new ScheduledSampleReader(provider.name(), provider.create(), cacheMaxBytes);
+    }
+
+    @Override
+    public CompletableFuture<AudioData> readSamples(
+            @NonNull Path audioFile, long startFrame, long frameCount) {
+        return routed(audioFile, reader -> reader.readSamples(audioFile, startFrame, frameCount));
+    }
+
+    @Override
+    public CompletableFuture<AudioData> readSamples(
+            @NonNull Path audioFile,
+            long startFrame,
+            long frameCount,
+            @NonNull ReadPriority priority) {
+        return routed(
+                audioFile,
+                reader -> reader.readSamples(audioFile, startFrame, frameCount, priority));
+    }
+
+    @Override
+    public CompletableFuture<SampleView> readView(
+            @NonNull Path audioFile, long startFrame, long frameCount) {
+        return routed(audioFile, reader -> reader.readView(audioFile, startFrame, frameCount));
+    }
+
+    @Override
+    public CompletableFuture<SampleView> readView(
+            @NonNull Path audioFile,
+            long startFrame,
+            long frameCount,
+            @NonNull ReadPriority priority) {
+        return routed(
+                audioFile, reader -> reader.readView(audioFile, startFrame, frameCount, priority));
+    }
+
+    @Override
+    public CompletableFuture<AudioData> readSamples(
+            @NonNull Path audioFile,
+            long startFrame,
+            long frameCount,
+            int sampleRate,
+            @NonNull ReadPriority priority) {
+        return routed(
+                audioFile,
+                reader ->
+                        resampled.read(
+                                reader, audioFile, startFrame, frameCount, sampleRate, priority));
+    }
+
+    @Override
+    public CompletableFuture<AudioMetadata> getMetadata(@NonNull Path audioFile) {
+        return routed(audioFile, reader -> reader.getMetadata(audioFile));
+    }
+
+    @Override
+    public CompletableFuture<List<AudioData>> readMultiple(
+            @NonNull Path audioFile,
+            @NonNull List<ReadRequest> requests,
+            @NonNull ReadPriority priority) {
+        return routed(audioFile, reader -> reader.readMultiple(audioFile, requests, priority));
+    }
+
+    /**
+     * Whether any backend reads the file, judged by its name or, failing that, by its first
+     * bytes, so audio saved without its usual extension is still found.
+     */
+    @Override
+    public boolean isFormatSupported(@NonNull Path audioFile) {
+        if (fallback.isFormatSupported(audioFile)) {
+            return true;
+        }
+        for (Backend backend : backends) {
+            if (backend.reader().isFormatSupported(audioFile)) {
+                return true;
+            }
+        }
+        try {
+            return ContainerFormat.detect(audioFile) != ContainerFormat.UNKNOWN;
+        } catch (AudioReadException e) {
+            return false;
+        }
+    }
+
+    /** Runs a call on the file's backend, choosing the backend first if the file is new. */
+    private <T> CompletableFuture<T> routed(
+            Path audioFile, Function<SampleReader, CompletableFuture<T>> call) {
+        if (closed) {
+            return CompletableFuture.failedFuture(
+                    new AudioReadException("Reader is closed", audioFile));
+        }
+        Path key = audioFile.toAbsolutePath().normalize();
+        Route known = routes.getIfPresent(key);
+        if (known != null && isCurrent(known, audioFile)) {
+            return call.apply(known.reader());
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        CompletableFuture.supplyAsync(() -> candidates(audioFile), routing)
+                .thenCompose(
+                        candidates ->
+                                choose(audioFile, candidates.readers(), 0)
+                                        .thenApply(reader -> remember(key, candidates, reader)))
+                .whenComplete(
+                        (reader, error) -> {
+                            if (error != null) {
+                                result.completeExceptionally(error);
+                                return;
+                            }
+                            // A caller that gave up while the file was routed reads nothing
+                            if (result.isDone()) {
+                                return;
+                            }
+                            try {
+                                forward(call.apply(reader), result);
+                            } catch (RuntimeException e) {
+                                result.completeExceptionally(e);
+                            }
+                        });
+        return result;
+    }
+
+    /** Whether a file is unchanged since its route was chosen. */
+    private static boolean isCurrent(Route route, Path audioFile) {
+        try {
+            BasicFileAttributes attributes =
+                    Files.readAttributes(audioFile, BasicFileAttributes.class);
+            return route.size() == attributes.size()
+                    && route.modified() == attributes.lastModifiedTime().toMillis();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** Records the backend chosen for a file, unless its format could not be detected. */
+    private SampleReader remember(Path key, Candidates candidates, SampleReader reader) {
+        BasicFileAttributes attributes = candidates.attributes();
+        if (attributes != null) {
+            routes.put(
+                    key,
+                    new Route(reader, attributes.size(), attributes.lastModifiedTime().toMillis()));
+        }
+        return reader;
+    }
+
+    /** Completes a caller's future from a backend's, passing a cancellation on to the backend. */
+    private static <T> void forward(CompletableFuture<T> read, CompletableFuture<T> result) {
+        read.whenComplete(
+                (value, error) -> {
+                    if (error != null) {
+                        result.completeExceptionally(error);
+                    } else {
+                        result.complete(value);
+                    }
+                });
+        // A view that arrives after the caller gave up has no one else to close it
+        result.whenComplete(
+                (_, _) -> {
+                    if (result.isCancelled() && !read.cancel(true)) {
+                        read.thenAccept(CompositeSampleReader::discard);
+                    }
+                });
+    }
+
+    private static void discard(Object value) {
+        if (value instanceof SampleView view) {
+            view.close();
+        }
+    }
+
+    /** The backends to offer a file to, best first, ending with the fallback. */
+    private Candidates candidates(Path audioFile) {
+        // Taken before detection, so a change made while the file is routed is seen next time
+        BasicFileAttributes attributes;
+        ContainerFormat format;
+        try {
+            attributes = Files.readAttributes(audioFile, BasicFileAttributes.class);
+            format = ContainerFormat.detect(audioFile);
+        } catch (IOException e) {
+            // Leave it to the fallback to report why the file cannot be read
+            attributes = null;
+            format = ContainerFormat.UNKNOWN;
+        }
+        List<SampleReader> candidates = new ArrayList<>();
+        for (Backend backend : backends) {
+            if (backend.provider().supports(format)) {
+                candidates.add(backend.reader());
+            }
+        }
+        candidates.add(fallback);
+        log.debug("Detected {} as {}, {} candidate readers", audioFile, format, candidates.size());
+        return new Candidates(candidates, attributes);
+    }
+
+    /** Takes the first candidate that reads the file's metadata, or else the fallback. */
+    private CompletableFuture<SampleReader> choose(
+            Path audioFile, List<SampleReader> candidates, int index) {
+        SampleReader candidate = candidates.get(index);
+        if (index == candidates.size() - 1) {
+            return CompletableFuture.completedFuture(candidate);
+        }
+        return candidate
+                .getMetadata(audioFile)
+                .handle(
+                        (_, error) -> {
+                            if (error != null) {
+                                log.debug(
+                                        "{} declined {}: {}",
+                                        candidate.getClass().getSimpleName(),
+                                        audioFile,
+                                        error.toString());
+                            }
+                            return error == null;
+                        })
+                .thenCompose(
+                        accepted ->
+                                accepted
+                                        ? CompletableFuture.completedFuture(candidate)
+                                        : choose(audioFile, candidates, index + 1));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        routing.shutdown();
+        routes.invalidateAll();
+        resampled.clear();
+
+        IOException failure = null;
+        List<SampleReader> readers = new ArrayList<>();
+        backends.forEach(backend -> readers.add(backend.reader()));
+        readers.add(fallback);
+        for (SampleReader reader : readers) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
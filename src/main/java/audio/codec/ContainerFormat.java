@@ -0,0 +1,161 @@
+package audio.codec;
+
+import audio.AudioReadException;
+import audio.mp3.Mp3FrameHeader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import lombok.NonNull;
+
+/**
+ * Audio container formats, recognised by the magic bytes at the start of a file rather than by its
+ * name.
+ *
+ * <p>Detection reads a few bytes: the RIFF, RF64 or BW64 chunk of a WAV file, the FORM chunk of
+ * an AIFF file, the stream markers of FLAC and Ogg, or an MPEG frame sync, which tells MP3 from
+ * ADTS AAC by its layer bits. An ID3v2 tag at the start, as taggers put before MP3 and sometimes
+ * FLAC or AAC streams, is skipped first.
+ *
+ * <p>Eleven set bits are easily matched by chance (a UTF-16LE byte order mark is one), so MP3
+ * also needs a valid frame header followed by another header of the same stream, or by the end of
+ * the file.
+ */
+public enum ContainerFormat {
+    WAV,
+    AIFF,
+    FLAC,
+    MP3,
+    OGG,
+    AAC,
+
+    /** Not recognised; a native decoder may still read it. */
+    UNKNOWN;
+
+    /** Bytes needed to tell the formats apart, which also covers an ID3v2 tag header. */
+    static final int HEADER_BYTES = 12;
+
+    private static final int ID3_HEADER_BYTES = 10;
+
+    /**
+     * Detects a file's format from its first bytes.
+     *
+     * @param audioFile Path to the file
+     * @return The format, or {@link #UNKNOWN} if the bytes match none
+     * @throws AudioReadException if the file cannot be read
+     */
+    public static ContainerFormat detect(@NonNull Path audioFile) throws AudioReadException {
+        try (FileChannel channel = FileChannel.open(audioFile, StandardOpenOption.READ)) {
+            long start = 0;
+            ByteBuffer header = read(channel, start);
+            if (header.remaining() >= ID3_HEADER_BYTES && matches(header, 0, "ID3")) {
+                start = id3Length(header);
+                header = read(channel, start);
+            }
+            ContainerFormat format = detect(header);
+            if (format == MP3 && !hasSecondFrame(channel, start, frameHeader(header))) {
+                return UNKNOWN;
+            }
+            return format;
+        } catch (IOException e) {
+            throw new AudioReadException("Failed to read file header", audioFile, e);
+        }
+    }
+
+    /**
+     * Detects a format from the bytes at the start of a stream, after any ID3v2 tag.
+     *
+     * @param header The bytes, from its position to its limit
+     * @return The format, or {@link #UNKNOWN} if the bytes match none
+     */
+    static ContainerFormat detect(ByteBuffer header) {
+        if (matches(header, 0, "fLaC")) {
+            return FLAC;
+        }
+        if (matches(header, 0, "OggS")) {
+            return OGG;
+        }
+        if (matches(header, 8, "WAVE")
+                && (matches(header, 0, "RIFF")
+                        || matches(header, 0, "RF64")
+                        || matches(header, 0, "BW64"))) {
+            return WAV;
+        }
+        if (matches(header, 0, "FORM")
+                && (matches(header, 8, "AIFF") || matches(header, 8, "AIFC"))) {
+            return AIFF;
+        }
+        if (header.remaining() >= 2) {
+            int first = header.get(header.position()) & 0xFF;
+            int second = header.get(header.position() + 1) & 0xFF;
+            // Eleven set bits of frame sync, then a version other than the reserved one
+            if (first == 0xFF && (second & 0xE0) == 0xE0 && (second & 0x18) != 0x08) {
+                int layer = (second >> 1) & 0x03;
+                if (layer != 0) {
+                    return frameHeader(header) != null ? MP3 : UNKNOWN;
+                }
+                // ADTS has twelve sync bits and no layer
+                if ((second & 0x10) != 0) {
+                    return AAC;
+                }
+            }
+        }
+        return UNKNOWN;
+    }
+
+    /** The MPEG frame header at the start of the bytes, or null if there is no valid one. */
+    private static Mp3FrameHeader frameHeader(ByteBuffer header) {
+        if (header.remaining() < 4) {
+            return null;
+        }
+        return Mp3FrameHeader.parse(header.getInt(header.position()));
+    }
+
+    /** Whether the frame at a position is followed by another of its stream or the file's end. */
+    private static boolean hasSecondFrame(FileChannel channel, long position, Mp3FrameHeader first)
+            throws IOException {
+        long next = position + first.length();
+        long size = channel.size();
+        // A stream of one frame ends the file, or is followed by an ID3v1 tag
+        if (next == size || (next + 128 == size && matches(read(channel, next), 0, "TAG"))) {
+            return true;
+        }
+        Mp3FrameHeader second = frameHeader(read(channel, next));
+        return second != null && second.sameStream(first);
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (header.hasRemaining()) {
+            if (channel.read(header, position + header.position()) < 0) {
+                break;
+            }
+        }
+        return header.flip();
+    }
+
+    /** Length of an ID3v2 tag, from the sync-safe size in its header plus any footer. */
+    private static long id3Length(ByteBuffer header) {
+        long size = 0;
+        for (int i = 6; i < 10; i++) {
+            size = (size << 7) | (header.get(i) & 0x7F);
+        }
+        boolean footer = (header.get(5) & 0x10) != 0;
+        return ID3_HEADER_BYTES + size + (footer ? ID3_HEADER_BYTES : 0);
+    }
+
+    private static boolean matches(ByteBuffer header, int offset, String magic) {
+        byte[] bytes = magic.getBytes(StandardCharsets.US_ASCII);
+        if (header.remaining() < offset + bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (header.get(header.position() + offset + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
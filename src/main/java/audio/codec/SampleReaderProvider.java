@@ -0,0 +1,46 @@
+package audio.codec;
+
+import audio.SampleReader;
+
+/**
+ * A pluggable {@link SampleReader} backend for some container formats, found with a {@code
+ * ServiceLoader}.
+ *
+ * <p>Providers are listed in {@code META-INF/services/audio.codec.SampleReaderProvider} and must
+ * have a public no-argument constructor. A {@link CompositeSampleReader} offers each file to the
+ * providers supporting its detected format, highest priority first, before its native fallback,
+ * so a provider only needs to be faster than the fallback for the formats it claims. The composite
+ * schedules and caches the backend's reads itself, so a backend only needs to read the range it
+ * is asked for.
+ */
+public interface SampleReaderProvider {
+
+    /** Short name of the backend, for logging. */
+    String name();
+
+    /**
+     * Whether the backend can read a format. It may still decline individual files by failing
+     * {@link SampleReader#getMetadata}, for instance a WAV file holding compressed samples.
+     *
+     * @param format The format detected from the file's first bytes
+     * @return true to be offered files of this format
+     */
+    boolean supports(ContainerFormat format);
+
+    /** Preference among providers supporting the same format; higher is tried first. */
+    default int priority() {
+        return 0;
+    }
+
+    /**
+     * Whether the backend decodes what it reads, so that its output is worth caching. Backends
+     * that read samples straight from a mapping return false; their reads are scheduled but not
+     * cached.
+     */
+    default boolean decodes() {
+        return true;
+    }
+
+    /** Creates the backend. Called once per composite reader, which closes it. */
+    SampleReader create();
+}
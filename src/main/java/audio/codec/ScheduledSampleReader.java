@@ -0,0 +1,316 @@
+package audio.codec;
+
+import audio.AudioData;
+import audio.AudioMetadata;
+import audio.AudioReadException;
+import audio.ReadPriority;
+import audio.ReadScheduler;
+import audio.SampleReader;
+import audio.SampleView;
+import audio.ScheduledRead;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import lombok.NonNull;
+
+/**
+ * Gives a provider backend the priority scheduling, and optionally the block cache, that the
+ * native reader has built in.
+ *
+ * <p>Reads are split into blocks of {@link #BLOCK_FRAMES} frames, each read from the backend as a
+ * {@link ScheduledRead} on a {@link ReadScheduler}, so prefetches and batch scans queue behind
+ * interactive reads instead of competing with them for cores. A caching reader keeps the blocks
+ * it reads in a cache bounded by their size, so a range decoded ahead of time is not decoded again
+ * when it is needed; backends that read straight from a mapping are not cached, since the page
+ * cache already holds their samples. Blocks are keyed by the file's size and modification time
+ * as well as its path, so a file changed in place is read afresh. Concurrent readers of one block
+ * share a single read, which is cancelled once every one of them has given up on it.
+ */
+final class ScheduledSampleReader implements SampleReader {
+
+    /** Frames read from the backend, and cached, together. */
+    static final int BLOCK_FRAMES = 1 << 16;
+
+    private static final int QUEUE_CAPACITY = 4096;
+
+    // A copied result has to fit in one array
+    private static final long MAX_SAMPLES_PER_READ = Integer.MAX_VALUE - 8;
+
+    /** A file as it stood when its blocks were read. */
+    private record FileVersion(Path path, long size, long modified) {}
+
+    private record BlockKey(FileVersion file, long index) {}
+
+    private final SampleReader backend;
+    private final ReadScheduler scheduler;
+    private final AsyncCache<BlockKey, AudioData> blocks;
+    private volatile boolean closed = false;
+
+    /**
+     * Wraps a backend.
+     *
+     * @param name Name of the backend, for naming its read threads
+     * @param backend The backend; closed with this reader
+     * @param cacheMaxBytes Upper bound on the size of the cached blocks, or 0 to cache nothing
+     */
+    ScheduledSampleReader(String name, SampleReader backend, long cacheMaxBytes) {
+        this.backend = backend;
+        this.scheduler =
+                new ReadScheduler(
+                        name + "-read", Runtime.getRuntime().availableProcessors(), QUEUE_CAPACITY);
+        this.blocks =
+                cacheMaxBytes > 0
+                        ? Caffeine.newBuilder()
+                                .maximumWeight(cacheMaxBytes)
+                                .weigher((BlockKey key, AudioData block) -> weightOf(block))
+                                .executor(Runnable::run)
+                                .buildAsync()
+                        : null;
+    }
+
+    @Override
+    public CompletableFuture<AudioData> readSamples(
+            @NonNull Path audioFile, long startFrame, long frameCount) {
+        return readSamples(audioFile, startFrame, frameCount, ReadPriority.INTERACTIVE);
+    }
+
+    @Override
+    public CompletableFuture<AudioData> readSamples(
+            @NonNull Path audioFile,
+            long startFrame,
+            long frameCount,
+            @NonNull ReadPriority priority) {
+        if (closed) {
+            return CompletableFuture.failedFuture(
+                    new AudioReadException("Reader is closed", audioFile));
+        }
+        if (startFrame < 0 || frameCount < 0) {
+            return CompletableFuture.failedFuture(
+                    new IllegalArgumentException("Negative frame values not allowed"));
+        }
+
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(audioFile, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(
+                    new AudioReadException("Failed to read file attributes", audioFile, e));
+        }
+
+        CompletableFuture<AudioData> result = new CompletableFuture<>();
+        backend.getMetadata(audioFile)
+                .whenComplete(
+                        (metadata, error) -> {
+                            if (error != null) {
+                                result.completeExceptionally(error);
+                                return;
+                            }
+                            FileVersion file =
+                                    new FileVersion(
+                                            audioFile.toAbsolutePath().normalize(),
+                                            attributes.size(),
+                                            attributes.lastModifiedTime().toMillis());
+                            readBlocks(result, file, metadata, startFrame, frameCount, priority);
+                        });
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<SampleView> readView(
+            @NonNull Path audioFile, long startFrame, long frameCount) {
+        return readView(audioFile, startFrame, frameCount, ReadPriority.INTERACTIVE);
+    }
+
+    @Override
+    public CompletableFuture<SampleView> readView(
+            @NonNull Path audioFile,
+            long startFrame,
+            long frameCount,
+            @NonNull ReadPriority priority) {
+        CompletableFuture<AudioData> data =
+                readSamples(audioFile, startFrame, frameCount, priority);
+        CompletableFuture<SampleView> view = data.thenApply(SampleView::of);
+        view.whenComplete(
+                (_, _) -> {
+                    if (view.isCancelled()) {
+                        data.cancel(true);
+                    }
+                });
+        return view;
+    }
+
+    @Override
+    public CompletableFuture<AudioMetadata> getMetadata(@NonNull Path audioFile) {
+        return backend.getMetadata(audioFile);
+    }
+
+    @Override
+    public boolean isFormatSupported(@NonNull Path audioFile) {
+        return backend.isFormatSupported(audioFile);
+    }
+
+    /** Reads the blocks under a range and copies the range out of them. */
+    private void readBlocks(
+            CompletableFuture<AudioData> result,
+            FileVersion file,
+            AudioMetadata metadata,
+            long startFrame,
+            long frameCount,
+            ReadPriority priority) {
+        Path audioFile = file.path();
+        int channelCount = metadata.channelCount();
+        long endFrame =
+                startFrame + Math.min(frameCount, Math.max(0, metadata.frameCount() - startFrame));
+        if (result.isDone()) {
+            return;
+        }
+        if (startFrame >= endFrame) {
+            result.complete(AudioData.empty(metadata.sampleRate(), channelCount, startFrame));
+            return;
+        }
+        if ((endFrame - startFrame) * channelCount > MAX_SAMPLES_PER_READ) {
+            result.completeExceptionally(
+                    new AudioReadException(
+                            "Requested range is too large for a single read",
+                            audioFile,
+                            startFrame,
+                            frameCount));
+            return;
+        }
+
+        long firstBlock = startFrame / BLOCK_FRAMES;
+        long lastBlock = (endFrame - 1) / BLOCK_FRAMES;
+        List<ScheduledRead<AudioData>> pending = new ArrayList<>();
+        for (long index = firstBlock; index <= lastBlock; index++) {
+            pending.add(acquireBlock(new BlockKey(file, index), priority));
+        }
+
+        // However the read ends, it stops waiting for its blocks; reads nobody else is waiting
+        // for are abandoned
+        result.whenComplete((_, _) -> pending.forEach(ScheduledRead::release));
+
+        CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new))
+                .whenComplete(
+                        (_, failure) -> {
+                            if (failure != null) {
+                                result.completeExceptionally(failure);
+                                return;
+                            }
+                            result.complete(
+                                    assemble(pending, metadata, firstBlock, startFrame, endFrame));
+                        });
+    }
+
+    /** Copies a range out of its blocks, stopping early if the backend ran out of frames. */
+    private static AudioData assemble(
+            List<ScheduledRead<AudioData>> pending,
+            AudioMetadata metadata,
+            long firstBlock,
+            long startFrame,
+            long endFrame) {
+        int channelCount = metadata.channelCount();
+        double[] samples = new double[(int) ((endFrame - startFrame) * channelCount)];
+        long copiedEnd = startFrame;
+        for (int i = 0; i < pending.size(); i++) {
+            AudioData block = pending.get(i).join();
+            long blockStart = (firstBlock + i) * BLOCK_FRAMES;
+            long from = Math.max(startFrame, blockStart);
+            long to = Math.min(endFrame, blockStart + block.frameCount());
+            if (to > from) {
+                System.arraycopy(
+                        block.samples(),
+                        (int) (from - blockStart) * channelCount,
+                        samples,
+                        (int) (from - startFrame) * channelCount,
+                        (int) (to - from) * channelCount);
+                copiedEnd = to;
+            }
+            if (block.frameCount() < BLOCK_FRAMES) {
+                break;
+            }
+        }
+
+        long frames = copiedEnd - startFrame;
+        if (frames * channelCount < samples.length) {
+            samples = Arrays.copyOf(samples, (int) (frames * channelCount));
+        }
+        return new AudioData(samples, metadata.sampleRate(), channelCount, startFrame, frames);
+    }
+
+    /**
+     * Returns one block, scheduling its read if it is not cached, with interest registered on the
+     * caller's behalf. The caller must release it.
+     */
+    @SuppressWarnings("unchecked")
+    private ScheduledRead<AudioData> acquireBlock(BlockKey key, ReadPriority priority) {
+        if (blocks == null) {
+            ScheduledRead<AudioData> block = scheduleRead(key, priority);
+            block.retain();
+            return block;
+        }
+        while (true) {
+            // Only scheduled reads are ever put in the cache
+            ScheduledRead<AudioData> block =
+                    (ScheduledRead<AudioData>)
+                            blocks.get(key, (k, _) -> scheduleRead(k, priority));
+            if (block.retain()) {
+                block.prioritize(priority);
+                return block;
+            }
+            // Every reader that wanted this block gave up on it; start a new read
+            blocks.asMap().remove(key, block);
+        }
+    }
+
+    private ScheduledRead<AudioData> scheduleRead(BlockKey key, ReadPriority priority) {
+        return scheduler.submit(priority, () -> readBlock(key));
+    }
+
+    /** Reads a block from the backend, abandoning the backend's read if interrupted. */
+    private AudioData readBlock(BlockKey key) throws IOException, InterruptedException {
+        long startFrame = key.index() * BLOCK_FRAMES;
+        CompletableFuture<AudioData> read =
+                backend.readSamples(key.file().path(), startFrame, BLOCK_FRAMES);
+        try {
+            return read.get();
+        } catch (InterruptedException e) {
+            read.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw new AudioReadException(
+                    "Failed to read block",
+                    key.file().path(),
+                    startFrame,
+                    BLOCK_FRAMES,
+                    e.getCause());
+        }
+    }
+
+    private static int weightOf(AudioData block) {
+        return (int) Math.min(Integer.MAX_VALUE, (long) block.samples().length * Double.BYTES);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        scheduler.close();
+        if (blocks != null) {
+            blocks.synchronous().invalidateAll();
+        }
+        backend.close();
+    }
+}
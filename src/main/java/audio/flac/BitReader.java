@@ -0,0 +1,128 @@
+package audio.flac;
+
+import java.io.EOFException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/**
+ * Reads big-endian bit fields from a memory segment, as used throughout the FLAC bitstream.
+ *
+ * <p>Up to eight bytes are buffered in a {@code long}, so most reads are a shift and a mask. Not
+ * thread-safe; each decode uses its own reader.
+ */
+final class BitReader {
+
+    private final MemorySegment data;
+    private final long limit;
+    private long nextByte;
+    private long cache;
+    private int cachedBits;
+
+    /**
+     * Creates a reader positioned at a byte offset.
+     *
+     * @param data Segment to read from
+     * @param offset First byte to read
+     */
+    BitReader(MemorySegment data, long offset) {
+        this.data = data;
+        this.limit = data.byteSize();
+        this.nextByte = offset;
+    }
+
+    /** Byte offset of the next unread bit's byte; only meaningful when byte-aligned. */
+    long bytePosition() {
+        return nextByte - cachedBits / 8;
+    }
+
+    /** Skips to the next byte boundary. */
+    void alignToByte() {
+        cachedBits -= cachedBits % 8;
+    }
+
+    /**
+     * Reads an unsigned field.
+     *
+     * @param bits Field width, 0 to 32
+     * @return The field value; a 32-bit field is returned as its raw bit pattern
+     */
+    int readBits(int bits) throws EOFException {
+        if (bits == 0) {
+            return 0;
+        }
+        if (cachedBits < bits) {
+            refill();
+            if (cachedBits < bits) {
+                throw new EOFException("Unexpected end of FLAC stream");
+            }
+        }
+        cachedBits -= bits;
+        return (int) ((cache >>> cachedBits) & ((1L << bits) - 1));
+    }
+
+    /** Reads an unsigned field of up to 64 bits. */
+    long readLong(int bits) throws EOFException {
+        if (bits <= 32) {
+            return Integer.toUnsignedLong(readBits(bits));
+        }
+        long high = Integer.toUnsignedLong(readBits(bits - 32));
+        return (high << 32) | Integer.toUnsignedLong(readBits(32));
+    }
+
+    /**
+     * Reads a two's complement field.
+     *
+     * @param bits Field width, 0 to 32
+     * @return The sign-extended value
+     */
+    int readSignedBits(int bits) throws EOFException {
+        if (bits == 0) {
+            return 0;
+        }
+        int shift = 32 - bits;
+        return (readBits(bits) << shift) >> shift;
+    }
+
+    /** Reads a unary-coded count: the number of 0 bits before the next 1 bit. */
+    int readUnary() throws EOFException {
+        int count = 0;
+        while (true) {
+            if (cachedBits == 0) {
+                refill();
+                if (cachedBits == 0) {
+                    throw new EOFException("Unexpected end of FLAC stream");
+                }
+            }
+            long window = cache << (64 - cachedBits);
+            if (window == 0) {
+                count += cachedBits;
+                cachedBits = 0;
+            } else {
+                int zeros = Long.numberOfLeadingZeros(window);
+                count += zeros;
+                cachedBits -= zeros + 1;
+                return count;
+            }
+        }
+    }
+
+    /**
+     * Reads a Rice-coded signed residual.
+     *
+     * @param parameter Rice parameter (number of low bits stored verbatim)
+     * @return The decoded residual
+     */
+    int readRice(int parameter) throws EOFException {
+        int quotient = readUnary();
+        int folded = (quotient << parameter) | readBits(parameter);
+        // Undo the zig-zag folding of signed values onto unsigned ones
+        return (folded >>> 1) ^ -(folded & 1);
+    }
+
+    private void refill() {
+        while (cachedBits <= 56 && nextByte < limit) {
+            cache = (cache << 8) | (data.get(ValueLayout.JAVA_BYTE, nextByte++) & 0xFF);
+            cachedBits += 8;
+        }
+    }
+}
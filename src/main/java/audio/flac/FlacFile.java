@@ -0,0 +1,218 @@
+package audio.flac;
+
+import audio.AudioMetadata;
+import audio.AudioReadException;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.NonNull;
+
+/**
+ * A memory-mapped FLAC file with its STREAMINFO and SEEKTABLE parsed.
+ *
+ * @param path The file, for error reporting
+ * @param data The whole file, mapped read-only
+ * @param streamInfo Stream parameters
+ * @param seekPoints Seek points in ascending sample order, placeholders removed; may be empty
+ * @param firstFrameOffset File offset of the first audio frame
+ */
+record FlacFile(
+        Path path,
+        MemorySegment data,
+        FlacStreamInfo streamInfo,
+        List<FlacSeekPoint> seekPoints,
+        long firstFrameOffset) {
+
+    private static final int STREAMINFO = 0;
+    private static final int SEEKTABLE = 3;
+    private static final long PLACEHOLDER_SAMPLE = -1L;
+    private static final ValueLayout.OfLong LONG_BE =
+            ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    /**
+     * Maps a FLAC file and parses its metadata blocks. Audio frames are not touched, except to
+     * find the stream length when the encoder did not record it.
+     *
+     * @param audioFile Path to the file
+     * @return The parsed file
+     * @throws AudioReadException if the file cannot be read or is not FLAC
+     */
+    static FlacFile open(@NonNull Path audioFile) throws AudioReadException {
+        try (FileChannel channel = FileChannel.open(audioFile, StandardOpenOption.READ)) {
+            // The automatic arena unmaps the file once no reader references it any more
+            MemorySegment data = channel.map(MapMode.READ_ONLY, 0, channel.size(), Arena.ofAuto());
+            FlacFile file = parse(data, audioFile);
+            if (file.streamInfo().totalSamples() == 0) {
+                file = file.withTotalSamples(new FlacFrameDecoder(file).scanTotalSamples());
+            }
+            return file;
+        } catch (AudioReadException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new AudioReadException("Failed to map FLAC file", audioFile, e);
+        }
+    }
+
+    /**
+     * Reads a FLAC file's stream parameters and unmaps it again, for callers that only need the
+     * metadata.
+     *
+     * @param audioFile Path to the file
+     * @return The stream's metadata
+     * @throws AudioReadException if the file cannot be read or is not FLAC
+     */
+    static AudioMetadata probe(@NonNull Path audioFile) throws AudioReadException {
+        try (FileChannel channel = FileChannel.open(audioFile, StandardOpenOption.READ);
+                Arena arena = Arena.ofConfined()) {
+            MemorySegment data = channel.map(MapMode.READ_ONLY, 0, channel.size(), arena);
+            FlacFile file = parse(data, audioFile);
+            if (file.streamInfo().totalSamples() == 0) {
+                file = file.withTotalSamples(new FlacFrameDecoder(file).scanTotalSamples());
+            }
+            return file.streamInfo().toMetadata();
+        } catch (AudioReadException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new AudioReadException("Failed to read FLAC file", audioFile, e);
+        }
+    }
+
+    static FlacFile parse(MemorySegment data, Path audioFile) throws AudioReadException {
+        try {
+            long position = skipId3(data);
+            if (!hasMagic(data, position)) {
+                throw new AudioReadException("Not a FLAC file", audioFile);
+            }
+            position += 4;
+
+            FlacStreamInfo streamInfo = null;
+            List<FlacSeekPoint> seekPoints = new ArrayList<>();
+            boolean last = false;
+            while (!last) {
+                BitReader header = new BitReader(data, position);
+                last = header.readBits(1) == 1;
+                int type = header.readBits(7);
+                int length = header.readBits(24);
+                long body = position + 4;
+                if (body + length > data.byteSize()) {
+                    throw new AudioReadException("Truncated FLAC metadata block", audioFile);
+                }
+
+                if (type == STREAMINFO) {
+                    streamInfo = readStreamInfo(new BitReader(data, body));
+                } else if (type == SEEKTABLE) {
+                    for (long point = body; point + 18 <= body + length; point += 18) {
+                        long sample = data.get(LONG_BE, point);
+                        if (sample != PLACEHOLDER_SAMPLE) {
+                            seekPoints.add(new FlacSeekPoint(sample, data.get(LONG_BE, point + 8)));
+                        }
+                    }
+                }
+                position = body + length;
+            }
+
+            if (streamInfo == null) {
+                throw new AudioReadException("FLAC file has no STREAMINFO block", audioFile);
+            }
+            validate(streamInfo, audioFile);
+            return new FlacFile(audioFile, data, streamInfo, List.copyOf(seekPoints), position);
+        } catch (EOFException e) {
+            throw new AudioReadException("Truncated FLAC header", audioFile, e);
+        }
+    }
+
+    FlacFile withTotalSamples(long totalSamples) {
+        FlacStreamInfo info = streamInfo;
+        return new FlacFile(
+                path,
+                data,
+                new FlacStreamInfo(
+                        info.minBlockSize(),
+                        info.maxBlockSize(),
+                        info.minFrameSize(),
+                        info.maxFrameSize(),
+                        info.sampleRate(),
+                        info.channelCount(),
+                        info.bitsPerSample(),
+                        totalSamples),
+                seekPoints,
+                firstFrameOffset);
+    }
+
+    private static FlacStreamInfo readStreamInfo(BitReader in) throws EOFException {
+        int minBlockSize = in.readBits(16);
+        int maxBlockSize = in.readBits(16);
+        int minFrameSize = in.readBits(24);
+        int maxFrameSize = in.readBits(24);
+        int sampleRate = in.readBits(20);
+        int channelCount = in.readBits(3) + 1;
+        int bitsPerSample = in.readBits(5) + 1;
+        long totalSamples = in.readLong(36);
+        return new FlacStreamInfo(
+                minBlockSize,
+                maxBlockSize,
+                minFrameSize,
+                maxFrameSize,
+                sampleRate,
+                channelCount,
+                bitsPerSample,
+                totalSamples);
+    }
+
+    private static void validate(FlacStreamInfo info, Path audioFile) throws AudioReadException {
+        if (info.sampleRate() <= 0) {
+            throw new AudioReadException("FLAC stream has no sample rate", audioFile);
+        }
+        if (info.maxBlockSize() < 16 || info.minBlockSize() > info.maxBlockSize()) {
+            throw new AudioReadException(
+                    "Invalid FLAC block sizes: "
+                            + info.minBlockSize()
+                            + "-"
+                            + info.maxBlockSize(),
+                    audioFile);
+        }
+        // Decoding uses int arithmetic; a 24-bit side channel still fits with room to spare
+        if (info.bitsPerSample() > 24) {
+            throw new AudioReadException(
+                    "Unsupported FLAC sample width: " + info.bitsPerSample() + " bits", audioFile);
+        }
+    }
+
+    /** Returns the offset just past a leading ID3v2 tag, which some taggers prepend. */
+    private static long skipId3(MemorySegment data) {
+        if (data.byteSize() < 10
+                || byteAt(data, 0) != 'I'
+                || byteAt(data, 1) != 'D'
+                || byteAt(data, 2) != '3') {
+            return 0;
+        }
+        // The tag size is "syncsafe": four 7-bit groups
+        long size = 0;
+        for (int i = 6; i < 10; i++) {
+            size = (size << 7) | (byteAt(data, i) & 0x7F);
+        }
+        boolean footer = (byteAt(data, 5) & 0x10) != 0;
+        return 10 + size + (footer ? 10 : 0);
+    }
+
+    private static boolean hasMagic(MemorySegment data, long position) {
+        return position + 4 <= data.byteSize()
+                && byteAt(data, position) == 'f'
+                && byteAt(data, position + 1) == 'L'
+                && byteAt(data, position + 2) == 'a'
+                && byteAt(data, position + 3) == 'C';
+    }
+
+    private static int byteAt(MemorySegment data, long position) {
+        return data.get(ValueLayout.JAVA_BYTE, position) & 0xFF;
+    }
+}
@@ -0,0 +1,493 @@
+package audio.flac;
+
+import audio.AudioReadException;
+import java.io.EOFException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/**
+ * Locates and decodes FLAC frames within a mapped file.
+ *
+ * <p>Frames carry no length field, so the decoder finds them by scanning for the 14-bit sync code
+ * and accepting only headers whose CRC-8 matches and whose parameters agree with STREAMINFO.
+ * {@link #seek} combines this with the SEEKTABLE: seek points bound the search, bisection over
+ * frame headers narrows it, and a short forward walk that follows consecutive sample numbers
+ * finishes it. Only the frames a read overlaps are ever decoded.
+ *
+ * <p>Not thread-safe; create one per read.
+ */
+final class FlacFrameDecoder {
+
+    // Below this many bytes, walking frame headers beats another bisection step
+    private static final long BISECT_THRESHOLD = 16 * 1024;
+
+    private static final int[] FIXED_SAMPLE_RATES = {
+        0, 88200, 176400, 192000, 8000, 16000, 22050, 24000, 32000, 44100, 48000, 96000
+    };
+    private static final int[] SAMPLE_SIZES = {0, 8, 12, 0, 16, 20, 24, 32};
+
+    private static final int[] CRC8 = crcTable(8, 0x07);
+    private static final int[] CRC16 = crcTable(16, 0x8005);
+
+    private final FlacFile file;
+    private final MemorySegment data;
+    private final FlacStreamInfo info;
+
+    FlacFrameDecoder(FlacFile file) {
+        this.file = file;
+        this.data = file.data();
+        this.info = file.streamInfo();
+    }
+
+    /**
+     * Finds the frame containing a sample.
+     *
+     * @param targetSample Stream position to find
+     * @return The header of the frame containing the sample, or null if it lies past the end
+     */
+    FlacFrameHeader seek(long targetSample) {
+        long low = file.firstFrameOffset();
+        long high = data.byteSize();
+        for (FlacSeekPoint point : file.seekPoints()) {
+            long offset = file.firstFrameOffset() + point.byteOffset();
+            if (point.sampleNumber() <= targetSample) {
+                low = Math.max(low, Math.min(offset, high));
+            } else {
+                high = Math.min(high, Math.max(offset, low));
+                break;
+            }
+        }
+
+        // Invariant: the target frame starts at or after low and before high
+        while (high - low > BISECT_THRESHOLD) {
+            long middle = low + (high - low) / 2;
+            FlacFrameHeader frame = findFrame(middle, high, -1);
+            if (frame == null || frame.firstSample() > targetSample) {
+                high = middle;
+            } else {
+                low = frame.offset();
+            }
+        }
+
+        FlacFrameHeader frame = findFrame(low, data.byteSize(), -1);
+        while (frame != null && frame.endSample() <= targetSample) {
+            frame = next(frame);
+        }
+        return frame;
+    }
+
+    /**
+     * Returns the frame following another, or null at end of stream.
+     *
+     * @param frame A frame header
+     * @return The header of the next frame, matched by sample number so false syncs are skipped
+     */
+    FlacFrameHeader next(FlacFrameHeader frame) {
+        return next(frame, frame.offset() + Math.max(frame.length(), info.minFrameSize()));
+    }
+
+    /**
+     * Returns the frame following another, starting the search at a known offset such as the end
+     * returned by {@link #decode}.
+     *
+     * @param frame A frame header
+     * @param from Offset at which the next frame is expected to start
+     * @return The header of the next frame, or null at end of stream
+     */
+    FlacFrameHeader next(FlacFrameHeader frame, long from) {
+        return findFrame(from, data.byteSize(), frame.endSample());
+    }
+
+    /**
+     * Decodes a frame into per-channel sample arrays.
+     *
+     * @param frame Header of the frame to decode
+     * @param channels One array per channel, each at least {@code frame.blockSize()} long
+     * @return File offset just past the frame
+     * @throws AudioReadException if the frame is corrupt
+     */
+    long decode(FlacFrameHeader frame, int[][] channels) throws AudioReadException {
+        try {
+            BitReader in = new BitReader(data, frame.offset() + frame.length());
+            int assignment = frame.channelAssignment();
+            for (int channel = 0; channel < info.channelCount(); channel++) {
+                // The side channel needs one extra bit to hold the difference
+                boolean side =
+                        (assignment == FlacFrameHeader.LEFT_SIDE && channel == 1)
+                                || (assignment == FlacFrameHeader.SIDE_RIGHT && channel == 0)
+                                || (assignment == FlacFrameHeader.MID_SIDE && channel == 1);
+                int bits = frame.bitsPerSample() + (side ? 1 : 0);
+                readSubframe(in, bits, frame.blockSize(), channels[channel], frame);
+            }
+            decorrelate(assignment, frame.blockSize(), channels);
+
+            in.alignToByte();
+            long footer = in.bytePosition();
+            int expectedCrc = in.readBits(16);
+            if (crc(CRC16, 16, frame.offset(), footer) != expectedCrc) {
+                throw corrupt(frame, "CRC mismatch");
+            }
+            return footer + 2;
+        } catch (EOFException e) {
+            throw new AudioReadException(
+                    "Truncated FLAC frame", file.path(), frame.firstSample(), frame.blockSize(), e);
+        }
+    }
+
+    /** Finds the stream length by locating the last frame; used when STREAMINFO omits it. */
+    long scanTotalSamples() {
+        long low = file.firstFrameOffset();
+        long high = data.byteSize();
+        while (high - low > BISECT_THRESHOLD) {
+            long middle = low + (high - low) / 2;
+            FlacFrameHeader frame = findFrame(middle, high, -1);
+            if (frame == null) {
+                high = middle;
+            } else {
+                low = frame.offset();
+            }
+        }
+
+        FlacFrameHeader frame = findFrame(low, data.byteSize(), -1);
+        long total = 0;
+        while (frame != null) {
+            total = frame.endSample();
+            frame = next(frame);
+        }
+        return total;
+    }
+
+    /**
+     * Scans for a valid frame header.
+     *
+     * @param from First offset to try
+     * @param limit Offset at which to stop scanning
+     * @param expectedSample Required first sample, or -1 to accept any
+     * @return The first matching header, or null if none starts before the limit
+     */
+    private FlacFrameHeader findFrame(long from, long limit, long expectedSample) {
+        long end = Math.min(limit, data.byteSize() - 1);
+        for (long offset = from; offset < end; offset++) {
+            if (byteAt(offset) != 0xFF || (byteAt(offset + 1) & 0xFE) != 0xF8) {
+                continue;
+            }
+            FlacFrameHeader frame = readHeader(offset);
+            if (frame != null && (expectedSample < 0 || frame.firstSample() == expectedSample)) {
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    /** Parses and validates a frame header, returning null if the bytes are not one. */
+    private FlacFrameHeader readHeader(long offset) {
+        long size = data.byteSize();
+        if (offset + 6 > size) {
+            return null;
+        }
+        boolean variableBlockSize = (byteAt(offset + 1) & 0x01) != 0;
+        int blockSizeCode = byteAt(offset + 2) >>> 4;
+        int sampleRateCode = byteAt(offset + 2) & 0x0F;
+        int assignment = byteAt(offset + 3) >>> 4;
+        int sampleSizeCode = (byteAt(offset + 3) >>> 1) & 0x07;
+        if (blockSizeCode == 0
+                || sampleRateCode == 15
+                || assignment > FlacFrameHeader.MID_SIDE
+                || sampleSizeCode == 3
+                || (byteAt(offset + 3) & 0x01) != 0) {
+            return null;
+        }
+
+        // Frame or sample number, in the UTF-8 style variable-length code
+        long position = offset + 4;
+        int lead = byteAt(position++);
+        int leadingOnes = Integer.numberOfLeadingZeros(~(lead << 24));
+        if (leadingOnes == 1 || leadingOnes > 7) {
+            return null;
+        }
+        int extraBytes = Math.max(0, leadingOnes - 1);
+        long number = lead & (extraBytes == 0 ? 0x7F : 0x3F >>> extraBytes);
+        for (int i = 0; i < extraBytes; i++) {
+            if (position >= size || (byteAt(position) & 0xC0) != 0x80) {
+                return null;
+            }
+            number = (number << 6) | (byteAt(position++) & 0x3F);
+        }
+
+        int blockSize;
+        if (blockSizeCode == 1) {
+            blockSize = 192;
+        } else if (blockSizeCode <= 5) {
+            blockSize = 576 << (blockSizeCode - 2);
+        } else if (blockSizeCode == 6) {
+            if (position + 1 > size) {
+                return null;
+            }
+            blockSize = byteAt(position++) + 1;
+        } else if (blockSizeCode == 7) {
+            if (position + 2 > size) {
+                return null;
+            }
+            blockSize = ((byteAt(position) << 8) | byteAt(position + 1)) + 1;
+            position += 2;
+        } else {
+            blockSize = 256 << (blockSizeCode - 8);
+        }
+
+        int sampleRate;
+        if (sampleRateCode == 0) {
+            sampleRate = info.sampleRate();
+        } else if (sampleRateCode < 12) {
+            sampleRate = FIXED_SAMPLE_RATES[sampleRateCode];
+        } else {
+            int bytes = sampleRateCode == 12 ? 1 : 2;
+            if (position + bytes > size) {
+                return null;
+            }
+            int value =
+                    bytes == 1
+                            ? byteAt(position)
+                            : (byteAt(position) << 8) | byteAt(position + 1);
+            position += bytes;
+            sampleRate =
+                    switch (sampleRateCode) {
+                        case 12 -> value * 1000;
+                        case 13 -> value;
+                        default -> value * 10;
+                    };
+        }
+
+        if (position >= size || crc(CRC8, 8, offset, position) != byteAt(position)) {
+            return null;
+        }
+        position++;
+
+        // Reject anything that disagrees with the stream; a false sync rarely survives this
+        int channelCount = assignment < FlacFrameHeader.LEFT_SIDE ? assignment + 1 : 2;
+        int bitsPerSample =
+                sampleSizeCode == 0 ? info.bitsPerSample() : SAMPLE_SIZES[sampleSizeCode];
+        if (channelCount != info.channelCount()
+                || bitsPerSample != info.bitsPerSample()
+                || sampleRate != info.sampleRate()
+                || blockSize > info.maxBlockSize()) {
+            return null;
+        }
+
+        long firstSample = variableBlockSize ? number : number * info.maxBlockSize();
+        return new FlacFrameHeader(
+                offset,
+                (int) (position - offset),
+                firstSample,
+                blockSize,
+                assignment,
+                bitsPerSample);
+    }
+
+    private void readSubframe(
+            BitReader in, int bits, int blockSize, int[] out, FlacFrameHeader frame)
+            throws EOFException, AudioReadException {
+        if (in.readBits(1) != 0) {
+            throw corrupt(frame, "subframe padding bit set");
+        }
+        int type = in.readBits(6);
+        int wastedBits = 0;
+        if (in.readBits(1) == 1) {
+            wastedBits = in.readUnary() + 1;
+            if (wastedBits >= bits) {
+                throw corrupt(frame, "wasted bits exceed sample width");
+            }
+            bits -= wastedBits;
+        }
+
+        if (type == 0) {
+            int value = in.readSignedBits(bits);
+            for (int i = 0; i < blockSize; i++) {
+                out[i] = value;
+            }
+        } else if (type == 1) {
+            for (int i = 0; i < blockSize; i++) {
+                out[i] = in.readSignedBits(bits);
+            }
+        } else if (type >= 8 && type <= 12) {
+            readFixed(in, bits, blockSize, type & 0x07, out, frame);
+        } else if (type >= 32) {
+            readLpc(in, bits, blockSize, (type & 0x1F) + 1, out, frame);
+        } else {
+            throw corrupt(frame, "reserved subframe type " + type);
+        }
+
+        if (wastedBits > 0) {
+            for (int i = 0; i < blockSize; i++) {
+                out[i] <<= wastedBits;
+            }
+        }
+    }
+
+    private void readFixed(
+            BitReader in, int bits, int blockSize, int order, int[] out, FlacFrameHeader frame)
+            throws EOFException, AudioReadException {
+        if (order > blockSize) {
+            throw corrupt(frame, "predictor order exceeds block size");
+        }
+        for (int i = 0; i < order; i++) {
+            out[i] = in.readSignedBits(bits);
+        }
+        readResidual(in, blockSize, order, out, frame);
+
+        switch (order) {
+            case 1 -> {
+                for (int i = 1; i < blockSize; i++) {
+                    out[i] += out[i - 1];
+                }
+            }
+            case 2 -> {
+                for (int i = 2; i < blockSize; i++) {
+                    out[i] += 2 * out[i - 1] - out[i - 2];
+                }
+            }
+            case 3 -> {
+                for (int i = 3; i < blockSize; i++) {
+                    out[i] += 3 * out[i - 1] - 3 * out[i - 2] + out[i - 3];
+                }
+            }
+            case 4 -> {
+                for (int i = 4; i < blockSize; i++) {
+                    out[i] += 4 * out[i - 1] - 6 * out[i - 2] + 4 * out[i - 3] - out[i - 4];
+                }
+            }
+            default -> {
+                // Order 0: the residual is the signal
+            }
+        }
+    }
+
+    private void readLpc(
+            BitReader in, int bits, int blockSize, int order, int[] out, FlacFrameHeader frame)
+            throws EOFException, AudioReadException {
+        if (order > blockSize) {
+            throw corrupt(frame, "predictor order exceeds block size");
+        }
+        for (int i = 0; i < order; i++) {
+            out[i] = in.readSignedBits(bits);
+        }
+        int precision = in.readBits(4) + 1;
+        int shift = in.readSignedBits(5);
+        if (precision == 16 || shift < 0) {
+            throw corrupt(frame, "invalid LPC precision or shift");
+        }
+        int[] coefficients = new int[order];
+        for (int i = 0; i < order; i++) {
+            coefficients[i] = in.readSignedBits(precision);
+        }
+        readResidual(in, blockSize, order, out, frame);
+
+        for (int i = order; i < blockSize; i++) {
+            long prediction = 0;
+            for (int j = 0; j < order; j++) {
+                prediction += (long) coefficients[j] * out[i - 1 - j];
+            }
+            out[i] += (int) (prediction >> shift);
+        }
+    }
+
+    private void readResidual(
+            BitReader in, int blockSize, int order, int[] out, FlacFrameHeader frame)
+            throws EOFException, AudioReadException {
+        int method = in.readBits(2);
+        if (method > 1) {
+            throw corrupt(frame, "reserved residual coding method");
+        }
+        int parameterBits = method == 0 ? 4 : 5;
+        int escape = (1 << parameterBits) - 1;
+        int partitionOrder = in.readBits(4);
+        int partitionSize = blockSize >> partitionOrder;
+        if (partitionSize << partitionOrder != blockSize || partitionSize < order) {
+            throw corrupt(frame, "invalid residual partition order");
+        }
+
+        int position = order;
+        for (int partition = 0; partition < 1 << partitionOrder; partition++) {
+            int count = partition == 0 ? partitionSize - order : partitionSize;
+            int parameter = in.readBits(parameterBits);
+            if (parameter == escape) {
+                // Escaped partition: fixed-width raw residuals
+                int rawBits = in.readBits(5);
+                for (int i = 0; i < count; i++) {
+                    out[position++] = in.readSignedBits(rawBits);
+                }
+            } else {
+                for (int i = 0; i < count; i++) {
+                    out[position++] = in.readRice(parameter);
+                }
+            }
+        }
+    }
+
+    private static void decorrelate(int assignment, int blockSize, int[][] channels) {
+        switch (assignment) {
+            case FlacFrameHeader.LEFT_SIDE -> {
+                int[] left = channels[0];
+                int[] side = channels[1];
+                for (int i = 0; i < blockSize; i++) {
+                    side[i] = left[i] - side[i];
+                }
+            }
+            case FlacFrameHeader.SIDE_RIGHT -> {
+                int[] side = channels[0];
+                int[] right = channels[1];
+                for (int i = 0; i < blockSize; i++) {
+                    side[i] += right[i];
+                }
+            }
+            case FlacFrameHeader.MID_SIDE -> {
+                int[] mid = channels[0];
+                int[] side = channels[1];
+                for (int i = 0; i < blockSize; i++) {
+                    // The encoder dropped the low bit of mid; side's low bit restores it
+                    int sum = (mid[i] << 1) | (side[i] & 1);
+                    int difference = side[i];
+                    mid[i] = (sum + difference) >> 1;
+                    side[i] = (sum - difference) >> 1;
+                }
+            }
+            default -> {
+                // Independent channels
+            }
+        }
+    }
+
+    private int crc(int[] table, int width, long from, long to) {
+        int crc = 0;
+        int mask = (1 << width) - 1;
+        for (long i = from; i < to; i++) {
+            crc = ((crc << 8) ^ table[((crc >>> (width - 8)) ^ byteAt(i)) & 0xFF]) & mask;
+        }
+        return crc;
+    }
+
+    private static int[] crcTable(int width, int polynomial) {
+        int[] table = new int[256];
+        int topBit = 1 << (width - 1);
+        int mask = (1 << width) - 1;
+        for (int b = 0; b < 256; b++) {
+            int crc = b << (width - 8);
+            for (int i = 0; i < 8; i++) {
+                crc = (crc & topBit) != 0 ? (crc << 1) ^ polynomial : crc << 1;
+            }
+            table[b] = crc & mask;
+        }
+        return table;
+    }
+
+    private int byteAt(long offset) {
+        return data.get(ValueLayout.JAVA_BYTE, offset) & 0xFF;
+    }
+
+    private AudioReadException corrupt(FlacFrameHeader frame, String reason) {
+        return new AudioReadException(
+                "Corrupt FLAC frame: " + reason,
+                file.path(),
+                frame.firstSample(),
+                frame.blockSize());
+    }
+}
@@ -0,0 +1,29 @@
+package audio.flac;
+
+/**
+ * A parsed FLAC frame header.
+ *
+ * @param offset File offset of the frame's sync code
+ * @param length Header length in bytes, including its CRC-8
+ * @param firstSample Stream position of the frame's first sample
+ * @param blockSize Samples per channel in the frame
+ * @param channelAssignment Raw channel assignment (0-7 independent, 8-10 stereo decorrelation)
+ * @param bitsPerSample Sample width of the frame
+ */
+record FlacFrameHeader(
+        long offset,
+        int length,
+        long firstSample,
+        int blockSize,
+        int channelAssignment,
+        int bitsPerSample) {
+
+    static final int LEFT_SIDE = 8;
+    static final int SIDE_RIGHT = 9;
+    static final int MID_SIDE = 10;
+
+    /** Stream position just past the frame's last sample. */
+    long endSample() {
+        return firstSample + blockSize;
+    }
+}
@@ -0,0 +1,32 @@
+package audio.flac;
+
+import audio.SampleReader;
+import audio.codec.ContainerFormat;
+import audio.codec.SampleReaderProvider;
+
+/**
+ * Offers {@link FlacSampleReader} for FLAC files, which it decodes in pure Java, seeking to the
+ * frames a read overlaps rather than decoding from the start.
+ */
+public class FlacReaderProvider implements SampleReaderProvider {
+
+    @Override
+    public String name() {
+        return "flac";
+    }
+
+    @Override
+    public boolean supports(ContainerFormat format) {
+        return format == ContainerFormat.FLAC;
+    }
+
+    @Override
+    public int priority() {
+        return 100;
+    }
+
+    @Override
+    public SampleReader create() {
+        return new FlacSampleReader();
+    }
+}
@@ -0,0 +1,222 @@
+package audio.flac;
+
+import audio.AudioData;
+import audio.AudioMetadata;
+import audio.AudioReadException;
+import audio.SampleReader;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Pure-Java SampleReader for FLAC files that decodes only the frames a read overlaps.
+ *
+ * <p>Opening a file maps it and parses STREAMINFO and SEEKTABLE. A read then jumps to the frame
+ * containing {@code startFrame} (see {@link FlacFrameDecoder#seek}) and decodes forward until the
+ * window is covered, so a window read costs a few frames of decoding regardless of file length.
+ * Files without a seek table are located by bisecting over frame headers instead. No native audio
+ * library is required.
+ *
+ * <p>Opened files are cached for a bounded number of files and reopened when a file's size or
+ * modification time changes. Metadata requests only parse the header and never map the file.
+ */
+@Slf4j
+public class FlacSampleReader implements SampleReader {
+
+    static final int DEFAULT_MAX_FILES = 1_000;
+
+    private record OpenFile(long size, long modified, FlacFile file) {}
+
+    private final Cache<Path, OpenFile> files;
+
+    // Decoding reads through a mapping and blocks on page faults, so it stays off the common pool
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile boolean closed = false;
+
+    public FlacSampleReader() {
+        this(DEFAULT_MAX_FILES);
+    }
+
+    public FlacSampleReader(int maxFiles) {
+        this.files = Caffeine.newBuilder().maximumSize(maxFiles).build();
+    }
+
+    @Override
+    public CompletableFuture<AudioData> readSamples(
+            @NonNull Path audioFile, long startFrame, long frameCount) {
+
+        if (closed) {
+            return CompletableFuture.failedFuture(
+                    new AudioReadException("Reader is closed", audioFile));
+        }
+
+        if (startFrame < 0 || frameCount < 0) {
+            return CompletableFuture.failedFuture(
+                    new IllegalArgumentException("Negative frame values not allowed"));
+        }
+
+        return CompletableFuture.supplyAsync(
+                () -> {
+                    try {
+                        return decode(openOrGetCached(audioFile), startFrame, frameCount);
+                    } catch (AudioReadException e) {
+                        throw new CompletionException(e);
+                    }
+                },
+                executor);
+    }
+
+    @Override
+    public CompletableFuture<AudioMetadata> getMetadata(@NonNull Path audioFile) {
+        if (closed) {
+            return CompletableFuture.failedFuture(
+                    new AudioReadException("Reader is closed", audioFile));
+        }
+
+        return CompletableFuture.supplyAsync(
+                () -> {
+                    try {
+                        return probe(audioFile);
+                    } catch (AudioReadException e) {
+                        throw new CompletionException(e);
+                    }
+                },
+                executor);
+    }
+
+    /**
+     * Reads a FLAC file's metadata from its STREAMINFO block without keeping the file open. No
+     * audio is decoded unless the encoder left the stream length out.
+     *
+     * @param audioFile Path to the file
+     * @return The stream's metadata
+     * @throws AudioReadException if the file cannot be read or is not FLAC
+     */
+    public static AudioMetadata probe(@NonNull Path audioFile) throws AudioReadException {
+        return FlacFile.probe(audioFile);
+    }
+
+    @Override
+    public boolean isFormatSupported(@NonNull Path audioFile) {
+        return audioFile.getFileName().toString().toLowerCase().endsWith(".flac");
+    }
+
+    private FlacFile openOrGetCached(Path audioFile) throws AudioReadException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(audioFile, BasicFileAttributes.class);
+        } catch (IOException e) {
+            throw new AudioReadException("Failed to read file attributes", audioFile, e);
+        }
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+
+        Path key = audioFile.toAbsolutePath().normalize();
+        OpenFile open = files.getIfPresent(key);
+        if (open != null && open.size() == size && open.modified() == modified) {
+            return open.file();
+        }
+
+        // Opening only parses metadata, so a concurrent duplicate simply replaces the other
+        FlacFile file = FlacFile.open(audioFile);
+        FlacStreamInfo info = file.streamInfo();
+        log.debug(
+                "Opened {} ({} frames, {} Hz, {} ch, {}-bit, {} seek points)",
+                audioFile.getFileName(),
+                info.totalSamples(),
+                info.sampleRate(),
+                info.channelCount(),
+                info.bitsPerSample(),
+                file.seekPoints().size());
+
+        files.put(key, new OpenFile(size, modified, file));
+        return file;
+    }
+
+    private AudioData decode(FlacFile file, long startFrame, long frameCount)
+            throws AudioReadException {
+        FlacStreamInfo info = file.streamInfo();
+        int channelCount = info.channelCount();
+        long totalFrames = info.totalSamples();
+
+        if (startFrame >= totalFrames) {
+            return AudioData.empty(info.sampleRate(), channelCount, startFrame);
+        }
+
+        long actualFrameCount = Math.min(frameCount, totalFrames - startFrame);
+        if (actualFrameCount <= 0) {
+            return AudioData.empty(info.sampleRate(), channelCount, startFrame);
+        }
+
+        long sampleCount = actualFrameCount * channelCount;
+        if (sampleCount > Integer.MAX_VALUE - 8) {
+            throw new AudioReadException(
+                    "Requested range exceeds maximum array size",
+                    file.path(),
+                    startFrame,
+                    frameCount);
+        }
+
+        double[] samples = new double[(int) sampleCount];
+        double scale = 1.0 / (1L << (info.bitsPerSample() - 1));
+        int[][] block = new int[channelCount][info.maxBlockSize()];
+        long endFrame = startFrame + actualFrameCount;
+        long decodedEnd = startFrame;
+
+        FlacFrameDecoder decoder = new FlacFrameDecoder(file);
+        FlacFrameHeader frame = decoder.seek(startFrame);
+        while (frame != null && frame.firstSample() < endFrame) {
+            long frameEnd = decoder.decode(frame, block);
+
+            // Interleave the part of the frame that overlaps the window
+            long from = Math.max(startFrame, frame.firstSample());
+            long to = Math.min(endFrame, frame.endSample());
+            for (long position = from; position < to; position++) {
+                int source = (int) (position - frame.firstSample());
+                int dest = (int) ((position - startFrame) * channelCount);
+                for (int channel = 0; channel < channelCount; channel++) {
+                    samples[dest + channel] = block[channel][source] * scale;
+                }
+            }
+            decodedEnd = Math.max(decodedEnd, to);
+            frame = decoder.next(frame, frameEnd);
+        }
+
+        // STREAMINFO can overstate the length of a truncated file
+        long framesRead = decodedEnd - startFrame;
+        if (framesRead < actualFrameCount) {
+            log.warn(
+                    "{} ended at frame {}, before its declared length of {}",
+                    file.path().getFileName(),
+                    decodedEnd,
+                    totalFrames);
+            samples = Arrays.copyOf(samples, (int) (framesRead * channelCount));
+        }
+
+        return new AudioData(samples, info.sampleRate(), channelCount, startFrame, framesRead);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        executor.shutdown();
+
+        // Dropping the references lets the automatic arenas unmap the files
+        files.invalidateAll();
+        log.info("Closed FLAC sample reader");
+    }
+}
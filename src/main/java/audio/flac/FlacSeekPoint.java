@@ -0,0 +1,9 @@
+package audio.flac;
+
+/**
+ * One entry of a FLAC SEEKTABLE.
+ *
+ * @param sampleNumber First sample of the target frame
+ * @param byteOffset Offset of the target frame from the first frame of the stream
+ */
+record FlacSeekPoint(long sampleNumber, long byteOffset) {}
@@ -0,0 +1,41 @@
+package audio.flac;
+
+import audio.AudioMetadata;
+
+/**
+ * Contents of a FLAC STREAMINFO block.
+ *
+ * @param minBlockSize Smallest block size in samples, excluding the last block
+ * @param maxBlockSize Largest block size in samples
+ * @param minFrameSize Smallest frame in bytes, or 0 if unknown
+ * @param maxFrameSize Largest frame in bytes, or 0 if unknown
+ * @param sampleRate Sample rate in Hz
+ * @param channelCount Number of channels (1 to 8)
+ * @param bitsPerSample Bits per decoded sample (4 to 32)
+ * @param totalSamples Samples per channel in the stream, or 0 if unknown
+ */
+record FlacStreamInfo(
+        int minBlockSize,
+        int maxBlockSize,
+        int minFrameSize,
+        int maxFrameSize,
+        int sampleRate,
+        int channelCount,
+        int bitsPerSample,
+        long totalSamples) {
+
+    /** Whether every frame but the last has the same block size, so frames are numbered. */
+    boolean fixedBlockSize() {
+        return minBlockSize == maxBlockSize;
+    }
+
+    AudioMetadata toMetadata() {
+        return new AudioMetadata(
+                sampleRate,
+                channelCount,
+                bitsPerSample,
+                "FLAC",
+                totalSamples,
+                (double) totalSamples / sampleRate);
+    }
+}
@@ -0,0 +1,40 @@
+package audio.fmod;
+
+import audio.AudioMetadata;
+import audio.SampleView;
+import audio.pcm.CachedPcm;
+import audio.pcm.PcmDiskCache;
+import audio.pcm.SampleBuffer;
+
+/**
+ * A decoder for a file whose decoded samples are already in the {@link PcmDiskCache}. Nothing is
+ * decoded: blocks and views read straight from the mapped entry.
+ */
+final class CachedPcmDecoder implements FmodDecoder {
+
+    private final CachedPcm cached;
+
+    CachedPcmDecoder(CachedPcm cached) {
+        this.cached = cached;
+    }
+
+    @Override
+    public AudioMetadata metadata() {
+        return cached.metadata();
+    }
+
+    @Override
+    public SampleBuffer decode(long startFrame, int frameCount) {
+        return cached.slice(startFrame, frameCount);
+    }
+
+    /** Views a range of the mapped entry without going through the block cache. */
+    SampleView view(long startFrame, long frameCount) {
+        return cached.view(startFrame, frameCount);
+    }
+
+    @Override
+    public void close() {
+        // The mapping is released once no block or view references it
+    }
+}
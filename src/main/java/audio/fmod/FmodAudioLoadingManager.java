@@ -2,15 +2,18 @@ package audio.fmod;
 
 import audio.AudioHandle;
 import audio.AudioMetadata;
+import audio.AudioReadException;
 import audio.exceptions.AudioEngineException;
 import audio.exceptions.AudioLoadException;
 import audio.fmod.panama.FmodCore;
+import audio.mp3.Mp3FrameIndex;
 import com.google.errorprone.annotations.ThreadSafe;
 import java.io.File;
 import java.io.IOException;
 import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
 import java.lang.foreign.ValueLayout;
+import java.nio.file.Path;
 import java.util.Optional;
 import java.util.concurrent.locks.ReentrantLock;
 import lombok.NonNull;
@@ -224,7 +227,10 @@ class FmodAudioLoadingManager {
         }
 
         // Set appropriate flags for playback
-        int flags = FmodConstants.FMOD_DEFAULT | FmodConstants.FMOD_ACCURATETIME;
+        int flags = FmodConstants.FMOD_DEFAULT;
+        if (needsAccurateTime(canonicalPath)) {
+            flags |= FmodConstants.FMOD_ACCURATETIME;
+        }
 
         // Create the sound
         try (Arena arena = Arena.ofConfined()) {
@@ -247,6 +253,25 @@ class FmodAudioLoadingManager {
         }
     }
 
+    /**
+     * Whether FMOD must pre-scan a file with FMOD_ACCURATETIME to get its length right. The scan
+     * reads every frame of a compressed file on each load; an MP3 whose frame index shows that the
+     * header-derived length is exact can skip it. Sounds are decoded into memory for playback, so
+     * seeking them stays sample-accurate either way.
+     */
+    private boolean needsAccurateTime(String canonicalPath) {
+        Path path = Path.of(canonicalPath);
+        if (!Mp3FrameIndex.isMp3(path)) {
+            return true;
+        }
+        try {
+            return !Mp3FrameIndex.loadOrBuild(path).isHeaderLengthExact();
+        } catch (AudioReadException e) {
+            log.debug("No MP3 index for '{}': {}", canonicalPath, e.getMessage());
+            return true;
+        }
+    }
+
     // Error mapping centralized in FmodError
 
     /**
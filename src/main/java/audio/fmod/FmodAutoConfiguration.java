@@ -1,14 +1,22 @@
 package audio.fmod;
 
 import audio.AudioEngine;
+import audio.ResampleCache;
 import audio.SampleReader;
+import audio.catalog.AudioCatalog;
+import audio.catalog.CatalogProperties;
+import audio.codec.CompositeSampleReader;
+import audio.pcm.PcmConverter;
+import audio.peaks.PeakStore;
 import java.lang.foreign.MemorySegment;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 
+@Slf4j
 @AutoConfiguration
-@EnableConfigurationProperties(FmodProperties.class)
+@EnableConfigurationProperties({FmodProperties.class, CatalogProperties.class})
 public class FmodAutoConfiguration {
 
     @Bean
@@ -74,8 +82,33 @@ public class FmodAutoConfiguration {
                 lifecycleManager);
     }
 
+    /**
+     * FMOD decodes whatever the faster pure-Java backends on the class path do not take. Both
+     * resample through one cache, bounded by {@code resample-cache-max-size}.
+     */
     @Bean
-    public SampleReader sampleReader(FmodLibraryLoader loader) {
-        return new FmodSampleReader(loader);
+    public SampleReader sampleReader(FmodLibraryLoader loader, FmodProperties properties) {
+        FmodProperties.SampleReaderProperties readerProperties = properties.sampleReader();
+        if (PcmConverter.isVectorized()) {
+            log.info("PCM conversion uses the Vector API");
+        } else {
+            log.info(
+                    "PCM conversion uses scalar loops; launch with"
+                            + " --add-modules=jdk.incubator.vector to vectorize it");
+        }
+        ResampleCache resampled =
+                new ResampleCache(readerProperties.resampleCacheMaxSize().toBytes());
+        return new CompositeSampleReader(
+                new FmodSampleReader(loader, readerProperties, resampled), resampled);
+    }
+
+    @Bean(destroyMethod = "close")
+    public PeakStore peakStore(SampleReader sampleReader) {
+        return new PeakStore(sampleReader);
+    }
+
+    @Bean(destroyMethod = "close")
+    public AudioCatalog audioCatalog(SampleReader sampleReader, CatalogProperties properties) {
+        return new AudioCatalog(sampleReader, properties);
     }
 }
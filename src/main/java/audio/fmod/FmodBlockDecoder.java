@@ -0,0 +1,298 @@
+package audio.fmod;
+
+import audio.AudioMetadata;
+import audio.AudioReadException;
+import audio.fmod.panama.FmodCore;
+import audio.pcm.NativeSampleBuffer;
+import audio.pcm.PcmFormat;
+import audio.pcm.SampleBuffer;
+import com.google.errorprone.annotations.ThreadSafe;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * An FMOD sound opened with FMOD_OPENONLY for on-demand PCM decoding.
+ *
+ * <p>Opening reads only what FMOD needs for the format and an accurate length; {@link #decode}
+ * then seeks and decodes just the frames asked for. An FMOD sound supports one read position at a
+ * time, so decoding is serialized per file while different files decode independently.
+ */
+@ThreadSafe
+@Slf4j
+class FmodBlockDecoder implements FmodDecoder {
+
+    // FMOD_Sound_ReadData takes an unsigned int length; stay well below that per call, and small
+    // enough that a cancelled read stops soon after its thread is interrupted
+    private static final int READ_CHUNK_BYTES = 1 << 16;
+
+    private final Path audioFile;
+    private final MemorySegment sound;
+    private final AudioMetadata metadata;
+    private final PcmFormat.Encoding encoding;
+    private final int bytesPerFrame;
+
+    // Frame the decoder will produce next without seeking - guarded by this
+    private long nextFrame = 0;
+    private boolean closed = false;
+
+    private FmodBlockDecoder(
+            Path audioFile,
+            MemorySegment sound,
+            AudioMetadata metadata,
+            PcmFormat.Encoding encoding,
+            int bytesPerFrame) {
+        this.audioFile = audioFile;
+        this.sound = sound;
+        this.metadata = metadata;
+        this.encoding = encoding;
+        this.bytesPerFrame = bytesPerFrame;
+    }
+
+    /**
+     * Opens a file for decoding without decoding any samples.
+     *
+     * @param system The FMOD system to create the sound on
+     * @param audioFile Path to the audio file
+     * @return An open decoder; the caller must close it
+     * @throws AudioReadException if FMOD cannot open the file or describe its format
+     */
+    static FmodBlockDecoder open(@NonNull MemorySegment system, @NonNull Path audioFile)
+            throws AudioReadException {
+        String filePath = audioFile.toAbsolutePath().toString();
+
+        // FMOD_OPENONLY opens the codec without decoding; FMOD_ACCURATETIME gives exact
+        // lengths and sample-accurate seeking for VBR formats
+        int flags = FmodConstants.FMOD_OPENONLY | FmodConstants.FMOD_ACCURATETIME;
+        MemorySegment sound;
+        try (Arena arena = Arena.ofConfined()) {
+            var soundRef = arena.allocate(ValueLayout.ADDRESS);
+            var path = arena.allocateFrom(filePath);
+            int result =
+                    FmodCore.FMOD_System_CreateSound(
+                            system, path, flags, MemorySegment.NULL, soundRef);
+            if (result != FmodConstants.FMOD_OK) {
+                throw new AudioReadException(
+                        "Failed to open audio file: " + FmodError.describe(result), audioFile);
+            }
+            sound = soundRef.get(ValueLayout.ADDRESS, 0);
+        }
+
+        try {
+            return describe(audioFile, sound);
+        } catch (AudioReadException | RuntimeException e) {
+            FmodCore.FMOD_Sound_Release(sound);
+            throw e;
+        }
+    }
+
+    private static FmodBlockDecoder describe(Path audioFile, MemorySegment sound)
+            throws AudioReadException {
+        try (Arena arena = Arena.ofConfined()) {
+            var formatRef = arena.allocate(ValueLayout.JAVA_INT);
+            var channelsRef = arena.allocate(ValueLayout.JAVA_INT);
+            var bitsRef = arena.allocate(ValueLayout.JAVA_INT);
+            int result =
+                    FmodCore.FMOD_Sound_GetFormat(
+                            sound, MemorySegment.NULL, formatRef, channelsRef, bitsRef);
+            if (result != FmodConstants.FMOD_OK) {
+                throw new AudioReadException(
+                        "Failed to get sound format: " + FmodError.describe(result), audioFile);
+            }
+
+            var frequencyRef = arena.allocate(ValueLayout.JAVA_FLOAT);
+            result = FmodCore.FMOD_Sound_GetDefaults(sound, frequencyRef, MemorySegment.NULL);
+            if (result != FmodConstants.FMOD_OK) {
+                throw new AudioReadException(
+                        "Failed to get sample rate: " + FmodError.describe(result), audioFile);
+            }
+
+            var lengthRef = arena.allocate(ValueLayout.JAVA_INT);
+            result =
+                    FmodCore.FMOD_Sound_GetLength(
+                            sound, lengthRef, FmodConstants.FMOD_TIMEUNIT_PCM);
+            if (result != FmodConstants.FMOD_OK) {
+                throw new AudioReadException(
+                        "Failed to get sound length: " + FmodError.describe(result), audioFile);
+            }
+
+            var msLengthRef = arena.allocate(ValueLayout.JAVA_INT);
+            result =
+                    FmodCore.FMOD_Sound_GetLength(
+                            sound, msLengthRef, FmodConstants.FMOD_TIMEUNIT_MS);
+            if (result != FmodConstants.FMOD_OK) {
+                throw new AudioReadException(
+                        "Failed to get duration: " + FmodError.describe(result), audioFile);
+            }
+
+            int sampleRate = Math.round(frequencyRef.get(ValueLayout.JAVA_FLOAT, 0));
+            int channelCount = channelsRef.get(ValueLayout.JAVA_INT, 0);
+            int bitsPerSample = bitsRef.get(ValueLayout.JAVA_INT, 0);
+            long totalFrames = Integer.toUnsignedLong(lengthRef.get(ValueLayout.JAVA_INT, 0));
+            double durationSec =
+                    Integer.toUnsignedLong(msLengthRef.get(ValueLayout.JAVA_INT, 0)) / 1000.0;
+
+            if (bitsPerSample % 8 != 0 || bitsPerSample == 0 || channelCount <= 0) {
+                throw new AudioReadException(
+                        String.format(
+                                "Unsupported decoded format: %d channels, %d bit",
+                                channelCount, bitsPerSample),
+                        audioFile);
+            }
+
+            AudioMetadata metadata =
+                    new AudioMetadata(
+                            sampleRate,
+                            channelCount,
+                            bitsPerSample,
+                            describeFormat(sampleRate, bitsPerSample, channelCount),
+                            totalFrames,
+                            durationSec);
+
+            return new FmodBlockDecoder(
+                    audioFile,
+                    sound,
+                    metadata,
+                    encodingOf(formatRef.get(ValueLayout.JAVA_INT, 0)),
+                    channelCount * bitsPerSample / 8);
+        }
+    }
+
+    @Override
+    public AudioMetadata metadata() {
+        return metadata;
+    }
+
+    @Override
+    public synchronized SampleBuffer decode(long startFrame, int frameCount)
+            throws AudioReadException {
+        if (closed) {
+            return null;
+        }
+
+        long available = Math.max(0, Math.min(frameCount, metadata.frameCount() - startFrame));
+        if (startFrame != nextFrame) {
+            if (!FmodPositions.isAddressable(startFrame)) {
+                throw new AudioReadException(
+                        "Frame cannot be addressed by FMOD", audioFile, startFrame, frameCount);
+            }
+            int result =
+                    FmodCore.FMOD_Sound_SeekData(sound, FmodPositions.toPcm(startFrame));
+            if (result != FmodConstants.FMOD_OK) {
+                nextFrame = -1;
+                throw new AudioReadException(
+                        "Failed to seek: " + FmodError.describe(result),
+                        audioFile,
+                        startFrame,
+                        frameCount);
+            }
+            nextFrame = startFrame;
+        }
+
+        long byteCount = available * bytesPerFrame;
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment buffer = arena.allocate(Math.max(1, byteCount));
+            long filled;
+            try {
+                filled =
+                        readData(
+                                sound,
+                                buffer.asSlice(0, byteCount),
+                                audioFile,
+                                startFrame,
+                                frameCount);
+            } catch (AudioReadException e) {
+                nextFrame = -1;
+                throw e;
+            }
+
+            long framesRead = filled / bytesPerFrame;
+            nextFrame = startFrame + framesRead;
+            return NativeSampleBuffer.copyOf(
+                    encoding,
+                    metadata.bitsPerSample(),
+                    ByteOrder.nativeOrder(),
+                    buffer.asSlice(0, framesRead * bytesPerFrame));
+        }
+    }
+
+    /**
+     * Decodes from a sound's current read position until the buffer is full or the sound ends.
+     * Stops early if the calling thread is interrupted.
+     *
+     * @param sound A sound opened with FMOD_OPENONLY
+     * @param buffer Destination for the decoded bytes
+     * @param audioFile The sound's file, for error reporting
+     * @param startFrame Frame the read starts at, for error reporting
+     * @param frameCount Frames the read asked for, for error reporting
+     * @return Number of bytes decoded
+     * @throws AudioReadException if FMOD fails to decode or the thread is interrupted
+     */
+    static long readData(
+            MemorySegment sound,
+            MemorySegment buffer,
+            Path audioFile,
+            long startFrame,
+            long frameCount)
+            throws AudioReadException {
+        try (Arena arena = Arena.ofConfined()) {
+            var readRef = arena.allocate(ValueLayout.JAVA_INT);
+            long filled = 0;
+            while (filled < buffer.byteSize()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new AudioReadException(
+                            "Decode interrupted", audioFile, startFrame, frameCount);
+                }
+                int chunk = (int) Math.min(buffer.byteSize() - filled, READ_CHUNK_BYTES);
+                int result =
+                        FmodCore.FMOD_Sound_ReadData(
+                                sound, buffer.asSlice(filled), chunk, readRef);
+                long read = Integer.toUnsignedLong(readRef.get(ValueLayout.JAVA_INT, 0));
+                filled += read;
+                if (result == FmodConstants.FMOD_ERR_FILE_EOF || read == 0) {
+                    break;
+                }
+                if (result != FmodConstants.FMOD_OK) {
+                    throw new AudioReadException(
+                            "Failed to decode: " + FmodError.describe(result),
+                            audioFile,
+                            startFrame,
+                            frameCount);
+                }
+            }
+            return filled;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        int result = FmodCore.FMOD_Sound_Release(sound);
+        if (result != FmodConstants.FMOD_OK && result != FmodConstants.FMOD_ERR_INVALID_HANDLE) {
+            log.warn(
+                    "Error releasing decoder for '{}': {}",
+                    audioFile.getFileName(),
+                    FmodError.describe(result));
+        }
+    }
+
+    static String describeFormat(int sampleRate, int bitsPerSample, int channelCount) {
+        String channels = channelCount == 1 ? "Mono" : "Stereo";
+        return String.format("%d Hz, %d bit, %s", sampleRate, bitsPerSample, channels);
+    }
+
+    static PcmFormat.Encoding encodingOf(int soundFormat) {
+        // FMOD reports float data with the same 32-bit width as PCM32, so the sample format
+        // is the only way to tell them apart
+        return soundFormat == FmodConstants.FMOD_SOUND_FORMAT_PCMFLOAT
+                ? PcmFormat.Encoding.FLOAT
+                : PcmFormat.Encoding.SIGNED_INT;
+    }
+}
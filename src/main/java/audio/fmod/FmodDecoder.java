@@ -0,0 +1,25 @@
+package audio.fmod;
+
+import audio.AudioMetadata;
+import audio.AudioReadException;
+import audio.pcm.SampleBuffer;
+
+/** A file opened for on-demand decoding of arbitrary frame ranges. */
+interface FmodDecoder extends AutoCloseable {
+
+    AudioMetadata metadata();
+
+    /**
+     * Decodes a run of frames into compact storage. Fewer frames are returned at end of file.
+     *
+     * @param startFrame First frame to decode
+     * @param frameCount Maximum number of frames to decode
+     * @return The decoded samples, whose first reference the caller holds and must release (see
+     *     {@link SampleBuffer#release}), or null if the decoder was closed before the call ran
+     * @throws AudioReadException if FMOD fails to seek or decode
+     */
+    SampleBuffer decode(long startFrame, int frameCount) throws AudioReadException;
+
+    @Override
+    void close();
+}
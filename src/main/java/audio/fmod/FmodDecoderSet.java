@@ -0,0 +1,241 @@
+package audio.fmod;
+
+import audio.AudioMetadata;
+import audio.AudioReadException;
+import audio.pcm.SampleBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Several decoders of one file, so that distinct ranges of it decode in parallel.
+ *
+ * <p>A decoder has a single read position and decodes one range at a time (see {@link
+ * FmodBlockDecoder}), which would keep a long file on one core however many of its blocks are
+ * waiting. The set instead opens further decoders of the same file while decodes overlap, up to
+ * its width; each leases a system of its own from the {@link FmodSystemPool}, so the ranges
+ * really do run side by side. A decode prefers the idle decoder whose last range ended where the
+ * new one starts, so a front-to-back pass over part of the file does not seek. If another decoder
+ * cannot be opened, for instance while every system is busy with other files, the set keeps to
+ * the ones it has for a while and then tries again.
+ */
+@Slf4j
+final class FmodDecoderSet implements FmodDecoder {
+
+    /** Opens another decoder of the set's file. */
+    @FunctionalInterface
+    interface Opener {
+        FmodDecoder open() throws AudioReadException;
+    }
+
+    /** A decoder waiting for work, and the frame it would decode next without seeking. */
+    private record Idle(FmodDecoder decoder, long nextFrame) {}
+
+    // How long the set keeps to the decoders it has after failing to open another
+    static final Duration OPEN_RETRY_DELAY = Duration.ofSeconds(5);
+
+    private final Path audioFile;
+    private final AudioMetadata metadata;
+    private final int width;
+    private final long retryNanos;
+    private final Opener opener;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition returned = lock.newCondition();
+
+    // Guarded by lock
+    private final List<Idle> idle = new ArrayList<>();
+    private int opened = 1;
+    private boolean openFailed = false;
+    private long retryAt;
+    private boolean closed = false;
+
+    /**
+     * Creates a set around a file's first decoder.
+     *
+     * @param audioFile The file, for error reporting
+     * @param first An open decoder of the file; the set takes ownership of it
+     * @param width Maximum number of decoders to hold open at once
+     * @param opener Opens further decoders of the file
+     */
+    FmodDecoderSet(Path audioFile, FmodDecoder first, int width, Opener opener) {
+        this(audioFile, first, width, OPEN_RETRY_DELAY, opener);
+    }
+
+    /**
+     * Creates a set around a file's first decoder.
+     *
+     * @param audioFile The file, for error reporting
+     * @param first An open decoder of the file; the set takes ownership of it
+     * @param width Maximum number of decoders to hold open at once
+     * @param retryDelay How long to keep to the open decoders after failing to open another
+     * @param opener Opens further decoders of the file
+     */
+    FmodDecoderSet(
+            Path audioFile, FmodDecoder first, int width, Duration retryDelay, Opener opener) {
+        if (width <= 0) {
+            throw new IllegalArgumentException("Width must be positive: " + width);
+        }
+        this.audioFile = audioFile;
+        this.metadata = first.metadata();
+        this.width = width;
+        this.retryNanos = retryDelay.toNanos();
+        this.opener = opener;
+        idle.add(new Idle(first, 0));
+    }
+
+    @Override
+    public AudioMetadata metadata() {
+        return metadata;
+    }
+
+    @Override
+    public SampleBuffer decode(long startFrame, int frameCount) throws AudioReadException {
+        FmodDecoder decoder = take(startFrame, frameCount);
+        if (decoder == null) {
+            return null;
+        }
+        long nextFrame = -1;
+        try {
+            SampleBuffer block = decoder.decode(startFrame, frameCount);
+            if (block != null) {
+                nextFrame = startFrame + block.sampleCount() / metadata.channelCount();
+            }
+            return block;
+        } finally {
+            give(decoder, nextFrame);
+        }
+    }
+
+    /** Number of decoders open, busy or idle. */
+    int openCount() {
+        lock.lock();
+        try {
+            return opened;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes an idle decoder, opening another if every one is busy and the set has room, and
+     * otherwise waiting for one to be returned.
+     *
+     * @return The decoder, or null if the set was closed
+     */
+    private FmodDecoder take(long startFrame, int frameCount) throws AudioReadException {
+        while (true) {
+            lock.lock();
+            try {
+                while (idle.isEmpty() && !canOpen() && !closed) {
+                    try {
+                        returned.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new AudioReadException(
+                                "Decode interrupted", audioFile, startFrame, frameCount);
+                    }
+                }
+                if (closed) {
+                    return null;
+                }
+                if (!idle.isEmpty()) {
+                    return idle.remove(positionedAt(startFrame)).decoder();
+                }
+                opened++;
+            } finally {
+                lock.unlock();
+            }
+
+            FmodDecoder decoder = open();
+            if (decoder != null) {
+                return decoder;
+            }
+        }
+    }
+
+    /** Whether the set may open another decoder now. Called with the lock held. */
+    private boolean canOpen() {
+        return opened < width && (!openFailed || System.nanoTime() - retryAt >= 0);
+    }
+
+    /**
+     * Opens another decoder outside the lock. If that fails, the set keeps to its open decoders
+     * until the retry delay has passed.
+     */
+    private FmodDecoder open() {
+        FmodDecoder decoder = null;
+        try {
+            decoder = opener.open();
+        } catch (AudioReadException | RuntimeException e) {
+            log.debug("Cannot open another decoder of {}: {}", audioFile, e.getMessage());
+        }
+        lock.lock();
+        try {
+            if (decoder == null) {
+                opened--;
+                openFailed = true;
+                retryAt = System.nanoTime() + retryNanos;
+            } else if (closed) {
+                opened--;
+            } else {
+                openFailed = false;
+                return decoder;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (decoder != null) {
+            decoder.close();
+        }
+        return null;
+    }
+
+    /** Index of the idle decoder to use for a range, preferring one that need not seek. */
+    private int positionedAt(long startFrame) {
+        for (int i = idle.size() - 1; i >= 0; i--) {
+            if (idle.get(i).nextFrame() == startFrame) {
+                return i;
+            }
+        }
+        return idle.size() - 1;
+    }
+
+    private void give(FmodDecoder decoder, long nextFrame) {
+        lock.lock();
+        try {
+            if (!closed) {
+                idle.add(new Idle(decoder, nextFrame));
+                returned.signal();
+                return;
+            }
+            opened--;
+        } finally {
+            lock.unlock();
+        }
+        decoder.close();
+    }
+
+    /** Closes the idle decoders now, and the busy ones as their decodes finish. */
+    @Override
+    public void close() {
+        List<Idle> closing;
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            closing = List.copyOf(idle);
+            opened -= idle.size();
+            idle.clear();
+            returned.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        closing.forEach(entry -> entry.decoder().close());
+    }
+}
@@ -282,7 +282,8 @@ class FmodListenerManager {
 
             if (result == FmodConstants.FMOD_OK) {
                 // Get the raw decoded position
-                long decodedPosition = positionRef.get(ValueLayout.JAVA_INT, 0);
+                long decodedPosition =
+                        FmodPositions.fromPcm(positionRef.get(ValueLayout.JAVA_INT, 0));
 
                 // Apply latency compensation if system is available
                 long hearingPosition = decodedPosition;
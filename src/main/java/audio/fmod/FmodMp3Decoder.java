@@ -0,0 +1,196 @@
+package audio.fmod;
+
+import audio.AudioMetadata;
+import audio.AudioReadException;
+import audio.fmod.panama.FMOD_CREATESOUNDEXINFO;
+import audio.fmod.panama.FmodCore;
+import audio.mp3.Mp3FrameIndex;
+import audio.pcm.NativeSampleBuffer;
+import audio.pcm.PcmFormat;
+import audio.pcm.SampleBuffer;
+import com.google.errorprone.annotations.ThreadSafe;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import lombok.NonNull;
+
+/**
+ * Decodes MP3 frame ranges through FMOD, located with an {@link Mp3FrameIndex}.
+ *
+ * <p>Rather than opening the whole file with FMOD_ACCURATETIME, which scans every frame on each
+ * open, a decode looks up the frames covering the request in the index and has FMOD open just
+ * that byte range of the file. Decoding starts a few frames early so the bit reservoir and
+ * filterbank are primed (see {@link Mp3FrameIndex#decodeStart}), and the priming output is
+ * dropped. Positions follow the index's untrimmed timeline, which is FMOD's own, so a sample
+ * read here sits at the same position as in playback and the length matches the engine's.
+ *
+ * <p>Each decode opens its own short-lived sound, so decodes of one file run concurrently.
+ */
+@ThreadSafe
+class FmodMp3Decoder implements FmodDecoder {
+
+    // FMOD_CREATESOUNDEXINFO's file offset and length are unsigned 32-bit values
+    private static final long MAX_FMOD_FILE_OFFSET = 0xFFFFFFFFL;
+
+    private final MemorySegment system;
+    private final Path audioFile;
+    private final Mp3FrameIndex index;
+    private final AudioMetadata metadata;
+    private final PcmFormat.Encoding encoding;
+    private final int bytesPerFrame;
+    private volatile boolean closed = false;
+
+    private FmodMp3Decoder(
+            MemorySegment system,
+            Path audioFile,
+            Mp3FrameIndex index,
+            AudioMetadata metadata,
+            PcmFormat.Encoding encoding,
+            int bytesPerFrame) {
+        this.system = system;
+        this.audioFile = audioFile;
+        this.index = index;
+        this.metadata = metadata;
+        this.encoding = encoding;
+        this.bytesPerFrame = bytesPerFrame;
+    }
+
+    /**
+     * Loads or builds the file's frame index and probes FMOD's decoded format on its first frame.
+     *
+     * @param system The FMOD system to create sounds on
+     * @param audioFile Path to the MP3 file
+     * @return An open decoder
+     * @throws AudioReadException if the file cannot be indexed or FMOD cannot decode it
+     */
+    static FmodMp3Decoder open(@NonNull MemorySegment system, @NonNull Path audioFile)
+            throws AudioReadException {
+        Mp3FrameIndex index = Mp3FrameIndex.loadOrBuild(audioFile);
+        MemorySegment sound = openFrames(system, audioFile, index, 0, 0);
+        try (Arena arena = Arena.ofConfined()) {
+            var formatRef = arena.allocate(ValueLayout.JAVA_INT);
+            var channelsRef = arena.allocate(ValueLayout.JAVA_INT);
+            var bitsRef = arena.allocate(ValueLayout.JAVA_INT);
+            int result =
+                    FmodCore.FMOD_Sound_GetFormat(
+                            sound, MemorySegment.NULL, formatRef, channelsRef, bitsRef);
+            if (result != FmodConstants.FMOD_OK) {
+                throw new AudioReadException(
+                        "Failed to get sound format: " + FmodError.describe(result), audioFile);
+            }
+
+            int channelCount = channelsRef.get(ValueLayout.JAVA_INT, 0);
+            int bitsPerSample = bitsRef.get(ValueLayout.JAVA_INT, 0);
+            if (bitsPerSample % 8 != 0 || bitsPerSample == 0 || channelCount <= 0) {
+                throw new AudioReadException(
+                        String.format(
+                                "Unsupported decoded format: %d channels, %d bit",
+                                channelCount, bitsPerSample),
+                        audioFile);
+            }
+
+            AudioMetadata metadata =
+                    new AudioMetadata(
+                            index.sampleRate(),
+                            channelCount,
+                            bitsPerSample,
+                            FmodBlockDecoder.describeFormat(
+                                    index.sampleRate(), bitsPerSample, channelCount),
+                            index.totalSamples(),
+                            index.durationSeconds());
+            return new FmodMp3Decoder(
+                    system,
+                    audioFile,
+                    index,
+                    metadata,
+                    FmodBlockDecoder.encodingOf(formatRef.get(ValueLayout.JAVA_INT, 0)),
+                    channelCount * bitsPerSample / 8);
+        } finally {
+            FmodCore.FMOD_Sound_Release(sound);
+        }
+    }
+
+    @Override
+    public AudioMetadata metadata() {
+        return metadata;
+    }
+
+    @Override
+    public SampleBuffer decode(long startFrame, int frameCount) throws AudioReadException {
+        if (closed) {
+            return null;
+        }
+
+        long available = Math.max(0, Math.min(frameCount, metadata.frameCount() - startFrame));
+        if (available == 0) {
+            return NativeSampleBuffer.copyOf(
+                    encoding, metadata.bitsPerSample(), ByteOrder.nativeOrder());
+        }
+
+        int first = index.frameContaining(startFrame);
+        int last = index.frameContaining(startFrame + available - 1);
+        int from = index.decodeStart(first);
+
+        // Output of the priming frames and of the part of the first frame before startFrame
+        long skipFrames = startFrame - index.firstSampleOf(from);
+        long decodeFrames = (long) (last - from + 1) * index.samplesPerFrame();
+
+        MemorySegment sound = openFrames(system, audioFile, index, from, last);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment buffer = arena.allocate(decodeFrames * bytesPerFrame);
+            long filled =
+                    FmodBlockDecoder.readData(sound, buffer, audioFile, startFrame, frameCount);
+
+            long framesRead = Math.clamp(filled / bytesPerFrame - skipFrames, 0, available);
+            return NativeSampleBuffer.copyOf(
+                    encoding,
+                    metadata.bitsPerSample(),
+                    ByteOrder.nativeOrder(),
+                    buffer.asSlice(skipFrames * bytesPerFrame, framesRead * bytesPerFrame));
+        } finally {
+            FmodCore.FMOD_Sound_Release(sound);
+        }
+    }
+
+    @Override
+    public void close() {
+        // Sounds live only for the duration of a decode, so there is nothing to release
+        closed = true;
+    }
+
+    /** Opens the byte range holding frames {@code first} through {@code last} for decoding. */
+    private static MemorySegment openFrames(
+            MemorySegment system, Path audioFile, Mp3FrameIndex index, int first, int last)
+            throws AudioReadException {
+        long offset = index.frameOffset(first);
+        long end = index.frameEnd(last);
+        if (end > MAX_FMOD_FILE_OFFSET) {
+            throw new AudioReadException(
+                    "MP3 data beyond 4 GB cannot be addressed by FMOD", audioFile);
+        }
+
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment exinfo = FMOD_CREATESOUNDEXINFO.allocate(arena);
+            FMOD_CREATESOUNDEXINFO.cbsize(exinfo, (int) FMOD_CREATESOUNDEXINFO.layout().byteSize());
+            FMOD_CREATESOUNDEXINFO.fileoffset(exinfo, (int) offset);
+            FMOD_CREATESOUNDEXINFO.length(exinfo, (int) (end - offset));
+            FMOD_CREATESOUNDEXINFO.suggestedsoundtype(exinfo, FmodConstants.FMOD_SOUND_TYPE_MPEG);
+
+            var soundRef = arena.allocate(ValueLayout.ADDRESS);
+            var path = arena.allocateFrom(audioFile.toAbsolutePath().toString());
+            int result =
+                    FmodCore.FMOD_System_CreateSound(
+                            system, path, FmodConstants.FMOD_OPENONLY, exinfo, soundRef);
+            if (result != FmodConstants.FMOD_OK) {
+                throw new AudioReadException(
+                        "Failed to open MP3 frames: " + FmodError.describe(result),
+                        audioFile,
+                        index.firstSampleOf(first),
+                        (long) (last - first + 1) * index.samplesPerFrame());
+            }
+            return soundRef.get(ValueLayout.ADDRESS, 0);
+        }
+    }
+}
@@ -128,7 +128,9 @@ class FmodPlaybackManager {
                 if (needsPositioning && startFrame > 0) {
                     result =
                             FmodCore.FMOD_Channel_SetPosition(
-                                    channel, (int) startFrame, FmodConstants.FMOD_TIMEUNIT_PCM);
+                                    channel,
+                                    FmodPositions.clampToPcm(startFrame),
+                                    FmodConstants.FMOD_TIMEUNIT_PCM);
                     if (result != FmodConstants.FMOD_OK) {
                         FmodCore.FMOD_Channel_Stop(channel);
                         throw FmodError.toPlaybackException(result, "set position");
@@ -236,7 +238,8 @@ class FmodPlaybackManager {
      * Seeks to a specific frame in the current playback. This method acquires the playbackLock
      * internally.
      *
-     * @param frame The target frame position
+     * @param frame The target frame position; like positions past the end, positions beyond what
+     *     FMOD can address are clamped
      * @throws AudioPlaybackException if seeking fails
      */
     void seek(long frame) throws AudioPlaybackException {
@@ -248,7 +251,9 @@ class FmodPlaybackManager {
 
             int result =
                     FmodCore.FMOD_Channel_SetPosition(
-                            currentChannel.get(), (int) frame, FmodConstants.FMOD_TIMEUNIT_PCM);
+                            currentChannel.get(),
+                            FmodPositions.clampToPcm(frame),
+                            FmodConstants.FMOD_TIMEUNIT_PCM);
 
             // FMOD_ERR_INVALID_HANDLE means channel already stopped
             if (result == FmodConstants.FMOD_ERR_INVALID_HANDLE) {
@@ -302,7 +307,7 @@ class FmodPlaybackManager {
                     return 0;
                 }
 
-                return positionRef.get(ValueLayout.JAVA_INT, 0);
+                return FmodPositions.fromPcm(positionRef.get(ValueLayout.JAVA_INT, 0));
             }
         } finally {
             playbackLock.unlock();
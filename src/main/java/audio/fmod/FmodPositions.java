@@ -0,0 +1,47 @@
+package audio.fmod;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Conversions between frame positions and the PCM positions FMOD takes and reports.
+ *
+ * <p>FMOD passes PCM positions as unsigned 32-bit integers, so a frame past {@code 2^31} must not
+ * be read back as a negative number, and one past {@code 2^32 - 1} cannot be expressed at all; a
+ * plain {@code (int)} cast would wrap it to an unrelated position near the start of the file.
+ */
+@UtilityClass
+class FmodPositions {
+
+    /** Largest frame position FMOD can address. */
+    static final long MAX_PCM_POSITION = 0xFFFFFFFFL;
+
+    /** Returns whether FMOD can address a frame position. */
+    static boolean isAddressable(long frame) {
+        return frame >= 0 && frame <= MAX_PCM_POSITION;
+    }
+
+    /**
+     * Converts a frame position to the unsigned value FMOD takes.
+     *
+     * @throws IllegalArgumentException if FMOD cannot address the position
+     */
+    static int toPcm(long frame) {
+        if (!isAddressable(frame)) {
+            throw new IllegalArgumentException("Frame cannot be addressed by FMOD: " + frame);
+        }
+        return (int) frame;
+    }
+
+    /** Converts an unsigned position reported by FMOD to a frame position. */
+    static long fromPcm(int position) {
+        return Integer.toUnsignedLong(position);
+    }
+
+    /**
+     * Converts a frame position to the unsigned value FMOD takes, clamping it to the range FMOD
+     * can address. FMOD clamps positions past the end of a sound in turn.
+     */
+    static int clampToPcm(long frame) {
+        return (int) Math.clamp(frame, 0, MAX_PCM_POSITION);
+    }
+}
@@ -1,16 +1,68 @@
 package audio.fmod;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.ConstructorBinding;
 import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
 
 /** Externalized configuration for FMOD/JNA integration. */
 @ConfigurationProperties(prefix = "audio")
 public record FmodProperties(
         @DefaultValue("packaged") String loadingMode,
         @DefaultValue("standard") String libraryType,
-        @DefaultValue("src/main/resources/fmod/macos") String libraryPathMacos) {}
+        @DefaultValue("src/main/resources/fmod/macos") String libraryPathMacos,
+        @DefaultValue SampleReaderProperties sampleReader) {
+
+    /** Binds every component, since the record has more than one constructor. */
+    @ConstructorBinding
+    public FmodProperties {}
+
+    /** Creates properties with the default sample reader tuning. */
+    public FmodProperties(String loadingMode, String libraryType, String libraryPathMacos) {
+        this(loadingMode, libraryType, libraryPathMacos, FmodDefaults.SAMPLE_READER);
+    }
+
+    /**
+     * Tuning for {@link FmodSampleReader}, bound from {@code audio.sample-reader.*}.
+     *
+     * @param cacheMaxSize Upper bound on decoded audio held in memory across all files
+     * @param blockFrames Frames decoded and cached together as one block
+     * @param readThreads Maximum number of blocks decoding at once, or 0 for one per processor
+     * @param readQueueCapacity Maximum number of block decodes waiting to start
+     * @param diskCacheDir Directory to keep decoded copies of compressed files in, or empty to
+     *     decode them again every time
+     * @param diskCacheMaxSize Upper bound on the decoded copies kept on disk
+     * @param decoderSystems Maximum number of FMOD systems decoding distinct files in parallel, or
+     *     0 for one per processor
+     * @param resampleCacheMaxSize Upper bound on audio held in memory after conversion to another
+     *     sample rate, or 0 to convert every read afresh
+     * @param packedCacheMaxSize Upper bound on blocks kept compressed in memory after eviction from
+     *     the decoded cache, or 0 to decode evicted blocks again
+     */
+    public record SampleReaderProperties(
+            @DefaultValue("512MB") DataSize cacheMaxSize,
+            @DefaultValue("65536") int blockFrames,
+            @DefaultValue("0") int readThreads,
+            @DefaultValue("4096") int readQueueCapacity,
+            @DefaultValue("") String diskCacheDir,
+            @DefaultValue("4GB") DataSize diskCacheMaxSize,
+            @DefaultValue("0") int decoderSystems,
+            @DefaultValue("64MB") DataSize resampleCacheMaxSize,
+            @DefaultValue("256MB") DataSize packedCacheMaxSize) {}
+}
 
 // Defaults
 class FmodDefaults {
     static final String MACOS_LIB_PATH = "src/main/resources/fmod/macos";
+    static final FmodProperties.SampleReaderProperties SAMPLE_READER =
+            new FmodProperties.SampleReaderProperties(
+                    DataSize.ofMegabytes(512),
+                    65536,
+                    0,
+                    4096,
+                    "",
+                    DataSize.ofGigabytes(4),
+                    0,
+                    DataSize.ofMegabytes(64),
+                    DataSize.ofMegabytes(256));
 }
@@ -3,70 +3,198 @@ package audio.fmod;
 import audio.AudioData;
 import audio.AudioMetadata;
 import audio.AudioReadException;
+import audio.ReadPriority;
+import audio.ReadScheduler;
+import audio.ResampleCache;
 import audio.SampleReader;
+import audio.SampleView;
+import audio.ScheduledRead;
 import audio.exceptions.AudioEngineException;
 import audio.fmod.panama.FmodCore;
+import audio.metadata.AudioHeaderReader;
+import audio.mp3.Mp3FrameIndex;
+import audio.pcm.BlockSampleView;
+import audio.pcm.CachedPcm;
+import audio.pcm.NativeSampleBuffer;
+import audio.pcm.PackedBlockCache;
+import audio.pcm.PcmDiskCache;
+import audio.pcm.SampleBuffer;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import java.io.IOException;
-import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
-import java.lang.foreign.ValueLayout;
 import java.nio.file.Path;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * Simple FMOD-based SampleReader that loads entire files into memory.
+ * FMOD-based SampleReader that decodes files lazily in fixed-size blocks.
  *
- * <p>Since we use FMOD_CREATESAMPLE which loads the entire file into memory, we don't need complex
- * parallel infrastructure. We just cache the loaded audio data and serve reads directly from
- * memory.
+ * <p>Files are opened with FMOD_OPENONLY and decoded on demand, {@code
+ * audio.sample-reader.block-frames} frames at a time. Blocks are cached independently under a
+ * (file, block index) key, so a read touches only the blocks overlapping its range and positions
+ * are addressed with longs regardless of file length. Cached blocks keep the source's native width
+ * (see {@link SampleBuffer}) and are only widened to doubles for the range a caller asks for;
+ * {@link #readView} hands out the cached blocks themselves, so nothing is copied up front.
+ *
+ * <p>Blocks are held off-heap (see {@link NativeSampleBuffer}), so however much audio is cached it
+ * adds nothing to the heap the collector has to trace. The cache holds one reference to each block
+ * and releases it on eviction; views take their own, so an evicted block is freed as soon as the
+ * last view over it is closed.
+ *
+ * <p>MP3 files are located through a persisted {@link Mp3FrameIndex} instead, so opening one does
+ * not scan the whole file and a block decode starts at the frames it needs (see {@link
+ * FmodMp3Decoder}).
+ *
+ * <p>Each open file is decoded on one of a pool of FMOD systems ({@code
+ * audio.sample-reader.decoder-systems}, one per processor by default), since FMOD serializes all
+ * calls on a system; distinct files decode in parallel, up to one per system. A file whose blocks
+ * are wanted faster than one decoder can produce them is opened again on further systems (see
+ * {@link FmodDecoderSet}), so a long read of a single file splits into ranges that decode side by
+ * side, up to one per system, and land in its blocks at their offsets.
+ *
+ * <p>Decodes are deduplicated per block: concurrent readers of one block share a single in-flight
+ * decode, other blocks and files proceed independently, and cache hits never take a lock. Block
+ * decodes run on a {@link ReadScheduler} at the priority of the read that needs them, so
+ * interactive reads overtake queued prefetch and batch work, and a block still queued at a low
+ * priority is raised when an interactive read asks for it. Cancelling a read abandons the decodes
+ * of the blocks no other read is waiting for.
+ *
+ * <p>The block cache is bounded by the decoded size of its entries ({@code
+ * audio.sample-reader.cache-max-size}) and evicts with Caffeine's W-TinyLFU policy, so memory stays
+ * flat however long or numerous the files are. Evicted blocks drop to a second tier that keeps
+ * them losslessly compressed ({@code audio.sample-reader.packed-cache-max-size}, see {@link
+ * PackedBlockCache}), so the same memory keeps several times as many files warm. A block found
+ * there is unpacked straight into the decoded cache without being scheduled, so returning to a
+ * recently used file costs no decoding.
+ *
+ * <p>If {@code audio.sample-reader.disk-cache-dir} is set, compressed files are also decoded once
+ * in full, at batch priority, into a {@link PcmDiskCache}. From then on, in this reader and in any
+ * later one, the file is served from the mapped copy: no decoder is opened and no block is
+ * scheduled or cached in memory.
+ *
+ * <p>{@link #getMetadata} reads WAV, AIFF, FLAC and MP3 headers directly (see {@link
+ * AudioHeaderReader}). Other formats are opened briefly for their metadata and closed again,
+ * without keeping a decoder or caching a decoded copy, so listing a directory does not leave a
+ * codec open or queue a decode per entry.
  */
 @Slf4j
 public class FmodSampleReader implements SampleReader {
 
-    private final MemorySegment system;
-    private final Map<Path, CachedAudio> cache = new ConcurrentHashMap<>();
+    // Open sounds hold a codec and file handle each; keep only the recently used ones
+    private static final int MAX_OPEN_DECODERS = 16;
+
+    // Largest double[] the JVM reliably allocates
+    private static final long MAX_SAMPLES_PER_READ = Integer.MAX_VALUE - 8;
+
+    /**
+     * Identifies one block of decoded frames within a file. The file's channel count rides along
+     * so the block can be packed by channel when it is evicted.
+     */
+    private record BlockKey(Path file, long index, int channelCount) {}
+
+    private final FmodSystemPool systems;
+    private final int decoderSystems;
+    private final long cacheMaxBytes;
+    private final int blockFrames;
+    private final AsyncCache<Path, FmodDecoder> decoders;
+    private final AsyncCache<BlockKey, SampleBuffer> blocks;
+    private final PackedBlockCache<BlockKey> packed;
+    private final ReadScheduler scheduler;
+    private final PcmDiskCache diskCache;
+    private final AudioHeaderReader headers = new AudioHeaderReader();
+    private final ResampleCache resampled;
+
+    // Files being written to the disk cache
+    private final Set<Path> diskCaching = ConcurrentHashMap.newKeySet();
+
+    // Opening is brief and deduplicated per file, so it bypasses the scheduler; block decodes
+    // wait on it while holding a slot, which could deadlock if opens queued behind them
+    private final ExecutorService openExecutor = Executors.newVirtualThreadPerTaskExecutor();
     private volatile boolean closed = false;
 
-    private static class CachedAudio {
-        final double[] samples;
-        final AudioMetadata metadata;
+    public FmodSampleReader(@NonNull FmodLibraryLoader libraryLoader) {
+        this(libraryLoader, FmodDefaults.SAMPLE_READER);
+    }
 
-        CachedAudio(double[] samples, AudioMetadata metadata) {
-            this.samples = samples;
-            this.metadata = metadata;
-        }
+    public FmodSampleReader(
+            @NonNull FmodLibraryLoader libraryLoader,
+            @NonNull FmodProperties.SampleReaderProperties properties) {
+        this(
+                libraryLoader,
+                properties,
+                new ResampleCache(properties.resampleCacheMaxSize().toBytes()));
     }
 
-    public FmodSampleReader(@NonNull FmodLibraryLoader libraryLoader) {
+    /**
+     * Creates a reader that keeps resampled audio in the given cache, so a reader wrapping this
+     * one can convert through the same cache instead of holding a second copy.
+     */
+    public FmodSampleReader(
+            @NonNull FmodLibraryLoader libraryLoader,
+            @NonNull FmodProperties.SampleReaderProperties properties,
+            @NonNull ResampleCache resampled) {
+        if (properties.blockFrames() <= 0) {
+            throw new IllegalArgumentException(
+                    "Block size must be positive: " + properties.blockFrames());
+        }
+        this.cacheMaxBytes = properties.cacheMaxSize().toBytes();
+        this.blockFrames = properties.blockFrames();
+        int readThreads =
+                properties.readThreads() > 0
+                        ? properties.readThreads()
+                        : Runtime.getRuntime().availableProcessors();
+        this.scheduler =
+                new ReadScheduler("fmod-read", readThreads, properties.readQueueCapacity());
+        this.blocks =
+                Caffeine.newBuilder()
+                        .maximumWeight(cacheMaxBytes)
+                        .weigher((BlockKey key, SampleBuffer block) -> weightOf(block))
+                        // Run maintenance on the calling thread; it is cheap and keeps
+                        // eviction (and the stats) deterministic
+                        .executor(Runnable::run)
+                        .removalListener(this::onBlockRemoval)
+                        .recordStats()
+                        .buildAsync();
+        this.packed = new PackedBlockCache<>(properties.packedCacheMaxSize().toBytes());
+        this.decoderSystems =
+                properties.decoderSystems() > 0
+                        ? properties.decoderSystems()
+                        : Runtime.getRuntime().availableProcessors();
+        this.decoders =
+                Caffeine.newBuilder()
+                        // Enough open files to keep every decoder system busy
+                        .maximumSize(Math.max(MAX_OPEN_DECODERS, decoderSystems))
+                        .executor(Runnable::run)
+                        .removalListener(this::onDecoderRemoval)
+                        .buildAsync();
+        this.diskCache = openDiskCache(properties);
+        this.resampled = resampled;
+
         try {
-            // Load FMOD native library and create a system using Panama
+            // Load FMOD native library and create the first decoder system using Panama
             libraryLoader.loadNativeLibrary();
-            try (Arena arena = Arena.ofConfined()) {
-                var systemRef = arena.allocate(ValueLayout.ADDRESS);
-                int result = FmodCore.FMOD_System_Create(systemRef, FmodConstants.FMOD_VERSION);
-                if (result != FmodConstants.FMOD_OK) {
-                    throw new AudioEngineException(
-                            "Failed to create FMOD system: " + FmodError.describe(result));
-                }
-                this.system = systemRef.get(ValueLayout.ADDRESS, 0);
-
-                // Initialize with minimal settings since we're just loading files
-                result =
-                        FmodCore.FMOD_System_Init(
-                                system, 32, FmodConstants.FMOD_INIT_NORMAL, MemorySegment.NULL);
-                if (result != FmodConstants.FMOD_OK) {
-                    FmodCore.FMOD_System_Release(system);
-                    throw new AudioEngineException(
-                            "Failed to initialize FMOD system: " + FmodError.describe(result));
-                }
-            }
-
-            log.info("Created simple FMOD sample reader");
+            this.systems = new FmodSystemPool(decoderSystems);
+
+            log.info(
+                    "Created FMOD sample reader ({}-frame blocks, {} MB cache, {} read threads, "
+                            + "up to {} decoder systems)",
+                    blockFrames,
+                    cacheMaxBytes / 1_000_000,
+                    readThreads,
+                    decoderSystems);
         } catch (AudioEngineException e) {
             throw new RuntimeException("Failed to initialize FMOD system", e);
         }
@@ -75,6 +203,15 @@ public class FmodSampleReader implements SampleReader {
     @Override
     public CompletableFuture<AudioData> readSamples(
             @NonNull Path audioFile, long startFrame, long frameCount) {
+        return readSamples(audioFile, startFrame, frameCount, ReadPriority.INTERACTIVE);
+    }
+
+    @Override
+    public CompletableFuture<AudioData> readSamples(
+            @NonNull Path audioFile,
+            long startFrame,
+            long frameCount,
+            @NonNull ReadPriority priority) {
 
         if (closed) {
             return CompletableFuture.failedFuture(
@@ -86,16 +223,73 @@ public class FmodSampleReader implements SampleReader {
                     new IllegalArgumentException("Negative frame values not allowed"));
         }
 
-        // Load file if not cached, then read from memory
-        return CompletableFuture.supplyAsync(
-                () -> {
-                    try {
-                        CachedAudio cached = loadOrGetCached(audioFile);
-                        return readFromCache(cached, startFrame, frameCount);
-                    } catch (AudioReadException e) {
-                        throw new CompletionException(e);
+        CompletableFuture<SampleView> view =
+                viewBlocks(audioFile, startFrame, frameCount, priority, true);
+        CompletableFuture<AudioData> data =
+                view.thenApply(
+                        sampleView -> {
+                            try (sampleView) {
+                                return sampleView.toAudioData();
+                            }
+                        });
+
+        // Cancelling the copy cancels the block reads behind it
+        data.whenComplete(
+                (_, _) -> {
+                    if (data.isCancelled() && !view.cancel(true)) {
+                        view.thenAccept(SampleView::close);
                     }
                 });
+        return data;
+    }
+
+    /**
+     * Reads a range as a view over the cached blocks, without copying the samples. The view keeps
+     * its blocks reachable until it is closed, even if the cache evicts them.
+     */
+    @Override
+    public CompletableFuture<SampleView> readView(
+            @NonNull Path audioFile, long startFrame, long frameCount) {
+        return readView(audioFile, startFrame, frameCount, ReadPriority.INTERACTIVE);
+    }
+
+    @Override
+    public CompletableFuture<SampleView> readView(
+            @NonNull Path audioFile,
+            long startFrame,
+            long frameCount,
+            @NonNull ReadPriority priority) {
+
+        if (closed) {
+            return CompletableFuture.failedFuture(
+                    new AudioReadException("Reader is closed", audioFile));
+        }
+
+        if (startFrame < 0 || frameCount < 0) {
+            return CompletableFuture.failedFuture(
+                    new IllegalArgumentException("Negative frame values not allowed"));
+        }
+
+        return viewBlocks(audioFile, startFrame, frameCount, priority, false);
+    }
+
+    /**
+     * Reads samples converted to another rate. Converted blocks are cached separately from the
+     * decoded ones ({@code audio.sample-reader.resample-cache-max-size}), so overlapping windows
+     * at the same rate are filtered once.
+     */
+    @Override
+    public CompletableFuture<AudioData> readSamples(
+            @NonNull Path audioFile,
+            long startFrame,
+            long frameCount,
+            int sampleRate,
+            @NonNull ReadPriority priority) {
+        if (closed) {
+            return CompletableFuture.failedFuture(
+                    new AudioReadException("Reader is closed", audioFile));
+        }
+        return resampled.read(this, audioFile, startFrame, frameCount, sampleRate, priority);
     }
 
     @Override
@@ -105,268 +299,460 @@ public class FmodSampleReader implements SampleReader {
                     new AudioReadException("Reader is closed", audioFile));
         }
 
+        CompletableFuture<FmodDecoder> open = decoders.getIfPresent(audioFile);
+        if (open != null) {
+            return open.thenApply(FmodDecoder::metadata);
+        }
         return CompletableFuture.supplyAsync(
                 () -> {
                     try {
-                        CachedAudio cached = loadOrGetCached(audioFile);
-                        return cached.metadata;
+                        AudioMetadata metadata = headers.read(audioFile);
+                        if (metadata != null) {
+                            return metadata;
+                        }
+                    } catch (AudioReadException e) {
+                        // Leave headers the parsers reject (e.g. compressed WAV) to FMOD
+                        log.debug("Header read failed, probing {}", audioFile, e);
+                    }
+                    try {
+                        return probe(audioFile);
                     } catch (AudioReadException e) {
                         throw new CompletionException(e);
                     }
-                });
+                },
+                openExecutor);
     }
 
-    private synchronized CachedAudio loadOrGetCached(Path audioFile) throws AudioReadException {
-        // Check cache first
-        CachedAudio cached = cache.get(audioFile);
-        if (cached != null) {
-            return cached;
+    /**
+     * Reads a file's metadata through FMOD and closes it again, so describing a file neither keeps
+     * a decoder open nor queues a decoded copy for the disk cache.
+     */
+    private AudioMetadata probe(Path audioFile) throws AudioReadException {
+        FmodSystemPool.Lease lease;
+        try {
+            lease = systems.lease();
+        } catch (AudioEngineException e) {
+            throw new AudioReadException("No decoder system available", audioFile, e);
         }
+        try (lease) {
+            MemorySegment system = lease.system();
+            FmodCore.FMOD_System_Update(system);
+            try (FmodDecoder decoder = FmodBlockDecoder.open(system, audioFile)) {
+                return decoder.metadata();
+            }
+        }
+    }
 
-        // Load the entire file into memory
-        String filePath = audioFile.toAbsolutePath().toString();
-        MemorySegment sound = null;
+    /**
+     * Returns the open decoder for a file, opening it if needed. Concurrent callers for the same
+     * file share one in-flight open; different files open independently.
+     */
+    private CompletableFuture<FmodDecoder> openDecoder(Path audioFile) {
+        return decoders.get(
+                audioFile,
+                (path, _) ->
+                        CompletableFuture.supplyAsync(
+                                () -> {
+                                    try {
+                                        CachedPcm cached = openCached(path);
+                                        if (cached != null) {
+                                            return new CachedPcmDecoder(cached);
+                                        }
+                                        FmodDecoder decoder =
+                                                new FmodDecoderSet(
+                                                        path,
+                                                        openFmod(path),
+                                                        decoderSystems,
+                                                        () -> openFmod(path));
+                                        cacheOnDisk(path);
+                                        return decoder;
+                                    } catch (AudioReadException e) {
+                                        throw new CompletionException(e);
+                                    }
+                                },
+                                openExecutor));
+    }
 
+    /** Opens a file on a pooled system, which stays leased until the decoder is closed. */
+    private FmodDecoder openFmod(Path audioFile) throws AudioReadException {
+        FmodSystemPool.Lease lease;
         try {
-            // Update system
+            lease = systems.lease();
+        } catch (AudioEngineException e) {
+            throw new AudioReadException("No decoder system available", audioFile, e);
+        }
+        try {
+            MemorySegment system = lease.system();
             FmodCore.FMOD_System_Update(system);
+            FmodDecoder decoder =
+                    Mp3FrameIndex.isMp3(audioFile)
+                            ? FmodMp3Decoder.open(system, audioFile)
+                            : FmodBlockDecoder.open(system, audioFile);
+            return new LeasedDecoder(decoder, lease);
+        } catch (AudioReadException | RuntimeException e) {
+            lease.close();
+            throw e;
+        }
+    }
 
-            // Create sound as sample (loads entire file into memory)
-            // Don't use FMOD_OPENONLY - that prevents actual data loading!
-            int flags = FmodConstants.FMOD_CREATESAMPLE;
-            try (Arena arena = Arena.ofConfined()) {
-                var soundRef = arena.allocate(ValueLayout.ADDRESS);
-                var path = arena.allocateFrom(filePath);
-                int result =
-                        FmodCore.FMOD_System_CreateSound(
-                                system, path, flags, MemorySegment.NULL, soundRef);
-                if (result != FmodConstants.FMOD_OK) {
-                    throw new AudioReadException(
-                            "Failed to open audio file: " + FmodError.describe(result), audioFile);
-                }
-                sound = soundRef.get(ValueLayout.ADDRESS, 0);
-            }
+    /** A decoder that returns its system's lease to the pool when closed. */
+    private record LeasedDecoder(FmodDecoder decoder, FmodSystemPool.Lease lease)
+            implements FmodDecoder {
 
-            // Get format info
-            int sampleRate;
-            int channelCount;
-            int bitsPerSample;
-            long totalFrames;
-            double durationSec;
-            int result;
-            try (Arena arena = Arena.ofConfined()) {
-                var channelsRef = arena.allocate(ValueLayout.JAVA_INT);
-                var bitsRef = arena.allocate(ValueLayout.JAVA_INT);
-                result =
-                        FmodCore.FMOD_Sound_GetFormat(
-                                sound,
-                                MemorySegment.NULL,
-                                MemorySegment.NULL,
-                                channelsRef,
-                                bitsRef);
-                if (result != FmodConstants.FMOD_OK) {
-                    throw new AudioReadException(
-                            "Failed to get sound format: " + FmodError.describe(result), audioFile);
-                }
-                // Get sample rate
-                var frequencyRef = arena.allocate(ValueLayout.JAVA_FLOAT);
-                result = FmodCore.FMOD_Sound_GetDefaults(sound, frequencyRef, MemorySegment.NULL);
-                if (result != FmodConstants.FMOD_OK) {
-                    throw new AudioReadException(
-                            "Failed to get sample rate: " + FmodError.describe(result), audioFile);
-                }
-                // Get total length
-                var lengthRef = arena.allocate(ValueLayout.JAVA_INT);
-                result =
-                        FmodCore.FMOD_Sound_GetLength(
-                                sound, lengthRef, FmodConstants.FMOD_TIMEUNIT_PCM);
-                if (result != FmodConstants.FMOD_OK) {
-                    throw new AudioReadException(
-                            "Failed to get sound length: " + FmodError.describe(result), audioFile);
-                }
-                sampleRate = Math.round(frequencyRef.get(ValueLayout.JAVA_FLOAT, 0));
-                channelCount = channelsRef.get(ValueLayout.JAVA_INT, 0);
-                bitsPerSample = bitsRef.get(ValueLayout.JAVA_INT, 0);
-                int bytesPerSample = bitsPerSample / 8;
-                totalFrames = Integer.toUnsignedLong(lengthRef.get(ValueLayout.JAVA_INT, 0));
-
-                // Get duration in ms
-                var msLengthRef = arena.allocate(ValueLayout.JAVA_INT);
-                result =
-                        FmodCore.FMOD_Sound_GetLength(
-                                sound, msLengthRef, FmodConstants.FMOD_TIMEUNIT_MS);
-                if (result != FmodConstants.FMOD_OK) {
-                    throw new AudioReadException(
-                            "Failed to get duration: " + FmodError.describe(result), audioFile);
-                }
-                durationSec =
-                        Integer.toUnsignedLong(msLengthRef.get(ValueLayout.JAVA_INT, 0)) / 1000.0;
-
-                // Lock entire sound to read all data at once
-                int totalBytes = (int) (totalFrames * channelCount * bytesPerSample);
-                var ptr1Ref = arena.allocate(ValueLayout.ADDRESS);
-                var ptr2Ref = arena.allocate(ValueLayout.ADDRESS);
-                var len1Ref = arena.allocate(ValueLayout.JAVA_INT);
-                var len2Ref = arena.allocate(ValueLayout.JAVA_INT);
-
-                result =
-                        FmodCore.FMOD_Sound_Lock(
-                                sound, 0, totalBytes, ptr1Ref, ptr2Ref, len1Ref, len2Ref);
-                if (result != FmodConstants.FMOD_OK) {
-                    throw new AudioReadException(
-                            "Failed to lock sound data: " + FmodError.describe(result), audioFile);
-                }
+        @Override
+        public AudioMetadata metadata() {
+            return decoder.metadata();
+        }
 
-                int len1 = 0;
-                int len2 = 0;
-                MemorySegment p1 = MemorySegment.NULL;
-                MemorySegment p2 = MemorySegment.NULL;
-                try {
-                    // Read all PCM data
-                    len1 = len1Ref.get(ValueLayout.JAVA_INT, 0);
-                    len2 = len2Ref.get(ValueLayout.JAVA_INT, 0);
-                    int totalBytesRead = len1 + len2;
-                    byte[] buffer = new byte[totalBytesRead];
-
-                    p1 = ptr1Ref.get(ValueLayout.ADDRESS, 0);
-                    p2 = ptr2Ref.get(ValueLayout.ADDRESS, 0);
-                    if (len1 > 0 && p1 != null) {
-                        var seg1 = p1.reinterpret(len1);
-                        seg1.asByteBuffer().get(buffer, 0, len1);
-                    }
+        @Override
+        public SampleBuffer decode(long startFrame, int frameCount) throws AudioReadException {
+            return decoder.decode(startFrame, frameCount);
+        }
 
-                    if (len2 > 0 && p2 != null) {
-                        var seg2 = p2.reinterpret(len2);
-                        seg2.asByteBuffer().get(buffer, len1, len2);
-                    }
+        @Override
+        public void close() {
+            decoder.close();
+            lease.close();
+        }
+    }
 
-                    // Debug: Check raw byte data
-                    boolean hasNonZero = false;
-                    for (int i = 0; i < Math.min(1000, buffer.length); i++) {
-                        if (buffer[i] != 0) {
-                            hasNonZero = true;
-                            break;
-                        }
-                    }
-                    log.debug(
-                            "Raw PCM bytes: {} total, has non-zero data: {}",
-                            totalBytesRead,
-                            hasNonZero);
-
-                    // Convert to normalized doubles
-                    int totalSamples = totalBytesRead / bytesPerSample;
-                    double[] samples = new double[totalSamples];
-                    convertToDouble(buffer, samples, bitsPerSample, totalSamples);
-
-                    // Create metadata
-                    String formatStr =
-                            String.format(
-                                    "%d Hz, %d bit, %s",
-                                    sampleRate,
-                                    bitsPerSample,
-                                    channelCount == 1 ? "Mono" : "Stereo");
-
-                    AudioMetadata metadata =
-                            new AudioMetadata(
-                                    sampleRate,
-                                    channelCount,
-                                    bitsPerSample,
-                                    formatStr,
-                                    totalFrames,
-                                    durationSec);
-
-                    // Debug: Check if samples have actual data
-                    double maxSample = 0;
-                    for (double s : samples) {
-                        if (Math.abs(s) > maxSample) maxSample = Math.abs(s);
-                    }
+    /** Waits for a file's decoder from inside a scheduled read. */
+    private FmodDecoder awaitDecoder(Path audioFile)
+            throws AudioReadException, InterruptedException {
+        try {
+            return openDecoder(audioFile).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AudioReadException cause) {
+                throw cause;
+            }
+            throw new AudioReadException("Failed to open audio file", audioFile, e.getCause());
+        }
+    }
 
-                    // Cache and return
-                    cached = new CachedAudio(samples, metadata);
-                    cache.put(audioFile, cached);
+    /**
+     * Reads a range as a view over its blocks, decoding the missing ones at the given priority.
+     *
+     * @param copied Whether the caller will copy the view into one array, which limits its size
+     */
+    private CompletableFuture<SampleView> viewBlocks(
+            Path audioFile,
+            long startFrame,
+            long frameCount,
+            ReadPriority priority,
+            boolean copied) {
+        CompletableFuture<SampleView> result = new CompletableFuture<>();
+        openDecoder(audioFile)
+                .whenComplete(
+                        (decoder, error) -> {
+                            if (error != null) {
+                                result.completeExceptionally(error);
+                            } else if (!result.isDone()) {
+                                viewBlocks(
+                                        result,
+                                        audioFile,
+                                        decoder,
+                                        startFrame,
+                                        frameCount,
+                                        priority,
+                                        copied);
+                            }
+                        });
+        return result;
+    }
 
-                    log.debug(
-                            "Loaded and cached {} ({} frames, {} MB, max amplitude: {})",
-                            audioFile.getFileName(),
-                            totalFrames,
-                            String.format("%.2f", totalBytesRead / 1_000_000.0),
-                            maxSample);
+    private void viewBlocks(
+            CompletableFuture<SampleView> result,
+            Path audioFile,
+            FmodDecoder decoder,
+            long startFrame,
+            long frameCount,
+            ReadPriority priority,
+            boolean copied) {
+        AudioMetadata meta = decoder.metadata();
+        int channelCount = meta.channelCount();
+        long totalFrames = meta.frameCount();
 
-                    return cached;
+        // Validate range
+        long actualFrameCount = Math.min(frameCount, totalFrames - startFrame);
+        if (startFrame >= totalFrames || actualFrameCount <= 0) {
+            result.complete(
+                    SampleView.of(AudioData.empty(meta.sampleRate(), channelCount, startFrame)));
+            return;
+        }
 
-                } finally {
-                    // Unlock the sound
-                    FmodCore.FMOD_Sound_Unlock(sound, p1, p2, len1, len2);
-                }
-            } // end Arena scope for format/lock/read
+        // Files may be arbitrarily long, but a copied result still has to fit in one array
+        if (copied && actualFrameCount * channelCount > MAX_SAMPLES_PER_READ) {
+            result.completeExceptionally(
+                    new AudioReadException(
+                            "Requested range is too large for a single read",
+                            audioFile,
+                            startFrame,
+                            frameCount));
+            return;
+        }
 
-        } finally {
-            // Release the sound object
-            if (sound != null) {
-                FmodCore.FMOD_Sound_Release(sound);
-            }
+        // A decoded copy on disk is mapped whole; there is nothing to schedule or cache
+        if (decoder instanceof CachedPcmDecoder cached) {
+            result.complete(cached.view(startFrame, actualFrameCount));
+            return;
+        }
+
+        long endFrame = startFrame + actualFrameCount;
+        long firstBlock = startFrame / blockFrames;
+        long lastBlock = (endFrame - 1) / blockFrames;
+        List<ScheduledRead<SampleBuffer>> pending = new ArrayList<>();
+        for (long index = firstBlock; index <= lastBlock; index++) {
+            pending.add(acquireBlock(new BlockKey(audioFile, index, channelCount), priority));
         }
+
+        // However the read ends, it stops waiting for its blocks; decodes nobody else is
+        // waiting for are abandoned
+        result.whenComplete((_, _) -> pending.forEach(ScheduledRead::release));
+
+        CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new))
+                .whenComplete(
+                        (_, failure) -> {
+                            if (failure != null) {
+                                result.completeExceptionally(failure);
+                                return;
+                            }
+                            SampleView view;
+                            try {
+                                view =
+                                        assembleView(
+                                                pending, meta, firstBlock, startFrame, endFrame);
+                            } catch (IllegalStateException e) {
+                                // A block was evicted and freed before the view could retain it;
+                                // acquire the blocks again, decoding the freed ones afresh
+                                viewBlocks(
+                                        result,
+                                        audioFile,
+                                        decoder,
+                                        startFrame,
+                                        frameCount,
+                                        priority,
+                                        copied);
+                                return;
+                            }
+                            if (!result.complete(view)) {
+                                view.close();
+                            }
+                        });
     }
 
-    private AudioData readFromCache(CachedAudio cached, long startFrame, long frameCount) {
-        AudioMetadata meta = cached.metadata;
+    private SampleView assembleView(
+            List<ScheduledRead<SampleBuffer>> pending,
+            AudioMetadata meta,
+            long firstBlock,
+            long startFrame,
+            long endFrame) {
         int channelCount = meta.channelCount();
-        long totalFrames = meta.frameCount();
+        List<SampleBuffer> blocks = new ArrayList<>(pending.size());
+        long availableEnd = startFrame;
+        for (int i = 0; i < pending.size(); i++) {
+            SampleBuffer block = pending.get(i).join();
+            blocks.add(block);
+            long blockStart = (firstBlock + i) * blockFrames;
+            long blockLength = block.sampleCount() / channelCount;
+            availableEnd = blockStart + blockLength;
+            if (blockLength < blockFrames) {
+                // The codec ran out, possibly before the length it reported
+                break;
+            }
+        }
 
-        // Validate range
-        if (startFrame >= totalFrames) {
-            return AudioData.empty(meta.sampleRate(), channelCount, startFrame);
+        return new BlockSampleView(
+                blocks,
+                firstBlock * blockFrames,
+                blockFrames,
+                meta.sampleRate(),
+                channelCount,
+                startFrame,
+                Math.max(0, Math.min(endFrame, availableEnd) - startFrame));
+    }
+
+    /**
+     * Returns one block, scheduling its decode if it is not cached, with interest registered on
+     * the caller's behalf. The caller must release it.
+     */
+    @SuppressWarnings("unchecked")
+    private ScheduledRead<SampleBuffer> acquireBlock(BlockKey key, ReadPriority priority) {
+        while (true) {
+            // Only scheduled reads are ever put in the cache
+            ScheduledRead<SampleBuffer> block =
+                    (ScheduledRead<SampleBuffer>)
+                            blocks.get(key, (k, _) -> scheduleDecode(k, priority));
+            if (block.retain()) {
+                block.prioritize(priority);
+                return block;
+            }
+            // Every reader that wanted this decode gave up on it; start a new one. The removal
+            // listener releases the cache's reference, at once or when a running decode ends
+            blocks.asMap().remove(key, block);
         }
+    }
 
-        long actualFrameCount = Math.min(frameCount, totalFrames - startFrame);
-        if (actualFrameCount <= 0) {
-            return AudioData.empty(meta.sampleRate(), channelCount, startFrame);
+    private ScheduledRead<SampleBuffer> scheduleDecode(BlockKey key, ReadPriority priority) {
+        // A packed block unpacks far sooner than it would wait in the queue and decode
+        SampleBuffer unpacked = packed.get(key);
+        if (unpacked != null) {
+            return scheduler.completed(unpacked);
         }
+        return scheduler.submit(priority, () -> decodeBlock(key));
+    }
 
-        // Calculate sample positions
-        int startSample = (int) (startFrame * channelCount);
-        int sampleCount = (int) (actualFrameCount * channelCount);
+    private SampleBuffer decodeBlock(BlockKey key)
+            throws AudioReadException, InterruptedException {
+        long startFrame = key.index() * blockFrames;
+        SampleBuffer block = awaitDecoder(key.file()).decode(startFrame, blockFrames);
+        if (block == null) {
+            // The decoder was evicted and closed while this block waited for it
+            block = awaitDecoder(key.file()).decode(startFrame, blockFrames);
+        }
+        if (block == null) {
+            throw new AudioReadException(
+                    "Decoder closed during read", key.file(), startFrame, blockFrames);
+        }
+        return block;
+    }
 
-        // Copy the requested range from cached samples
-        double[] resultSamples = new double[sampleCount];
-        System.arraycopy(cached.samples, startSample, resultSamples, 0, sampleCount);
+    private static PcmDiskCache openDiskCache(FmodProperties.SampleReaderProperties properties) {
+        String directory = properties.diskCacheDir();
+        if (directory == null || directory.isBlank()) {
+            return null;
+        }
+        try {
+            return new PcmDiskCache(Path.of(directory), properties.diskCacheMaxSize().toBytes());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Decoded audio cache disabled, cannot use {}: {}", directory, e.getMessage());
+            return null;
+        }
+    }
 
-        return new AudioData(
-                resultSamples, meta.sampleRate(), channelCount, startFrame, actualFrameCount);
+    /** Maps the decoded copy of a file from the disk cache, if there is a current one. */
+    private CachedPcm openCached(Path audioFile) {
+        if (diskCache == null) {
+            return null;
+        }
+        try {
+            return diskCache.open(audioFile);
+        } catch (IOException e) {
+            log.debug("Cannot use decoded copy of {}: {}", audioFile, e.getMessage());
+            return null;
+        }
     }
 
-    private void convertToDouble(
-            byte[] buffer, double[] samples, int bitsPerSample, int numSamples) {
-        if (bitsPerSample == 16) {
-            for (int i = 0; i < numSamples; i++) {
-                int byteIndex = i * 2;
-                short value = (short) ((buffer[byteIndex] & 0xFF) | (buffer[byteIndex + 1] << 8));
-                samples[i] = value / 32768.0;
-            }
-        } else if (bitsPerSample == 24) {
-            for (int i = 0; i < numSamples; i++) {
-                int byteIndex = i * 3;
-                int value =
-                        (buffer[byteIndex] & 0xFF)
-                                | ((buffer[byteIndex + 1] & 0xFF) << 8)
-                                | (buffer[byteIndex + 2] << 16);
-                if ((value & 0x800000) != 0) {
-                    value |= 0xFF000000;
+    /** Decodes a compressed file into the disk cache in the background, once. */
+    private void cacheOnDisk(Path audioFile) {
+        if (diskCache == null || isUncompressed(audioFile) || !diskCaching.add(audioFile)) {
+            return;
+        }
+        scheduler
+                .submit(
+                        ReadPriority.BATCH,
+                        () -> {
+                            writeToDiskCache(audioFile);
+                            return null;
+                        })
+                .whenComplete(
+                        (_, error) -> {
+                            diskCaching.remove(audioFile);
+                            if (error != null) {
+                                log.debug(
+                                        "Did not cache decoded {}: {}",
+                                        audioFile.getFileName(),
+                                        error.toString());
+                            }
+                        });
+    }
+
+    private void writeToDiskCache(Path audioFile)
+            throws AudioReadException, IOException, InterruptedException {
+        // A decoder of its own, so the sequential pass does not keep seeking the shared one
+        try (FmodDecoder decoder = openFmod(audioFile);
+                PcmDiskCache.Writer writer = diskCache.create(audioFile, decoder.metadata())) {
+            long blockSamples = (long) blockFrames * decoder.metadata().channelCount();
+            for (long frame = 0; ; frame += blockFrames) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                SampleBuffer block = decoder.decode(frame, blockFrames);
+                long samples = block.sampleCount();
+                try {
+                    writer.append(block);
+                } finally {
+                    block.release();
+                }
+                if (samples < blockSamples) {
+                    break;
                 }
-                samples[i] = value / 8388608.0;
             }
-        } else if (bitsPerSample == 32) {
-            for (int i = 0; i < numSamples; i++) {
-                int byteIndex = i * 4;
-                int value =
-                        (buffer[byteIndex] & 0xFF)
-                                | ((buffer[byteIndex + 1] & 0xFF) << 8)
-                                | ((buffer[byteIndex + 2] & 0xFF) << 16)
-                                | (buffer[byteIndex + 3] << 24);
-                samples[i] = value / 2147483648.0;
+            writer.commit();
+        }
+        log.debug("Cached decoded {}", audioFile.getFileName());
+
+        // Later opens map the copy; blocks already decoded from the codec stay valid
+        decoders.synchronous().invalidate(audioFile);
+    }
+
+    private static boolean isUncompressed(Path audioFile) {
+        String fileName = audioFile.getFileName().toString().toLowerCase();
+        return fileName.endsWith(".wav")
+                || fileName.endsWith(".wave")
+                || fileName.endsWith(".aif")
+                || fileName.endsWith(".aiff");
+    }
+
+    /**
+     * Returns hit, miss and eviction counts for the decoded block cache.
+     *
+     * @return A snapshot of the cache statistics
+     */
+    public CacheStats getCacheStats() {
+        return blocks.synchronous().stats();
+    }
+
+    /** Returns the decoded bytes currently held by the block cache. */
+    public long getCachedBytes() {
+        return blocks.synchronous()
+                .policy()
+                .eviction()
+                .map(e -> e.weightedSize().orElse(0L))
+                .orElse(0L);
+    }
+
+    /** Returns hit counts, sizes and the compression ratio of the packed tier below the cache. */
+    public PackedBlockCache.Stats getPackedCacheStats() {
+        return packed.stats();
+    }
+
+    private static int weightOf(SampleBuffer block) {
+        return (int) Math.min(Integer.MAX_VALUE, block.sizeBytes());
+    }
+
+    private void onBlockRemoval(BlockKey key, SampleBuffer block, RemovalCause cause) {
+        if (block != null) {
+            try {
+                if (cause.wasEvicted()) {
+                    packed.add(key, block, key.channelCount());
+                }
+            } finally {
+                // Open views over the block keep it readable until they close
+                block.release();
             }
-        } else {
-            throw new UnsupportedOperationException("Unsupported bit depth: " + bitsPerSample);
+        }
+        if (cause.wasEvicted()) {
+            log.trace(
+                    "Evicted block {} of {} from sample cache ({})",
+                    key.index(),
+                    key.file().getFileName(),
+                    cause);
+        }
+    }
+
+    private void onDecoderRemoval(Path path, FmodDecoder decoder, RemovalCause cause) {
+        if (decoder != null) {
+            decoder.close();
         }
     }
 
@@ -378,13 +764,32 @@ public class FmodSampleReader implements SampleReader {
 
         closed = true;
 
-        // Clear cache
-        cache.clear();
+        // Abandon queued decodes and interrupt running ones, wait for them and for any opens in
+        // flight, then clear cached blocks and close every open sound before the systems go away
+        scheduler.close();
+        openExecutor.shutdownNow();
+        awaitDecodes();
+        blocks.synchronous().invalidateAll();
+        packed.clear();
+        resampled.clear();
+        decoders.synchronous().invalidateAll();
+
+        // Release the decoder systems
+        if (systems != null) {
+            systems.close();
+        }
+    }
 
-        // Release FMOD system
-        if (system != null) {
-            FmodCore.FMOD_System_Release(system);
-            log.info("Released FMOD system");
+    /** Waits for decodes and opens that were running when the reader closed. */
+    private void awaitDecodes() {
+        long timeout = FmodSystemPool.RELEASE_TIMEOUT.toMillis();
+        try {
+            if (!scheduler.awaitTermination(timeout, TimeUnit.MILLISECONDS)
+                    || !openExecutor.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+                log.warn("FMOD decodes still running at shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 }
@@ -0,0 +1,202 @@
+package audio.fmod;
+
+import audio.exceptions.AudioEngineException;
+import audio.fmod.panama.FmodCore;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A bounded set of independently initialized FMOD systems for decoding.
+ *
+ * <p>FMOD serializes every call on a system behind that system's lock, so decoders sharing one
+ * system decode one at a time however many threads drive them. Each opened file instead leases
+ * the system with the fewest open files, and a new system is created whenever every existing one
+ * is in use and the pool is below its size. Distinct files therefore decode in parallel on up to
+ * {@code size} systems, while a lightly loaded reader still runs on a single one.
+ *
+ * <p>Releasing a system frees the sounds opened on it, so closing the pool waits for outstanding
+ * leases to be returned first. A system still leased when the wait runs out is left allocated
+ * rather than freed under a decoder that may be using it.
+ */
+@Slf4j
+final class FmodSystemPool implements AutoCloseable {
+
+    /** One open file's hold on a system. Closing it more than once has no further effect. */
+    final class Lease implements AutoCloseable {
+        private final PooledSystem pooled;
+        private boolean released = false;
+
+        private Lease(PooledSystem pooled) {
+            this.pooled = pooled;
+        }
+
+        MemorySegment system() {
+            return pooled.system;
+        }
+
+        @Override
+        public void close() {
+            synchronized (FmodSystemPool.this) {
+                if (!released) {
+                    released = true;
+                    pooled.leases--;
+                    FmodSystemPool.this.notifyAll();
+                }
+            }
+        }
+    }
+
+    private static final class PooledSystem {
+        final MemorySegment system;
+        int leases = 0;
+
+        PooledSystem(MemorySegment system) {
+            this.system = system;
+        }
+    }
+
+    // How long close() waits for leases to be returned
+    static final Duration RELEASE_TIMEOUT = Duration.ofSeconds(10);
+
+    private final int size;
+    private final List<PooledSystem> systems = new ArrayList<>();
+    private boolean closed = false;
+
+    /**
+     * Creates a pool and its first system, so a missing or broken FMOD library fails here rather
+     * than on the first read.
+     *
+     * @param size Maximum number of systems
+     * @throws AudioEngineException if the first system cannot be created
+     */
+    FmodSystemPool(int size) throws AudioEngineException {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Pool size must be positive: " + size);
+        }
+        this.size = size;
+        systems.add(new PooledSystem(createSystem()));
+    }
+
+    /**
+     * Leases the least used system, creating another one if all are in use and there is room.
+     *
+     * @return The lease, to be closed once the file opened on it is closed
+     * @throws AudioEngineException if the pool is closed
+     */
+    synchronized Lease lease() throws AudioEngineException {
+        if (closed) {
+            throw new AudioEngineException("Decoder system pool is closed");
+        }
+        PooledSystem least = systems.getFirst();
+        for (PooledSystem pooled : systems) {
+            if (pooled.leases < least.leases) {
+                least = pooled;
+            }
+        }
+        if (least.leases > 0 && systems.size() < size) {
+            try {
+                least = new PooledSystem(createSystem());
+                systems.add(least);
+                log.debug("Created decoder system {} of {}", systems.size(), size);
+            } catch (AudioEngineException e) {
+                // Share an existing system rather than fail the open
+                log.warn("Failed to grow decoder system pool: {}", e.getMessage());
+            }
+        }
+        least.leases++;
+        return new Lease(least);
+    }
+
+    int size() {
+        return size;
+    }
+
+    synchronized int systemCount() {
+        return systems.size();
+    }
+
+    /**
+     * Refuses further leases and releases every system once its leases have been returned, waiting
+     * up to {@link #RELEASE_TIMEOUT} for them.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        long deadline = System.nanoTime() + RELEASE_TIMEOUT.toNanos();
+        try {
+            while (isLeased()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                wait(Math.max(1, remaining / 1_000_000));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        int released = 0;
+        for (PooledSystem pooled : systems) {
+            if (pooled.leases > 0) {
+                log.warn("FMOD decoder system still in use at shutdown, leaving it allocated");
+                continue;
+            }
+            FmodCore.FMOD_System_Release(pooled.system);
+            released++;
+        }
+        log.info("Released {} FMOD decoder systems", released);
+        systems.clear();
+    }
+
+    private boolean isLeased() {
+        for (PooledSystem pooled : systems) {
+            if (pooled.leases > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static MemorySegment createSystem() throws AudioEngineException {
+        try (Arena arena = Arena.ofConfined()) {
+            var systemRef = arena.allocate(ValueLayout.ADDRESS);
+            int result = FmodCore.FMOD_System_Create(systemRef, FmodConstants.FMOD_VERSION);
+            if (result != FmodConstants.FMOD_OK) {
+                throw new AudioEngineException(
+                        "Failed to create FMOD system: " + FmodError.describe(result));
+            }
+            MemorySegment system = systemRef.get(ValueLayout.ADDRESS, 0);
+
+            // Decoding never plays anything, so no system opens the audio device or starts a
+            // mixer thread
+            result =
+                    FmodCore.FMOD_System_SetOutput(
+                            system, FmodConstants.FMOD_OUTPUTTYPE_NOSOUND_NRT);
+            if (result != FmodConstants.FMOD_OK) {
+                FmodCore.FMOD_System_Release(system);
+                throw new AudioEngineException(
+                        "Failed to set FMOD output type: " + FmodError.describe(result));
+            }
+
+            // Initialize with minimal settings since we're just loading files
+            result =
+                    FmodCore.FMOD_System_Init(
+                            system, 32, FmodConstants.FMOD_INIT_NORMAL, MemorySegment.NULL);
+            if (result != FmodConstants.FMOD_OK) {
+                FmodCore.FMOD_System_Release(system);
+                throw new AudioEngineException(
+                        "Failed to initialize FMOD system: " + FmodError.describe(result));
+            }
+            return system;
+        }
+    }
+}
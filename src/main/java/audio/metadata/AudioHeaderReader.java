@@ -0,0 +1,108 @@
+package audio.metadata;
+
+import audio.AudioMetadata;
+import audio.AudioReadException;
+import audio.flac.FlacSampleReader;
+import audio.mp3.Mp3FrameIndex;
+import audio.pcm.PcmHeaderParser;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reads audio metadata from file headers alone, without opening a decoder or decoding samples.
+ *
+ * <p>WAV and AIFF lengths come from their chunk headers, FLAC from STREAMINFO, and MP3 from the
+ * Xing/Info or VBRI frame and LAME tag (see {@link Mp3FrameIndex#probe}), so describing a file
+ * reads a few kilobytes however long it is. Results are cached per file and reused while the
+ * file's size and modification time are unchanged.
+ */
+@Slf4j
+public final class AudioHeaderReader {
+
+    static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+    private record Entry(long size, long modified, AudioMetadata metadata) {}
+
+    private final Cache<Path, Entry> entries;
+
+    public AudioHeaderReader() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public AudioHeaderReader(int maxEntries) {
+        this.entries = Caffeine.newBuilder().maximumSize(maxEntries).build();
+    }
+
+    /** Whether the file's format has a header parser, judged by its extension. */
+    public static boolean isSupported(@NonNull Path audioFile) {
+        return parserFor(audioFile) != null;
+    }
+
+    /**
+     * Reads a file's metadata from its header.
+     *
+     * @param audioFile Path to the audio file
+     * @return The metadata, or null if the format has no header parser
+     * @throws AudioReadException if the file cannot be read or its header is invalid
+     */
+    public AudioMetadata read(@NonNull Path audioFile) throws AudioReadException {
+        Parser parser = parserFor(audioFile);
+        if (parser == null) {
+            return null;
+        }
+
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(audioFile, BasicFileAttributes.class);
+        } catch (IOException e) {
+            throw new AudioReadException("Failed to read file attributes", audioFile, e);
+        }
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+
+        Path key = audioFile.toAbsolutePath().normalize();
+        Entry entry = entries.getIfPresent(key);
+        if (entry != null && entry.size() == size && entry.modified() == modified) {
+            return entry.metadata();
+        }
+
+        AudioMetadata metadata = parser.parse(audioFile);
+        entries.put(key, new Entry(size, modified, metadata));
+        log.trace("Read header of {}: {}", audioFile.getFileName(), metadata);
+        return metadata;
+    }
+
+    /** Forgets every cached result. */
+    public void clear() {
+        entries.invalidateAll();
+    }
+
+    @FunctionalInterface
+    private interface Parser {
+        AudioMetadata parse(Path audioFile) throws AudioReadException;
+    }
+
+    private static Parser parserFor(Path audioFile) {
+        String fileName = audioFile.getFileName().toString().toLowerCase();
+        if (fileName.endsWith(".wav")
+                || fileName.endsWith(".wave")
+                || fileName.endsWith(".aif")
+                || fileName.endsWith(".aiff")
+                || fileName.endsWith(".aifc")) {
+            return path -> PcmHeaderParser.parse(path).toMetadata();
+        }
+        if (fileName.endsWith(".flac")) {
+            return FlacSampleReader::probe;
+        }
+        if (Mp3FrameIndex.isMp3(audioFile)) {
+            return Mp3FrameIndex::probe;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,108 @@
+package audio.mp3;
+
+/**
+ * A parsed MPEG audio frame header.
+ *
+ * @param version 1 for MPEG-1, 2 for MPEG-2, 25 for MPEG-2.5
+ * @param layer 1, 2 or 3
+ * @param bitrate Bits per second
+ * @param sampleRate Samples per second
+ * @param channelCount 1 for single-channel mode, 2 otherwise
+ * @param samplesPerFrame Samples per channel the frame decodes to
+ * @param length Frame length in bytes, including the header and padding
+ * @param protectedByCrc Whether a 16-bit CRC follows the header
+ */
+public record Mp3FrameHeader(
+        int version,
+        int layer,
+        int bitrate,
+        int sampleRate,
+        int channelCount,
+        int samplesPerFrame,
+        int length,
+        boolean protectedByCrc) {
+
+    static final int MPEG_1 = 1;
+    static final int MPEG_2 = 2;
+    static final int MPEG_2_5 = 25;
+
+    // Kilobits per second by bitrate index, for MPEG-1 layers I-III and MPEG-2/2.5 layers I, II/III
+    private static final int[][] BITRATES = {
+        {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},
+        {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},
+        {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320},
+        {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},
+        {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160},
+    };
+
+    private static final int[] SAMPLE_RATES = {44100, 48000, 32000};
+
+    /**
+     * Parses a 32-bit header word.
+     *
+     * @param word The four header bytes, big-endian
+     * @return The header, or null if the word is not a valid header. Free-format frames, whose
+     *     length cannot be derived from the header, are treated as invalid.
+     */
+    public static Mp3FrameHeader parse(int word) {
+        if ((word & 0xFFE00000) != 0xFFE00000) {
+            return null;
+        }
+        int versionBits = (word >>> 19) & 3;
+        int layerBits = (word >>> 17) & 3;
+        int bitrateIndex = (word >>> 12) & 0xF;
+        int rateIndex = (word >>> 10) & 3;
+        if (versionBits == 1 || layerBits == 0 || bitrateIndex == 0 || bitrateIndex == 15) {
+            return null;
+        }
+        if (rateIndex == 3) {
+            return null;
+        }
+
+        int version = versionBits == 3 ? MPEG_1 : versionBits == 2 ? MPEG_2 : MPEG_2_5;
+        int layer = 4 - layerBits;
+        int table = version == MPEG_1 ? layer - 1 : layer == 1 ? 3 : 4;
+        int bitrate = BITRATES[table][bitrateIndex] * 1000;
+        int sampleRate =
+                SAMPLE_RATES[rateIndex] >> (version == MPEG_1 ? 0 : version == MPEG_2 ? 1 : 2);
+        int padding = (word >>> 9) & 1;
+        int channelCount = ((word >>> 6) & 3) == 3 ? 1 : 2;
+
+        int samplesPerFrame;
+        int length;
+        if (layer == 1) {
+            samplesPerFrame = 384;
+            length = (12 * bitrate / sampleRate + padding) * 4;
+        } else if (layer == 2 || version == MPEG_1) {
+            samplesPerFrame = 1152;
+            length = 144 * bitrate / sampleRate + padding;
+        } else {
+            samplesPerFrame = 576;
+            length = 72 * bitrate / sampleRate + padding;
+        }
+
+        boolean protectedByCrc = (word & 0x10000) == 0;
+        return new Mp3FrameHeader(
+                version,
+                layer,
+                bitrate,
+                sampleRate,
+                channelCount,
+                samplesPerFrame,
+                length,
+                protectedByCrc);
+    }
+
+    /** Whether another header belongs to the same stream, as opposed to a false sync. */
+    public boolean sameStream(Mp3FrameHeader other) {
+        return version == other.version && layer == other.layer && sampleRate == other.sampleRate;
+    }
+
+    /** Length of the layer III side information that follows the header (and CRC). */
+    int sideInfoLength() {
+        if (version == MPEG_1) {
+            return channelCount == 1 ? 17 : 32;
+        }
+        return channelCount == 1 ? 9 : 17;
+    }
+}
@@ -0,0 +1,658 @@
+package audio.mp3;
+
+import audio.AudioMetadata;
+import audio.AudioReadException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Byte offset of every audio frame in an MP3 file, with gapless trimming information.
+ *
+ * <p>Every frame in an MPEG audio stream decodes to the same number of samples, so the frame
+ * holding any sample is a division away and its file offset an array lookup. The index is built
+ * in a single pass over the frame headers and saved next to the audio file as a sidecar ({@code
+ * <name>.mp3idx}), which later opens load instead of rescanning. A sidecar is only trusted while
+ * the audio file's size and modification time match the ones it was built from.
+ *
+ * <p>Sample positions are in the decoder's untrimmed timeline, the one FMOD plays and seeks in:
+ * sample 0 is the first sample the first audio frame decodes to, and the length is every frame's
+ * output. Encoder delay and padding from a LAME tag are recorded (see {@link #leadingSamples})
+ * but not cut, so positions read through the index match playback positions. The Xing/Info frame
+ * that holds the tag is metadata and is not counted as an audio frame.
+ */
+@Slf4j
+public final class Mp3FrameIndex {
+
+    /** Samples of latency the standard MPEG synthesis filterbank adds to decoded output. */
+    public static final int DECODER_DELAY = 529;
+
+    static final String SIDECAR_SUFFIX = ".mp3idx";
+
+    private static final int SIDECAR_MAGIC = 0x4D503349; // "MP3I"
+    private static final int SIDECAR_VERSION = 1;
+
+    // Layer III frames may start their main data up to 511 bytes back, in earlier frames
+    private static final int MAX_RESERVOIR_BYTES = 511;
+
+    private static final ValueLayout.OfInt INT_BE =
+            ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    private final long sourceSize;
+    private final long sourceModified;
+    private final int layer;
+    private final int sampleRate;
+    private final int channelCount;
+    private final int samplesPerFrame;
+    private final int encoderDelay;
+    private final int encoderPadding;
+    private final boolean gapless;
+    private final boolean headerLengthExact;
+
+    private final long[] offsets;
+    private final long dataEnd;
+
+    private Mp3FrameIndex(
+            long sourceSize,
+            long sourceModified,
+            int layer,
+            int sampleRate,
+            int channelCount,
+            int samplesPerFrame,
+            int encoderDelay,
+            int encoderPadding,
+            boolean gapless,
+            boolean headerLengthExact,
+            long[] offsets,
+            long dataEnd) {
+        this.sourceSize = sourceSize;
+        this.sourceModified = sourceModified;
+        this.layer = layer;
+        this.sampleRate = sampleRate;
+        this.channelCount = channelCount;
+        this.samplesPerFrame = samplesPerFrame;
+        this.encoderDelay = encoderDelay;
+        this.encoderPadding = encoderPadding;
+        this.gapless = gapless;
+        this.headerLengthExact = headerLengthExact;
+        this.offsets = offsets;
+        this.dataEnd = dataEnd;
+    }
+
+    /** Whether a file is handled as MP3, judged by its extension. */
+    public static boolean isMp3(@NonNull Path audioFile) {
+        return audioFile.getFileName().toString().toLowerCase().endsWith(".mp3");
+    }
+
+    /**
+     * Loads the sidecar index of an MP3 file, building and saving it first if it is missing or
+     * out of date. Failing to save the sidecar (a read-only directory, say) is not an error; the
+     * index is simply rebuilt on the next load.
+     *
+     * @param audioFile Path to the MP3 file
+     * @return The file's frame index
+     * @throws AudioReadException if the file cannot be read or holds no MPEG audio frames
+     */
+    public static Mp3FrameIndex loadOrBuild(@NonNull Path audioFile) throws AudioReadException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(audioFile, BasicFileAttributes.class);
+        } catch (IOException e) {
+            throw new AudioReadException("Failed to read MP3 file attributes", audioFile, e);
+        }
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+
+        Path sidecar = sidecarFor(audioFile);
+        try {
+            Mp3FrameIndex index = read(sidecar);
+            if (index.sourceSize == size && index.sourceModified == modified) {
+                return index;
+            }
+            log.debug("MP3 index for {} is out of date, rebuilding", audioFile.getFileName());
+        } catch (NoSuchFileException e) {
+            // First open of this file
+        } catch (IOException e) {
+            log.debug("Ignoring unreadable MP3 index {}: {}", sidecar, e.getMessage());
+        }
+
+        Mp3FrameIndex index = build(audioFile, modified);
+        try {
+            index.write(sidecar);
+        } catch (IOException e) {
+            log.debug("Could not save MP3 index {}: {}", sidecar, e.getMessage());
+        }
+        return index;
+    }
+
+    /** The sidecar path the index of an MP3 file is saved to. */
+    public static Path sidecarFor(@NonNull Path audioFile) {
+        return audioFile.resolveSibling(audioFile.getFileName() + SIDECAR_SUFFIX);
+    }
+
+    /**
+     * Describes an MP3 file from its headers alone, without indexing it. A current sidecar gives
+     * the exact length; otherwise the length comes from the Xing/Info or VBRI frame count, or for
+     * untagged streams is estimated from the file size and the first frame's bitrate. Only the
+     * first frames and the end of the file are read.
+     *
+     * @param audioFile Path to the MP3 file
+     * @return The stream's metadata, with the 16-bit width MP3 decodes to
+     * @throws AudioReadException if the file cannot be read or holds no MPEG audio frames
+     */
+    public static AudioMetadata probe(@NonNull Path audioFile) throws AudioReadException {
+        try (FileChannel channel = FileChannel.open(audioFile, StandardOpenOption.READ);
+                Arena arena = Arena.ofConfined()) {
+            BasicFileAttributes attributes =
+                    Files.readAttributes(audioFile, BasicFileAttributes.class);
+            try {
+                Mp3FrameIndex index = read(sidecarFor(audioFile));
+                if (index.sourceSize == attributes.size()
+                        && index.sourceModified == attributes.lastModifiedTime().toMillis()) {
+                    return metadataOf(index.sampleRate, index.channelCount, index.totalSamples());
+                }
+            } catch (IOException e) {
+                // No usable sidecar; fall back to the headers
+            }
+            MemorySegment data = channel.map(MapMode.READ_ONLY, 0, channel.size(), arena);
+            return probe(data, audioFile);
+        } catch (AudioReadException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new AudioReadException("Failed to read MP3 file", audioFile, e);
+        }
+    }
+
+    static AudioMetadata probe(MemorySegment data, Path audioFile) throws AudioReadException {
+        long end = audioEnd(data);
+        long position = findSync(data, skipId3(data), end, null);
+        if (position < 0) {
+            throw new AudioReadException("No MPEG audio frames found", audioFile);
+        }
+        Mp3FrameHeader first = headerAt(data, position, end);
+        InfoTag tag = readInfoTag(data, position, first);
+
+        long frames;
+        if (tag != null && tag.frameCount() >= 0) {
+            frames = tag.frameCount();
+        } else {
+            long audioStart = tag != null ? position + first.length() : position;
+            double bytesPerFrame =
+                    first.samplesPerFrame() / 8.0 * first.bitrate() / first.sampleRate();
+            frames = Math.round((end - audioStart) / bytesPerFrame);
+        }
+
+        return metadataOf(
+                first.sampleRate(), first.channelCount(), frames * first.samplesPerFrame());
+    }
+
+    private static AudioMetadata metadataOf(int sampleRate, int channelCount, long samples) {
+        return new AudioMetadata(
+                sampleRate, channelCount, 16, "MP3", samples, samples / (double) sampleRate);
+    }
+
+    /**
+     * Builds an index by scanning a file's frame headers, without saving it.
+     *
+     * @param audioFile Path to the MP3 file
+     * @param sourceModified Modification time to record for sidecar validation, in epoch millis
+     * @return The index
+     * @throws AudioReadException if the file cannot be read or holds no MPEG audio frames
+     */
+    static Mp3FrameIndex build(Path audioFile, long sourceModified) throws AudioReadException {
+        try (FileChannel channel = FileChannel.open(audioFile, StandardOpenOption.READ);
+                Arena arena = Arena.ofConfined()) {
+            MemorySegment data = channel.map(MapMode.READ_ONLY, 0, channel.size(), arena);
+            Mp3FrameIndex index = scan(data, audioFile, sourceModified);
+            log.debug(
+                    "Indexed {}: {} frames, {} samples, delay {}, padding {}",
+                    audioFile.getFileName(),
+                    index.frameCount(),
+                    index.totalSamples(),
+                    index.encoderDelay,
+                    index.encoderPadding);
+            return index;
+        } catch (AudioReadException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new AudioReadException("Failed to read MP3 file", audioFile, e);
+        }
+    }
+
+    /**
+     * Scans mapped MP3 data in one forward pass. Data between frames that does not parse as a
+     * frame of the same stream is skipped by searching for the next sync word; a final frame cut
+     * short by the end of the file is dropped.
+     */
+    static Mp3FrameIndex scan(MemorySegment data, Path audioFile, long sourceModified)
+            throws AudioReadException {
+        long end = audioEnd(data);
+        long position = findSync(data, skipId3(data), end, null);
+        if (position < 0) {
+            throw new AudioReadException("No MPEG audio frames found", audioFile);
+        }
+        Mp3FrameHeader first = headerAt(data, position, end);
+
+        // The first frame may be a Xing/Info or VBRI frame describing the stream instead of audio
+        InfoTag tag = readInfoTag(data, position, first);
+        if (tag != null) {
+            position += first.length();
+        }
+
+        long[] offsets = new long[Math.max(16, (int) Math.min(end / first.length(), 1 << 20))];
+        int count = 0;
+        long dataEnd = position;
+        long skippedBytes = 0;
+        int bitrate = first.bitrate();
+        boolean constantBitrate = true;
+        while (position + 4 <= end) {
+            Mp3FrameHeader header = headerAt(data, position, end);
+            if (header != null && header.sameStream(first)) {
+                if (position + header.length() > end) {
+                    log.debug("{} ends inside a frame at {}", audioFile.getFileName(), position);
+                    break;
+                }
+                if (count == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                }
+                offsets[count++] = position;
+                constantBitrate &= header.bitrate() == bitrate;
+                position += header.length();
+                dataEnd = position;
+                continue;
+            }
+
+            long next = findSync(data, position + 1, end, first);
+            if (next < 0) {
+                break;
+            }
+            skippedBytes += next - position;
+            position = next;
+        }
+
+        if (count == 0) {
+            throw new AudioReadException("No MPEG audio frames found", audioFile);
+        }
+        if (skippedBytes > 0) {
+            log.debug(
+                    "Skipped {} bytes of non-audio data in {}",
+                    skippedBytes,
+                    audioFile.getFileName());
+        }
+
+        boolean gapless = tag != null && tag.hasDelay();
+        boolean headerLengthExact =
+                tag != null && tag.frameCount() >= 0 ? tag.frameCount() == count : constantBitrate;
+        return new Mp3FrameIndex(
+                data.byteSize(),
+                sourceModified,
+                first.layer(),
+                first.sampleRate(),
+                first.channelCount(),
+                first.samplesPerFrame(),
+                gapless ? tag.encoderDelay() : 0,
+                gapless ? tag.encoderPadding() : 0,
+                gapless,
+                headerLengthExact,
+                Arrays.copyOf(offsets, count),
+                dataEnd);
+    }
+
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    public int channelCount() {
+        return channelCount;
+    }
+
+    /** MPEG audio layer (1, 2 or 3). */
+    public int layer() {
+        return layer;
+    }
+
+    /** Samples per channel in every frame. */
+    public int samplesPerFrame() {
+        return samplesPerFrame;
+    }
+
+    /** Number of audio frames, excluding any Xing/Info frame. */
+    public int frameCount() {
+        return offsets.length;
+    }
+
+    /** Encoder delay from the LAME tag, or 0 if the file has none. */
+    public int encoderDelay() {
+        return encoderDelay;
+    }
+
+    /** Encoder padding from the LAME tag, or 0 if the file has none. */
+    public int encoderPadding() {
+        return encoderPadding;
+    }
+
+    /** Samples of decoder output that precede the original audio, for gapless trimming. */
+    public long leadingSamples() {
+        return gapless ? encoderDelay + DECODER_DELAY : 0;
+    }
+
+    /** Samples of decoder output that follow the original audio, for gapless trimming. */
+    public long trailingSamples() {
+        return gapless ? Math.max(0, encoderPadding - DECODER_DELAY) : 0;
+    }
+
+    /** Length of the stream in samples per channel, as decoded. */
+    public long totalSamples() {
+        return (long) offsets.length * samplesPerFrame;
+    }
+
+    public double durationSeconds() {
+        return totalSamples() / (double) sampleRate;
+    }
+
+    /**
+     * Whether a decoder that derives the stream length from headers alone gets it right: the
+     * stream is constant bitrate, or its Xing/VBRI frame count matches the frames present.
+     */
+    public boolean isHeaderLengthExact() {
+        return headerLengthExact;
+    }
+
+    /**
+     * The frame whose decoded output contains a sample.
+     *
+     * @param sample Sample position
+     * @return Frame index, clamped to the valid range
+     */
+    public int frameContaining(long sample) {
+        long frame = sample / samplesPerFrame;
+        return (int) Math.max(0, Math.min(frame, offsets.length - 1));
+    }
+
+    /** Position of a frame's first decoded sample. */
+    public long firstSampleOf(int frame) {
+        return (long) frame * samplesPerFrame;
+    }
+
+    /** File offset of a frame's header. */
+    public long frameOffset(int frame) {
+        return offsets[frame];
+    }
+
+    /** File offset just past a frame, where the next frame (or trailing data) starts. */
+    public long frameEnd(int frame) {
+        return frame + 1 < offsets.length ? offsets[frame + 1] : dataEnd;
+    }
+
+    /**
+     * The frame to start decoding at so that a frame decodes correctly. A frame's output overlaps
+     * the previous frame's, which must therefore decode correctly too; and layer III frames may
+     * take main data from up to {@value #MAX_RESERVOIR_BYTES} bytes of earlier frames.
+     *
+     * @param frame The first frame whose output is needed
+     * @return The frame to start decoding at; output before {@code frame} is discarded
+     */
+    public int decodeStart(int frame) {
+        int overlap = Math.max(0, frame - 1);
+        int start = overlap;
+        if (layer == 3) {
+            while (start > 0 && offsets[overlap] - offsets[start] < MAX_RESERVOIR_BYTES) {
+                start--;
+            }
+        }
+        return start;
+    }
+
+    void write(Path sidecar) throws IOException {
+        Path temp = Files.createTempFile(sidecar.toAbsolutePath().getParent(), ".mp3idx", ".tmp");
+        try {
+            try (DataOutputStream out =
+                    new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(SIDECAR_MAGIC);
+                out.writeInt(SIDECAR_VERSION);
+                out.writeLong(sourceSize);
+                out.writeLong(sourceModified);
+                out.writeInt(layer);
+                out.writeInt(sampleRate);
+                out.writeInt(channelCount);
+                out.writeInt(samplesPerFrame);
+                out.writeInt(encoderDelay);
+                out.writeInt(encoderPadding);
+                out.writeBoolean(gapless);
+                out.writeBoolean(headerLengthExact);
+                out.writeInt(offsets.length);
+                out.writeLong(dataEnd);
+                // Offsets ascend by a frame length or so, which fits in two varint bytes
+                long previous = 0;
+                for (long offset : offsets) {
+                    writeVarLong(out, offset - previous);
+                    previous = offset;
+                }
+            }
+            Files.move(
+                    temp,
+                    sidecar,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    static Mp3FrameIndex read(Path sidecar) throws IOException {
+        try (DataInputStream in =
+                new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecar)))) {
+            if (in.readInt() != SIDECAR_MAGIC || in.readInt() != SIDECAR_VERSION) {
+                throw new IOException("Not an MP3 index, or an unsupported version");
+            }
+            long sourceSize = in.readLong();
+            long sourceModified = in.readLong();
+            int layer = in.readInt();
+            int sampleRate = in.readInt();
+            int channelCount = in.readInt();
+            int samplesPerFrame = in.readInt();
+            int encoderDelay = in.readInt();
+            int encoderPadding = in.readInt();
+            boolean gapless = in.readBoolean();
+            boolean headerLengthExact = in.readBoolean();
+            int count = in.readInt();
+            long dataEnd = in.readLong();
+            if (count <= 0 || sampleRate <= 0 || samplesPerFrame <= 0 || dataEnd > sourceSize) {
+                throw new IOException("Corrupt MP3 index header");
+            }
+
+            // Each frame is at least a header long, which bounds the count before allocating
+            long[] offsets = new long[(int) Math.min(count, sourceSize / 4)];
+            long previous = 0;
+            for (int i = 0; i < count; i++) {
+                long offset = previous + readVarLong(in);
+                if (i >= offsets.length || (i > 0 && offset <= previous) || offset >= dataEnd) {
+                    throw new IOException("Corrupt MP3 index offsets");
+                }
+                offsets[i] = offset;
+                previous = offset;
+            }
+            return new Mp3FrameIndex(
+                    sourceSize,
+                    sourceModified,
+                    layer,
+                    sampleRate,
+                    channelCount,
+                    samplesPerFrame,
+                    encoderDelay,
+                    encoderPadding,
+                    gapless,
+                    headerLengthExact,
+                    offsets,
+                    dataEnd);
+        }
+    }
+
+    private static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Truncated MP3 index");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt MP3 index varint");
+    }
+
+    /**
+     * Stream information from a Xing/Info or VBRI frame.
+     *
+     * @param frameCount Audio frames the encoder wrote, or -1 if not recorded
+     * @param encoderDelay Samples of encoder delay, or -1 without a LAME tag
+     * @param encoderPadding Samples of encoder padding, or -1 without a LAME tag
+     */
+    private record InfoTag(long frameCount, int encoderDelay, int encoderPadding) {
+        boolean hasDelay() {
+            return encoderDelay >= 0;
+        }
+    }
+
+    private static InfoTag readInfoTag(MemorySegment data, long frame, Mp3FrameHeader header) {
+        if (header.layer() != 3) {
+            return null;
+        }
+        long frameEnd = frame + header.length();
+        long xing = frame + 4 + (header.protectedByCrc() ? 2 : 0) + header.sideInfoLength();
+        if (xing + 8 <= frameEnd && (hasTag(data, xing, "Xing") || hasTag(data, xing, "Info"))) {
+            int flags = data.get(INT_BE, xing + 4);
+            long position = xing + 8;
+            long frameCount = -1;
+            if ((flags & 1) != 0 && position + 4 <= frameEnd) {
+                frameCount = Integer.toUnsignedLong(data.get(INT_BE, position));
+                position += 4;
+            }
+            position += ((flags & 2) != 0 ? 4 : 0) + ((flags & 4) != 0 ? 100 : 0);
+            position += (flags & 8) != 0 ? 4 : 0;
+
+            // The LAME extension: a 9-byte encoder version, then the delay and padding as two
+            // 12-bit fields 21 bytes in. FFmpeg writes the same layout under its own name.
+            int delay = -1;
+            int padding = -1;
+            if (position + 24 <= frameEnd
+                    && (hasTag(data, position, "LAME")
+                            || hasTag(data, position, "Lavc")
+                            || hasTag(data, position, "Lavf"))) {
+                int packed =
+                        byteAt(data, position + 21) << 16
+                                | byteAt(data, position + 22) << 8
+                                | byteAt(data, position + 23);
+                delay = packed >>> 12;
+                padding = packed & 0xFFF;
+            }
+            return new InfoTag(frameCount, delay, padding);
+        }
+
+        // Fraunhofer's VBRI header sits at a fixed offset after 32 bytes of side information
+        long vbri = frame + 4 + 32;
+        if (vbri + 18 <= frameEnd && hasTag(data, vbri, "VBRI")) {
+            return new InfoTag(Integer.toUnsignedLong(data.get(INT_BE, vbri + 14)), -1, -1);
+        }
+        return null;
+    }
+
+    /**
+     * Finds the next position at or after {@code from} holding a frame header that is followed by
+     * another header of the same stream (or by the end of the audio). Requiring two headers in a
+     * row keeps stray sync patterns in tags and junk from being taken as frames.
+     */
+    private static long findSync(
+            MemorySegment data, long from, long end, Mp3FrameHeader reference) {
+        for (long position = from; position + 4 <= end; position++) {
+            if (byteAt(data, position) != 0xFF) {
+                continue;
+            }
+            Mp3FrameHeader header = headerAt(data, position, end);
+            if (header == null || (reference != null && !header.sameStream(reference))) {
+                continue;
+            }
+            long next = position + header.length();
+            if (next == end) {
+                return position;
+            }
+            Mp3FrameHeader following = headerAt(data, next, end);
+            if (following != null && following.sameStream(header)) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private static Mp3FrameHeader headerAt(MemorySegment data, long position, long end) {
+        if (position + 4 > end) {
+            return null;
+        }
+        return Mp3FrameHeader.parse(data.get(INT_BE, position));
+    }
+
+    /** Returns the offset just past a leading ID3v2 tag. */
+    private static long skipId3(MemorySegment data) {
+        if (data.byteSize() < 10 || !hasTag(data, 0, "ID3")) {
+            return 0;
+        }
+        // The tag size is "syncsafe": four 7-bit groups
+        long size = 0;
+        for (int i = 6; i < 10; i++) {
+            size = (size << 7) | (byteAt(data, i) & 0x7F);
+        }
+        boolean footer = (byteAt(data, 5) & 0x10) != 0;
+        return Math.min(data.byteSize(), 10 + size + (footer ? 10 : 0));
+    }
+
+    /** Returns the end of the audio data, before a trailing 128-byte ID3v1 tag if present. */
+    private static long audioEnd(MemorySegment data) {
+        long size = data.byteSize();
+        return size >= 128 && hasTag(data, size - 128, "TAG") ? size - 128 : size;
+    }
+
+    private static boolean hasTag(MemorySegment data, long position, String tag) {
+        if (position + tag.length() > data.byteSize()) {
+            return false;
+        }
+        for (int i = 0; i < tag.length(); i++) {
+            if (byteAt(data, position + i) != tag.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int byteAt(MemorySegment data, long position) {
+        return data.get(ValueLayout.JAVA_BYTE, position) & 0xFF;
+    }
+}
@@ -0,0 +1,129 @@
+package audio.pcm;
+
+import audio.SampleView;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.NonNull;
+
+/**
+ * A {@link SampleView} over a run of equally sized cached blocks.
+ *
+ * <p>The view holds references to the blocks rather than copying them, so samples are widened from
+ * their compact storage only as they are read. It retains every block (see {@link
+ * SampleBuffer#retain}) until it is closed, so the blocks stay readable even if the cache that
+ * produced them evicts and releases them in the meantime.
+ */
+public final class BlockSampleView implements SampleView {
+
+    private final List<SampleBuffer> blocks;
+    private final long firstBlockFrame;
+    private final int blockFrames;
+    private final int sampleRate;
+    private final int channelCount;
+    private final long startFrame;
+    private final long frameCount;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    /**
+     * Creates a view over consecutive blocks.
+     *
+     * @param blocks Consecutive blocks; every block but the last holds exactly blockFrames frames
+     * @param firstBlockFrame File position of the first frame of the first block
+     * @param blockFrames Frames per full block
+     * @param sampleRate Sample rate in Hz
+     * @param channelCount Number of interleaved channels
+     * @param startFrame File position of the first frame of the view
+     * @param frameCount Number of frames in the view; must lie within the blocks
+     * @throws IllegalStateException if a block has already been freed
+     */
+    public BlockSampleView(
+            @NonNull List<SampleBuffer> blocks,
+            long firstBlockFrame,
+            int blockFrames,
+            int sampleRate,
+            int channelCount,
+            long startFrame,
+            long frameCount) {
+        if (startFrame < firstBlockFrame || frameCount < 0) {
+            throw new IllegalArgumentException(
+                    "View [" + startFrame + ", +" + frameCount + ") starts before its blocks");
+        }
+        this.blocks = List.copyOf(blocks);
+        for (int i = 0; i < this.blocks.size(); i++) {
+            if (!this.blocks.get(i).retain()) {
+                this.blocks.subList(0, i).forEach(SampleBuffer::release);
+                throw new IllegalStateException("Block " + i + " of the view was already freed");
+            }
+        }
+        this.firstBlockFrame = firstBlockFrame;
+        this.blockFrames = blockFrames;
+        this.sampleRate = sampleRate;
+        this.channelCount = channelCount;
+        this.startFrame = startFrame;
+        this.frameCount = frameCount;
+    }
+
+    @Override
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int channelCount() {
+        return channelCount;
+    }
+
+    @Override
+    public long startFrame() {
+        return startFrame;
+    }
+
+    @Override
+    public long frameCount() {
+        return frameCount;
+    }
+
+    @Override
+    public double sample(long frame, int channel) {
+        checkOpen();
+        Objects.checkIndex(frame, frameCount);
+        Objects.checkIndex(channel, channelCount);
+        long offset = startFrame - firstBlockFrame + frame;
+        SampleBuffer block = blocks.get((int) (offset / blockFrames));
+        return block.get((offset % blockFrames) * channelCount + channel);
+    }
+
+    @Override
+    public void read(long frame, @NonNull double[] dest, int destOffset, int frames) {
+        checkOpen();
+        Objects.checkFromIndexSize(frame, frames, frameCount);
+        Objects.checkFromIndexSize(destOffset, (long) frames * channelCount, dest.length);
+
+        long offset = startFrame - firstBlockFrame + frame;
+        int remaining = frames;
+        int written = destOffset;
+        while (remaining > 0) {
+            SampleBuffer block = blocks.get((int) (offset / blockFrames));
+            int within = (int) (offset % blockFrames);
+            int run = Math.min(remaining, blockFrames - within);
+            block.read((long) within * channelCount, dest, written, run * channelCount);
+            offset += run;
+            written += run * channelCount;
+            remaining -= run;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            blocks.forEach(SampleBuffer::release);
+        }
+    }
+
+    private void checkOpen() {
+        if (closed.get()) {
+            throw new IllegalStateException("Sample view is closed");
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package audio.pcm;
+
+import audio.AudioMetadata;
+import audio.SampleView;
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A decoded file reopened from a {@link PcmDiskCache}, with its samples mapped rather than read.
+ *
+ * <p>Slices and views read straight from the mapping, so serving a range costs no decoding and no
+ * copy; the mapping is released once nothing references it any more.
+ */
+public final class CachedPcm {
+
+    // Views split the file into slices of this many frames, keeping block indexes in int range
+    private static final int VIEW_BLOCK_FRAMES = 1 << 20;
+
+    private final AudioMetadata metadata;
+    private final MemorySegment samples;
+
+    CachedPcm(AudioMetadata metadata, MemorySegment samples) {
+        this.metadata = metadata;
+        this.samples = samples;
+    }
+
+    /** Metadata of the source file, with the frame count that was actually decoded. */
+    public AudioMetadata metadata() {
+        return metadata;
+    }
+
+    /**
+     * Returns a run of frames as a buffer over the mapping. Fewer frames are returned at end of
+     * file.
+     *
+     * @param startFrame First frame of the run
+     * @param frameCount Maximum number of frames
+     * @return The frames, empty if the run starts at or past the end
+     */
+    public SampleBuffer slice(long startFrame, long frameCount) {
+        if (startFrame < 0 || frameCount < 0) {
+            throw new IllegalArgumentException(
+                    "Invalid slice: start " + startFrame + ", frames " + frameCount);
+        }
+        long frames = Math.max(0, Math.min(frameCount, metadata.frameCount() - startFrame));
+        long bytesPerFrame = 4L * metadata.channelCount();
+        long offset = frames == 0 ? 0 : startFrame * bytesPerFrame;
+        return new MappedFloat32SampleBuffer(samples.asSlice(offset, frames * bytesPerFrame));
+    }
+
+    /**
+     * Returns a range as a view over the mapping.
+     *
+     * @param startFrame First frame of the view
+     * @param frameCount Maximum number of frames; the view stops at end of file
+     * @return The view
+     */
+    public SampleView view(long startFrame, long frameCount) {
+        long frames = Math.max(0, Math.min(frameCount, metadata.frameCount() - startFrame));
+        long firstBlock = startFrame / VIEW_BLOCK_FRAMES;
+        long lastBlock = frames == 0 ? firstBlock : (startFrame + frames - 1) / VIEW_BLOCK_FRAMES;
+        List<SampleBuffer> blocks = new ArrayList<>();
+        for (long block = firstBlock; block <= lastBlock; block++) {
+            blocks.add(slice(block * VIEW_BLOCK_FRAMES, VIEW_BLOCK_FRAMES));
+        }
+        return new BlockSampleView(
+                blocks,
+                firstBlock * VIEW_BLOCK_FRAMES,
+                VIEW_BLOCK_FRAMES,
+                metadata.sampleRate(),
+                metadata.channelCount(),
+                startFrame,
+                frames);
+    }
+}
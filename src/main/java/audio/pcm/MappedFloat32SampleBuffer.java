@@ -0,0 +1,55 @@
+package audio.pcm;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import lombok.NonNull;
+
+/**
+ * Normalized 32-bit float samples read in place from a mapped file. Nothing is copied onto the
+ * heap; the mapping stays alive for as long as the buffer is reachable.
+ */
+final class MappedFloat32SampleBuffer implements SampleBuffer {
+
+    private static final ValueLayout.OfFloat FLOAT_LE =
+            ValueLayout.JAVA_FLOAT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    private final MemorySegment samples;
+
+    MappedFloat32SampleBuffer(@NonNull MemorySegment samples) {
+        this.samples = samples;
+    }
+
+    @Override
+    public long sampleCount() {
+        return samples.byteSize() / 4;
+    }
+
+    @Override
+    public int bitsPerSample() {
+        return 32;
+    }
+
+    @Override
+    public long sizeBytes() {
+        return samples.byteSize();
+    }
+
+    @Override
+    public double get(long index) {
+        return samples.getAtIndex(FLOAT_LE, index);
+    }
+
+    @Override
+    public void read(long offset, @NonNull double[] dest, int destOffset, int count) {
+        PcmConverter.toDouble(
+                samples,
+                offset * 4,
+                PcmFormat.Encoding.FLOAT,
+                32,
+                ByteOrder.LITTLE_ENDIAN,
+                dest,
+                destOffset,
+                count);
+    }
+}
@@ -0,0 +1,38 @@
+package audio.pcm;
+
+import audio.SampleReader;
+import audio.codec.ContainerFormat;
+import audio.codec.SampleReaderProvider;
+
+/**
+ * Offers {@link MappedPcmSampleReader} for WAV and AIFF files, which it reads straight from a
+ * memory mapping without decoding. Files holding compressed samples fail its header parser and go
+ * to the next backend.
+ */
+public class MappedPcmReaderProvider implements SampleReaderProvider {
+
+    @Override
+    public String name() {
+        return "mapped-pcm";
+    }
+
+    @Override
+    public boolean supports(ContainerFormat format) {
+        return format == ContainerFormat.WAV || format == ContainerFormat.AIFF;
+    }
+
+    @Override
+    public int priority() {
+        return 100;
+    }
+
+    @Override
+    public boolean decodes() {
+        return false;
+    }
+
+    @Override
+    public SampleReader create() {
+        return new MappedPcmSampleReader();
+    }
+}
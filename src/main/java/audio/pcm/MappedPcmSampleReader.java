@@ -0,0 +1,215 @@
+package audio.pcm;
+
+import audio.AudioData;
+import audio.AudioMetadata;
+import audio.AudioReadException;
+import audio.SampleReader;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Pure-Java SampleReader for uncompressed WAV and AIFF files that never decodes a whole file.
+ *
+ * <p>Opening a file parses its header and memory-maps the sample region; each read converts only
+ * the requested frames. The cost of a read therefore depends on the window size, not the file
+ * length, and the page cache rather than the Java heap holds the audio. No native audio library is
+ * required.
+ *
+ * <p>Mappings are cached for a bounded number of files and remade when a file's size or
+ * modification time changes, so a file re-recorded in place is not read through a stale mapping.
+ */
+@Slf4j
+public class MappedPcmSampleReader implements SampleReader {
+
+    static final int DEFAULT_MAX_FILES = 1_000;
+
+    private final Cache<Path, MappedPcmFile> files;
+
+    // Mapping and page faults block, so reads stay off the common pool
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile boolean closed = false;
+
+    /** Sample region of a file mapped into memory, with its layout and the file it came from. */
+    private record MappedPcmFile(long size, long modified, PcmFormat format, MemorySegment data) {}
+
+    public MappedPcmSampleReader() {
+        this(DEFAULT_MAX_FILES);
+    }
+
+    public MappedPcmSampleReader(int maxFiles) {
+        this.files = Caffeine.newBuilder().maximumSize(maxFiles).build();
+    }
+
+    @Override
+    public CompletableFuture<AudioData> readSamples(
+            @NonNull Path audioFile, long startFrame, long frameCount) {
+
+        if (closed) {
+            return CompletableFuture.failedFuture(
+                    new AudioReadException("Reader is closed", audioFile));
+        }
+
+        if (startFrame < 0 || frameCount < 0) {
+            return CompletableFuture.failedFuture(
+                    new IllegalArgumentException("Negative frame values not allowed"));
+        }
+
+        return CompletableFuture.supplyAsync(
+                () -> {
+                    try {
+                        MappedPcmFile mapped = mapOrGetCached(audioFile);
+                        return readFromMapping(audioFile, mapped, startFrame, frameCount);
+                    } catch (AudioReadException e) {
+                        throw new CompletionException(e);
+                    }
+                },
+                executor);
+    }
+
+    @Override
+    public CompletableFuture<AudioMetadata> getMetadata(@NonNull Path audioFile) {
+        if (closed) {
+            return CompletableFuture.failedFuture(
+                    new AudioReadException("Reader is closed", audioFile));
+        }
+
+        return CompletableFuture.supplyAsync(
+                () -> {
+                    try {
+                        return mapOrGetCached(audioFile).format().toMetadata();
+                    } catch (AudioReadException e) {
+                        throw new CompletionException(e);
+                    }
+                },
+                executor);
+    }
+
+    @Override
+    public boolean isFormatSupported(@NonNull Path audioFile) {
+        String fileName = audioFile.getFileName().toString().toLowerCase();
+        return fileName.endsWith(".wav")
+                || fileName.endsWith(".wave")
+                || fileName.endsWith(".aif")
+                || fileName.endsWith(".aiff")
+                || fileName.endsWith(".aifc");
+    }
+
+    private MappedPcmFile mapOrGetCached(Path audioFile) throws AudioReadException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(audioFile, BasicFileAttributes.class);
+        } catch (IOException e) {
+            throw new AudioReadException("Failed to read file attributes", audioFile, e);
+        }
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+
+        Path key = audioFile.toAbsolutePath().normalize();
+        MappedPcmFile mapped = files.getIfPresent(key);
+        if (mapped != null && mapped.size() == size && mapped.modified() == modified) {
+            return mapped;
+        }
+
+        // Mapping is cheap, so a concurrent duplicate simply replaces the other
+        mapped = map(audioFile, size, modified);
+        files.put(key, mapped);
+        return mapped;
+    }
+
+    private MappedPcmFile map(Path audioFile, long size, long modified) throws AudioReadException {
+        try (FileChannel channel = FileChannel.open(audioFile, StandardOpenOption.READ)) {
+            PcmFormat format = PcmHeaderParser.parse(channel, audioFile);
+
+            // The automatic arena unmaps the region once no reader references it any more,
+            // so eviction never races with a read still in progress.
+            MemorySegment data =
+                    channel.map(
+                            MapMode.READ_ONLY,
+                            format.dataOffset(),
+                            format.dataLength(),
+                            Arena.ofAuto());
+
+            log.debug(
+                    "Mapped {} ({} frames, {} Hz, {} ch, {}-bit {})",
+                    audioFile.getFileName(),
+                    format.frameCount(),
+                    format.sampleRate(),
+                    format.channelCount(),
+                    format.bitsPerSample(),
+                    format.encoding());
+
+            return new MappedPcmFile(size, modified, format, data);
+        } catch (AudioReadException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new AudioReadException("Failed to map audio file", audioFile, e);
+        }
+    }
+
+    private AudioData readFromMapping(
+            Path audioFile, MappedPcmFile mapped, long startFrame, long frameCount)
+            throws AudioReadException {
+        PcmFormat format = mapped.format();
+        int channelCount = format.channelCount();
+        long totalFrames = format.frameCount();
+
+        if (startFrame >= totalFrames) {
+            return AudioData.empty(format.sampleRate(), channelCount, startFrame);
+        }
+
+        long actualFrameCount = Math.min(frameCount, totalFrames - startFrame);
+        if (actualFrameCount <= 0) {
+            return AudioData.empty(format.sampleRate(), channelCount, startFrame);
+        }
+
+        long sampleCount = actualFrameCount * channelCount;
+        if (sampleCount > Integer.MAX_VALUE - 8) {
+            throw new AudioReadException(
+                    "Requested range exceeds maximum array size",
+                    audioFile,
+                    startFrame,
+                    frameCount);
+        }
+
+        double[] samples = new double[(int) sampleCount];
+        PcmConverter.toDouble(
+                mapped.data(),
+                startFrame * format.bytesPerFrame(),
+                format,
+                samples,
+                0,
+                samples.length);
+
+        return new AudioData(
+                samples, format.sampleRate(), channelCount, startFrame, actualFrameCount);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        executor.shutdown();
+
+        // Dropping the references lets the automatic arenas unmap the files
+        files.invalidateAll();
+        log.info("Closed mapped PCM sample reader");
+    }
+}
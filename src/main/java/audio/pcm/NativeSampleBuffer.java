@@ -0,0 +1,162 @@
+package audio.pcm;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.ref.Cleaner;
+import java.nio.ByteOrder;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.NonNull;
+
+/**
+ * Samples held off-heap in a segment of their own shared arena, in the source's encoding.
+ *
+ * <p>Decoded blocks kept on the heap outlive a few collections and are promoted to the old
+ * generation, where a large cache makes for long pauses. These buffers live outside the heap and
+ * are freed explicitly instead: the creator holds the first reference, anything that keeps the
+ * buffer past a call (such as a {@link BlockSampleView}) takes one of its own, and the arena is
+ * closed when the last is released. Reading after that throws {@link IllegalStateException}. A
+ * buffer that becomes unreachable with references outstanding, for instance the result of an
+ * abandoned decode, is freed by a cleaner, so a missed release costs time but never memory.
+ */
+public final class NativeSampleBuffer implements SampleBuffer {
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final PcmFormat.Encoding encoding;
+    private final int bitsPerSample;
+    private final ByteOrder order;
+    private final MemorySegment samples;
+    private final AtomicInteger references = new AtomicInteger(1);
+    private final Cleaner.Cleanable cleanable;
+
+    private NativeSampleBuffer(
+            PcmFormat.Encoding encoding,
+            int bitsPerSample,
+            ByteOrder order,
+            Arena arena,
+            MemorySegment samples) {
+        this.encoding = encoding;
+        this.bitsPerSample = bitsPerSample;
+        this.order = order;
+        this.samples = samples;
+        // The action holds only the arena, so it does not keep the buffer reachable
+        this.cleanable = CLEANER.register(this, arena::close);
+    }
+
+    /**
+     * Copies raw PCM from one or more native segments into off-heap storage. The segments are
+     * concatenated in order. The caller holds the buffer's first reference.
+     *
+     * @param encoding Sample encoding of the source
+     * @param bitsPerSample Source sample width
+     * @param order Byte order of the source
+     * @param parts Segments holding the raw sample bytes
+     * @return The buffer
+     * @throws IllegalArgumentException if the format cannot be converted
+     */
+    public static NativeSampleBuffer copyOf(
+            @NonNull PcmFormat.Encoding encoding,
+            int bitsPerSample,
+            @NonNull ByteOrder order,
+            @NonNull MemorySegment... parts) {
+        if (!PcmFormat.isSupported(encoding, bitsPerSample)) {
+            throw new IllegalArgumentException(
+                    "Unsupported sample format: " + bitsPerSample + "-bit " + encoding);
+        }
+        int bytesPerSample = bitsPerSample / 8;
+        long totalBytes = 0;
+        for (MemorySegment part : parts) {
+            totalBytes += part.byteSize();
+        }
+        totalBytes -= totalBytes % bytesPerSample;
+
+        Arena arena = Arena.ofShared();
+        MemorySegment samples = arena.allocate(totalBytes, bytesPerSample);
+        long position = 0;
+        for (MemorySegment part : parts) {
+            long count = Math.min(part.byteSize(), totalBytes - position);
+            MemorySegment.copy(part, 0, samples, position, count);
+            position += count;
+        }
+        return new NativeSampleBuffer(encoding, bitsPerSample, order, arena, samples);
+    }
+
+    PcmFormat.Encoding encoding() {
+        return encoding;
+    }
+
+    ByteOrder order() {
+        return order;
+    }
+
+    /** The raw sample bytes, valid while a reference is held. */
+    MemorySegment samples() {
+        return samples;
+    }
+
+    @Override
+    public long sampleCount() {
+        return samples.byteSize() / (bitsPerSample / 8);
+    }
+
+    @Override
+    public int bitsPerSample() {
+        return bitsPerSample;
+    }
+
+    @Override
+    public long sizeBytes() {
+        return samples.byteSize();
+    }
+
+    @Override
+    public double get(long index) {
+        Objects.checkIndex(index, sampleCount());
+        return PcmConverter.sampleAt(
+                samples, index * (bitsPerSample / 8), encoding, bitsPerSample, order);
+    }
+
+    @Override
+    public void read(long offset, @NonNull double[] dest, int destOffset, int count) {
+        Objects.checkFromIndexSize(offset, count, sampleCount());
+        PcmConverter.toDouble(
+                samples,
+                offset * (bitsPerSample / 8),
+                encoding,
+                bitsPerSample,
+                order,
+                dest,
+                destOffset,
+                count);
+    }
+
+    @Override
+    public boolean retain() {
+        while (true) {
+            int count = references.get();
+            if (count == 0) {
+                return false;
+            }
+            if (references.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Drops a reference, freeing the samples if it was the last.
+     *
+     * @throws IllegalStateException if every reference has already been released
+     */
+    @Override
+    public void release() {
+        int count = references.decrementAndGet();
+        if (count == 0) {
+            cleanable.clean();
+        } else if (count < 0) {
+            references.incrementAndGet();
+            throw new IllegalStateException("Sample buffer released more often than retained");
+        }
+    }
+}
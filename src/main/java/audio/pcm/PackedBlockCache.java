@@ -0,0 +1,128 @@
+package audio.pcm;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.NonNull;
+
+/**
+ * A warm cache tier that keeps decoded blocks packed (see {@link PackedSampleBlock}) after the
+ * decoded cache above it has evicted them.
+ *
+ * <p>Blocks are added as the tier above evicts them and stay here, bounded by their packed size,
+ * until this tier evicts them in turn. A block found here is unpacked into a new buffer for the
+ * tier above, and its packed copy is kept, so a block that moves between the tiers repeatedly is
+ * packed only once. Only off-heap buffers ({@link NativeSampleBuffer}) are packed; other buffers
+ * are mapped or cheap to rebuild. A cache with no capacity holds nothing.
+ *
+ * @param <K> Type of the block keys, shared with the tier above
+ */
+public final class PackedBlockCache<K> {
+
+    /**
+     * Counts and sizes of one tier.
+     *
+     * @param hitCount Lookups answered from the tier
+     * @param missCount Lookups the tier could not answer
+     * @param blockCount Blocks held
+     * @param packedBytes Heap held by the packed blocks
+     * @param unpackedBytes Size the held blocks would have unpacked
+     */
+    public record Stats(
+            long hitCount, long missCount, long blockCount, long packedBytes, long unpackedBytes) {
+
+        /** Unpacked size per packed byte, or 1 if the tier is empty. */
+        public double compressionRatio() {
+            return packedBytes > 0 ? (double) unpackedBytes / packedBytes : 1.0;
+        }
+    }
+
+    private final Cache<K, PackedSampleBlock> blocks;
+    private final AtomicLong unpackedBytes = new AtomicLong();
+
+    /**
+     * Creates a tier.
+     *
+     * @param maxBytes Upper bound on the packed size of the held blocks, or 0 to hold nothing
+     */
+    public PackedBlockCache(long maxBytes) {
+        this.blocks =
+                maxBytes > 0
+                        ? Caffeine.newBuilder()
+                                .maximumWeight(maxBytes)
+                                .weigher((K key, PackedSampleBlock block) -> weightOf(block))
+                                .executor(Runnable::run)
+                                .removalListener(this::onRemoval)
+                                .recordStats()
+                                .build()
+                        : null;
+    }
+
+    /**
+     * Packs a block evicted from the tier above, unless it is already held. The caller must hold
+     * a reference to the block for the duration of the call.
+     *
+     * @param key The block's key
+     * @param block The decoded block
+     * @param channelCount Number of interleaved channels in the block
+     */
+    public void add(@NonNull K key, @NonNull SampleBuffer block, int channelCount) {
+        if (blocks == null
+                || !(block instanceof NativeSampleBuffer buffer)
+                || blocks.asMap().containsKey(key)) {
+            return;
+        }
+        PackedSampleBlock packed = PackedSampleBlock.pack(buffer, channelCount);
+        if (blocks.asMap().putIfAbsent(key, packed) == null) {
+            unpackedBytes.addAndGet(packed.unpackedBytes());
+        }
+    }
+
+    /**
+     * Unpacks a held block.
+     *
+     * @param key The block's key
+     * @return A new buffer holding the block, whose first reference the caller holds, or null if
+     *     the block is not held
+     */
+    public SampleBuffer get(@NonNull K key) {
+        if (blocks == null) {
+            return null;
+        }
+        PackedSampleBlock packed = blocks.getIfPresent(key);
+        return packed != null ? packed.unpack() : null;
+    }
+
+    /** Forgets every held block. */
+    public void clear() {
+        if (blocks != null) {
+            blocks.invalidateAll();
+        }
+    }
+
+    /** Returns a snapshot of the tier's hit counts and sizes. */
+    public Stats stats() {
+        if (blocks == null) {
+            return new Stats(0, 0, 0, 0, 0);
+        }
+        long packedBytes =
+                blocks.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L);
+        return new Stats(
+                blocks.stats().hitCount(),
+                blocks.stats().missCount(),
+                blocks.estimatedSize(),
+                packedBytes,
+                unpackedBytes.get());
+    }
+
+    private static int weightOf(PackedSampleBlock block) {
+        return (int) Math.min(Integer.MAX_VALUE, block.packedBytes());
+    }
+
+    private void onRemoval(K key, PackedSampleBlock block, RemovalCause cause) {
+        if (block != null) {
+            unpackedBytes.addAndGet(-block.unpackedBytes());
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package audio.pcm;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import lombok.NonNull;
+
+/**
+ * A losslessly compressed copy of a {@link NativeSampleBuffer}, held on the heap.
+ *
+ * <p>Each channel is stored as the differences between its consecutive samples, which for audio
+ * are much smaller than the samples themselves. The differences are zigzag encoded, so small
+ * negative ones stay small, then bit-packed in groups of {@value #GROUP_SAMPLES}, each group at
+ * the width of its largest value. Quiet passages pack to a few bits per sample and digital
+ * silence to none. Float samples are packed by their bit patterns, which keeps them exact but
+ * compresses them little; 64-bit samples are packed as two 32-bit halves.
+ *
+ * <p>Packing and unpacking are single passes without a dictionary or entropy coder, so a block of
+ * a few hundred kilobytes unpacks in well under a millisecond, far sooner than it decodes.
+ */
+public final class PackedSampleBlock {
+
+    /** Values packed at one width. */
+    static final int GROUP_SAMPLES = 256;
+
+    /** Largest block packed, far beyond any block size in use, keeping the packing in range. */
+    private static final long MAX_SAMPLES = 1 << 26;
+
+    private static final ValueLayout.OfShort SHORT = ValueLayout.JAVA_SHORT_UNALIGNED;
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED;
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED;
+
+    private final PcmFormat.Encoding encoding;
+    private final int bitsPerSample;
+    private final ByteOrder order;
+    private final int channelCount;
+    private final int sampleCount;
+    private final byte[] packed;
+
+    private PackedSampleBlock(
+            PcmFormat.Encoding encoding,
+            int bitsPerSample,
+            ByteOrder order,
+            int channelCount,
+            int sampleCount,
+            byte[] packed) {
+        this.encoding = encoding;
+        this.bitsPerSample = bitsPerSample;
+        this.order = order;
+        this.channelCount = channelCount;
+        this.sampleCount = sampleCount;
+        this.packed = packed;
+    }
+
+    /**
+     * Packs a buffer's samples. The caller must hold a reference to the buffer while it is packed.
+     *
+     * @param source The buffer to pack; it is left unchanged
+     * @param channelCount Number of interleaved channels in the buffer
+     * @return The packed copy
+     * @throws IllegalStateException if the buffer has already been freed
+     */
+    public static PackedSampleBlock pack(@NonNull NativeSampleBuffer source, int channelCount) {
+        if (channelCount <= 0) {
+            throw new IllegalArgumentException("Channel count must be positive: " + channelCount);
+        }
+        if (source.sampleCount() > MAX_SAMPLES) {
+            throw new IllegalArgumentException(
+                    "Too many samples for a single block: " + source.sampleCount());
+        }
+        int sampleCount = (int) source.sampleCount();
+        int[] words = words(source, sampleCount);
+        int stride = channelCount * wordsPerSample(source.bitsPerSample());
+
+        // A width byte per group, and at worst every value at its full width
+        byte[] packed = new byte[(words.length / GROUP_SAMPLES + 1) * (1 + GROUP_SAMPLES * 4)];
+        int[] zigzag = new int[GROUP_SAMPLES];
+        int position = 0;
+        for (int start = 0; start < words.length; start += GROUP_SAMPLES) {
+            int count = Math.min(GROUP_SAMPLES, words.length - start);
+            int bits = 0;
+            for (int i = 0; i < count; i++) {
+                int index = start + i;
+                int delta = words[index] - (index >= stride ? words[index - stride] : 0);
+                zigzag[i] = (delta << 1) ^ (delta >> 31);
+                bits |= zigzag[i];
+            }
+            int width = 32 - Integer.numberOfLeadingZeros(bits);
+            packed[position++] = (byte) width;
+
+            long pending = 0;
+            int pendingBits = 0;
+            for (int i = 0; i < count; i++) {
+                pending |= Integer.toUnsignedLong(zigzag[i]) << pendingBits;
+                pendingBits += width;
+                while (pendingBits >= 8) {
+                    packed[position++] = (byte) pending;
+                    pending >>>= 8;
+                    pendingBits -= 8;
+                }
+            }
+            if (pendingBits > 0) {
+                packed[position++] = (byte) pending;
+            }
+        }
+
+        return new PackedSampleBlock(
+                source.encoding(),
+                source.bitsPerSample(),
+                source.order(),
+                channelCount,
+                sampleCount,
+                Arrays.copyOf(packed, position));
+    }
+
+    /**
+     * Restores the samples into a new off-heap buffer, identical to the one packed. The caller
+     * holds the buffer's first reference.
+     */
+    public NativeSampleBuffer unpack() {
+        int stride = channelCount * wordsPerSample(bitsPerSample);
+        int[] words = new int[sampleCount * wordsPerSample(bitsPerSample)];
+        int position = 0;
+        for (int start = 0; start < words.length; start += GROUP_SAMPLES) {
+            int count = Math.min(GROUP_SAMPLES, words.length - start);
+            int width = packed[position++];
+            long mask = (1L << width) - 1;
+
+            long pending = 0;
+            int pendingBits = 0;
+            for (int i = 0; i < count; i++) {
+                while (pendingBits < width) {
+                    pending |= (packed[position++] & 0xFFL) << pendingBits;
+                    pendingBits += 8;
+                }
+                int zigzag = (int) (pending & mask);
+                pending >>>= width;
+                pendingBits -= width;
+                int index = start + i;
+                int delta = (zigzag >>> 1) ^ -(zigzag & 1);
+                words[index] = delta + (index >= stride ? words[index - stride] : 0);
+            }
+        }
+
+        byte[] bytes = new byte[sampleCount * (bitsPerSample / 8)];
+        MemorySegment target = MemorySegment.ofArray(bytes);
+        switch (bitsPerSample) {
+            case 8 -> {
+                for (int i = 0; i < sampleCount; i++) {
+                    bytes[i] = (byte) words[i];
+                }
+            }
+            case 16 -> {
+                short[] values = new short[sampleCount];
+                for (int i = 0; i < sampleCount; i++) {
+                    values[i] = (short) words[i];
+                }
+                MemorySegment.copy(values, 0, target, SHORT.withOrder(order), 0, sampleCount);
+            }
+            case 24 -> {
+                for (int i = 0; i < sampleCount; i++) {
+                    int value = words[i];
+                    int low = order == ByteOrder.LITTLE_ENDIAN ? 3 * i : 3 * i + 2;
+                    int step = order == ByteOrder.LITTLE_ENDIAN ? 1 : -1;
+                    bytes[low] = (byte) value;
+                    bytes[low + step] = (byte) (value >> 8);
+                    bytes[low + 2 * step] = (byte) (value >> 16);
+                }
+            }
+            case 32 -> MemorySegment.copy(words, 0, target, INT.withOrder(order), 0, sampleCount);
+            default -> {
+                long[] values = new long[sampleCount];
+                for (int i = 0; i < sampleCount; i++) {
+                    values[i] =
+                            ((long) words[2 * i] << 32) | Integer.toUnsignedLong(words[2 * i + 1]);
+                }
+                MemorySegment.copy(values, 0, target, LONG.withOrder(order), 0, sampleCount);
+            }
+        }
+        return NativeSampleBuffer.copyOf(encoding, bitsPerSample, order, target);
+    }
+
+    /** Number of samples (not frames) held. */
+    public long sampleCount() {
+        return sampleCount;
+    }
+
+    /** Heap footprint of the packed samples. */
+    public long packedBytes() {
+        return packed.length;
+    }
+
+    /** Size of the samples once unpacked. */
+    public long unpackedBytes() {
+        return (long) sampleCount * (bitsPerSample / 8);
+    }
+
+    private static int wordsPerSample(int bitsPerSample) {
+        return bitsPerSample == 64 ? 2 : 1;
+    }
+
+    /** Reads each sample as a signed integer, or two for 64-bit samples, high half first. */
+    private static int[] words(NativeSampleBuffer source, int sampleCount) {
+        MemorySegment samples = source.samples();
+        ByteOrder order = source.order();
+        int[] words = new int[sampleCount * wordsPerSample(source.bitsPerSample())];
+        switch (source.bitsPerSample()) {
+            case 8 -> {
+                boolean unsigned = source.encoding() == PcmFormat.Encoding.UNSIGNED_INT;
+                for (int i = 0; i < sampleCount; i++) {
+                    byte value = samples.get(ValueLayout.JAVA_BYTE, i);
+                    words[i] = unsigned ? value & 0xFF : value;
+                }
+            }
+            case 16 -> {
+                short[] values = new short[sampleCount];
+                MemorySegment.copy(samples, SHORT.withOrder(order), 0, values, 0, sampleCount);
+                for (int i = 0; i < sampleCount; i++) {
+                    words[i] = values[i];
+                }
+            }
+            case 24 -> {
+                for (int i = 0; i < sampleCount; i++) {
+                    long offset = 3L * i;
+                    int first = samples.get(ValueLayout.JAVA_BYTE, offset);
+                    int middle = samples.get(ValueLayout.JAVA_BYTE, offset + 1) & 0xFF;
+                    int last = samples.get(ValueLayout.JAVA_BYTE, offset + 2);
+                    words[i] =
+                            order == ByteOrder.LITTLE_ENDIAN
+                                    ? (last << 16) | (middle << 8) | (first & 0xFF)
+                                    : (first << 16) | (middle << 8) | (last & 0xFF);
+                }
+            }
+            case 32 ->
+                    MemorySegment.copy(samples, INT.withOrder(order), 0, words, 0, sampleCount);
+            default -> {
+                long[] values = new long[sampleCount];
+                MemorySegment.copy(samples, LONG.withOrder(order), 0, values, 0, sampleCount);
+                for (int i = 0; i < sampleCount; i++) {
+                    words[2 * i] = (int) (values[i] >> 32);
+                    words[2 * i + 1] = (int) values[i];
+                }
+            }
+        }
+        return words;
+    }
+}
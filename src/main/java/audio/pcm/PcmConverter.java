@@ -0,0 +1,351 @@
+package audio.pcm;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.util.Objects;
+import lombok.NonNull;
+
+/**
+ * Converts raw PCM samples into doubles normalized to [-1.0, 1.0].
+ *
+ * <p>Reads go straight from a {@link MemorySegment}, so callers can convert a slice of a
+ * memory-mapped file without copying it to the heap first. All layouts are unaligned because
+ * container headers place sample data at arbitrary offsets.
+ *
+ * <p>When the {@code jdk.incubator.vector} module is available, 16/24/32-bit integer and 32-bit
+ * float sources are converted a full SIMD register at a time (see {@link VectorPcmConverter});
+ * other formats and the tail of each run use scalar loops that produce identical results.
+ */
+public final class PcmConverter {
+
+    private static final ValueLayout.OfShort SHORT_LE =
+            ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfShort SHORT_BE =
+            ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfInt INT_LE =
+            ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfInt INT_BE =
+            ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfFloat FLOAT_LE =
+            ValueLayout.JAVA_FLOAT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfFloat FLOAT_BE =
+            ValueLayout.JAVA_FLOAT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfDouble DOUBLE_LE =
+            ValueLayout.JAVA_DOUBLE_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfDouble DOUBLE_BE =
+            ValueLayout.JAVA_DOUBLE_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    // The incubator module is only resolved when the JVM runs with
+    // --add-modules=jdk.incubator.vector; -Daudio.pcm.vectorize=false forces the scalar loops
+    private static final boolean VECTORIZED =
+            Boolean.parseBoolean(System.getProperty("audio.pcm.vectorize", "true"))
+                    && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private PcmConverter() {}
+
+    /**
+     * Converts interleaved samples to normalized doubles.
+     *
+     * @param source Segment holding raw sample bytes
+     * @param byteOffset Offset of the first sample within the segment
+     * @param format Encoding, width and byte order of the source samples
+     * @param dest Destination array
+     * @param destOffset First index to write in the destination
+     * @param sampleCount Number of samples (not frames) to convert
+     */
+    public static void toDouble(
+            @NonNull MemorySegment source,
+            long byteOffset,
+            @NonNull PcmFormat format,
+            @NonNull double[] dest,
+            int destOffset,
+            int sampleCount) {
+        toDouble(
+                source,
+                byteOffset,
+                format.encoding(),
+                format.bitsPerSample(),
+                format.byteOrder(),
+                dest,
+                destOffset,
+                sampleCount);
+    }
+
+    /**
+     * Converts interleaved samples to normalized floats. Exact for sources of up to 24 bits.
+     *
+     * @param source Segment holding raw sample bytes
+     * @param byteOffset Offset of the first sample within the segment
+     * @param format Encoding, width and byte order of the source samples
+     * @param dest Destination array
+     * @param destOffset First index to write in the destination
+     * @param sampleCount Number of samples (not frames) to convert
+     */
+    public static void toFloat(
+            @NonNull MemorySegment source,
+            long byteOffset,
+            @NonNull PcmFormat format,
+            @NonNull float[] dest,
+            int destOffset,
+            int sampleCount) {
+        toFloat(
+                source,
+                byteOffset,
+                format.encoding(),
+                format.bitsPerSample(),
+                format.byteOrder(),
+                dest,
+                destOffset,
+                sampleCount);
+    }
+
+    /** Returns whether conversions run on the Vector API rather than the scalar loops. */
+    public static boolean isVectorized() {
+        return VECTORIZED;
+    }
+
+    static void toDouble(
+            MemorySegment source,
+            long byteOffset,
+            PcmFormat.Encoding encoding,
+            int bitsPerSample,
+            ByteOrder order,
+            double[] dest,
+            int destOffset,
+            int sampleCount) {
+        Objects.checkFromIndexSize(destOffset, sampleCount, dest.length);
+        int done =
+                VECTORIZED
+                        ? VectorPcmConverter.toDouble(
+                                source,
+                                byteOffset,
+                                encoding,
+                                bitsPerSample,
+                                order,
+                                dest,
+                                destOffset,
+                                sampleCount)
+                        : 0;
+        // The vector path stops short of the last partial vector; finish it here
+        scalarToDouble(
+                source,
+                byteOffset + (long) done * (bitsPerSample / 8),
+                encoding,
+                bitsPerSample,
+                order,
+                dest,
+                destOffset + done,
+                sampleCount - done);
+    }
+
+    static void toFloat(
+            MemorySegment source,
+            long byteOffset,
+            PcmFormat.Encoding encoding,
+            int bitsPerSample,
+            ByteOrder order,
+            float[] dest,
+            int destOffset,
+            int sampleCount) {
+        Objects.checkFromIndexSize(destOffset, sampleCount, dest.length);
+        int done =
+                VECTORIZED
+                        ? VectorPcmConverter.toFloat(
+                                source,
+                                byteOffset,
+                                encoding,
+                                bitsPerSample,
+                                order,
+                                dest,
+                                destOffset,
+                                sampleCount)
+                        : 0;
+        scalarToFloat(
+                source,
+                byteOffset + (long) done * (bitsPerSample / 8),
+                encoding,
+                bitsPerSample,
+                order,
+                dest,
+                destOffset + done,
+                sampleCount - done);
+    }
+
+    static void scalarToDouble(
+            MemorySegment source,
+            long byteOffset,
+            PcmFormat.Encoding encoding,
+            int bitsPerSample,
+            ByteOrder order,
+            double[] dest,
+            int destOffset,
+            int sampleCount) {
+        boolean little = order == ByteOrder.LITTLE_ENDIAN;
+
+        switch (encoding) {
+            case UNSIGNED_INT -> {
+                for (int i = 0; i < sampleCount; i++) {
+                    int value = source.get(ValueLayout.JAVA_BYTE, byteOffset + i) & 0xFF;
+                    dest[destOffset + i] = (value - 128) / 128.0;
+                }
+            }
+            case SIGNED_INT -> {
+                switch (bitsPerSample) {
+                    case 8 -> {
+                        for (int i = 0; i < sampleCount; i++) {
+                            byte value = source.get(ValueLayout.JAVA_BYTE, byteOffset + i);
+                            dest[destOffset + i] = value / 128.0;
+                        }
+                    }
+                    case 16 -> {
+                        ValueLayout.OfShort layout = little ? SHORT_LE : SHORT_BE;
+                        for (int i = 0; i < sampleCount; i++) {
+                            short value = source.get(layout, byteOffset + 2L * i);
+                            dest[destOffset + i] = value / 32768.0;
+                        }
+                    }
+                    case 24 -> {
+                        for (int i = 0; i < sampleCount; i++) {
+                            long offset = byteOffset + 3L * i;
+                            dest[destOffset + i] = read24(source, offset, little) / 8388608.0;
+                        }
+                    }
+                    case 32 -> {
+                        ValueLayout.OfInt layout = little ? INT_LE : INT_BE;
+                        for (int i = 0; i < sampleCount; i++) {
+                            int value = source.get(layout, byteOffset + 4L * i);
+                            dest[destOffset + i] = value / 2147483648.0;
+                        }
+                    }
+                    default -> throw unsupported(encoding, bitsPerSample);
+                }
+            }
+            case FLOAT -> {
+                if (bitsPerSample == 32) {
+                    ValueLayout.OfFloat layout = little ? FLOAT_LE : FLOAT_BE;
+                    for (int i = 0; i < sampleCount; i++) {
+                        dest[destOffset + i] = source.get(layout, byteOffset + 4L * i);
+                    }
+                } else if (bitsPerSample == 64) {
+                    ValueLayout.OfDouble layout = little ? DOUBLE_LE : DOUBLE_BE;
+                    for (int i = 0; i < sampleCount; i++) {
+                        dest[destOffset + i] = source.get(layout, byteOffset + 8L * i);
+                    }
+                } else {
+                    throw unsupported(encoding, bitsPerSample);
+                }
+            }
+        }
+    }
+
+    static void scalarToFloat(
+            MemorySegment source,
+            long byteOffset,
+            PcmFormat.Encoding encoding,
+            int bitsPerSample,
+            ByteOrder order,
+            float[] dest,
+            int destOffset,
+            int sampleCount) {
+        boolean little = order == ByteOrder.LITTLE_ENDIAN;
+
+        switch (encoding) {
+            case UNSIGNED_INT -> {
+                for (int i = 0; i < sampleCount; i++) {
+                    int value = source.get(ValueLayout.JAVA_BYTE, byteOffset + i) & 0xFF;
+                    dest[destOffset + i] = (value - 128) / 128f;
+                }
+            }
+            case SIGNED_INT -> {
+                switch (bitsPerSample) {
+                    case 8 -> {
+                        for (int i = 0; i < sampleCount; i++) {
+                            byte value = source.get(ValueLayout.JAVA_BYTE, byteOffset + i);
+                            dest[destOffset + i] = value / 128f;
+                        }
+                    }
+                    case 16 -> {
+                        ValueLayout.OfShort layout = little ? SHORT_LE : SHORT_BE;
+                        for (int i = 0; i < sampleCount; i++) {
+                            short value = source.get(layout, byteOffset + 2L * i);
+                            dest[destOffset + i] = value / 32768f;
+                        }
+                    }
+                    case 24 -> {
+                        for (int i = 0; i < sampleCount; i++) {
+                            long offset = byteOffset + 3L * i;
+                            dest[destOffset + i] = read24(source, offset, little) / 8388608f;
+                        }
+                    }
+                    case 32 -> {
+                        ValueLayout.OfInt layout = little ? INT_LE : INT_BE;
+                        for (int i = 0; i < sampleCount; i++) {
+                            int value = source.get(layout, byteOffset + 4L * i);
+                            dest[destOffset + i] = value / 2147483648f;
+                        }
+                    }
+                    default -> throw unsupported(encoding, bitsPerSample);
+                }
+            }
+            case FLOAT -> {
+                if (bitsPerSample == 32) {
+                    ValueLayout.OfFloat layout = little ? FLOAT_LE : FLOAT_BE;
+                    MemorySegment.copy(
+                            source, layout, byteOffset, dest, destOffset, sampleCount);
+                } else if (bitsPerSample == 64) {
+                    ValueLayout.OfDouble layout = little ? DOUBLE_LE : DOUBLE_BE;
+                    for (int i = 0; i < sampleCount; i++) {
+                        dest[destOffset + i] = (float) source.get(layout, byteOffset + 8L * i);
+                    }
+                } else {
+                    throw unsupported(encoding, bitsPerSample);
+                }
+            }
+        }
+    }
+
+    /** Converts the one sample at an offset to a normalized double. */
+    static double sampleAt(
+            MemorySegment source,
+            long byteOffset,
+            PcmFormat.Encoding encoding,
+            int bitsPerSample,
+            ByteOrder order) {
+        boolean little = order == ByteOrder.LITTLE_ENDIAN;
+        return switch (encoding) {
+            case UNSIGNED_INT ->
+                    ((source.get(ValueLayout.JAVA_BYTE, byteOffset) & 0xFF) - 128) / 128.0;
+            case SIGNED_INT ->
+                    switch (bitsPerSample) {
+                        case 8 -> source.get(ValueLayout.JAVA_BYTE, byteOffset) / 128.0;
+                        case 16 -> source.get(little ? SHORT_LE : SHORT_BE, byteOffset) / 32768.0;
+                        case 24 -> read24(source, byteOffset, little) / 8388608.0;
+                        case 32 -> source.get(little ? INT_LE : INT_BE, byteOffset) / 2147483648.0;
+                        default -> throw unsupported(encoding, bitsPerSample);
+                    };
+            case FLOAT ->
+                    switch (bitsPerSample) {
+                        case 32 -> source.get(little ? FLOAT_LE : FLOAT_BE, byteOffset);
+                        case 64 -> source.get(little ? DOUBLE_LE : DOUBLE_BE, byteOffset);
+                        default -> throw unsupported(encoding, bitsPerSample);
+                    };
+        };
+    }
+
+    private static int read24(MemorySegment source, long offset, boolean little) {
+        byte first = source.get(ValueLayout.JAVA_BYTE, offset);
+        byte middle = source.get(ValueLayout.JAVA_BYTE, offset + 1);
+        byte last = source.get(ValueLayout.JAVA_BYTE, offset + 2);
+        // The most significant byte stays signed so the result is sign-extended
+        return little
+                ? (last << 16) | ((middle & 0xFF) << 8) | (first & 0xFF)
+                : (first << 16) | ((middle & 0xFF) << 8) | (last & 0xFF);
+    }
+
+    private static UnsupportedOperationException unsupported(
+            PcmFormat.Encoding encoding, int bitsPerSample) {
+        return new UnsupportedOperationException(
+                "Unsupported sample format: " + bitsPerSample + "-bit " + encoding);
+    }
+}
@@ -0,0 +1,378 @@
+package audio.pcm;
+
+import audio.AudioMetadata;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Decoded audio kept on disk as 32-bit float PCM, so compressed files are decoded once rather than
+ * on every start.
+ *
+ * <p>Each source file has one entry, named after a hash of its canonical path. The entry's header
+ * records the source's size and modification time, and an entry whose source has changed since is
+ * discarded when opened. Entries are written to a temporary file and moved into place, so a
+ * partial entry is never seen, and are reopened by mapping them: {@link #open} reads only the
+ * header, and samples are paged in as they are read.
+ *
+ * <p>The cache is bounded by the total size of its entries. Opening an entry marks it as used, and
+ * {@link #trim} deletes the least recently used entries until the rest fit, along with temporary
+ * files left behind by writes that never finished.
+ */
+@Slf4j
+public final class PcmDiskCache {
+
+    static final String ENTRY_SUFFIX = ".pcm";
+    static final String TEMP_SUFFIX = ".tmp";
+
+    // A writer touches its temporary file with every block, so one left alone this long belongs
+    // to a process that died mid-write
+    static final Duration STALE_TEMP_AGE = Duration.ofHours(1);
+
+    private static final int MAGIC = 0x50434D46; // "PCMF"
+    private static final int VERSION = 1;
+
+    // Header fields, then padding; samples start here so they stay aligned
+    static final int DATA_OFFSET = 256;
+
+    // Samples converted per write while an entry is filled
+    private static final int WRITE_CHUNK_SAMPLES = 1 << 14;
+
+    private static final ValueLayout.OfInt INT_BE =
+            ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    private final Path directory;
+    private final long maxBytes;
+
+    /**
+     * Opens a cache directory, creating it if needed, and trims it to the size limit.
+     *
+     * @param directory Directory holding the entries
+     * @param maxBytes Upper bound on the total size of the entries
+     * @throws IOException if the directory cannot be created or listed
+     */
+    public PcmDiskCache(@NonNull Path directory, long maxBytes) throws IOException {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxBytes);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+        trim();
+    }
+
+    /**
+     * Maps the cached copy of a file, if there is a current one.
+     *
+     * @param source The audio file that was decoded
+     * @return The cached samples, or null if the file has no usable entry; entries that are stale
+     *     or corrupt are deleted
+     * @throws IOException if the source cannot be read
+     */
+    public CachedPcm open(@NonNull Path source) throws IOException {
+        Path entry = entryFor(source);
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+            // The automatic arena unmaps the entry once nothing references its samples
+            MemorySegment file = channel.map(MapMode.READ_ONLY, 0, channel.size(), Arena.ofAuto());
+            CachedPcm cached;
+            try {
+                cached = parse(file, attributes);
+            } catch (IOException e) {
+                log.debug("Discarding unreadable cache entry {}: {}", entry, e.getMessage());
+                cached = null;
+            }
+            if (cached == null) {
+                deleteQuietly(entry);
+                return null;
+            }
+            Files.setLastModifiedTime(entry, FileTime.from(Instant.now()));
+            return cached;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Starts a new entry for a file. Samples are appended as they are decoded, and the entry only
+     * replaces an existing one when committed; closing an uncommitted writer discards it.
+     *
+     * @param source The audio file being decoded
+     * @param metadata The source's metadata; the frame count is taken from the samples appended
+     * @return The writer; the caller must close it
+     * @throws IOException if the source cannot be read or the entry cannot be created
+     */
+    public Writer create(@NonNull Path source, @NonNull AudioMetadata metadata)
+            throws IOException {
+        // Taken before decoding starts, so a file changed meanwhile leaves a stale entry
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        return new Writer(entryFor(source), metadata, attributes);
+    }
+
+    /**
+     * Deletes the least recently used entries until the rest fit within the size limit, and
+     * temporary files that have not been written to for {@link #STALE_TEMP_AGE}.
+     *
+     * @throws IOException if the directory cannot be listed
+     */
+    public synchronized void trim() throws IOException {
+        record Entry(Path path, long size, FileTime used) {}
+
+        List<Entry> entries = new ArrayList<>();
+        long total = 0;
+        FileTime staleBefore = FileTime.from(Instant.now().minus(STALE_TEMP_AGE));
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : files.toList()) {
+                String name = path.getFileName().toString();
+                try {
+                    var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    if (name.endsWith(ENTRY_SUFFIX)) {
+                        entries.add(
+                                new Entry(path, attributes.size(), attributes.lastModifiedTime()));
+                        total += attributes.size();
+                    } else if (name.startsWith(ENTRY_SUFFIX)
+                            && name.endsWith(TEMP_SUFFIX)
+                            && attributes.lastModifiedTime().compareTo(staleBefore) < 0
+                            && deleteQuietly(path)) {
+                        log.debug("Deleted abandoned cache write {}", name);
+                    }
+                } catch (NoSuchFileException e) {
+                    // Removed since the listing
+                }
+            }
+        }
+
+        entries.sort(Comparator.comparing(Entry::used));
+        for (Entry entry : entries) {
+            if (total <= maxBytes) {
+                break;
+            }
+            if (deleteQuietly(entry.path())) {
+                log.debug("Evicted {} from the decoded audio cache", entry.path().getFileName());
+                total -= entry.size();
+            }
+        }
+    }
+
+    /** Returns the total size of the entries on disk. */
+    public long sizeBytes() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            long total = 0;
+            for (Path path : files.filter(p -> p.toString().endsWith(ENTRY_SUFFIX)).toList()) {
+                try {
+                    total += Files.size(path);
+                } catch (NoSuchFileException e) {
+                    // Removed since the listing
+                }
+            }
+            return total;
+        }
+    }
+
+    Path entryFor(Path source) throws IOException {
+        String canonical = source.toRealPath().toString();
+        try {
+            byte[] hash =
+                    MessageDigest.getInstance("SHA-256")
+                            .digest(canonical.getBytes(StandardCharsets.UTF_8));
+            return directory.resolve(HexFormat.of().formatHex(hash) + ENTRY_SUFFIX);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /** Reads an entry's header, returning null if it does not describe the source as it is. */
+    private static CachedPcm parse(MemorySegment file, BasicFileAttributes source)
+            throws IOException {
+        if (file.byteSize() < DATA_OFFSET
+                || file.get(INT_BE, 0) != MAGIC
+                || file.get(INT_BE, 4) != VERSION) {
+            throw new IOException("Not a decoded audio cache entry, or an unsupported version");
+        }
+        ByteBuffer header = file.asSlice(8, DATA_OFFSET - 8).asByteBuffer();
+        long sourceSize = header.getLong();
+        long sourceModified = header.getLong();
+        if (sourceSize != source.size()
+                || sourceModified != source.lastModifiedTime().toMillis()) {
+            return null;
+        }
+
+        int sampleRate = header.getInt();
+        int channelCount = header.getInt();
+        int bitsPerSample = header.getInt();
+        long frameCount = header.getLong();
+        double durationSeconds = header.getDouble();
+        byte[] format = new byte[Short.toUnsignedInt(header.getShort())];
+        if (format.length > header.remaining()
+                || sampleRate <= 0
+                || channelCount <= 0
+                || frameCount < 0
+                || DATA_OFFSET + frameCount * channelCount * 4 != file.byteSize()) {
+            throw new IOException("Corrupt decoded audio cache entry");
+        }
+        header.get(format);
+
+        AudioMetadata metadata =
+                new AudioMetadata(
+                        sampleRate,
+                        channelCount,
+                        bitsPerSample,
+                        new String(format, StandardCharsets.UTF_8),
+                        frameCount,
+                        durationSeconds);
+        return new CachedPcm(metadata, file.asSlice(DATA_OFFSET));
+    }
+
+    private static boolean deleteQuietly(Path path) {
+        try {
+            return Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // Still mapped on platforms that forbid deleting open files; try again next time
+            log.debug("Could not delete {}: {}", path.getFileName(), e.getMessage());
+            return false;
+        }
+    }
+
+    /** Fills one entry. Not thread-safe. */
+    public final class Writer implements Closeable {
+
+        private final Path entry;
+        private final AudioMetadata metadata;
+        private final BasicFileAttributes source;
+        private final Path temp;
+        private final FileChannel channel;
+        private final double[] samples = new double[WRITE_CHUNK_SAMPLES];
+        private final ByteBuffer bytes =
+                ByteBuffer.allocate(4 * WRITE_CHUNK_SAMPLES).order(ByteOrder.LITTLE_ENDIAN);
+        private long frameCount = 0;
+        private boolean done = false;
+
+        private Writer(Path entry, AudioMetadata metadata, BasicFileAttributes source)
+                throws IOException {
+            this.entry = entry;
+            this.metadata = metadata;
+            this.source = source;
+            this.temp = Files.createTempFile(directory, ENTRY_SUFFIX, TEMP_SUFFIX);
+            this.channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+            channel.position(DATA_OFFSET);
+        }
+
+        /**
+         * Appends decoded frames to the entry.
+         *
+         * @param block Interleaved samples in the source's channel layout
+         * @throws IOException if the samples cannot be written
+         */
+        public void append(@NonNull SampleBuffer block) throws IOException {
+            int channelCount = metadata.channelCount();
+            if (block.sampleCount() % channelCount != 0) {
+                throw new IllegalArgumentException(
+                        "Block holds " + block.sampleCount() + " samples, not whole frames");
+            }
+            for (long offset = 0; offset < block.sampleCount(); offset += WRITE_CHUNK_SAMPLES) {
+                int count = (int) Math.min(WRITE_CHUNK_SAMPLES, block.sampleCount() - offset);
+                block.read(offset, samples, 0, count);
+                bytes.clear();
+                for (int i = 0; i < count; i++) {
+                    bytes.putFloat((float) samples[i]);
+                }
+                bytes.flip();
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            }
+            frameCount += block.sampleCount() / channelCount;
+        }
+
+        /**
+         * Finishes the entry and moves it into place, then trims the cache.
+         *
+         * @throws IOException if the entry cannot be written or moved
+         */
+        public void commit() throws IOException {
+            if (done) {
+                throw new IllegalStateException("Writer is already closed");
+            }
+            ByteBuffer header = ByteBuffer.wrap(header());
+            channel.position(0);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            channel.force(false);
+            channel.close();
+            Files.move(
+                    temp,
+                    entry,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            done = true;
+            trim();
+        }
+
+        private byte[] header() throws IOException {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(DATA_OFFSET);
+            try (DataOutputStream out = new DataOutputStream(buffer)) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(source.size());
+                out.writeLong(source.lastModifiedTime().toMillis());
+                out.writeInt(metadata.sampleRate());
+                out.writeInt(metadata.channelCount());
+                out.writeInt(metadata.bitsPerSample());
+                out.writeLong(frameCount);
+                out.writeDouble(metadata.durationSeconds());
+
+                // Leave the format out rather than overrun the header
+                byte[] format = metadata.format().getBytes(StandardCharsets.UTF_8);
+                if (buffer.size() + 2 + format.length > DATA_OFFSET) {
+                    format = new byte[0];
+                }
+                out.writeShort(format.length);
+                out.write(format);
+            }
+            byte[] header = new byte[DATA_OFFSET];
+            System.arraycopy(buffer.toByteArray(), 0, header, 0, buffer.size());
+            return header;
+        }
+
+        /** Discards the entry unless it was committed. */
+        @Override
+        public void close() throws IOException {
+            if (done) {
+                return;
+            }
+            done = true;
+            try {
+                channel.close();
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+}
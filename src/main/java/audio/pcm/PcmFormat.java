@@ -0,0 +1,101 @@
+package audio.pcm;
+
+import audio.AudioMetadata;
+import java.nio.ByteOrder;
+import lombok.NonNull;
+
+/**
+ * Layout of uncompressed PCM sample data inside a container file.
+ *
+ * <p>Describes everything needed to locate and convert a frame without decoding: where the sample
+ * data starts, how wide each sample is, and how it is encoded.
+ *
+ * @param container Container name as reported in metadata (e.g. "WAV", "AIFF")
+ * @param encoding How each sample value is encoded
+ * @param byteOrder Byte order of multi-byte samples
+ * @param sampleRate Sample rate in Hz
+ * @param channelCount Number of interleaved channels
+ * @param bitsPerSample Bits per stored sample (8, 16, 24, 32 or 64)
+ * @param dataOffset Byte offset of the first frame within the file
+ * @param frameCount Number of complete frames available in the file
+ */
+public record PcmFormat(
+        @NonNull String container,
+        @NonNull Encoding encoding,
+        @NonNull ByteOrder byteOrder,
+        int sampleRate,
+        int channelCount,
+        int bitsPerSample,
+        long dataOffset,
+        long frameCount) {
+
+    /** Sample value encodings found in uncompressed PCM containers. */
+    public enum Encoding {
+        /** Two's complement integers. */
+        SIGNED_INT,
+
+        /** Offset-binary integers (8-bit WAV). */
+        UNSIGNED_INT,
+
+        /** IEEE 754 floating point. */
+        FLOAT
+    }
+
+    public PcmFormat {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("Sample rate must be positive: " + sampleRate);
+        }
+        if (channelCount <= 0) {
+            throw new IllegalArgumentException("Channel count must be positive: " + channelCount);
+        }
+        if (!isSupported(encoding, bitsPerSample)) {
+            throw new IllegalArgumentException(
+                    "Unsupported PCM encoding: " + bitsPerSample + "-bit " + encoding);
+        }
+        if (dataOffset < 0 || frameCount < 0) {
+            throw new IllegalArgumentException(
+                    "Invalid data region: offset " + dataOffset + ", frames " + frameCount);
+        }
+    }
+
+    /**
+     * Checks whether a combination of encoding and sample width can be converted.
+     *
+     * @param encoding The sample encoding
+     * @param bitsPerSample The stored sample width
+     * @return true if samples of this kind can be converted to doubles
+     */
+    public static boolean isSupported(@NonNull Encoding encoding, int bitsPerSample) {
+        return switch (encoding) {
+            case SIGNED_INT ->
+                    bitsPerSample == 8
+                            || bitsPerSample == 16
+                            || bitsPerSample == 24
+                            || bitsPerSample == 32;
+            case UNSIGNED_INT -> bitsPerSample == 8;
+            case FLOAT -> bitsPerSample == 32 || bitsPerSample == 64;
+        };
+    }
+
+    public int bytesPerSample() {
+        return bitsPerSample / 8;
+    }
+
+    public int bytesPerFrame() {
+        return bytesPerSample() * channelCount;
+    }
+
+    /** Total size in bytes of the sample data region. */
+    public long dataLength() {
+        return frameCount * bytesPerFrame();
+    }
+
+    public double durationSeconds() {
+        return (double) frameCount / sampleRate;
+    }
+
+    public AudioMetadata toMetadata() {
+        return new AudioMetadata(
+                sampleRate, channelCount, bitsPerSample, container, frameCount, durationSeconds());
+    }
+}
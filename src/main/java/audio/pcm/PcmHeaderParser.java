@@ -0,0 +1,316 @@
+package audio.pcm;
+
+import audio.AudioReadException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import lombok.NonNull;
+
+/**
+ * Parses WAV (RIFF/RF64) and AIFF/AIFC headers to locate uncompressed sample data.
+ *
+ * <p>Only chunk headers are read; sample data is never touched. Chunk sizes that run past the end
+ * of the file (common for recordings that were interrupted or are still being written) are clamped
+ * to the bytes actually present.
+ */
+public final class PcmHeaderParser {
+
+    private static final int WAVE_FORMAT_PCM = 0x0001;
+    private static final int WAVE_FORMAT_IEEE_FLOAT = 0x0003;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+    private static final long RF64_SIZE_PLACEHOLDER = 0xFFFFFFFFL;
+
+    private PcmHeaderParser() {}
+
+    /**
+     * Parses the header of a PCM WAV or AIFF file.
+     *
+     * @param audioFile Path to the audio file
+     * @return The layout of the sample data
+     * @throws AudioReadException if the file cannot be read or is not uncompressed PCM
+     */
+    public static PcmFormat parse(@NonNull Path audioFile) throws AudioReadException {
+        try (FileChannel channel = FileChannel.open(audioFile, StandardOpenOption.READ)) {
+            return parse(channel, audioFile);
+        } catch (AudioReadException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new AudioReadException("Failed to read audio header", audioFile, e);
+        }
+    }
+
+    /**
+     * Parses the header of a PCM WAV or AIFF file from an open channel.
+     *
+     * @param channel Channel positioned anywhere; absolute reads are used
+     * @param audioFile Path used for error reporting
+     * @return The layout of the sample data
+     * @throws AudioReadException if the file is not uncompressed PCM
+     * @throws IOException on I/O errors
+     */
+    public static PcmFormat parse(@NonNull FileChannel channel, @NonNull Path audioFile)
+            throws IOException {
+        ByteBuffer id = read(channel, 0, 12, ByteOrder.LITTLE_ENDIAN, audioFile);
+        String outer = fourcc(id, 0);
+        String form = fourcc(id, 8);
+
+        if ((outer.equals("RIFF") || outer.equals("RF64")) && form.equals("WAVE")) {
+            return parseWave(channel, audioFile, outer.equals("RF64"));
+        }
+        if (outer.equals("FORM") && (form.equals("AIFF") || form.equals("AIFC"))) {
+            return parseAiff(channel, audioFile, form.equals("AIFC"));
+        }
+        throw new AudioReadException("Not a WAV or AIFF file", audioFile);
+    }
+
+    private static PcmFormat parseWave(FileChannel channel, Path audioFile, boolean rf64)
+            throws IOException {
+        long fileSize = channel.size();
+        long position = 12;
+        long ds64DataSize = -1;
+        int formatTag = -1;
+        int channelCount = 0;
+        int sampleRate = 0;
+        int blockAlign = 0;
+        int bitsPerSample = 0;
+
+        while (position + 8 <= fileSize) {
+            ByteBuffer header = read(channel, position, 8, ByteOrder.LITTLE_ENDIAN, audioFile);
+            String chunkId = fourcc(header, 0);
+            long chunkSize = Integer.toUnsignedLong(header.getInt(4));
+            long body = position + 8;
+
+            switch (chunkId) {
+                case "ds64" -> {
+                    ByteBuffer ds64 = read(channel, body, 24, ByteOrder.LITTLE_ENDIAN, audioFile);
+                    ds64DataSize = ds64.getLong(8);
+                }
+                case "fmt " -> {
+                    int length = (int) Math.min(chunkSize, 40);
+                    if (length < 16) {
+                        throw new AudioReadException("Malformed WAV fmt chunk", audioFile);
+                    }
+                    ByteBuffer fmt =
+                            read(channel, body, length, ByteOrder.LITTLE_ENDIAN, audioFile);
+                    formatTag = fmt.getShort(0) & 0xFFFF;
+                    channelCount = fmt.getShort(2) & 0xFFFF;
+                    sampleRate = fmt.getInt(4);
+                    blockAlign = fmt.getShort(12) & 0xFFFF;
+                    bitsPerSample = fmt.getShort(14) & 0xFFFF;
+                    if (formatTag == WAVE_FORMAT_EXTENSIBLE && length >= 26) {
+                        // The sub-format GUID starts with the plain format tag
+                        formatTag = fmt.getShort(24) & 0xFFFF;
+                    }
+                }
+                case "data" -> {
+                    if (formatTag < 0) {
+                        throw new AudioReadException(
+                                "WAV data chunk precedes fmt chunk", audioFile);
+                    }
+                    long dataSize = chunkSize;
+                    if (rf64 && chunkSize == RF64_SIZE_PLACEHOLDER && ds64DataSize >= 0) {
+                        dataSize = ds64DataSize;
+                    }
+                    dataSize = Math.min(dataSize, fileSize - body);
+                    return waveFormat(
+                            audioFile,
+                            formatTag,
+                            channelCount,
+                            sampleRate,
+                            blockAlign,
+                            bitsPerSample,
+                            body,
+                            dataSize);
+                }
+                default -> {
+                    // Skip LIST, fact, bext, cue and other metadata chunks
+                }
+            }
+
+            // Chunks are padded to an even length
+            position = body + chunkSize + (chunkSize & 1);
+        }
+        throw new AudioReadException("WAV file has no data chunk", audioFile);
+    }
+
+    private static PcmFormat waveFormat(
+            Path audioFile,
+            int formatTag,
+            int channelCount,
+            int sampleRate,
+            int blockAlign,
+            int bitsPerSample,
+            long dataOffset,
+            long dataSize)
+            throws AudioReadException {
+        if (channelCount <= 0 || sampleRate <= 0) {
+            throw new AudioReadException(
+                    String.format(
+                            "Invalid WAV format: %d channels at %d Hz", channelCount, sampleRate),
+                    audioFile);
+        }
+
+        // Samples narrower than their container (e.g. 20-bit in 24) are stored left-justified,
+        // so the container width is what matters for conversion.
+        int storedBits =
+                blockAlign > 0 && blockAlign % channelCount == 0
+                        ? (blockAlign / channelCount) * 8
+                        : (bitsPerSample + 7) / 8 * 8;
+
+        PcmFormat.Encoding encoding =
+                switch (formatTag) {
+                    case WAVE_FORMAT_PCM ->
+                            storedBits == 8
+                                    ? PcmFormat.Encoding.UNSIGNED_INT
+                                    : PcmFormat.Encoding.SIGNED_INT;
+                    case WAVE_FORMAT_IEEE_FLOAT -> PcmFormat.Encoding.FLOAT;
+                    default ->
+                            throw new AudioReadException(
+                                    String.format(
+                                            "Unsupported WAV encoding (format tag 0x%04x)",
+                                            formatTag),
+                                    audioFile);
+                };
+        if (!PcmFormat.isSupported(encoding, storedBits)) {
+            throw new AudioReadException(
+                    "Unsupported WAV sample width: " + storedBits + " bits", audioFile);
+        }
+
+        long bytesPerFrame = (long) channelCount * (storedBits / 8);
+        return new PcmFormat(
+                "WAV",
+                encoding,
+                ByteOrder.LITTLE_ENDIAN,
+                sampleRate,
+                channelCount,
+                storedBits,
+                dataOffset,
+                dataSize / bytesPerFrame);
+    }
+
+    private static PcmFormat parseAiff(FileChannel channel, Path audioFile, boolean aifc)
+            throws IOException {
+        long fileSize = channel.size();
+        long position = 12;
+        ByteBuffer comm = null;
+        long commSize = 0;
+        long dataOffset = -1;
+        long dataSize = 0;
+
+        while (position + 8 <= fileSize) {
+            ByteBuffer header = read(channel, position, 8, ByteOrder.BIG_ENDIAN, audioFile);
+            String chunkId = fourcc(header, 0);
+            long chunkSize = Integer.toUnsignedLong(header.getInt(4));
+            long body = position + 8;
+
+            if (chunkId.equals("COMM")) {
+                commSize = chunkSize;
+                comm =
+                        read(
+                                channel,
+                                body,
+                                (int) Math.min(chunkSize, 22),
+                                ByteOrder.BIG_ENDIAN,
+                                audioFile);
+            } else if (chunkId.equals("SSND")) {
+                ByteBuffer ssnd = read(channel, body, 8, ByteOrder.BIG_ENDIAN, audioFile);
+                long offset = Integer.toUnsignedLong(ssnd.getInt(0));
+                dataOffset = body + 8 + offset;
+                dataSize = Math.max(0, Math.min(chunkSize - 8 - offset, fileSize - dataOffset));
+            }
+
+            position = body + chunkSize + (chunkSize & 1);
+        }
+
+        if (comm == null || commSize < 18) {
+            throw new AudioReadException("AIFF file has no valid COMM chunk", audioFile);
+        }
+        if (dataOffset < 0) {
+            throw new AudioReadException("AIFF file has no SSND chunk", audioFile);
+        }
+
+        int channelCount = comm.getShort(0) & 0xFFFF;
+        long declaredFrames = Integer.toUnsignedLong(comm.getInt(2));
+        int bitsPerSample = comm.getShort(6) & 0xFFFF;
+        int sampleRate = (int) Math.round(readExtended(comm, 8));
+        String compression = aifc && comm.limit() >= 22 ? fourcc(comm, 18) : "NONE";
+
+        int storedBits = (bitsPerSample + 7) / 8 * 8;
+        PcmFormat.Encoding encoding = PcmFormat.Encoding.SIGNED_INT;
+        ByteOrder order = ByteOrder.BIG_ENDIAN;
+        switch (compression) {
+            case "NONE", "twos" -> {}
+            case "sowt" -> order = ByteOrder.LITTLE_ENDIAN;
+            case "raw " -> encoding = PcmFormat.Encoding.UNSIGNED_INT;
+            case "fl32", "FL32" -> {
+                encoding = PcmFormat.Encoding.FLOAT;
+                storedBits = 32;
+            }
+            case "fl64", "FL64" -> {
+                encoding = PcmFormat.Encoding.FLOAT;
+                storedBits = 64;
+            }
+            default ->
+                    throw new AudioReadException(
+                            "Unsupported AIFC compression: " + compression.trim(), audioFile);
+        }
+
+        if (channelCount <= 0 || sampleRate <= 0) {
+            throw new AudioReadException(
+                    String.format(
+                            "Invalid AIFF format: %d channels at %d Hz", channelCount, sampleRate),
+                    audioFile);
+        }
+        if (!PcmFormat.isSupported(encoding, storedBits)) {
+            throw new AudioReadException(
+                    "Unsupported AIFF sample width: " + bitsPerSample + " bits", audioFile);
+        }
+
+        long bytesPerFrame = (long) channelCount * (storedBits / 8);
+        return new PcmFormat(
+                "AIFF",
+                encoding,
+                order,
+                sampleRate,
+                channelCount,
+                storedBits,
+                dataOffset,
+                Math.min(declaredFrames, dataSize / bytesPerFrame));
+    }
+
+    /** Decodes an 80-bit IEEE 754 extended precision value, as used for AIFF sample rates. */
+    private static double readExtended(ByteBuffer buffer, int offset) {
+        int signAndExponent = buffer.getShort(offset) & 0xFFFF;
+        long mantissa = buffer.getLong(offset + 2);
+        int exponent = signAndExponent & 0x7FFF;
+        if (exponent == 0 && mantissa == 0) {
+            return 0.0;
+        }
+        double unsignedMantissa = (mantissa >>> 1) * 2.0 + (mantissa & 1);
+        double value = unsignedMantissa * Math.pow(2, exponent - 16383 - 63);
+        return (signAndExponent & 0x8000) != 0 ? -value : value;
+    }
+
+    private static ByteBuffer read(
+            FileChannel channel, long position, int length, ByteOrder order, Path audioFile)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(order);
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) {
+                throw new AudioReadException("Truncated audio header", audioFile);
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static String fourcc(ByteBuffer buffer, int offset) {
+        byte[] bytes = new byte[4];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,54 @@
+package audio.pcm;
+
+import lombok.NonNull;
+
+/**
+ * Immutable interleaved samples kept in a compact encoding close to the source's native width.
+ *
+ * <p>Decoded audio is cached in its source encoding, such as 16-bit integers or 32-bit floats,
+ * rather than as doubles. Only the slice handed to a caller is widened, so a cached 16-bit file
+ * costs two bytes per sample instead of eight.
+ */
+public interface SampleBuffer {
+
+    /** Number of samples (not frames) held. */
+    long sampleCount();
+
+    /** Width of each stored sample in bits. */
+    int bitsPerSample();
+
+    /** Approximate footprint of the sample storage. */
+    long sizeBytes();
+
+    /**
+     * Returns one sample normalized to [-1.0, 1.0].
+     *
+     * @param index Sample index (frame * channelCount + channel)
+     * @return The normalized sample value
+     */
+    double get(long index);
+
+    /**
+     * Widens a range of samples into a caller-supplied array.
+     *
+     * @param offset First sample index to read
+     * @param dest Destination array
+     * @param destOffset First index to write in the destination
+     * @param count Number of samples to read
+     */
+    void read(long offset, @NonNull double[] dest, int destOffset, int count);
+
+    /**
+     * Takes a reference that keeps the samples readable until it is released. Buffers over a
+     * mapped file are freed by the garbage collector and ignore references; those holding native
+     * memory (see {@link NativeSampleBuffer}) free it when the last one is released.
+     *
+     * @return Whether the reference was taken; false if the samples have already been freed
+     */
+    default boolean retain() {
+        return true;
+    }
+
+    /** Drops a reference taken by {@link #retain}, or the one its creator holds. */
+    default void release() {}
+}
@@ -0,0 +1,174 @@
+package audio.pcm;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteOrder;
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API conversions for 16/24/32-bit integer and 32-bit float PCM.
+ *
+ * <p>Only {@link PcmConverter} touches this class, and only after checking that the incubator
+ * module is present, so it is never loaded otherwise. Each method converts whole vectors and
+ * returns how many samples it handled; the caller finishes the remainder with scalar code.
+ * Normalization scales are powers of two, so results match the scalar loops exactly.
+ */
+final class VectorPcmConverter {
+
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS =
+            VectorSpecies.of(int.class, FLOATS.vectorShape());
+    private static final VectorSpecies<Byte> BYTES =
+            VectorSpecies.of(byte.class, FLOATS.vectorShape());
+    private static final VectorSpecies<Short> SHORTS =
+            VectorSpecies.of(short.class, VectorShape.forBitSize(FLOATS.vectorBitSize() / 2));
+    private static final VectorSpecies<Double> DOUBLES =
+            VectorSpecies.of(double.class, FLOATS.vectorShape());
+
+    // Samples per iteration, and how many double vectors each float vector widens into
+    private static final int LANES = FLOATS.length();
+    private static final int DOUBLE_PARTS = LANES / DOUBLES.length();
+
+    // Spread packed 3-byte samples into 4-byte lanes, least significant byte first. The fourth
+    // byte of each lane is a don't-care that the sign-extending shift pushes out again.
+    private static final VectorShuffle<Byte> SPREAD_24_LE = spread24(false);
+    private static final VectorShuffle<Byte> SPREAD_24_BE = spread24(true);
+
+    private static final float SCALE_16 = 1f / (1 << 15);
+    private static final float SCALE_24 = 1f / (1 << 23);
+    private static final float SCALE_32 = 1f / (1L << 31);
+    private static final double SCALE_32_DOUBLE = 1.0 / (1L << 31);
+
+    private VectorPcmConverter() {}
+
+    static int toFloat(
+            MemorySegment source,
+            long byteOffset,
+            PcmFormat.Encoding encoding,
+            int bitsPerSample,
+            ByteOrder order,
+            float[] dest,
+            int destOffset,
+            int sampleCount) {
+        if (!supports(encoding, bitsPerSample)) {
+            return 0;
+        }
+        int done = 0;
+        for (; canLoad(source, byteOffset, bitsPerSample, done, sampleCount); done += LANES) {
+            load(source, byteOffset, encoding, bitsPerSample, order, done)
+                    .intoArray(dest, destOffset + done);
+        }
+        return done;
+    }
+
+    static int toDouble(
+            MemorySegment source,
+            long byteOffset,
+            PcmFormat.Encoding encoding,
+            int bitsPerSample,
+            ByteOrder order,
+            double[] dest,
+            int destOffset,
+            int sampleCount) {
+        if (!supports(encoding, bitsPerSample)) {
+            return 0;
+        }
+        int done = 0;
+        for (; canLoad(source, byteOffset, bitsPerSample, done, sampleCount); done += LANES) {
+            if (encoding == PcmFormat.Encoding.SIGNED_INT && bitsPerSample == 32) {
+                // A float mantissa cannot hold 32-bit samples, so widen straight to double
+                IntVector ints =
+                        IntVector.fromMemorySegment(
+                                INTS, source, byteOffset + 4L * done, order);
+                for (int part = 0; part < DOUBLE_PARTS; part++) {
+                    ((DoubleVector) ints.convertShape(VectorOperators.I2D, DOUBLES, part))
+                            .mul(SCALE_32_DOUBLE)
+                            .intoArray(dest, destOffset + done + part * DOUBLES.length());
+                }
+            } else {
+                FloatVector floats = load(source, byteOffset, encoding, bitsPerSample, order, done);
+                for (int part = 0; part < DOUBLE_PARTS; part++) {
+                    ((DoubleVector) floats.convertShape(VectorOperators.F2D, DOUBLES, part))
+                            .intoArray(dest, destOffset + done + part * DOUBLES.length());
+                }
+            }
+        }
+        return done;
+    }
+
+    private static boolean supports(PcmFormat.Encoding encoding, int bitsPerSample) {
+        return switch (encoding) {
+            case SIGNED_INT -> bitsPerSample == 16 || bitsPerSample == 24 || bitsPerSample == 32;
+            case FLOAT -> bitsPerSample == 32;
+            case UNSIGNED_INT -> false;
+        };
+    }
+
+    /** Whether a whole vector of samples starting at {@code done} is available to load. */
+    private static boolean canLoad(
+            MemorySegment source, long byteOffset, int bitsPerSample, int done, int sampleCount) {
+        if (sampleCount - done < LANES) {
+            return false;
+        }
+        // 24-bit loads read a full byte vector but only consume three quarters of it
+        long loadBytes = bitsPerSample == 24 ? BYTES.length() : (long) LANES * bitsPerSample / 8;
+        return byteOffset + (long) done * (bitsPerSample / 8) + loadBytes <= source.byteSize();
+    }
+
+    private static FloatVector load(
+            MemorySegment source,
+            long byteOffset,
+            PcmFormat.Encoding encoding,
+            int bitsPerSample,
+            ByteOrder order,
+            int done) {
+        long offset = byteOffset + (long) done * (bitsPerSample / 8);
+        if (encoding == PcmFormat.Encoding.FLOAT) {
+            return FloatVector.fromMemorySegment(FLOATS, source, offset, order);
+        }
+        return switch (bitsPerSample) {
+            case 16 ->
+                    ((FloatVector)
+                                    ShortVector.fromMemorySegment(SHORTS, source, offset, order)
+                                            .convertShape(VectorOperators.S2F, FLOATS, 0))
+                            .mul(SCALE_16);
+            case 24 ->
+                    ((FloatVector)
+                                    ByteVector.fromMemorySegment(BYTES, source, offset, order)
+                                            .rearrange(
+                                                    order == ByteOrder.BIG_ENDIAN
+                                                            ? SPREAD_24_BE
+                                                            : SPREAD_24_LE)
+                                            .reinterpretAsInts()
+                                            .lanewise(VectorOperators.LSHL, 8)
+                                            .lanewise(VectorOperators.ASHR, 8)
+                                            .convert(VectorOperators.I2F, 0))
+                            .mul(SCALE_24);
+            case 32 ->
+                    ((FloatVector)
+                                    IntVector.fromMemorySegment(INTS, source, offset, order)
+                                            .convert(VectorOperators.I2F, 0))
+                            .mul(SCALE_32);
+            default -> throw new IllegalArgumentException("Unsupported width: " + bitsPerSample);
+        };
+    }
+
+    private static VectorShuffle<Byte> spread24(boolean bigEndian) {
+        // Vector reinterpretation is little-endian, so lane byte 0 is the least significant
+        int[] indexes = new int[BYTES.length()];
+        for (int lane = 0; lane < indexes.length / 4; lane++) {
+            for (int b = 0; b < 4; b++) {
+                int significance = Math.min(b, 2);
+                indexes[lane * 4 + b] = lane * 3 + (bigEndian ? 2 - significance : significance);
+            }
+        }
+        return VectorShuffle.fromArray(BYTES, indexes, 0);
+    }
+}
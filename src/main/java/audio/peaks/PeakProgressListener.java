@@ -0,0 +1,21 @@
+package audio.peaks;
+
+import java.nio.file.Path;
+import lombok.NonNull;
+
+/** Listener interface for the progress of peak pyramid builds. */
+public interface PeakProgressListener {
+
+    /**
+     * Called as a build summarizes a file front to back: first after one chunk, then every 250ms
+     * or so, and a last time with {@code decodedFrames} equal to {@code totalFrames} once the
+     * whole file is summarized. Peaks of frames before {@code decodedFrames} can be queried from
+     * then on without waiting for the rest of the file.
+     *
+     * @param audioFile Absolute path of the audio file
+     * @param decodedFrames Frames summarized so far, counted from the start of the file
+     * @param totalFrames Total duration in frames, as reported by the file's metadata until the
+     *     last call, which gives the exact length
+     */
+    void onPeaksProgress(@NonNull Path audioFile, long decodedFrames, long totalFrames);
+}
@@ -0,0 +1,341 @@
+package audio.peaks;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import lombok.NonNull;
+
+/**
+ * Min/max/RMS summaries of an audio file at power-of-two zoom levels.
+ *
+ * <p>Level 0 summarizes every {@value #BASE_BUCKET_FRAMES} frames in one bucket per channel, and
+ * each level above merges pairs of buckets from the one below, up to a single bucket for the whole
+ * file. A {@link #query} picks the coarsest level whose buckets are no wider than a pixel, so each
+ * pixel merges at most a few buckets and the cost depends only on the width asked for.
+ *
+ * <p>Buckets store 16-bit values, and the pyramid's on-disk form is its in-memory form behind a
+ * versioned header: a saved pyramid is mapped rather than read, and queries use the mapping
+ * directly. The header records the source file's size and modification time so stale sidecars can
+ * be detected.
+ *
+ * <p>Each level's buckets are held in a segment of their own. A snapshot of a build in progress
+ * shares its finished buckets with the builder and adds a last, partial bucket per level held
+ * apart from them, so taking a snapshot copies nothing.
+ */
+public final class PeakPyramid {
+
+    /** Frames summarized by one level 0 bucket. */
+    public static final int BASE_BUCKET_FRAMES = 256;
+
+    static final String SIDECAR_SUFFIX = ".peaks";
+
+    private static final int MAGIC = 0x5045414B; // "PEAK"
+    private static final int VERSION = 1;
+
+    // Each bucket holds min, max and RMS for every channel
+    static final int VALUES_PER_CHANNEL = 3;
+    static final int BYTES_PER_VALUE = 2;
+    private static final float SCALE = Short.MAX_VALUE;
+
+    private static final ValueLayout.OfShort SHORT_BE =
+            ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfInt INT_BE =
+            ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfLong LONG_BE =
+            ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    // magic, version, source size, source modified, rate, channels, frames, base, level count
+    private static final int FIXED_HEADER_BYTES = 4 + 4 + 8 + 8 + 4 + 4 + 8 + 4 + 4;
+
+    private final long sourceSize;
+    private final long sourceModified;
+    private final int sampleRate;
+    private final int channelCount;
+    private final long frameCount;
+    private final long[] bucketCounts;
+    private final MemorySegment[] levels;
+    private final MemorySegment[] partials;
+
+    /**
+     * Creates a pyramid over bucket data.
+     *
+     * @param bucketCounts Number of buckets at each level, the partial one included
+     * @param levels Each level's buckets
+     * @param partials Each level's partial bucket, following its other buckets, or null where it
+     *     has none
+     */
+    PeakPyramid(
+            long sourceSize,
+            long sourceModified,
+            int sampleRate,
+            int channelCount,
+            long frameCount,
+            long[] bucketCounts,
+            MemorySegment[] levels,
+            MemorySegment[] partials) {
+        this.sourceSize = sourceSize;
+        this.sourceModified = sourceModified;
+        this.sampleRate = sampleRate;
+        this.channelCount = channelCount;
+        this.frameCount = frameCount;
+        this.bucketCounts = bucketCounts;
+        this.levels = levels;
+        this.partials = partials;
+
+        for (int level = 0; level < bucketCounts.length; level++) {
+            long size = levels[level].byteSize();
+            if (partials[level] != null) {
+                size += partials[level].byteSize();
+            }
+            long expected = bucketCounts[level] * bucketBytes();
+            if (size != expected) {
+                throw new IllegalArgumentException(
+                        "Peak level " + level + " holds " + size + " bytes, expected " + expected);
+            }
+        }
+    }
+
+    /** The sidecar path the peaks of an audio file are saved to. */
+    public static Path sidecarFor(@NonNull Path audioFile) {
+        return audioFile.resolveSibling(audioFile.getFileName() + SIDECAR_SUFFIX);
+    }
+
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    public int channelCount() {
+        return channelCount;
+    }
+
+    /** Number of frames in the summarized file. */
+    public long frameCount() {
+        return frameCount;
+    }
+
+    public int levelCount() {
+        return bucketCounts.length;
+    }
+
+    /** Frames summarized by one bucket at a level. */
+    public long bucketFrames(int level) {
+        return (long) BASE_BUCKET_FRAMES << level;
+    }
+
+    public long bucketCount(int level) {
+        return bucketCounts[level];
+    }
+
+    /** Whether the pyramid was built from a file with this size and modification time. */
+    boolean matches(long size, long modified) {
+        return sourceSize == size && sourceModified == modified;
+    }
+
+    /**
+     * Summarizes a frame range at a given width.
+     *
+     * <p>Ranges narrower than one level 0 bucket per pixel repeat bucket values across pixels;
+     * callers zoomed in that far should read samples instead.
+     *
+     * @param startFrame First frame to summarize
+     * @param endFrame Frame just past the last one to summarize; clamped to the file length
+     * @param width Number of pixels to summarize the range into
+     * @return The summary, with no pixels if the range is empty
+     */
+    public Peaks query(long startFrame, long endFrame, int width) {
+        if (startFrame < 0 || width < 0) {
+            throw new IllegalArgumentException(
+                    "Invalid peak query: start " + startFrame + ", width " + width);
+        }
+        long end = Math.min(endFrame, frameCount);
+        if (startFrame >= end || width == 0) {
+            return Peaks.empty(startFrame, channelCount);
+        }
+
+        double framesPerPixel = (end - startFrame) / (double) width;
+        int level = 0;
+        while (level + 1 < levelCount() && bucketFrames(level + 1) <= framesPerPixel) {
+            level++;
+        }
+        long bucketFrames = bucketFrames(level);
+        long buckets = bucketCounts[level];
+
+        float[] min = new float[width * channelCount];
+        float[] max = new float[width * channelCount];
+        float[] rms = new float[width * channelCount];
+        for (int pixel = 0; pixel < width; pixel++) {
+            long from = startFrame + (long) (pixel * framesPerPixel);
+            long to = Math.max(from + 1, startFrame + (long) ((pixel + 1) * framesPerPixel));
+            long firstBucket = from / bucketFrames;
+            long lastBucket = Math.min((to - 1) / bucketFrames, buckets - 1);
+
+            for (int channel = 0; channel < channelCount; channel++) {
+                float low = Float.POSITIVE_INFINITY;
+                float high = Float.NEGATIVE_INFINITY;
+                double squares = 0;
+                long frames = 0;
+                for (long bucket = firstBucket; bucket <= lastBucket; bucket++) {
+                    low = Math.min(low, value(level, bucket, channel, 0));
+                    high = Math.max(high, value(level, bucket, channel, 1));
+                    double bucketRms = value(level, bucket, channel, 2);
+                    long weight = Math.min(bucketFrames, frameCount - bucket * bucketFrames);
+                    squares += bucketRms * bucketRms * weight;
+                    frames += weight;
+                }
+                int index = pixel * channelCount + channel;
+                min[index] = low;
+                max[index] = high;
+                rms[index] = (float) Math.sqrt(squares / frames);
+            }
+        }
+        return new Peaks(startFrame, end, channelCount, width, min, max, rms);
+    }
+
+    /** Quantizes a normalized value for storage. */
+    static short quantize(double value) {
+        return (short) Math.round(Math.clamp(value, -1.0, 1.0) * SCALE);
+    }
+
+    /** Reads one of a bucket's min, max and RMS values, in that order, for a channel. */
+    private float value(int level, long bucket, int channel, int index) {
+        long offset =
+                bucket * bucketBytes()
+                        + ((long) channel * VALUES_PER_CHANNEL + index) * BYTES_PER_VALUE;
+        MemorySegment buckets = levels[level];
+        if (offset >= buckets.byteSize()) {
+            return partials[level].get(SHORT_BE, offset - buckets.byteSize()) / SCALE;
+        }
+        return buckets.get(SHORT_BE, offset) / SCALE;
+    }
+
+    private long bucketBytes() {
+        return (long) channelCount * VALUES_PER_CHANNEL * BYTES_PER_VALUE;
+    }
+
+    /**
+     * Saves the pyramid to a sidecar file, replacing it atomically.
+     *
+     * @param sidecar Destination path
+     * @throws IOException if the file cannot be written
+     */
+    void write(Path sidecar) throws IOException {
+        Path temp = Files.createTempFile(sidecar.toAbsolutePath().getParent(), ".peaks", ".tmp");
+        try {
+            try (DataOutputStream out =
+                    new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(sourceSize);
+                out.writeLong(sourceModified);
+                out.writeInt(sampleRate);
+                out.writeInt(channelCount);
+                out.writeLong(frameCount);
+                out.writeInt(BASE_BUCKET_FRAMES);
+                out.writeInt(bucketCounts.length);
+                for (long count : bucketCounts) {
+                    out.writeLong(count);
+                }
+                // Bucket values are already big-endian, so the data is written as is
+                for (int level = 0; level < levels.length; level++) {
+                    writeSegment(out, levels[level]);
+                    if (partials[level] != null) {
+                        writeSegment(out, partials[level]);
+                    }
+                }
+            }
+            Files.move(
+                    temp,
+                    sidecar,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void writeSegment(DataOutputStream out, MemorySegment segment)
+            throws IOException {
+        for (long position = 0; position < segment.byteSize(); position += 1 << 16) {
+            long length = Math.min(1 << 16, segment.byteSize() - position);
+            out.write(segment.asSlice(position, length).toArray(ValueLayout.JAVA_BYTE));
+        }
+    }
+
+    /**
+     * Maps a saved pyramid.
+     *
+     * @param sidecar Path to the sidecar file
+     * @return The pyramid, backed by the mapping
+     * @throws IOException if the file cannot be read or is not a valid pyramid of this version
+     */
+    static PeakPyramid read(Path sidecar) throws IOException {
+        try (FileChannel channel = FileChannel.open(sidecar, StandardOpenOption.READ)) {
+            // The automatic arena unmaps the file once the pyramid is no longer referenced
+            MemorySegment file = channel.map(MapMode.READ_ONLY, 0, channel.size(), Arena.ofAuto());
+            if (file.byteSize() < FIXED_HEADER_BYTES
+                    || file.get(INT_BE, 0) != MAGIC
+                    || file.get(INT_BE, 4) != VERSION) {
+                throw new IOException("Not a peak file, or an unsupported version");
+            }
+            long sourceSize = file.get(LONG_BE, 8);
+            long sourceModified = file.get(LONG_BE, 16);
+            int sampleRate = file.get(INT_BE, 24);
+            int channelCount = file.get(INT_BE, 28);
+            long frameCount = file.get(LONG_BE, 32);
+            int baseBucketFrames = file.get(INT_BE, 40);
+            int levelCount = file.get(INT_BE, 44);
+            if (baseBucketFrames != BASE_BUCKET_FRAMES
+                    || sampleRate <= 0
+                    || channelCount <= 0
+                    || levelCount <= 0
+                    || levelCount > 63
+                    || FIXED_HEADER_BYTES + 8L * levelCount > file.byteSize()) {
+                throw new IOException("Corrupt peak file header");
+            }
+
+            long[] bucketCounts = new long[levelCount];
+            for (int level = 0; level < levelCount; level++) {
+                bucketCounts[level] = file.get(LONG_BE, FIXED_HEADER_BYTES + 8L * level);
+                long expected = Math.ceilDiv(frameCount, (long) BASE_BUCKET_FRAMES << level);
+                if (bucketCounts[level] != expected) {
+                    throw new IOException("Corrupt peak file level " + level);
+                }
+            }
+
+            // Levels follow one another, each as long as its buckets
+            long bucketBytes = (long) channelCount * VALUES_PER_CHANNEL * BYTES_PER_VALUE;
+            MemorySegment[] levels = new MemorySegment[levelCount];
+            long offset = FIXED_HEADER_BYTES + 8L * levelCount;
+            for (int level = 0; level < levelCount; level++) {
+                long count = bucketCounts[level];
+                if (count < 0 || count > (file.byteSize() - offset) / bucketBytes) {
+                    throw new IOException("Truncated peak file");
+                }
+                levels[level] = file.asSlice(offset, count * bucketBytes);
+                offset += count * bucketBytes;
+            }
+            if (offset != file.byteSize()) {
+                throw new IOException("Peak file has trailing data");
+            }
+            return new PeakPyramid(
+                    sourceSize,
+                    sourceModified,
+                    sampleRate,
+                    channelCount,
+                    frameCount,
+                    bucketCounts,
+                    levels,
+                    new MemorySegment[levelCount]);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package audio.peaks;
+
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds a {@link PeakPyramid} in one pass over a file's samples.
+ *
+ * <p>Samples are folded into level 0 buckets as they arrive; each finished bucket is written out
+ * and merged into its parent, so every level fills in alongside level 0 and memory holds only the
+ * summaries, never the samples. A snapshot of the frames added so far can be taken at any point,
+ * so the summarized part of a file can be served while the rest is still being read. Levels are
+ * only ever appended to, so snapshots share the buckets written so far rather than copying them.
+ * Not thread-safe, though a snapshot handed to other threads may be read while the builder
+ * carries on.
+ */
+final class PeakPyramidBuilder {
+
+    private final int channelCount;
+    private final int sampleRate;
+    private final List<Level> levels = new ArrayList<>();
+    private long frameCount = 0;
+
+    PeakPyramidBuilder(int sampleRate, int channelCount) {
+        if (sampleRate <= 0 || channelCount <= 0) {
+            throw new IllegalArgumentException(
+                    "Invalid format: " + sampleRate + " Hz, " + channelCount + " channels");
+        }
+        this.sampleRate = sampleRate;
+        this.channelCount = channelCount;
+        levels.add(new Level(channelCount));
+    }
+
+    /**
+     * Adds the next run of frames.
+     *
+     * @param samples Interleaved samples normalized to [-1.0, 1.0]
+     * @param frames Number of frames to take from the start of {@code samples}
+     */
+    void add(double[] samples, int frames) {
+        Level base = levels.get(0);
+        for (int frame = 0; frame < frames; frame++) {
+            int offset = frame * channelCount;
+            for (int channel = 0; channel < channelCount; channel++) {
+                base.addSample(channel, samples[offset + channel]);
+            }
+            if (++base.pendingFrames == PeakPyramid.BASE_BUCKET_FRAMES) {
+                emit(0);
+            }
+        }
+        frameCount += frames;
+    }
+
+    /**
+     * Flushes partial buckets and assembles the pyramid.
+     *
+     * @param sourceSize Size of the source file, for sidecar validation
+     * @param sourceModified Modification time of the source file in epoch millis
+     * @return The pyramid
+     */
+    PeakPyramid build(long sourceSize, long sourceModified) {
+        // Flush upwards until a level holds the whole file in one bucket
+        int top = 0;
+        while (true) {
+            Level level = levels.get(top);
+            if (level.pendingFrames > 0) {
+                emit(top);
+            }
+            if (level.bucketCount <= 1) {
+                break;
+            }
+            top++;
+        }
+
+        // The pyramid outlives the builder, so it keeps only the bytes in use
+        long[] bucketCounts = new long[top + 1];
+        MemorySegment[] data = new MemorySegment[top + 1];
+        for (int i = 0; i <= top; i++) {
+            Level level = levels.get(i);
+            bucketCounts[i] = level.bucketCount;
+            data[i] = MemorySegment.ofArray(Arrays.copyOf(level.bytes, level.size));
+        }
+        return pyramid(sourceSize, sourceModified, bucketCounts, data, new MemorySegment[top + 1]);
+    }
+
+    /**
+     * Assembles a pyramid of the frames added so far, leaving the builder free to take more.
+     *
+     * <p>Each level's pending bucket is summarized as it stands, together with the pending buckets
+     * below it, so the last bucket of every level covers exactly the frames added so far. The
+     * finished buckets are shared with the builder, so a snapshot costs one bucket per level
+     * however much has been added.
+     *
+     * @param sourceSize Size of the source file
+     * @param sourceModified Modification time of the source file in epoch millis
+     * @return The pyramid of the frames added so far
+     */
+    PeakPyramid snapshot(long sourceSize, long sourceModified) {
+        double[] min = new double[channelCount];
+        double[] max = new double[channelCount];
+        double[] squares = new double[channelCount];
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        long pendingFrames = 0;
+        int bucketBytes =
+                channelCount * PeakPyramid.VALUES_PER_CHANNEL * PeakPyramid.BYTES_PER_VALUE;
+
+        // Pending buckets of different levels cover disjoint frames, so they merge upwards
+        long[] bucketCounts = new long[levels.size()];
+        MemorySegment[] data = new MemorySegment[levels.size()];
+        MemorySegment[] tails = new MemorySegment[levels.size()];
+        int top = 0;
+        while (true) {
+            Level level = levels.get(top);
+            for (int channel = 0; channel < channelCount; channel++) {
+                min[channel] = Math.min(min[channel], level.min[channel]);
+                max[channel] = Math.max(max[channel], level.max[channel]);
+                squares[channel] += level.squares[channel];
+            }
+            pendingFrames += level.pendingFrames;
+
+            bucketCounts[top] = level.bucketCount;
+            data[top] = MemorySegment.ofArray(level.bytes).asSlice(0, level.size);
+            if (pendingFrames > 0) {
+                byte[] tail = new byte[bucketBytes];
+                int position = 0;
+                for (int channel = 0; channel < channelCount; channel++) {
+                    double rms = Math.sqrt(squares[channel] / pendingFrames);
+                    position = put(tail, position, PeakPyramid.quantize(min[channel]));
+                    position = put(tail, position, PeakPyramid.quantize(max[channel]));
+                    position = put(tail, position, PeakPyramid.quantize(rms));
+                }
+                tails[top] = MemorySegment.ofArray(tail);
+                bucketCounts[top]++;
+            }
+            // The last level in the list never has a finished bucket, so this always ends
+            if (bucketCounts[top] <= 1) {
+                break;
+            }
+            top++;
+        }
+        return pyramid(
+                sourceSize,
+                sourceModified,
+                Arrays.copyOf(bucketCounts, top + 1),
+                Arrays.copyOf(data, top + 1),
+                Arrays.copyOf(tails, top + 1));
+    }
+
+    private PeakPyramid pyramid(
+            long sourceSize,
+            long sourceModified,
+            long[] bucketCounts,
+            MemorySegment[] data,
+            MemorySegment[] tails) {
+        return new PeakPyramid(
+                sourceSize,
+                sourceModified,
+                sampleRate,
+                channelCount,
+                frameCount,
+                bucketCounts,
+                data,
+                tails);
+    }
+
+    /** Writes out a level's pending bucket and merges it into the level above. */
+    private void emit(int index) {
+        Level level = levels.get(index);
+        if (index + 1 == levels.size()) {
+            levels.add(new Level(channelCount));
+        }
+        Level parent = levels.get(index + 1);
+
+        for (int channel = 0; channel < channelCount; channel++) {
+            level.write(PeakPyramid.quantize(level.min[channel]));
+            level.write(PeakPyramid.quantize(level.max[channel]));
+            level.write(
+                    PeakPyramid.quantize(
+                            Math.sqrt(level.squares[channel] / level.pendingFrames)));
+            parent.merge(
+                    channel, level.min[channel], level.max[channel], level.squares[channel]);
+        }
+        parent.pendingFrames += level.pendingFrames;
+        level.bucketCount++;
+        level.reset();
+
+        if (++parent.pendingChildren == 2) {
+            emit(index + 1);
+        }
+    }
+
+    /** Stores a value big-endian, returning the position after it. */
+    private static int put(byte[] bytes, int position, short value) {
+        bytes[position] = (byte) (value >> 8);
+        bytes[position + 1] = (byte) value;
+        return position + 2;
+    }
+
+    /** Bucket output for one level, plus the bucket currently being accumulated. */
+    private static final class Level {
+        final double[] min;
+        final double[] max;
+        final double[] squares;
+        long pendingFrames = 0;
+        int pendingChildren = 0;
+        long bucketCount = 0;
+
+        // Bucket values as big-endian shorts, the sidecar's layout. Written bytes are never
+        // changed, and a full array is replaced rather than reused, so snapshots can share them
+        byte[] bytes = new byte[1024];
+        int size = 0;
+
+        Level(int channelCount) {
+            min = new double[channelCount];
+            max = new double[channelCount];
+            squares = new double[channelCount];
+            reset();
+        }
+
+        void addSample(int channel, double sample) {
+            min[channel] = Math.min(min[channel], sample);
+            max[channel] = Math.max(max[channel], sample);
+            squares[channel] += sample * sample;
+        }
+
+        void merge(int channel, double childMin, double childMax, double childSquares) {
+            min[channel] = Math.min(min[channel], childMin);
+            max[channel] = Math.max(max[channel], childMax);
+            squares[channel] += childSquares;
+        }
+
+        void write(short value) {
+            if (size + 2 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            size = put(bytes, size, value);
+        }
+
+        void reset() {
+            Arrays.fill(min, Double.POSITIVE_INFINITY);
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+            Arrays.fill(squares, 0);
+            pendingFrames = 0;
+            pendingChildren = 0;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package audio.peaks;
+
+import audio.AudioMetadata;
+import audio.AudioReadException;
+import audio.ReadPriority;
+import audio.SampleReader;
+import audio.SampleView;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Serves waveform peaks from {@link PeakPyramid} sidecar files, building them on first use.
+ *
+ * <p>A pyramid is built by streaming the file once through a {@link SampleReader} and saved next
+ * to it as {@code <name>.peaks}; after that, peak queries are answered from the sidecar alone.
+ * Sidecars are rebuilt when the audio file's size or modification time changes. Failing to save a
+ * sidecar is not an error; the pyramid is kept in memory and rebuilt in a later session. Builds
+ * read at {@link ReadPriority#BATCH}, so they never hold up interactive reads.
+ *
+ * <p>Builds are progressive: the file is summarized front to back, and snapshots of the part
+ * summarized so far are published after the first chunk and then at intervals, each reported to
+ * the {@link PeakProgressListener}s. Peak queries that end within the latest snapshot are answered
+ * from it at once, so a waveform fills in from the left instead of appearing only once the whole
+ * file has been read, and the wait for the first pixels does not grow with the file's length.
+ */
+@Slf4j
+public class PeakStore implements Closeable {
+
+    // Frames pulled from the reader per step while building, and so summarized before the first
+    // snapshot is published
+    static final int BUILD_CHUNK_FRAMES = 1 << 18;
+
+    // Snapshots are cheap, but each one notifies every listener, so they are taken at most this
+    // often
+    private static final long PROGRESS_INTERVAL_NANOS = 250_000_000L;
+
+    // Mapped pyramids cost address space rather than heap; keep the recently viewed ones open
+    private static final int MAX_OPEN_PYRAMIDS = 64;
+
+    private final SampleReader reader;
+    private final AsyncCache<Path, PeakPyramid> pyramids =
+            Caffeine.newBuilder().maximumSize(MAX_OPEN_PYRAMIDS).buildAsync();
+    private final ConcurrentMap<Path, Progress> building = new ConcurrentHashMap<>();
+    private final List<PeakProgressListener> listeners = new CopyOnWriteArrayList<>();
+
+    // A build blocks on reads for as long as the file takes to stream, so builds get threads of
+    // their own rather than pinning common-pool workers
+    private final ExecutorService builders = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile boolean closed = false;
+
+    /** The latest snapshot of a build in progress, and the length its file is expected to have. */
+    private record Progress(PeakPyramid snapshot, long totalFrames) {
+
+        boolean covers(long endFrame) {
+            return Math.min(endFrame, totalFrames) <= snapshot.frameCount();
+        }
+    }
+
+    public PeakStore(@NonNull SampleReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Registers a listener for the progress of builds. Listeners are called on the building
+     * thread, so they should return quickly.
+     *
+     * @param listener The listener
+     */
+    public void addProgressListener(@NonNull PeakProgressListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Summarizes a frame range of a file at a given width. While the file's peaks are being
+     * built, a range that ends within the part summarized so far is answered immediately.
+     *
+     * @param audioFile Path to the audio file
+     * @param startFrame First frame to summarize
+     * @param endFrame Frame just past the last one to summarize; clamped to the file length
+     * @param width Number of pixels
+     * @return Future containing the summary
+     * @throws CompletionException wrapping AudioReadException if the file cannot be read
+     */
+    public CompletableFuture<Peaks> getPeaks(
+            @NonNull Path audioFile, long startFrame, long endFrame, int width) {
+        if (startFrame < 0 || width < 0) {
+            return CompletableFuture.failedFuture(
+                    new IllegalArgumentException("Negative start frame or width not allowed"));
+        }
+        CompletableFuture<PeakPyramid> pyramid = getPyramid(audioFile);
+        Progress progress = building.get(audioFile.toAbsolutePath().normalize());
+        if (!pyramid.isDone() && progress != null && progress.covers(endFrame)) {
+            return CompletableFuture.completedFuture(
+                    progress.snapshot().query(startFrame, endFrame, width));
+        }
+        return pyramid.thenApply(loaded -> loaded.query(startFrame, endFrame, width));
+    }
+
+    /**
+     * Returns the peak pyramid of a file, loading its sidecar or building it if needed.
+     * Concurrent callers for the same file share one load, and failed loads are not cached.
+     *
+     * @param audioFile Path to the audio file
+     * @return Future containing the pyramid
+     * @throws CompletionException wrapping AudioReadException if the file cannot be read
+     */
+    public CompletableFuture<PeakPyramid> getPyramid(@NonNull Path audioFile) {
+        if (closed) {
+            return CompletableFuture.failedFuture(
+                    new AudioReadException("Peak store is closed", audioFile));
+        }
+
+        Path key = audioFile.toAbsolutePath().normalize();
+        CompletableFuture<PeakPyramid> pyramid = pyramids.get(key, (path, _) -> load(path));
+
+        // A cached pyramid is only good while the file is unchanged
+        PeakPyramid loaded = pyramid.getNow(null);
+        if (loaded != null && !isCurrent(loaded, key)) {
+            pyramids.asMap().remove(key, pyramid);
+            pyramid = pyramids.get(key, (path, _) -> load(path));
+        }
+        return pyramid;
+    }
+
+    private CompletableFuture<PeakPyramid> load(Path audioFile) {
+        return CompletableFuture.supplyAsync(
+                        () -> {
+                            try {
+                                return loadOrBuild(audioFile);
+                            } catch (AudioReadException e) {
+                                throw new CompletionException(e);
+                            }
+                        },
+                        builders)
+                .whenComplete((_, _) -> building.remove(audioFile));
+    }
+
+    private PeakPyramid loadOrBuild(Path audioFile) throws AudioReadException {
+        BasicFileAttributes attributes = attributesOf(audioFile);
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+
+        Path sidecar = PeakPyramid.sidecarFor(audioFile);
+        try {
+            PeakPyramid pyramid = PeakPyramid.read(sidecar);
+            if (pyramid.matches(size, modified)) {
+                return pyramid;
+            }
+            log.debug("Peaks for {} are out of date, rebuilding", audioFile.getFileName());
+        } catch (NoSuchFileException e) {
+            // First request for this file
+        } catch (IOException e) {
+            log.debug("Ignoring unreadable peak file {}: {}", sidecar, e.getMessage());
+        }
+
+        PeakPyramid pyramid = build(audioFile, size, modified);
+        try {
+            pyramid.write(sidecar);
+        } catch (IOException e) {
+            log.debug("Could not save peak file {}: {}", sidecar, e.getMessage());
+        }
+        return pyramid;
+    }
+
+    private PeakPyramid build(Path audioFile, long size, long modified) throws AudioReadException {
+        long start = System.nanoTime();
+        AudioMetadata metadata = reader.getMetadata(audioFile).join();
+        PeakPyramidBuilder builder =
+                new PeakPyramidBuilder(metadata.sampleRate(), metadata.channelCount());
+
+        // The header length of some formats (untagged VBR MP3, say) is only an estimate, so the
+        // file is read until it runs out rather than up to that length
+        double[] samples = new double[BUILD_CHUNK_FRAMES * metadata.channelCount()];
+        long totalFrames = metadata.frameCount();
+        long published = 0;
+        for (long frame = 0; ; frame += BUILD_CHUNK_FRAMES) {
+            if (closed) {
+                throw new AudioReadException("Peak store is closed", audioFile);
+            }
+            int frames;
+            try (SampleView view =
+                    reader.readView(audioFile, frame, BUILD_CHUNK_FRAMES, ReadPriority.BATCH)
+                            .join()) {
+                frames = (int) view.frameCount();
+                view.read(0, samples, 0, frames);
+                builder.add(samples, frames);
+            }
+            if (frames < BUILD_CHUNK_FRAMES) {
+                break;
+            }
+            totalFrames = Math.max(totalFrames, frame + frames);
+            long now = System.nanoTime();
+            if (frame == 0 || now - published >= PROGRESS_INTERVAL_NANOS) {
+                publish(audioFile, builder.snapshot(size, modified), totalFrames);
+                published = now;
+            }
+        }
+
+        PeakPyramid pyramid = builder.build(size, modified);
+        publish(audioFile, pyramid, pyramid.frameCount());
+        log.debug(
+                "Built peaks for {}: {} frames, {} levels in {} ms",
+                audioFile.getFileName(),
+                pyramid.frameCount(),
+                pyramid.levelCount(),
+                (System.nanoTime() - start) / 1_000_000);
+        return pyramid;
+    }
+
+    /** Makes a snapshot the one partial queries are answered from, and reports its progress. */
+    private void publish(Path audioFile, PeakPyramid snapshot, long totalFrames) {
+        building.put(audioFile, new Progress(snapshot, totalFrames));
+        for (PeakProgressListener listener : listeners) {
+            try {
+                listener.onPeaksProgress(audioFile, snapshot.frameCount(), totalFrames);
+            } catch (RuntimeException e) {
+                log.warn("Peak progress listener failed for {}", audioFile, e);
+            }
+        }
+    }
+
+    private boolean isCurrent(PeakPyramid pyramid, Path audioFile) {
+        try {
+            BasicFileAttributes attributes = attributesOf(audioFile);
+            return pyramid.matches(attributes.size(), attributes.lastModifiedTime().toMillis());
+        } catch (AudioReadException e) {
+            return false;
+        }
+    }
+
+    private static BasicFileAttributes attributesOf(Path audioFile) throws AudioReadException {
+        try {
+            return Files.readAttributes(audioFile, BasicFileAttributes.class);
+        } catch (IOException e) {
+            throw new AudioReadException("Failed to read file attributes", audioFile, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        builders.shutdown();
+        pyramids.synchronous().invalidateAll();
+        building.clear();
+    }
+}
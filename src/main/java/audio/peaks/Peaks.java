@@ -0,0 +1,53 @@
+package audio.peaks;
+
+import lombok.NonNull;
+
+/**
+ * Waveform summary of a frame range at one column per pixel.
+ *
+ * <p>Arrays hold one value per pixel and channel, interleaved by channel like {@link
+ * audio.AudioData}: the value for pixel {@code p}, channel {@code c} is at {@code p * channelCount
+ * + c}. Values are normalized to [-1.0, 1.0].
+ *
+ * @param startFrame First frame summarized
+ * @param endFrame Frame just past the last one summarized
+ * @param channelCount Number of channels
+ * @param width Number of pixels
+ * @param min Lowest sample under each pixel
+ * @param max Highest sample under each pixel
+ * @param rms Root mean square of the samples under each pixel
+ */
+public record Peaks(
+        long startFrame,
+        long endFrame,
+        int channelCount,
+        int width,
+        @NonNull float[] min,
+        @NonNull float[] max,
+        @NonNull float[] rms) {
+
+    public Peaks {
+        int length = width * channelCount;
+        if (min.length != length || max.length != length || rms.length != length) {
+            throw new IllegalArgumentException(
+                    "Peak arrays must hold width * channelCount = " + length + " values");
+        }
+    }
+
+    static Peaks empty(long startFrame, int channelCount) {
+        return new Peaks(
+                startFrame, startFrame, channelCount, 0, new float[0], new float[0], new float[0]);
+    }
+
+    public float min(int pixel, int channel) {
+        return min[pixel * channelCount + channel];
+    }
+
+    public float max(int pixel, int channel) {
+        return max[pixel * channelCount + channel];
+    }
+
+    public float rms(int pixel, int channel) {
+        return rms[pixel * channelCount + channel];
+    }
+}
@@ -0,0 +1,211 @@
+package playback;
+
+import audio.AudioEngine;
+import audio.AudioMetadata;
+import audio.PlaybackHandle;
+import audio.PlaybackListener;
+import audio.PlaybackState;
+import audio.ReadPriority;
+import audio.SampleReader;
+import audio.SampleView;
+import audio.peaks.PeakStore;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongSupplier;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps the samples just ahead of the playhead decoded while audio plays, so the waveform can
+ * follow playback without waiting on I/O.
+ *
+ * <p>Progress updates drive it: whenever less than half of the readahead window is left decoded
+ * ahead of the playhead, the rest of the window is read at {@link ReadPriority#PREFETCH} and the
+ * views are dropped at once, leaving the blocks in the reader's cache. The window covers a fixed
+ * number of seconds at the rate playback is actually advancing, so it widens for fast playback. A
+ * jump in position is taken as a seek: reads for the old region are cancelled and readahead starts
+ * over from the new position. The file's peaks are loaded once when playback of it starts.
+ */
+@Slf4j
+@Service
+public class PlaybackReadahead implements PlaybackListener, AutoCloseable {
+
+    static final double DEFAULT_LOOKAHEAD_SECONDS = 10.0;
+
+    // Moving further than this beyond what the fastest playback could cover is a seek
+    private static final double SEEK_TOLERANCE_SECONDS = 0.5;
+
+    // Bounds on the measured playback speed, relative to the sample rate
+    private static final double MIN_SPEED = 0.25;
+    private static final double MAX_SPEED = 4.0;
+
+    // Weight of the newest measurement in the smoothed playback speed
+    private static final double SPEED_SMOOTHING = 0.3;
+
+    private final AudioEngine audioEngine;
+    private final SampleReader reader;
+    private final PeakStore peakStore;
+    private final double lookaheadSeconds;
+    private final LongSupplier nanoClock;
+
+    // All guarded by this
+    private Path file;
+    private int sampleRate;
+    private long totalFrames;
+    private long lastPosition;
+    private long lastNanos;
+    private double speed;
+    private long prefetchedUntil;
+    private final List<CompletableFuture<SampleView>> inFlight = new ArrayList<>();
+    private boolean closed = false;
+
+    @Autowired
+    public PlaybackReadahead(
+            @NonNull AudioEngine audioEngine,
+            @NonNull SampleReader reader,
+            @NonNull PeakStore peakStore) {
+        this(audioEngine, reader, peakStore, DEFAULT_LOOKAHEAD_SECONDS, System::nanoTime);
+    }
+
+    PlaybackReadahead(
+            @NonNull AudioEngine audioEngine,
+            @NonNull SampleReader reader,
+            @NonNull PeakStore peakStore,
+            double lookaheadSeconds,
+            @NonNull LongSupplier nanoClock) {
+        this.audioEngine = audioEngine;
+        this.reader = reader;
+        this.peakStore = peakStore;
+        this.lookaheadSeconds = lookaheadSeconds;
+        this.nanoClock = nanoClock;
+        audioEngine.addPlaybackListener(this);
+    }
+
+    @Override
+    public synchronized void onProgress(
+            @NonNull PlaybackHandle playback, long positionFrames, long totalFrames) {
+        if (closed) {
+            return;
+        }
+        Path playing = Path.of(playback.getAudioHandle().getFilePath());
+        long now = nanoClock.getAsLong();
+        if (!playing.equals(file)) {
+            start(playing, totalFrames);
+        } else if (sampleRate > 0) {
+            track(positionFrames, now);
+        }
+        lastPosition = positionFrames;
+        lastNanos = now;
+
+        if (sampleRate > 0) {
+            prefetch(positionFrames);
+        }
+    }
+
+    @Override
+    public synchronized void onStateChanged(
+            @NonNull PlaybackHandle playback,
+            @NonNull PlaybackState newState,
+            @NonNull PlaybackState oldState) {
+        if (newState == PlaybackState.STOPPED || newState == PlaybackState.ERROR) {
+            reset();
+        } else if (newState == PlaybackState.PLAYING) {
+            // Time spent paused says nothing about the playback speed
+            lastNanos = nanoClock.getAsLong();
+        }
+    }
+
+    @Override
+    public synchronized void onPlaybackComplete(@NonNull PlaybackHandle playback) {
+        reset();
+    }
+
+    /** Switches to a new file: drops readahead for the old one and warms the new one's peaks. */
+    private void start(Path playing, long fileFrames) {
+        reset();
+        file = playing;
+        totalFrames = fileFrames;
+        speed = 1.0;
+
+        // Until the metadata arrives there is no rate to size the window with
+        CompletableFuture<AudioMetadata> metadata = reader.getMetadata(playing);
+        if (metadata.isDone() && !metadata.isCompletedExceptionally()) {
+            sampleRate = metadata.join().sampleRate();
+        } else {
+            metadata.thenAccept(m -> onMetadata(playing, m));
+        }
+        peakStore
+                .getPyramid(playing)
+                .exceptionally(
+                        e -> {
+                            log.debug("Could not load peaks for {}: {}", playing, e.getMessage());
+                            return null;
+                        });
+    }
+
+    private synchronized void onMetadata(Path playing, AudioMetadata metadata) {
+        if (playing.equals(file)) {
+            sampleRate = metadata.sampleRate();
+        }
+    }
+
+    /** Updates the speed estimate, or restarts readahead if the playhead jumped. */
+    private void track(long position, long now) {
+        double elapsed = (now - lastNanos) / 1e9;
+        long advanced = position - lastPosition;
+        double fastest = (elapsed * MAX_SPEED + SEEK_TOLERANCE_SECONDS) * sampleRate;
+        if (advanced < 0 || advanced > fastest) {
+            log.trace("Playhead jumped from {} to {}, restarting", lastPosition, position);
+            cancelInFlight();
+            prefetchedUntil = position;
+            return;
+        }
+        if (advanced > 0 && elapsed > 0) {
+            double measured = advanced / (elapsed * sampleRate);
+            speed =
+                    Math.clamp(
+                            speed + SPEED_SMOOTHING * (measured - speed), MIN_SPEED, MAX_SPEED);
+        }
+    }
+
+    /** Reads the rest of the window if less than half of it is left ahead of the playhead. */
+    private void prefetch(long position) {
+        long window = (long) (lookaheadSeconds * speed * sampleRate);
+        long target = Math.min(position + window, totalFrames);
+        long from = Math.max(prefetchedUntil, position);
+        if (from >= target || from - position >= window / 2) {
+            return;
+        }
+
+        inFlight.removeIf(CompletableFuture::isDone);
+        CompletableFuture<SampleView> read =
+                reader.readView(file, from, target - from, ReadPriority.PREFETCH);
+        inFlight.add(read);
+        read.thenAccept(SampleView::close);
+        prefetchedUntil = target;
+    }
+
+    private void reset() {
+        cancelInFlight();
+        file = null;
+        sampleRate = 0;
+        totalFrames = 0;
+        prefetchedUntil = 0;
+    }
+
+    private void cancelInFlight() {
+        inFlight.forEach(read -> read.cancel(true));
+        inFlight.clear();
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        reset();
+        audioEngine.removePlaybackListener(this);
+    }
+}
@@ -2,6 +2,7 @@ package server.rpc;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
+import server.rpc.dto.PeaksProgress;
 import server.rpc.dto.SessionStateChanged;
 
 @Component
@@ -26,4 +27,17 @@ public class ClientGateway {
             log.debug("Client not connected; dropping sessionStateChanged: {}", payload);
         }
     }
+
+    public void peaksProgress(PeaksProgress payload) {
+        ClientApi c = this.client;
+        if (c != null) {
+            try {
+                c.peaksProgress(payload);
+            } catch (Throwable t) {
+                log.warn("Failed to notify client: peaksProgress", t);
+            }
+        } else {
+            log.debug("Client not connected; dropping peaksProgress: {}", payload);
+        }
+    }
 }
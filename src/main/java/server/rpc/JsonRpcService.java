@@ -1,5 +1,11 @@
 package server.rpc;
 
+import audio.catalog.AudioCatalog;
+import audio.catalog.CatalogEntry;
+import audio.peaks.PeakStore;
+import audio.peaks.Peaks;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
@@ -9,11 +15,15 @@ import org.springframework.context.annotation.Import;
 import org.springframework.stereotype.Service;
 import playback.AudioPlaybackService;
 import server.rpc.dto.CloseAudio;
+import server.rpc.dto.GetPeaks;
 import server.rpc.dto.LoadAudio;
+import server.rpc.dto.PeaksProgress;
 import server.rpc.dto.PlayPause;
 import server.rpc.dto.Pong;
+import server.rpc.dto.QueryCatalog;
 import server.rpc.dto.ReplayLast;
 import server.rpc.dto.ReplayNudge;
+import server.rpc.dto.ScanCatalog;
 import server.rpc.dto.SeekBy;
 import server.rpc.dto.SeekTo;
 import server.rpc.dto.Stop;
@@ -26,11 +36,26 @@ import server.rpc.dto.Stop;
 })
 public class JsonRpcService {
     private final AudioPlaybackService session;
+    private final PeakStore peakStore;
+    private final AudioCatalog catalog;
     private final ExecutorService edt;
 
-    public JsonRpcService(AudioPlaybackService session, @Qualifier("edt") ExecutorService edt) {
+    public JsonRpcService(
+            AudioPlaybackService session,
+            PeakStore peakStore,
+            AudioCatalog catalog,
+            ClientGateway clientGateway,
+            @Qualifier("edt") ExecutorService edt) {
         this.session = session;
+        this.peakStore = peakStore;
+        this.catalog = catalog;
         this.edt = edt;
+
+        // Lets the client fill in a waveform while its peaks are still being built
+        peakStore.addProgressListener(
+                (file, decoded, total) ->
+                        clientGateway.peaksProgress(
+                                new PeaksProgress(file.toString(), decoded, total)));
     }
 
     private <T> CompletableFuture<T> onEdt(Callable<T> task) {
@@ -122,4 +147,23 @@ public class JsonRpcService {
                     return null;
                 });
     }
+
+    // Served off the EDT: peaks come from sidecar files and never touch playback state
+    @JsonRequest("audio/peaks")
+    public CompletableFuture<Peaks> peaks(GetPeaks req) {
+        return peakStore.getPeaks(
+                Path.of(req.filePath()), req.startFrame(), req.endFrame(), req.width());
+    }
+
+    // Catalog requests never touch playback state either, and a scan can take minutes
+    @JsonRequest("catalog/scan")
+    public CompletableFuture<AudioCatalog.ScanResult> scanCatalog(ScanCatalog req) {
+        return catalog.scan(Path.of(req.directory()));
+    }
+
+    @JsonRequest("catalog/query")
+    public CompletableFuture<List<CatalogEntry>> queryCatalog(QueryCatalog req) {
+        Path directory = req.directory() != null ? Path.of(req.directory()) : null;
+        return CompletableFuture.completedFuture(catalog.query(directory));
+    }
 }
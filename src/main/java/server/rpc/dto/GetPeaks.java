@@ -0,0 +1,3 @@
+package server.rpc.dto;
+
+public record GetPeaks(String filePath, long startFrame, long endFrame, int width) {}
@@ -0,0 +1,3 @@
+package server.rpc.dto;
+
+public record PeaksProgress(String filePath, long decodedFrames, long totalFrames) {}
@@ -0,0 +1,3 @@
+package server.rpc.dto;
+
+public record QueryCatalog(String directory) {}
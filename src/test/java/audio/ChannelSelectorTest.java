@@ -0,0 +1,113 @@
+package audio;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import audio.SampleReader.ReadRequest;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import org.junit.jupiter.api.Test;
+
+/** Tests for selecting and downmixing channels while copying out of a view. */
+class ChannelSelectorTest {
+
+    private static final Path FILE = Path.of("three.wav");
+    private static final long FILE_FRAMES = 10_000;
+
+    @Test
+    void testSingleChannel() {
+        double[] dest = read(ChannelSelector.channel(1), 5, 3);
+
+        assertArrayEquals(new double[] {5.1, 6.1, 7.1}, dest, 1e-12);
+    }
+
+    @Test
+    void testSubsetInChosenOrder() {
+        double[] dest = read(ChannelSelector.channels(2, 0), 0, 2);
+
+        assertArrayEquals(new double[] {0.2, 0.0, 1.2, 1.0}, dest, 1e-12);
+    }
+
+    @Test
+    void testMonoAveragesEveryChannel() {
+        double[] dest = read(ChannelSelector.mono(), 4, 1);
+
+        assertArrayEquals(new double[] {4.1}, dest, 1e-12);
+    }
+
+    @Test
+    void testWeightedDownmix() {
+        double[] dest = read(ChannelSelector.downmix(0.5, 0.5, 0.0), 2, 1);
+
+        assertArrayEquals(new double[] {2.05}, dest, 1e-12);
+    }
+
+    @Test
+    void testSelectionSpansSeveralChunks() {
+        int frames = 2 * ChannelSelector.CHUNK_FRAMES + 17;
+        double[] dest = read(ChannelSelector.channel(2), 100, frames);
+
+        for (int i = 0; i < frames; i++) {
+            assertEquals(100 + i + 0.2, dest[i], 1e-9, "frame " + i);
+        }
+    }
+
+    @Test
+    void testAllCopiesEverything() {
+        double[] dest = read(ChannelSelector.ALL, 1, 1);
+
+        assertArrayEquals(new double[] {1.0, 1.1, 1.2}, dest, 1e-12);
+        assertTrue(ChannelSelector.ALL.isAll());
+        assertEquals(3, ChannelSelector.ALL.channelCount(3));
+    }
+
+    @Test
+    void testSelectionMustFitSource() {
+        assertThrows(
+                IllegalArgumentException.class, () -> ChannelSelector.channel(3).channelCount(3));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> ChannelSelector.downmix(0.5, 0.5).channelCount(3));
+        assertThrows(IllegalArgumentException.class, () -> ChannelSelector.channels());
+        assertThrows(IllegalArgumentException.class, () -> ChannelSelector.channel(-1));
+    }
+
+    @Test
+    void testReadMultipleAppliesEachRequestsSelection() throws Exception {
+        List<AudioData> results =
+                SyntheticReader.frameNumbers(3, FILE_FRAMES)
+                        .readMultiple(
+                                FILE,
+                                List.of(
+                                        new ReadRequest(10, 2),
+                                        new ReadRequest(11, 2, ChannelSelector.channel(0)),
+                                        new ReadRequest(10, 1, ChannelSelector.mono())))
+                        .get();
+
+        assertEquals(3, results.get(0).channelCount());
+        assertEquals(6, results.get(0).samples().length);
+        assertEquals(1, results.get(1).channelCount());
+        assertArrayEquals(new double[] {11.0, 12.0}, results.get(1).samples(), 1e-12);
+        assertArrayEquals(new double[] {10.1}, results.get(2).samples(), 1e-12);
+    }
+
+    @Test
+    void testReadMultipleFailsOnSelectionOutOfRange() {
+        var result =
+                SyntheticReader.frameNumbers(3, FILE_FRAMES)
+                        .readMultiple(
+                                FILE, List.of(new ReadRequest(0, 10, ChannelSelector.channel(5))));
+
+        var error = assertThrows(ExecutionException.class, result::get);
+        assertInstanceOf(IllegalArgumentException.class, error.getCause());
+    }
+
+    private static double[] read(ChannelSelector selector, long frame, int frames) {
+        AudioData data = SyntheticReader.frameNumbers(3, FILE_FRAMES).data(0, FILE_FRAMES);
+        double[] dest = new double[frames * selector.channelCount(3)];
+        try (SampleView view = SampleView.of(data)) {
+            view.read(frame, selector, dest, 0, frames);
+        }
+        return dest;
+    }
+}
@@ -0,0 +1,134 @@
+package audio;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the windowed-sinc polyphase rate converter. */
+class PolyphaseResamplerTest {
+
+    @Test
+    void testOutputLength() {
+        PolyphaseResampler down = new PolyphaseResampler(44100, 16000);
+        assertEquals(16000, down.outputLength(44100));
+        assertEquals(2, down.outputLength(3), "A partial output frame still counts");
+
+        assertEquals(48000, new PolyphaseResampler(44100, 48000).outputLength(44100));
+    }
+
+    @Test
+    void testConstantInputKeepsItsLevel() {
+        PolyphaseResampler resampler = new PolyphaseResampler(44100, 16000);
+        double[] output = resample(resampler, constant(44100, 0.5), 1);
+
+        int margin = resampler.halfWidth();
+        for (int n = margin; n < output.length - margin; n++) {
+            assertEquals(0.5, output[n], 1e-9, "frame " + n);
+        }
+    }
+
+    @Test
+    void testDownsamplingKeepsPassbandTone() {
+        assertKeepsTone(44100, 16000, 1000);
+    }
+
+    @Test
+    void testUpsamplingKeepsTone() {
+        assertKeepsTone(16000, 44100, 1000);
+        assertKeepsTone(44100, 48000, 5000);
+    }
+
+    @Test
+    void testDownsamplingRemovesContentAboveNewNyquist() {
+        // 10 kHz would fold back to 6 kHz at 16 kHz if it were not filtered out
+        PolyphaseResampler resampler = new PolyphaseResampler(44100, 16000);
+        double[] output = resample(resampler, sine(44100, 10000, 44100), 1);
+
+        int margin = resampler.halfWidth();
+        for (int n = margin; n < output.length - margin; n++) {
+            assertEquals(0.0, output[n], 1e-3, "frame " + n);
+        }
+    }
+
+    @Test
+    void testChannelsStaySeparate() {
+        PolyphaseResampler resampler = new PolyphaseResampler(48000, 16000);
+        double[] stereo = new double[2 * 4800];
+        for (int frame = 0; frame < 4800; frame++) {
+            stereo[2 * frame] = 1.0;
+        }
+        double[] output = resample(resampler, stereo, 2);
+
+        int margin = resampler.halfWidth();
+        for (int n = margin; n < output.length / 2 - margin; n++) {
+            assertEquals(1.0, output[2 * n], 1e-9);
+            assertEquals(0.0, output[2 * n + 1], 0.0);
+        }
+    }
+
+    @Test
+    void testRangesComputeIndependently() {
+        PolyphaseResampler resampler = new PolyphaseResampler(44100, 16000);
+        double[] input = sine(44100, 440, 20000);
+        double[] whole = resample(resampler, input, 1);
+
+        // Compute a range from the middle on its own, from just the input frames it needs
+        long start = 1234;
+        int frames = 500;
+        long inputStart = resampler.inputStart(start);
+        double[] window = new double[(int) (resampler.inputEnd(start + frames - 1) - inputStart)];
+        System.arraycopy(input, (int) inputStart, window, 0, window.length);
+        double[] part = new double[frames];
+        resampler.process(window, 1, start, part, 0, frames);
+
+        for (int n = 0; n < frames; n++) {
+            assertEquals(whole[(int) start + n], part[n], 1e-12);
+        }
+    }
+
+    @Test
+    void testRejectsNonPositiveRates() {
+        assertThrows(IllegalArgumentException.class, () -> new PolyphaseResampler(0, 16000));
+        assertThrows(IllegalArgumentException.class, () -> new PolyphaseResampler(44100, -1));
+    }
+
+    private static void assertKeepsTone(int sourceRate, int targetRate, double frequency) {
+        PolyphaseResampler resampler = new PolyphaseResampler(sourceRate, targetRate);
+        double[] output = resample(resampler, sine(sourceRate, frequency, sourceRate), 1);
+
+        int margin = resampler.halfWidth() * targetRate / sourceRate + 1;
+        for (int n = margin; n < output.length - margin; n++) {
+            double expected = Math.sin(2 * Math.PI * frequency * n / targetRate);
+            assertEquals(expected, output[n], 1e-3, "frame " + n);
+        }
+    }
+
+    /** Converts a whole signal, padding it with the silence the filter reads before frame 0. */
+    private static double[] resample(
+            PolyphaseResampler resampler, double[] input, int channelCount) {
+        int inputFrames = input.length / channelCount;
+        int frames = (int) resampler.outputLength(inputFrames);
+        int lead = (int) -resampler.inputStart(0);
+        double[] padded = new double[input.length + lead * channelCount];
+        System.arraycopy(input, 0, padded, lead * channelCount, input.length);
+
+        double[] output = new double[frames * channelCount];
+        resampler.process(padded, channelCount, 0, output, 0, frames);
+        return output;
+    }
+
+    private static double[] sine(int sampleRate, double frequency, int frames) {
+        double[] samples = new double[frames];
+        for (int i = 0; i < frames; i++) {
+            samples[i] = Math.sin(2 * Math.PI * frequency * i / sampleRate);
+        }
+        return samples;
+    }
+
+    private static double[] constant(int frames, double value) {
+        double[] samples = new double[frames];
+        Arrays.fill(samples, value);
+        return samples;
+    }
+}
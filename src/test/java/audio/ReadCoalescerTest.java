@@ -0,0 +1,135 @@
+package audio;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import audio.ReadCoalescer.Span;
+import audio.SampleReader.ReadRequest;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/** Tests for merging batched reads into spans and splitting the results back out. */
+class ReadCoalescerTest {
+
+    private static final Path FILE = Path.of("tiles.wav");
+    private static final long FILE_FRAMES = 10_000;
+
+    @Test
+    void testMergesOverlappingAndAdjacentRequests() {
+        List<Span> spans =
+                ReadCoalescer.coalesce(
+                        List.of(
+                                new ReadRequest(500, 100), // touches the next one
+                                new ReadRequest(0, 200),
+                                new ReadRequest(150, 100), // overlaps the first
+                                new ReadRequest(600, 50),
+                                new ReadRequest(9000, 10),
+                                new ReadRequest(20, 10))); // inside the first
+
+        assertEquals(3, spans.size());
+        assertEquals(new Span(0, 250, List.of(1, 5, 2)), spans.get(0));
+        assertEquals(new Span(500, 650, List.of(0, 3)), spans.get(1));
+        assertEquals(new Span(9000, 9010, List.of(4)), spans.get(2));
+    }
+
+    @Test
+    void testSpansStopGrowingAtLimit() {
+        long half = ReadCoalescer.MAX_SPAN_FRAMES / 2;
+        List<Span> spans =
+                ReadCoalescer.coalesce(
+                        List.of(
+                                new ReadRequest(0, half),
+                                new ReadRequest(half, half),
+                                new ReadRequest(2 * half, half),
+                                new ReadRequest(2 * half + 10, 10)));
+
+        assertEquals(2, spans.size());
+        assertEquals(List.of(0, 1), spans.get(0).requests());
+        assertEquals(List.of(2, 3), spans.get(1).requests());
+    }
+
+    @Test
+    void testResultsMatchIndividualReadsInRequestOrder() throws Exception {
+        SyntheticReader reader = SyntheticReader.ramp(FILE_FRAMES);
+        List<ReadRequest> requests =
+                List.of(
+                        new ReadRequest(300, 200),
+                        new ReadRequest(0, 400),
+                        new ReadRequest(9_990, 100), // runs past the end
+                        new ReadRequest(20_000, 10), // starts past the end
+                        new ReadRequest(350, 0));
+
+        List<AudioData> results = reader.readMultiple(FILE, requests).get(5, TimeUnit.SECONDS);
+
+        assertEquals(requests.size(), results.size());
+        for (int i = 0; i < requests.size(); i++) {
+            ReadRequest request = requests.get(i);
+            AudioData expected =
+                    reader.readSamples(FILE, request.startFrame(), request.frameCount()).join();
+            assertEquals(expected.startFrame(), results.get(i).startFrame());
+            assertEquals(expected.frameCount(), results.get(i).frameCount());
+            assertArrayEquals(expected.samples(), results.get(i).samples());
+        }
+
+        // [0, 500) and [350, 350) merge; the end-of-file requests are apart
+        assertEquals(3, reader.viewReads().size());
+    }
+
+    @Test
+    void testFailedSpanCancelsSiblings() {
+        CompletableFuture<SampleView> stalled = new CompletableFuture<>();
+        SyntheticReader reader =
+                new SyntheticReader(44100, 1, FILE_FRAMES, (_, _) -> 0.0) {
+                    @Override
+                    public CompletableFuture<SampleView> readView(
+                            Path audioFile,
+                            long startFrame,
+                            long frameCount,
+                            ReadPriority priority) {
+                        return startFrame == 0
+                                ? stalled
+                                : CompletableFuture.failedFuture(
+                                        new AudioReadException("Corrupt frame", audioFile));
+                    }
+                };
+
+        var result =
+                reader.readMultiple(
+                        FILE, List.of(new ReadRequest(0, 100), new ReadRequest(5000, 100)));
+
+        ExecutionException e =
+                assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(AudioReadException.class, e.getCause());
+        assertTrue(stalled.isCancelled(), "The other span should be abandoned");
+    }
+
+    @Test
+    void testCancellingBatchCancelsSpans() {
+        CompletableFuture<SampleView> stalled = new CompletableFuture<>();
+        SyntheticReader reader =
+                new SyntheticReader(44100, 1, FILE_FRAMES, (_, _) -> 0.0) {
+                    @Override
+                    public CompletableFuture<SampleView> readView(
+                            Path audioFile,
+                            long startFrame,
+                            long frameCount,
+                            ReadPriority priority) {
+                        return stalled;
+                    }
+                };
+
+        var result = reader.readMultiple(FILE, List.of(new ReadRequest(0, 100)));
+        result.cancel(true);
+
+        assertTrue(stalled.isCancelled());
+    }
+
+    @Test
+    void testEmptyBatch() throws Exception {
+        SyntheticReader reader = SyntheticReader.ramp(FILE_FRAMES);
+        assertEquals(List.of(), reader.readMultiple(FILE, List.of()).get());
+    }
+}
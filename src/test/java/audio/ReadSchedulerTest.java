@@ -0,0 +1,254 @@
+package audio;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Tests for priority ordering, bounding and cancellation of scheduled reads. */
+class ReadSchedulerTest {
+
+    private ReadScheduler scheduler;
+    private CountDownLatch gate;
+
+    @BeforeEach
+    void setUp() {
+        // One slot, so everything submitted after the blocker queues up behind it
+        scheduler = new ReadScheduler("test-read", 1, 3);
+        gate = new CountDownLatch(1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        gate.countDown();
+        scheduler.close();
+    }
+
+    @Test
+    void testHigherPrioritiesStartFirst() throws Exception {
+        ScheduledRead<?> blocker = block();
+        List<String> order = new CopyOnWriteArrayList<>();
+        var batch = scheduler.submit(ReadPriority.BATCH, () -> order.add("batch"));
+        var prefetch = scheduler.submit(ReadPriority.PREFETCH, () -> order.add("prefetch"));
+        var interactive =
+                scheduler.submit(ReadPriority.INTERACTIVE, () -> order.add("interactive"));
+
+        gate.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+        batch.get(5, TimeUnit.SECONDS);
+        prefetch.get(5, TimeUnit.SECONDS);
+        interactive.get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of("interactive", "prefetch", "batch"), order);
+    }
+
+    @Test
+    void testCompletedReadBypassesQueue() throws Exception {
+        block();
+        var read = scheduler.completed("cached");
+
+        assertEquals("cached", read.getNow(null), "Available while the only slot is busy");
+        assertTrue(read.retain());
+        read.release();
+        assertFalse(read.isCancelled(), "Releasing a finished read cannot cancel it");
+        assertEquals(0, scheduler.queuedCount());
+    }
+
+    @Test
+    void testEqualPrioritiesStartInOrder() throws Exception {
+        block();
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        var first = scheduler.submit(ReadPriority.PREFETCH, () -> order.add(1));
+        var second = scheduler.submit(ReadPriority.PREFETCH, () -> order.add(2));
+
+        gate.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of(1, 2), order);
+    }
+
+    @Test
+    void testPrioritizeOvertakesQueuedReads() throws Exception {
+        block();
+        List<String> order = new CopyOnWriteArrayList<>();
+        var prefetch = scheduler.submit(ReadPriority.PREFETCH, () -> order.add("prefetch"));
+        var batch = scheduler.submit(ReadPriority.BATCH, () -> order.add("batch"));
+
+        batch.prioritize(ReadPriority.INTERACTIVE);
+        assertEquals(ReadPriority.INTERACTIVE, batch.priority());
+
+        gate.countDown();
+        prefetch.get(5, TimeUnit.SECONDS);
+        batch.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("batch", "prefetch"), order);
+    }
+
+    @Test
+    void testCancelledQueuedReadNeverRuns() throws Exception {
+        ScheduledRead<?> blocker = block();
+        AtomicBoolean ran = new AtomicBoolean();
+        var read = scheduler.submit(ReadPriority.INTERACTIVE, () -> ran.getAndSet(true));
+
+        assertTrue(read.cancel(true));
+        assertEquals(0, scheduler.queuedCount());
+
+        gate.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+        var after = scheduler.submit(ReadPriority.BATCH, () -> true);
+        after.get(5, TimeUnit.SECONDS);
+        assertFalse(ran.get());
+        assertThrows(CancellationException.class, read::join);
+    }
+
+    @Test
+    void testCancelInterruptsRunningRead() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        var read =
+                scheduler.submit(
+                        ReadPriority.INTERACTIVE,
+                        () -> {
+                            started.countDown();
+                            try {
+                                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                            } catch (InterruptedException e) {
+                                interrupted.countDown();
+                            }
+                            return null;
+                        });
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        read.cancel(false);
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS), "Running read was not interrupted");
+
+        // The slot is free again
+        var next = scheduler.submit(ReadPriority.BATCH, () -> "next");
+        assertEquals("next", next.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testFullQueueDisplacesLowerPriority() throws Exception {
+        block();
+        var oldBatch = scheduler.submit(ReadPriority.BATCH, () -> "old");
+        var newBatch = scheduler.submit(ReadPriority.BATCH, () -> "new");
+        var prefetch = scheduler.submit(ReadPriority.PREFETCH, () -> "prefetch");
+
+        // Displaces the newest of the lowest priority
+        var interactive = scheduler.submit(ReadPriority.INTERACTIVE, () -> "interactive");
+        assertFalse(interactive.isDone());
+        ExecutionException displaced =
+                assertThrows(ExecutionException.class, () -> newBatch.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, displaced.getCause());
+
+        // Nothing queued is lower than a new batch read, so it is turned away
+        var rejected = scheduler.submit(ReadPriority.BATCH, () -> "rejected");
+        assertTrue(rejected.isCompletedExceptionally());
+
+        gate.countDown();
+        assertEquals("old", oldBatch.get(5, TimeUnit.SECONDS));
+        assertEquals("prefetch", prefetch.get(5, TimeUnit.SECONDS));
+        assertEquals("interactive", interactive.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testSharedReadIsCancelledByLastRelease() {
+        block();
+        var read = scheduler.submit(ReadPriority.PREFETCH, () -> "shared");
+
+        assertTrue(read.retain());
+        assertTrue(read.retain());
+        read.release();
+        assertFalse(read.isDone(), "One caller is still waiting");
+
+        read.release();
+        assertTrue(read.isCancelled());
+        assertFalse(read.retain());
+        assertEquals(0, scheduler.queuedCount());
+    }
+
+    @Test
+    void testReleaseAfterCompletionKeepsResult() throws Exception {
+        var read = scheduler.submit(ReadPriority.INTERACTIVE, () -> "done");
+        assertTrue(read.retain());
+        assertEquals("done", read.get(5, TimeUnit.SECONDS));
+
+        read.release();
+        assertTrue(read.retain(), "A finished read stays usable");
+        assertEquals("done", read.join());
+    }
+
+    @Test
+    void testFailuresCompleteTheFuture() {
+        var read =
+                scheduler.submit(
+                        ReadPriority.INTERACTIVE,
+                        () -> {
+                            throw new AudioReadException("boom", Path.of("x.wav"));
+                        });
+
+        ExecutionException e =
+                assertThrows(ExecutionException.class, () -> read.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(AudioReadException.class, e.getCause());
+    }
+
+    @Test
+    void testCloseCancelsQueuedAndRejectsNew() {
+        block();
+        var queued = scheduler.submit(ReadPriority.BATCH, () -> "queued");
+
+        scheduler.close();
+
+        assertTrue(queued.isCancelled());
+        var late = scheduler.submit(ReadPriority.INTERACTIVE, () -> "late");
+        assertTrue(late.isCompletedExceptionally());
+    }
+
+    @Test
+    void testCloseInterruptsRunningReadsAndAwaitsThem() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean returned = new AtomicBoolean();
+        var read =
+                scheduler.submit(
+                        ReadPriority.INTERACTIVE,
+                        () -> {
+                            started.countDown();
+                            try {
+                                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                            } catch (InterruptedException e) {
+                                // Stands in for a decoder finishing its current chunk
+                                Thread.sleep(100);
+                            }
+                            returned.set(true);
+                            return null;
+                        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        scheduler.close();
+
+        assertTrue(read.isCancelled());
+        assertTrue(scheduler.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(returned.get(), "The read's thread had left the task");
+        assertEquals(0, scheduler.runningCount());
+    }
+
+    /** Occupies the only slot until the gate opens. */
+    private ScheduledRead<?> block() {
+        return scheduler.submit(
+                ReadPriority.INTERACTIVE,
+                () -> {
+                    gate.await();
+                    return null;
+                });
+    }
+}
@@ -0,0 +1,122 @@
+package audio;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+
+/** Tests for block-cached resampled reads over a synthetic reader. */
+class ResampleCacheTest {
+
+    private static final Path FILE = Path.of("tone.wav");
+    private static final int FILE_RATE = 44100;
+    private static final long FILE_FRAMES = 400_000;
+    private static final int BLOCK = ResampleCache.BLOCK_FRAMES;
+
+    private final SyntheticReader reader = SyntheticReader.tone(FILE_RATE, FILE_FRAMES, 440);
+
+    @Test
+    void testMatchesDirectConversion() throws Exception {
+        ResampleCache cache = new ResampleCache(1 << 24);
+        AudioData data =
+                cache.read(reader, FILE, 1000, 2000, 16000, ReadPriority.INTERACTIVE).get();
+
+        assertEquals(16000, data.sampleRate());
+        assertEquals(1000, data.startFrame());
+        assertEquals(2000, data.frameCount());
+        double[] expected = convertDirectly(16000, 1000, 2000);
+        assertArrayEquals(expected, data.samples(), 1e-12);
+    }
+
+    @Test
+    void testReadSpanningBlocksMatchesDirectConversion() throws Exception {
+        ResampleCache cache = new ResampleCache(1 << 24);
+        AudioData data =
+                cache.read(reader, FILE, BLOCK - 300, 600, 16000, ReadPriority.INTERACTIVE).get();
+
+        assertArrayEquals(convertDirectly(16000, BLOCK - 300, 600), data.samples(), 1e-12);
+    }
+
+    @Test
+    void testOverlappingWindowsReuseBlocks() throws Exception {
+        ResampleCache cache = new ResampleCache(1 << 24);
+        cache.read(reader, FILE, 0, 4000, 16000, ReadPriority.INTERACTIVE).get();
+        int reads = reader.viewReads().size();
+
+        cache.read(reader, FILE, 2000, 4000, 16000, ReadPriority.INTERACTIVE).get();
+
+        assertEquals(reads, reader.viewReads().size(), "The cached block should serve the window");
+    }
+
+    @Test
+    void testUncachedConvertsEveryRead() throws Exception {
+        ResampleCache.NONE.read(reader, FILE, 0, 4000, 16000, ReadPriority.INTERACTIVE).get();
+        ResampleCache.NONE.read(reader, FILE, 0, 4000, 16000, ReadPriority.INTERACTIVE).get();
+
+        assertEquals(2, reader.viewReads().size());
+    }
+
+    @Test
+    void testDifferentRatesAreCachedSeparately() throws Exception {
+        ResampleCache cache = new ResampleCache(1 << 24);
+        AudioData low = cache.read(reader, FILE, 0, 100, 16000, ReadPriority.INTERACTIVE).get();
+        AudioData high = cache.read(reader, FILE, 0, 100, 48000, ReadPriority.INTERACTIVE).get();
+
+        assertEquals(16000, low.sampleRate());
+        assertEquals(48000, high.sampleRate());
+        assertEquals(2, reader.viewReads().size());
+    }
+
+    @Test
+    void testReadPastEndIsTruncated() throws Exception {
+        long frames = new PolyphaseResampler(FILE_RATE, 16000).outputLength(FILE_FRAMES);
+        AudioData data =
+                ResampleCache.NONE
+                        .read(reader, FILE, frames - 10, 100, 16000, ReadPriority.INTERACTIVE)
+                        .get();
+
+        assertEquals(10, data.frameCount());
+        assertEquals(
+                0,
+                ResampleCache.NONE
+                        .read(reader, FILE, frames + 5, 100, 16000, ReadPriority.INTERACTIVE)
+                        .get()
+                        .frameCount());
+    }
+
+    @Test
+    void testSourceRateReadsUnchanged() throws Exception {
+        AudioData data =
+                ResampleCache.NONE
+                        .read(reader, FILE, 500, 100, FILE_RATE, ReadPriority.INTERACTIVE)
+                        .get();
+
+        assertArrayEquals(reader.readSamples(FILE, 500, 100).get().samples(), data.samples());
+        assertTrue(reader.viewReads().isEmpty());
+    }
+
+    @Test
+    void testSampleReaderDefaultResamples() throws Exception {
+        AudioData data = reader.readSamples(FILE, 1000, 2000, 16000).get();
+
+        assertEquals(16000, data.sampleRate());
+        assertArrayEquals(convertDirectly(16000, 1000, 2000), data.samples(), 1e-12);
+    }
+
+    /** Converts the whole file in one pass and cuts out a range. */
+    private double[] convertDirectly(int targetRate, long start, int frames) {
+        PolyphaseResampler resampler = new PolyphaseResampler(FILE_RATE, targetRate);
+        int lead = (int) -resampler.inputStart(0);
+        double[] padded = new double[(int) FILE_FRAMES + lead];
+        for (int frame = 0; frame < FILE_FRAMES; frame++) {
+            padded[lead + frame] = reader.sampleAt(frame, 0);
+        }
+        int total = (int) resampler.outputLength(FILE_FRAMES);
+        double[] whole = new double[total];
+        resampler.process(padded, 1, 0, whole, 0, total);
+
+        double[] range = new double[frames];
+        System.arraycopy(whole, (int) start, range, 0, frames);
+        return range;
+    }
+}
@@ -0,0 +1,99 @@
+package audio;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Reader of a computed signal for tests, answering every file with the same samples. It records
+ * the start frame of each view it serves, so tests can see which reads reached it.
+ */
+public class SyntheticReader implements SampleReader {
+
+    /** Computes the sample of one channel at a frame. */
+    @FunctionalInterface
+    public interface Signal {
+        double sampleAt(long frame, int channel);
+    }
+
+    private final int sampleRate;
+    private final int channelCount;
+    private final long frameCount;
+    private final Signal signal;
+    private final List<Long> viewReads = new ArrayList<>();
+
+    public SyntheticReader(int sampleRate, int channelCount, long frameCount, Signal signal) {
+        this.sampleRate = sampleRate;
+        this.channelCount = channelCount;
+        this.frameCount = frameCount;
+        this.signal = signal;
+    }
+
+    /** Mono reader whose sample at each frame encodes the frame number as a fraction. */
+    public static SyntheticReader ramp(long frameCount) {
+        return new SyntheticReader(
+                44100, 1, frameCount, (frame, _) -> frame / (double) frameCount);
+    }
+
+    /** Mono reader of a sine tone at half amplitude. */
+    public static SyntheticReader tone(int sampleRate, long frameCount, double frequency) {
+        return new SyntheticReader(
+                sampleRate,
+                1,
+                frameCount,
+                (frame, _) -> 0.5 * Math.sin(2 * Math.PI * frequency * frame / sampleRate));
+    }
+
+    /** Reader whose sample at each frame is the frame number plus channel / 10. */
+    public static SyntheticReader frameNumbers(int channelCount, long frameCount) {
+        return new SyntheticReader(
+                44100, channelCount, frameCount, (frame, channel) -> frame + channel / 10.0);
+    }
+
+    public double sampleAt(long frame, int channel) {
+        return signal.sampleAt(frame, channel);
+    }
+
+    /** The samples of a frame range, truncated at the end of the signal. */
+    public AudioData data(long startFrame, long frameCount) {
+        long frames = Math.max(0, Math.min(frameCount, this.frameCount - startFrame));
+        double[] samples = new double[(int) frames * channelCount];
+        for (int i = 0; i < frames; i++) {
+            for (int channel = 0; channel < channelCount; channel++) {
+                samples[i * channelCount + channel] = sampleAt(startFrame + i, channel);
+            }
+        }
+        return new AudioData(samples, sampleRate, channelCount, startFrame, frames);
+    }
+
+    /** Start frames of the views served so far, in the order they were asked for. */
+    public synchronized List<Long> viewReads() {
+        return List.copyOf(viewReads);
+    }
+
+    @Override
+    public CompletableFuture<AudioData> readSamples(
+            Path audioFile, long startFrame, long frameCount) {
+        return CompletableFuture.completedFuture(data(startFrame, frameCount));
+    }
+
+    @Override
+    public CompletableFuture<SampleView> readView(
+            Path audioFile, long startFrame, long frameCount, ReadPriority priority) {
+        synchronized (this) {
+            viewReads.add(startFrame);
+        }
+        return SampleReader.super.readView(audioFile, startFrame, frameCount, priority);
+    }
+
+    @Override
+    public CompletableFuture<AudioMetadata> getMetadata(Path audioFile) {
+        double seconds = frameCount / (double) sampleRate;
+        return CompletableFuture.completedFuture(
+                new AudioMetadata(sampleRate, channelCount, 16, "test", frameCount, seconds));
+    }
+
+    @Override
+    public void close() {}
+}
@@ -0,0 +1,205 @@
+package audio.catalog;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import audio.AudioData;
+import audio.AudioMetadata;
+import audio.AudioReadException;
+import audio.SampleReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests for scanning directory trees into the catalog and reloading its saved index. */
+class AudioCatalogTest {
+
+    @TempDir Path tempDir;
+
+    private Path corpus;
+    private Path indexFile;
+    private CountingReader reader;
+    private AudioCatalog catalog;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        corpus = Files.createDirectories(tempDir.resolve("corpus"));
+        indexFile = tempDir.resolve("index/catalog.idx");
+        reader = new CountingReader();
+        write("a.wav", 100);
+        write("session1/b.flac", 200);
+        write("session1/deep/c.mp3", 300);
+        write("session1/notes.txt", 10);
+        catalog = new AudioCatalog(reader, indexFile, 4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        catalog.close();
+    }
+
+    @Test
+    void testScanIndexesSupportedFilesInNestedDirectories() throws Exception {
+        AudioCatalog.ScanResult result = scan();
+
+        assertEquals(3, result.files());
+        assertEquals(3, result.updated());
+        List<CatalogEntry> entries = catalog.query(null);
+        assertEquals(3, entries.size());
+        assertTrue(entries.stream().noneMatch(entry -> entry.path().endsWith(".txt")));
+        CatalogEntry flac = find(entries, "b.flac");
+        assertEquals(200, flac.size());
+        assertEquals(200, flac.metadata().frameCount(), "The fake reader reports the file size");
+    }
+
+    @Test
+    void testRescanReadsOnlyChangedFiles() throws Exception {
+        scan();
+        assertEquals(0, scan().updated(), "Nothing changed");
+        assertEquals(3, reader.total());
+
+        Path changed = write("session1/b.flac", 250);
+        AudioCatalog.ScanResult result = scan();
+
+        assertEquals(1, result.updated());
+        assertEquals(2, reader.count(changed));
+        assertEquals(250, find(catalog.query(null), "b.flac").metadata().frameCount());
+    }
+
+    @Test
+    void testRescanDropsDeletedFiles() throws Exception {
+        scan();
+        Files.delete(corpus.resolve("session1/deep/c.mp3"));
+
+        AudioCatalog.ScanResult result = scan();
+
+        assertEquals(1, result.removed());
+        assertEquals(2, catalog.size());
+    }
+
+    @Test
+    void testSavedIndexServesQueriesAndRescansAfterRestart() throws Exception {
+        scan();
+        catalog.close();
+
+        catalog = new AudioCatalog(reader, indexFile, 4);
+        assertEquals(3, catalog.query(corpus).size(), "Loaded from the saved index");
+
+        assertEquals(0, scan().updated());
+        assertEquals(3, reader.total(), "The restarted catalog read no file again");
+    }
+
+    @Test
+    void testUnreadableFileIsRecordedAndNotRetried() throws Exception {
+        Path broken = write("broken.wav", 1);
+        reader.failing = broken;
+
+        AudioCatalog.ScanResult first = scan();
+        AudioCatalog.ScanResult second = scan();
+
+        assertEquals(1, first.unreadable());
+        assertNull(find(catalog.query(null), "broken.wav").metadata());
+        assertEquals(0, second.updated());
+        assertEquals(1, reader.count(broken));
+    }
+
+    @Test
+    void testQueryIsLimitedToDirectory() throws Exception {
+        scan();
+
+        List<CatalogEntry> entries = catalog.query(corpus.resolve("session1"));
+
+        assertEquals(2, entries.size());
+        assertTrue(entries.get(0).path().endsWith("b.flac"), "Entries are in path order");
+        assertTrue(entries.get(1).path().endsWith("c.mp3"));
+    }
+
+    @Test
+    void testScanOfMissingDirectoryFails() {
+        var future = catalog.scan(tempDir.resolve("missing"));
+
+        var error = assertThrows(ExecutionException.class, future::get);
+        assertInstanceOf(NoSuchFileException.class, error.getCause());
+    }
+
+    @Test
+    void testCorruptIndexIsIgnored() throws Exception {
+        Files.createDirectories(indexFile.getParent());
+        Files.write(indexFile, new byte[] {1, 2, 3});
+
+        AudioCatalog reloaded = new AudioCatalog(reader, indexFile, 4);
+
+        assertEquals(0, reloaded.size());
+        reloaded.close();
+    }
+
+    private AudioCatalog.ScanResult scan() throws Exception {
+        return catalog.scan(corpus).get(10, TimeUnit.SECONDS);
+    }
+
+    private Path write(String name, int size) throws Exception {
+        Path file = corpus.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.write(file, new byte[size]);
+        // Give each version a distinct time even on coarse file system clocks
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1_000_000L * size));
+        return file;
+    }
+
+    private static CatalogEntry find(List<CatalogEntry> entries, String name) {
+        return entries.stream()
+                .filter(entry -> entry.path().endsWith(name))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    /** Reports each file's size as its length in frames, and counts the reads per file. */
+    private static class CountingReader implements SampleReader {
+        final Map<Path, Integer> reads = new ConcurrentHashMap<>();
+        volatile Path failing;
+
+        int count(Path file) {
+            return reads.getOrDefault(file.toAbsolutePath().normalize(), 0);
+        }
+
+        int total() {
+            return reads.values().stream().mapToInt(Integer::intValue).sum();
+        }
+
+        @Override
+        public CompletableFuture<AudioData> readSamples(
+                Path audioFile, long startFrame, long frameCount) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<AudioMetadata> getMetadata(Path audioFile) {
+            reads.merge(audioFile.toAbsolutePath().normalize(), 1, Integer::sum);
+            if (audioFile.equals(failing)) {
+                return CompletableFuture.failedFuture(
+                        new AudioReadException("Corrupt header", audioFile));
+            }
+            try {
+                long frames = Files.size(audioFile);
+                return CompletableFuture.completedFuture(
+                        new AudioMetadata(44100, 1, 16, "test", frames, frames / 44100.0));
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        @Override
+        public void close() {}
+    }
+}
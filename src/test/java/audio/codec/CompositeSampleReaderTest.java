@@ -0,0 +1,276 @@
+package audio.codec;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import audio.AudioData;
+import audio.AudioMetadata;
+import audio.AudioReadException;
+import audio.ResampleCache;
+import audio.SampleReader;
+import audio.SampleView;
+import audio.pcm.MappedPcmReaderProvider;
+import audio.pcm.MappedPcmSampleReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests for routing files to backends by their detected format. */
+class CompositeSampleReaderTest {
+
+    private static final Path SWEEP_WAV = Paths.get("src/test/resources/audio/sweep.wav");
+    private static final Path SWEEP_FLAC = Paths.get("src/test/resources/audio/sweep.flac");
+    private static final Path WORDPOOL = Paths.get("src/test/resources/audio/wordpool.txt");
+
+    @TempDir Path tempDir;
+
+    private final ResampleCache resampled = new ResampleCache(1_000_000);
+    private FakeReader fallback;
+    private CompositeSampleReader reader;
+
+    @BeforeEach
+    void setUp() {
+        fallback = new FakeReader();
+        reader =
+                new CompositeSampleReader(
+                        fallback, List.of(new MappedPcmReaderProvider()), resampled);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        reader.close();
+    }
+
+    @Test
+    void testWavIsReadFromMapping() throws Exception {
+        AudioData routed = reader.readSamples(SWEEP_WAV, 1000, 500).get(5, TimeUnit.SECONDS);
+
+        try (MappedPcmSampleReader direct = new MappedPcmSampleReader()) {
+            AudioData expected = direct.readSamples(SWEEP_WAV, 1000, 500).get(5, TimeUnit.SECONDS);
+            assertArrayEquals(expected.samples(), routed.samples(), 0.0);
+        }
+        assertEquals(0, fallback.calls.get(), "The native decoder was never asked");
+    }
+
+    @Test
+    void testOtherFormatsGoToFallback() throws Exception {
+        AudioMetadata metadata = reader.getMetadata(SWEEP_FLAC).get(5, TimeUnit.SECONDS);
+
+        assertEquals("fake", metadata.format());
+        assertEquals(1, fallback.calls.get());
+    }
+
+    @Test
+    void testRegisteredProvidersReadWavAndFlac() throws Exception {
+        reader.close();
+        reader = new CompositeSampleReader(fallback, resampled);
+
+        AudioData wav = reader.readSamples(SWEEP_WAV, 2000, 500).get(5, TimeUnit.SECONDS);
+        AudioData flac = reader.readSamples(SWEEP_FLAC, 2000, 500).get(5, TimeUnit.SECONDS);
+
+        assertEquals(500, flac.frameCount());
+        assertArrayEquals(wav.samples(), flac.samples(), 0.0);
+        assertEquals(0, fallback.calls.get(), "The native decoder was never asked");
+    }
+
+    @Test
+    void testDeclinedFileFallsThrough() throws Exception {
+        // Looks like WAV to the sniffer, but has no chunks the mapped reader can parse
+        byte[] header = "RIFF\0\0\0\0WAVEjunk".getBytes(StandardCharsets.US_ASCII);
+        Path broken = Files.write(tempDir.resolve("broken.wav"), header);
+
+        AudioData data = reader.readSamples(broken, 0, 10).get(5, TimeUnit.SECONDS);
+
+        assertEquals(10, data.frameCount());
+        assertEquals(1, fallback.calls.get());
+    }
+
+    @Test
+    void testRouteIsChosenOnce() throws Exception {
+        CountingProvider declining = new CountingProvider();
+        reader.close();
+        reader = new CompositeSampleReader(fallback, List.of(declining), resampled);
+
+        for (int i = 0; i < 3; i++) {
+            reader.readSamples(SWEEP_WAV, 0, 10).get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(1, declining.probes.get(), "Only the first read offered the file around");
+        assertEquals(3, fallback.calls.get());
+    }
+
+    @Test
+    void testChangedFileIsRoutedAgain() throws Exception {
+        CountingProvider declining = new CountingProvider();
+        reader.close();
+        reader = new CompositeSampleReader(fallback, List.of(declining), resampled);
+        Path audioFile = Files.copy(SWEEP_WAV, tempDir.resolve("take.wav"));
+
+        reader.readSamples(audioFile, 0, 10).get(5, TimeUnit.SECONDS);
+        reader.readSamples(audioFile, 0, 10).get(5, TimeUnit.SECONDS);
+        assertEquals(1, declining.probes.get());
+
+        Files.setLastModifiedTime(audioFile, FileTime.fromMillis(0));
+        reader.readSamples(audioFile, 0, 10).get(5, TimeUnit.SECONDS);
+        assertEquals(2, declining.probes.get(), "The rewritten file was offered around again");
+    }
+
+    @Test
+    void testMissingFileIsNotRemembered() throws Exception {
+        CountingProvider declining = new CountingProvider();
+        reader.close();
+        reader = new CompositeSampleReader(fallback, List.of(declining), resampled);
+        Path audioFile = tempDir.resolve("later.wav");
+
+        reader.readSamples(audioFile, 0, 10).get(5, TimeUnit.SECONDS);
+        assertEquals(0, declining.probes.get(), "Nothing to detect, so only the fallback is asked");
+
+        Files.copy(SWEEP_WAV, audioFile);
+        reader.readSamples(audioFile, 0, 10).get(5, TimeUnit.SECONDS);
+        assertEquals(1, declining.probes.get());
+    }
+
+    @Test
+    void testCancellingFirstReadReachesBackend() throws Exception {
+        HoldingProvider holding = new HoldingProvider();
+        reader.close();
+        reader = new CompositeSampleReader(fallback, List.of(holding), resampled);
+
+        CompletableFuture<SampleView> view = reader.readView(SWEEP_WAV, 0, 100);
+        CompletableFuture<AudioData> backend = holding.issued.get(5, TimeUnit.SECONDS);
+        view.cancel(true);
+
+        // The cancellation may reach the backend just after the route is taken
+        assertThrows(CancellationException.class, () -> backend.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testSupportIsJudgedByContent() throws Exception {
+        Path renamed = Files.copy(SWEEP_WAV, tempDir.resolve("take1.dat"));
+
+        assertTrue(reader.isFormatSupported(renamed));
+        assertTrue(reader.isFormatSupported(SWEEP_FLAC));
+        assertFalse(reader.isFormatSupported(WORDPOOL));
+    }
+
+    @Test
+    void testCloseClosesEveryBackend() throws Exception {
+        reader.close();
+
+        assertTrue(fallback.closed);
+        var error =
+                assertThrows(
+                        Exception.class,
+                        () -> reader.readSamples(SWEEP_WAV, 0, 10).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(AudioReadException.class, error.getCause());
+    }
+
+    /** Stands in for the native decoder, answering every file with silence. */
+    private static class FakeReader implements SampleReader {
+        final AtomicInteger calls = new AtomicInteger();
+        volatile boolean closed = false;
+
+        @Override
+        public CompletableFuture<AudioData> readSamples(
+                Path audioFile, long startFrame, long frameCount) {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(
+                    new AudioData(new double[(int) frameCount], 8000, 1, startFrame, frameCount));
+        }
+
+        @Override
+        public CompletableFuture<AudioMetadata> getMetadata(Path audioFile) {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(
+                    new AudioMetadata(8000, 1, 16, "fake", 8000, 1.0));
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    /** Claims WAV files and hands out reads that never finish on their own. */
+    private static class HoldingProvider implements SampleReaderProvider {
+        final CompletableFuture<CompletableFuture<AudioData>> issued = new CompletableFuture<>();
+
+        @Override
+        public String name() {
+            return "holding";
+        }
+
+        @Override
+        public boolean supports(ContainerFormat format) {
+            return format == ContainerFormat.WAV;
+        }
+
+        @Override
+        public SampleReader create() {
+            return new SampleReader() {
+                @Override
+                public CompletableFuture<AudioData> readSamples(
+                        Path audioFile, long startFrame, long frameCount) {
+                    CompletableFuture<AudioData> read = new CompletableFuture<>();
+                    issued.complete(read);
+                    return read;
+                }
+
+                @Override
+                public CompletableFuture<AudioMetadata> getMetadata(Path audioFile) {
+                    return CompletableFuture.completedFuture(
+                            new AudioMetadata(8000, 1, 16, "WAV", 8000, 1.0));
+                }
+
+                @Override
+                public void close() {}
+            };
+        }
+    }
+
+    /** Claims WAV files, then declines each one it is offered. */
+    private static class CountingProvider implements SampleReaderProvider {
+        final AtomicInteger probes = new AtomicInteger();
+
+        @Override
+        public String name() {
+            return "declining";
+        }
+
+        @Override
+        public boolean supports(ContainerFormat format) {
+            return format == ContainerFormat.WAV;
+        }
+
+        @Override
+        public SampleReader create() {
+            return new SampleReader() {
+                @Override
+                public CompletableFuture<AudioData> readSamples(
+                        Path audioFile, long startFrame, long frameCount) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public CompletableFuture<AudioMetadata> getMetadata(Path audioFile) {
+                    probes.incrementAndGet();
+                    return CompletableFuture.failedFuture(
+                            new AudioReadException("Not for me", audioFile));
+                }
+
+                @Override
+                public void close() {}
+            };
+        }
+    }
+}
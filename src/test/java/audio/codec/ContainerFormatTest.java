@@ -0,0 +1,91 @@
+package audio.codec;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import audio.AudioReadException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests for recognising container formats by their magic bytes. */
+class ContainerFormatTest {
+
+    private static final Path NOISE_MP3 = Paths.get("src/test/resources/audio/noise.mp3");
+
+    @TempDir Path tempDir;
+
+    @Test
+    void testDetectsTestFilesRegardlessOfName() throws Exception {
+        Path renamed = tempDir.resolve("recording.bin");
+        Files.copy(Paths.get("src/test/resources/audio/sweep.wav"), renamed);
+
+        assertEquals(ContainerFormat.WAV, ContainerFormat.detect(renamed));
+        assertEquals(
+                ContainerFormat.FLAC,
+                ContainerFormat.detect(Paths.get("src/test/resources/audio/sweep.flac")));
+        assertEquals(ContainerFormat.MP3, ContainerFormat.detect(NOISE_MP3));
+        assertEquals(
+                ContainerFormat.UNKNOWN,
+                ContainerFormat.detect(Paths.get("src/test/resources/audio/wordpool.txt")));
+    }
+
+    @Test
+    void testDetectsHeaders() {
+        assertEquals(ContainerFormat.WAV, detect(chunk("RIFF", "WAVE")));
+        assertEquals(ContainerFormat.WAV, detect(chunk("RF64", "WAVE")));
+        assertEquals(ContainerFormat.AIFF, detect(chunk("FORM", "AIFC")));
+        assertEquals(ContainerFormat.UNKNOWN, detect(chunk("RIFF", "AVI ")));
+        assertEquals(ContainerFormat.OGG, detect(ascii("OggS")));
+        assertEquals(ContainerFormat.MP3, detect(new byte[] {(byte) 0xFF, (byte) 0xFB, 0x50, 0}));
+        assertEquals(ContainerFormat.UNKNOWN, detect(new byte[] {(byte) 0xFF, (byte) 0xFB, 0x5C}));
+        assertEquals(ContainerFormat.AAC, detect(new byte[] {(byte) 0xFF, (byte) 0xF1, 0x50}));
+        assertEquals(ContainerFormat.UNKNOWN, detect(new byte[] {(byte) 0xFF, (byte) 0xE8}));
+        assertEquals(ContainerFormat.UNKNOWN, detect(new byte[0]));
+    }
+
+    @Test
+    void testSkipsId3Tag() throws Exception {
+        // A 300-byte tag, its size written as four 7-bit digits
+        byte[] stream = Files.readAllBytes(NOISE_MP3);
+        byte[] file = new byte[10 + 300 + stream.length];
+        System.arraycopy(ascii("ID3"), 0, file, 0, 3);
+        file[3] = 4;
+        file[8] = 300 >> 7;
+        file[9] = 300 & 0x7F;
+        System.arraycopy(stream, 0, file, 310, stream.length);
+        Path mp3 = Files.write(tempDir.resolve("tagged"), file);
+
+        assertEquals(ContainerFormat.MP3, ContainerFormat.detect(mp3));
+    }
+
+    @Test
+    void testFrameSyncAloneIsNotMp3() throws Exception {
+        // A UTF-16LE byte order mark reads as a sync, and the "H" after it completes a valid header
+        byte[] text = "\uFEFFHello, this is not audio".getBytes(StandardCharsets.UTF_16LE);
+        Path notes = Files.write(tempDir.resolve("notes.txt"), text);
+
+        assertEquals(ContainerFormat.UNKNOWN, ContainerFormat.detect(notes));
+    }
+
+    @Test
+    void testMissingFileFails() {
+        assertThrows(
+                AudioReadException.class, () -> ContainerFormat.detect(tempDir.resolve("none")));
+    }
+
+    private static ContainerFormat detect(byte[] header) {
+        return ContainerFormat.detect(ByteBuffer.wrap(header));
+    }
+
+    private static byte[] chunk(String id, String form) {
+        return ascii(id + "\0\0\0\0" + form);
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,132 @@
+package audio.codec;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import audio.AudioData;
+import audio.AudioMetadata;
+import audio.ReadPriority;
+import audio.SampleReader;
+import audio.SampleView;
+import audio.SyntheticReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests for scheduling and caching the reads of a provider backend. */
+class ScheduledSampleReaderTest {
+
+    private static final int BLOCK = ScheduledSampleReader.BLOCK_FRAMES;
+    private static final long FRAMES = 3L * BLOCK + 1000;
+
+    @TempDir Path tempDir;
+
+    private final SyntheticReader signal = SyntheticReader.frameNumbers(2, FRAMES);
+    private final CountingBackend backend = new CountingBackend();
+    private Path audioFile;
+    private ScheduledSampleReader reader;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // Blocks are keyed by the file's attributes, so the file has to exist
+        audioFile = Files.createFile(tempDir.resolve("take.flac"));
+        reader = new ScheduledSampleReader("test", backend, 100_000_000);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        reader.close();
+    }
+
+    @Test
+    void testReadsMatchBackendAcrossBlocks() throws Exception {
+        long start = BLOCK - 500;
+        AudioData data = reader.readSamples(audioFile, start, 1000).get(5, TimeUnit.SECONDS);
+
+        assertEquals(1000, data.frameCount());
+        assertArrayEquals(signal.data(start, 1000).samples(), data.samples(), 0.0);
+        assertEquals(List.of(0L, (long) BLOCK), backend.sortedReads());
+    }
+
+    @Test
+    void testReadStopsAtEndOfFile() throws Exception {
+        try (SampleView view =
+                reader.readView(audioFile, FRAMES - 100, 1000).get(5, TimeUnit.SECONDS)) {
+            assertEquals(100, view.frameCount());
+            assertEquals(FRAMES - 1 + 0.1, view.sample(99, 1), 1e-9);
+        }
+        assertEquals(
+                0, reader.readSamples(audioFile, FRAMES, 10).get(5, TimeUnit.SECONDS).frameCount());
+    }
+
+    @Test
+    void testCachedBlocksAreReadOnce() throws Exception {
+        reader.readSamples(audioFile, 0, 2 * BLOCK, ReadPriority.PREFETCH).get(5, TimeUnit.SECONDS);
+        reader.readSamples(audioFile, 1000, BLOCK).get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of(0L, (long) BLOCK), backend.sortedReads());
+    }
+
+    @Test
+    void testUncachedBackendIsReadEveryTime() throws Exception {
+        reader.close();
+        reader = new ScheduledSampleReader("test", backend, 0);
+
+        reader.readSamples(audioFile, 0, 1000).get(5, TimeUnit.SECONDS);
+        reader.readSamples(audioFile, 0, 1000).get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of(0L, 0L), backend.sortedReads());
+    }
+
+    @Test
+    void testChangedFileIsReadAfresh() throws Exception {
+        reader.readSamples(audioFile, 0, 1000).get(5, TimeUnit.SECONDS);
+        Files.setLastModifiedTime(audioFile, FileTime.fromMillis(0));
+        reader.readSamples(audioFile, 0, 1000).get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of(0L, 0L), backend.sortedReads());
+    }
+
+    @Test
+    void testClosedReaderRefusesReads() throws Exception {
+        reader.close();
+
+        assertTrue(backend.closed);
+        CompletableFuture<AudioData> read = reader.readSamples(audioFile, 0, 10);
+        assertTrue(read.isCompletedExceptionally());
+    }
+
+    /** Serves the synthetic signal, recording where each of its reads starts. */
+    private class CountingBackend implements SampleReader {
+        final List<Long> reads = new CopyOnWriteArrayList<>();
+        volatile boolean closed = false;
+
+        List<Long> sortedReads() {
+            return reads.stream().sorted().toList();
+        }
+
+        @Override
+        public CompletableFuture<AudioData> readSamples(
+                Path audioFile, long startFrame, long frameCount) {
+            reads.add(startFrame);
+            return CompletableFuture.completedFuture(signal.data(startFrame, frameCount));
+        }
+
+        @Override
+        public CompletableFuture<AudioMetadata> getMetadata(Path audioFile) {
+            return signal.getMetadata(audioFile);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package audio.flac;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import audio.AudioData;
+import audio.AudioMetadata;
+import audio.AudioReadException;
+import audio.pcm.MappedPcmSampleReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for the pure-Java FLAC reader. sweep.flac is a lossless encoding of sweep.wav that mixes
+ * every subframe type, all stereo decorrelation modes and escaped residual partitions, with a
+ * sparse seek table covering only frames 0 and 4.
+ */
+class FlacSampleReaderTest {
+
+    private static final Path SWEEP_FLAC = Paths.get("src/test/resources/audio/sweep.flac");
+    private static final Path SWEEP_WAV = Paths.get("src/test/resources/audio/sweep.wav");
+    private static final long SWEEP_FRAMES = 34459;
+    private static final int SEEKTABLE_HEADER_OFFSET = 42;
+
+    @TempDir Path tempDir;
+
+    private FlacSampleReader reader;
+    private MappedPcmSampleReader wavReader;
+
+    @BeforeEach
+    void setUp() {
+        reader = new FlacSampleReader();
+        wavReader = new MappedPcmSampleReader();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        reader.close();
+        wavReader.close();
+    }
+
+    @Test
+    void testGetMetadataFromStreamInfo() throws Exception {
+        AudioMetadata metadata = reader.getMetadata(SWEEP_FLAC).get(5, TimeUnit.SECONDS);
+
+        assertEquals(44100, metadata.sampleRate());
+        assertEquals(2, metadata.channelCount());
+        assertEquals(16, metadata.bitsPerSample());
+        assertEquals(SWEEP_FRAMES, metadata.frameCount());
+        assertEquals("FLAC", metadata.format());
+    }
+
+    @Test
+    void testWholeFileMatchesWav() throws Exception {
+        assertMatchesWav(SWEEP_FLAC, 0, SWEEP_FRAMES);
+    }
+
+    @Test
+    void testWindowsMatchWav() throws Exception {
+        // Frame starts, frame boundaries, seek point boundaries and the short last frame
+        long[] starts = {1, 4095, 4096, 10000, 16383, 16384, 20000, 32767, 34000};
+        for (long start : starts) {
+            assertMatchesWav(SWEEP_FLAC, start, 500);
+        }
+    }
+
+    @Test
+    void testSeekWithoutSeekTable() throws Exception {
+        // Turn the SEEKTABLE block into PADDING so frames are found by bisection alone
+        byte[] bytes = Files.readAllBytes(SWEEP_FLAC);
+        assertEquals(3, bytes[SEEKTABLE_HEADER_OFFSET]);
+        bytes[SEEKTABLE_HEADER_OFFSET] = 1;
+        Path noSeekTable = tempDir.resolve("no-seektable.flac");
+        Files.write(noSeekTable, bytes);
+
+        for (long start : new long[] {0, 8191, 20000, 30000}) {
+            assertMatchesWav(noSeekTable, start, 3000);
+        }
+    }
+
+    @Test
+    void testReadPastEndIsTruncated() throws Exception {
+        AudioData data =
+                reader.readSamples(SWEEP_FLAC, SWEEP_FRAMES - 50, 100).get(5, TimeUnit.SECONDS);
+        assertEquals(50, data.frameCount());
+
+        AudioData empty =
+                reader.readSamples(SWEEP_FLAC, SWEEP_FRAMES + 10, 100).get(5, TimeUnit.SECONDS);
+        assertEquals(0, empty.frameCount());
+    }
+
+    @Test
+    void testNonFlacFileFails() {
+        var future = reader.readSamples(SWEEP_WAV, 0, 100);
+        ExecutionException e =
+                assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(AudioReadException.class, e.getCause());
+    }
+
+    @Test
+    void testReplacedFileIsOpenedAgain() throws Exception {
+        Path flac = Files.copy(SWEEP_FLAC, tempDir.resolve("replaced.flac"));
+        assertEquals(SWEEP_FRAMES, reader.getMetadata(flac).get(5, TimeUnit.SECONDS).frameCount());
+
+        Files.copy(SWEEP_WAV, flac, StandardCopyOption.REPLACE_EXISTING);
+
+        var future = reader.getMetadata(flac);
+        ExecutionException e =
+                assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(AudioReadException.class, e.getCause());
+    }
+
+    @Test
+    void testCorruptFrameFails() throws Exception {
+        // Flip a bit in the middle of the first frame's audio data so its CRC-16 fails
+        byte[] bytes = Files.readAllBytes(SWEEP_FLAC);
+        bytes[2000] ^= 0x10;
+        Path corrupt = tempDir.resolve("corrupt.flac");
+        Files.write(corrupt, bytes);
+
+        var future = reader.readSamples(corrupt, 0, 100);
+        ExecutionException e =
+                assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(AudioReadException.class, e.getCause());
+    }
+
+    private void assertMatchesWav(Path flac, long start, long count) throws Exception {
+        AudioData expected =
+                wavReader.readSamples(SWEEP_WAV, start, count).get(5, TimeUnit.SECONDS);
+        AudioData actual = reader.readSamples(flac, start, count).get(5, TimeUnit.SECONDS);
+
+        assertEquals(expected.frameCount(), actual.frameCount(), "frames at " + start);
+        assertArrayEquals(expected.samples(), actual.samples(), 0.0, "samples at " + start);
+    }
+}
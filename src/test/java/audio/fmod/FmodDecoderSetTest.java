@@ -0,0 +1,251 @@
+package audio.fmod;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import audio.AudioMetadata;
+import audio.AudioReadException;
+import audio.pcm.NativeSampleBuffer;
+import audio.pcm.PcmFormat;
+import audio.pcm.SampleBuffer;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/** Tests for spreading the decodes of one file over several decoders. */
+class FmodDecoderSetTest {
+
+    private static final Path FILE = Path.of("long.flac");
+    private static final AudioMetadata METADATA =
+            new AudioMetadata(44100, 1, 16, "test", 1_000_000, 1_000_000 / 44100.0);
+
+    private final List<FakeDecoder> opened = new CopyOnWriteArrayList<>();
+    private final ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+
+    @AfterEach
+    void tearDown() {
+        threads.shutdownNow();
+    }
+
+    @Test
+    void testOverlappingDecodesOpenDecodersUpToWidth() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        FmodDecoderSet set = new FmodDecoderSet(FILE, newDecoder(gate), 3, () -> newDecoder(gate));
+
+        List<CompletableFuture<SampleBuffer>> decodes = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            decodes.add(decodeAsync(set, i * 1000L, 1000));
+        }
+        awaitBusy(3);
+
+        assertEquals(3, set.openCount());
+        assertEquals(3, opened.size(), "Two decodes wait rather than open a fourth decoder");
+
+        gate.countDown();
+        for (CompletableFuture<SampleBuffer> decode : decodes) {
+            assertEquals(1000, decode.get(5, TimeUnit.SECONDS).sampleCount());
+        }
+        assertEquals(5, opened.stream().mapToInt(decoder -> decoder.starts.size()).sum());
+        set.close();
+    }
+
+    @Test
+    void testSequentialDecodesStayOnOneDecoder() throws Exception {
+        FmodDecoderSet set = new FmodDecoderSet(FILE, newDecoder(null), 4, () -> newDecoder(null));
+
+        for (long frame = 0; frame < 10_000; frame += 1000) {
+            set.decode(frame, 1000);
+        }
+
+        assertEquals(1, set.openCount(), "Decodes that never overlap need one decoder");
+        assertEquals(10, opened.getFirst().starts.size());
+    }
+
+    @Test
+    void testDecodePrefersDecoderPositionedAtStart() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        FmodDecoderSet set = new FmodDecoderSet(FILE, newDecoder(gate), 2, () -> newDecoder(gate));
+        CompletableFuture<SampleBuffer> first = decodeAsync(set, 0, 1000);
+        CompletableFuture<SampleBuffer> second = decodeAsync(set, 500_000, 1000);
+        awaitBusy(2);
+        gate.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+
+        set.decode(1000, 1000);
+        set.decode(501_000, 1000);
+
+        for (FakeDecoder decoder : opened) {
+            List<Long> starts = decoder.starts;
+            assertEquals(2, starts.size());
+            assertEquals(starts.get(0) + 1000, starts.get(1), "Each range continued in place");
+        }
+        set.close();
+    }
+
+    @Test
+    void testFailedOpenFallsBackToOpenDecoders() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger attempts = new AtomicInteger();
+        FmodDecoderSet set =
+                new FmodDecoderSet(
+                        FILE,
+                        newDecoder(gate),
+                        4,
+                        () -> {
+                            attempts.incrementAndGet();
+                            throw new AudioReadException("No decoder system available", FILE);
+                        });
+
+        CompletableFuture<SampleBuffer> first = decodeAsync(set, 0, 1000);
+        awaitBusy(1);
+        CompletableFuture<SampleBuffer> second = decodeAsync(set, 2000, 1000);
+        while (attempts.get() == 0 || set.openCount() > 1) {
+            Thread.sleep(5);
+        }
+        CompletableFuture<SampleBuffer> third = decodeAsync(set, 4000, 1000);
+        gate.countDown();
+
+        assertEquals(1000, first.get(5, TimeUnit.SECONDS).sampleCount());
+        assertEquals(1000, second.get(5, TimeUnit.SECONDS).sampleCount());
+        assertEquals(1000, third.get(5, TimeUnit.SECONDS).sampleCount());
+        assertEquals(1, set.openCount());
+        assertEquals(1, attempts.get(), "The set waits before trying to open another");
+        set.close();
+    }
+
+    @Test
+    void testFailedOpenIsRetriedAfterDelay() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger attempts = new AtomicInteger();
+        FmodDecoderSet set =
+                new FmodDecoderSet(
+                        FILE,
+                        newDecoder(gate),
+                        4,
+                        Duration.ofMillis(50),
+                        () -> {
+                            if (attempts.incrementAndGet() == 1) {
+                                throw new AudioReadException("No decoder system available", FILE);
+                            }
+                            return newDecoder(gate);
+                        });
+
+        CompletableFuture<SampleBuffer> first = decodeAsync(set, 0, 1000);
+        awaitBusy(1);
+        CompletableFuture<SampleBuffer> second = decodeAsync(set, 2000, 1000);
+        while (attempts.get() == 0 || set.openCount() > 1) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(100);
+        CompletableFuture<SampleBuffer> third = decodeAsync(set, 4000, 1000);
+        awaitBusy(2);
+        gate.countDown();
+
+        assertEquals(1000, first.get(5, TimeUnit.SECONDS).sampleCount());
+        assertEquals(1000, second.get(5, TimeUnit.SECONDS).sampleCount());
+        assertEquals(1000, third.get(5, TimeUnit.SECONDS).sampleCount());
+        assertEquals(2, set.openCount(), "The second attempt widened the set");
+        assertEquals(2, attempts.get());
+        set.close();
+    }
+
+    @Test
+    void testCloseClosesBusyDecodersAsTheyFinish() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        FmodDecoderSet set = new FmodDecoderSet(FILE, newDecoder(gate), 2, () -> newDecoder(gate));
+        CompletableFuture<SampleBuffer> first = decodeAsync(set, 0, 1000);
+        CompletableFuture<SampleBuffer> second = decodeAsync(set, 5000, 1000);
+        awaitBusy(2);
+
+        set.close();
+        assertTrue(opened.stream().noneMatch(decoder -> decoder.closed), "Both are busy");
+
+        gate.countDown();
+        assertNotNull(first.get(5, TimeUnit.SECONDS));
+        assertNotNull(second.get(5, TimeUnit.SECONDS));
+        assertTrue(opened.stream().allMatch(decoder -> decoder.closed));
+        assertEquals(0, set.openCount());
+        assertNull(set.decode(0, 1000), "A closed set decodes nothing");
+    }
+
+    private FakeDecoder newDecoder(CountDownLatch gate) {
+        FakeDecoder decoder = new FakeDecoder(gate);
+        opened.add(decoder);
+        return decoder;
+    }
+
+    private CompletableFuture<SampleBuffer> decodeAsync(FmodDecoderSet set, long start, int count) {
+        return CompletableFuture.supplyAsync(
+                () -> {
+                    try {
+                        return set.decode(start, count);
+                    } catch (AudioReadException e) {
+                        throw new RuntimeException(e);
+                    }
+                },
+                threads);
+    }
+
+    /** Waits until the given number of decoders are inside a decode. */
+    private void awaitBusy(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (opened.stream().filter(decoder -> decoder.busy).count() < count) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting for " + count + " decodes");
+            Thread.sleep(5);
+        }
+    }
+
+    /** Mono 16-bit decoder of silence that records where each decode starts. */
+    private static class FakeDecoder implements FmodDecoder {
+        final List<Long> starts = new CopyOnWriteArrayList<>();
+        final CountDownLatch gate;
+        volatile boolean busy = false;
+        volatile boolean closed = false;
+
+        FakeDecoder(CountDownLatch gate) {
+            this.gate = gate;
+        }
+
+        @Override
+        public AudioMetadata metadata() {
+            return METADATA;
+        }
+
+        @Override
+        public SampleBuffer decode(long startFrame, int frameCount) throws AudioReadException {
+            starts.add(startFrame);
+            busy = true;
+            try {
+                if (gate != null && !gate.await(5, TimeUnit.SECONDS)) {
+                    throw new AudioReadException("Gate never opened", FILE);
+                }
+            } catch (InterruptedException e) {
+                throw new AudioReadException("Decode interrupted", FILE, e);
+            } finally {
+                busy = false;
+            }
+            return NativeSampleBuffer.copyOf(
+                    PcmFormat.Encoding.SIGNED_INT,
+                    16,
+                    ByteOrder.nativeOrder(),
+                    MemorySegment.ofArray(new byte[frameCount * 2]));
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package audio.fmod;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import audio.mp3.Mp3FrameIndex;
+import audio.pcm.SampleBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for decoding MP3 frame ranges against FMOD's own decode of the whole stream, which is
+ * what playback hears. noise.mp3 is 160 mono layer III frames of random spectral lines behind a
+ * LAME-tagged Info frame, so its decoded output differs from frame to frame and the tag's delay
+ * and padding would shift positions if they were trimmed.
+ */
+class FmodMp3DecoderTest {
+
+    private static final Path NOISE_MP3 = Paths.get("src/test/resources/audio/noise.mp3");
+    private static final long NOISE_FRAMES = 160L * 1152;
+    private static final int BLOCK_FRAMES = FmodDefaults.SAMPLE_READER.blockFrames();
+
+    // Two decodes of the same frames may round differently in the last bit
+    private static final double TOLERANCE = 1.0 / Short.MAX_VALUE;
+
+    @TempDir Path tempDir;
+
+    private FmodSystemPool pool;
+    private FmodSystemPool.Lease lease;
+    private Path audioFile;
+    private double[] playback;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        new FmodLibraryLoader(
+                        new FmodProperties("unpackaged", "standard", FmodDefaults.MACOS_LIB_PATH))
+                .loadNativeLibrary();
+        pool = new FmodSystemPool(1);
+        lease = pool.lease();
+
+        // Indexing saves a sidecar next to the file, so keep it out of the resources
+        audioFile = Files.copy(NOISE_MP3, tempDir.resolve("noise.mp3"));
+        try (FmodBlockDecoder whole = FmodBlockDecoder.open(lease.system(), audioFile)) {
+            playback = samplesOf(whole.decode(0, (int) whole.metadata().frameCount()));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        lease.close();
+        pool.close();
+    }
+
+    @Test
+    void testLengthMatchesPlayback() throws Exception {
+        try (FmodMp3Decoder decoder = FmodMp3Decoder.open(lease.system(), audioFile)) {
+            assertEquals(NOISE_FRAMES, decoder.metadata().frameCount());
+            assertEquals(playback.length, decoder.metadata().frameCount());
+        }
+        assertTrue(Mp3FrameIndex.loadOrBuild(audioFile).leadingSamples() > 0, "Tag was read");
+    }
+
+    @Test
+    void testPositionsMatchPlayback() throws Exception {
+        // Frame starts, mid-frame starts, the first frame and the end of the stream
+        long[] starts = {0, 100, 1151, 1152, 30_000, 100_000, NOISE_FRAMES - 700};
+        assertTrue(Arrays.stream(playback).anyMatch(sample -> sample != 0), "Not silent");
+        try (FmodMp3Decoder decoder = FmodMp3Decoder.open(lease.system(), audioFile)) {
+            for (long start : starts) {
+                double[] decoded = samplesOf(decoder.decode(start, 2000));
+                assertEquals(Math.min(2000, NOISE_FRAMES - start), decoded.length);
+                assertWindowMatches(start, decoded);
+            }
+        }
+    }
+
+    @Test
+    void testDecodesAcrossBlockBoundaryAreContinuous() throws Exception {
+        try (FmodMp3Decoder decoder = FmodMp3Decoder.open(lease.system(), audioFile)) {
+            long boundary = BLOCK_FRAMES;
+            double[] before = samplesOf(decoder.decode(boundary - 500, 500));
+            double[] after = samplesOf(decoder.decode(boundary, 500));
+
+            assertWindowMatches(boundary - 500, before);
+            assertWindowMatches(boundary, after);
+        }
+    }
+
+    private void assertWindowMatches(long start, double[] decoded) {
+        for (int i = 0; i < decoded.length; i++) {
+            assertEquals(playback[(int) start + i], decoded[i], TOLERANCE, "sample " + (start + i));
+        }
+    }
+
+    /** Widens a decoded mono buffer and releases it. */
+    private static double[] samplesOf(SampleBuffer buffer) {
+        try {
+            double[] samples = new double[(int) buffer.sampleCount()];
+            buffer.read(0, samples, 0, samples.length);
+            return samples;
+        } finally {
+            buffer.release();
+        }
+    }
+}
@@ -4,7 +4,11 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import audio.AudioHandle;
 import audio.exceptions.AudioPlaybackException;
+import audio.fmod.panama.FMOD_CREATESOUNDEXINFO;
+import audio.fmod.panama.FmodCore;
+import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -86,6 +90,34 @@ class FmodPlaybackManagerTest {
                 .orElseThrow(() -> new IllegalStateException("Sound not loaded"));
     }
 
+    /**
+     * Creates a silent stream of the given length. 8-bit mono keeps its length in bytes within
+     * the 32 bits FMOD takes, however many frames it has.
+     */
+    private MemorySegment createSilence(long frames) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment exinfo = FMOD_CREATESOUNDEXINFO.allocate(arena);
+            FMOD_CREATESOUNDEXINFO.cbsize(exinfo, (int) FMOD_CREATESOUNDEXINFO.layout().byteSize());
+            FMOD_CREATESOUNDEXINFO.length(exinfo, (int) frames);
+            FMOD_CREATESOUNDEXINFO.numchannels(exinfo, 1);
+            FMOD_CREATESOUNDEXINFO.defaultfrequency(exinfo, 44100);
+            FMOD_CREATESOUNDEXINFO.format(exinfo, FmodConstants.FMOD_SOUND_FORMAT_PCM8);
+
+            var soundRef = arena.allocate(ValueLayout.ADDRESS);
+            int result =
+                    FmodCore.FMOD_System_CreateSound(
+                            system,
+                            MemorySegment.NULL,
+                            FmodConstants.FMOD_OPENUSER
+                                    | FmodConstants.FMOD_CREATESTREAM
+                                    | FmodConstants.FMOD_LOOP_OFF,
+                            exinfo,
+                            soundRef);
+            assertEquals(FmodConstants.FMOD_OK, result, FmodError.describe(result));
+            return soundRef.get(ValueLayout.ADDRESS, 0);
+        }
+    }
+
     // ========== Core Playback Tests ==========
 
     @Test
@@ -281,6 +313,26 @@ class FmodPlaybackManagerTest {
         playbackManager.stop();
     }
 
+    @Test
+    void testPositionPastSignedRangeIsPositive() throws Exception {
+        AudioHandle handle = loadingManager.loadAudio(SAMPLE_WAV);
+        long frames = 3_000_000_000L;
+        MemorySegment sound = createSilence(frames);
+        try {
+            long startFrame = (1L << 31) + 44100;
+            playbackManager.playRange(sound, handle, startFrame, frames, true);
+            assertTrue(playbackManager.getPosition() >= startFrame, "Position should not wrap");
+
+            long seekFrame = 2_900_000_000L;
+            playbackManager.seek(seekFrame);
+            assertTrue(playbackManager.getPosition() >= seekFrame, "Position should not wrap");
+
+            playbackManager.stop();
+        } finally {
+            FmodCore.FMOD_Sound_Release(sound);
+        }
+    }
+
     @Test
     void testCheckPlaybackFinished() throws Exception {
         // Create a very short sound by loading just a small range
@@ -0,0 +1,42 @@
+package audio.fmod;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests for converting frame positions to and from FMOD's unsigned PCM positions. */
+class FmodPositionsTest {
+
+    /** First frame past the signed 32-bit range, about 6.2 hours into a 96 kHz recording. */
+    private static final long PAST_SIGNED_RANGE = 1L << 31;
+
+    @Test
+    void testPositionsPastSignedRangeRoundTrip() {
+        for (long frame : new long[] {0, 44100, PAST_SIGNED_RANGE, 3_000_000_000L, 0xFFFFFFFFL}) {
+            assertEquals(frame, FmodPositions.fromPcm(FmodPositions.toPcm(frame)));
+        }
+    }
+
+    @Test
+    void testReportedPositionIsNeverNegative() {
+        assertEquals(PAST_SIGNED_RANGE, FmodPositions.fromPcm(Integer.MIN_VALUE));
+        assertEquals(0xFFFFFFFFL, FmodPositions.fromPcm(-1));
+    }
+
+    @Test
+    void testUnaddressablePositionIsRejectedRatherThanWrapped() {
+        long wrapsToStart = 1L << 32;
+
+        assertFalse(FmodPositions.isAddressable(wrapsToStart));
+        assertFalse(FmodPositions.isAddressable(-1));
+        assertThrows(IllegalArgumentException.class, () -> FmodPositions.toPcm(wrapsToStart));
+    }
+
+    @Test
+    void testClampKeepsSeeksInRange() {
+        assertEquals(-1, FmodPositions.clampToPcm(1L << 40), "Clamped to the last position");
+        assertEquals(0, FmodPositions.clampToPcm(-5));
+        assertEquals(
+                3_000_000_000L, FmodPositions.fromPcm(FmodPositions.clampToPcm(3_000_000_000L)));
+    }
+}
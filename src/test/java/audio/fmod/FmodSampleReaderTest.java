@@ -4,12 +4,22 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import audio.AudioData;
 import audio.AudioMetadata;
+import audio.ReadPriority;
+import audio.SampleView;
+import audio.pcm.PcmDiskCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
 
-/** Tests for FmodSimpleSampleReader that loads entire files into memory. */
+/** Tests for FmodSampleReader's block-based decoding and caching. */
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 class FmodSampleReaderTest {
 
@@ -19,12 +29,14 @@ class FmodSampleReaderTest {
     // Test audio files
     private static final Path SAMPLE_WAV = Paths.get("src/test/resources/audio/freerecall.wav");
     private static final Path SWEEP_WAV = Paths.get("src/test/resources/audio/sweep.wav");
+    private static final Path SWEEP_FLAC = Paths.get("src/test/resources/audio/sweep.flac");
 
     // Known properties of freerecall.wav (mono, 44100Hz, 16-bit)
     private static final int SAMPLE_WAV_RATE = 44100;
     private static final int SAMPLE_WAV_CHANNELS = 1;
     private static final int SAMPLE_WAV_BITS = 16;
     private static final long SAMPLE_WAV_FRAMES = 1993624; // ~45.2 seconds
+    private static final int BLOCK_FRAMES = FmodDefaults.SAMPLE_READER.blockFrames();
 
     @BeforeEach
     void setUp() {
@@ -134,6 +146,224 @@ class FmodSampleReaderTest {
         assertEquals(100, data2.frameCount());
     }
 
+    @Test
+    void testCacheStatsCountHitsAndMisses() throws Exception {
+        reader.readSamples(SAMPLE_WAV, 0, 100).get(5, TimeUnit.SECONDS);
+        reader.readSamples(SAMPLE_WAV, 1000, 100).get(5, TimeUnit.SECONDS);
+
+        CacheStats stats = reader.getCacheStats();
+        assertEquals(1, stats.missCount());
+        assertEquals(1, stats.hitCount());
+        // Both reads fall in the first block; 16-bit mono is cached at two bytes per sample
+        assertEquals(BLOCK_FRAMES * 2, reader.getCachedBytes());
+    }
+
+    @Test
+    void testCacheEvictsWhenOverBudget() throws Exception {
+        reader.close();
+        // Room for two 16-bit mono blocks (128 KB each) but not a third
+        reader =
+                new FmodSampleReader(
+                        libraryLoader,
+                        new FmodProperties.SampleReaderProperties(
+                                DataSize.ofBytes(300_000),
+                                BLOCK_FRAMES,
+                                0,
+                                4096,
+                                "",
+                                DataSize.ofGigabytes(4),
+                                0,
+                                DataSize.ofMegabytes(64),
+                                DataSize.ofMegabytes(64)));
+
+        for (int block = 0; block < 3; block++) {
+            reader.readSamples(SAMPLE_WAV, block * BLOCK_FRAMES, 100).get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(1, reader.getCacheStats().evictionCount());
+        assertTrue(reader.getCachedBytes() <= 300_000);
+
+        // Evicted blocks are transparently decoded again
+        AudioData data = reader.readSamples(SAMPLE_WAV, 1000, 100).get(5, TimeUnit.SECONDS);
+        assertEquals(100, data.frameCount());
+    }
+
+    @Test
+    void testEvictedBlockIsServedFromPackedTier() throws Exception {
+        reader.close();
+        reader =
+                new FmodSampleReader(
+                        libraryLoader,
+                        new FmodProperties.SampleReaderProperties(
+                                DataSize.ofBytes(300_000),
+                                BLOCK_FRAMES,
+                                0,
+                                4096,
+                                "",
+                                DataSize.ofGigabytes(4),
+                                0,
+                                DataSize.ofMegabytes(64),
+                                DataSize.ofMegabytes(64)));
+        List<AudioData> decoded = new ArrayList<>();
+        for (int block = 0; block < 3; block++) {
+            decoded.add(
+                    reader.readSamples(SAMPLE_WAV, block * BLOCK_FRAMES, BLOCK_FRAMES)
+                            .get(5, TimeUnit.SECONDS));
+        }
+
+        var packed = reader.getPackedCacheStats();
+        assertEquals(1, packed.blockCount(), "The evicted block was packed");
+        assertEquals(BLOCK_FRAMES * 2, packed.unpackedBytes());
+        assertTrue(packed.compressionRatio() > 1.2, "Ratio " + packed.compressionRatio());
+
+        for (int block = 0; block < 3; block++) {
+            AudioData again =
+                    reader.readSamples(SAMPLE_WAV, block * BLOCK_FRAMES, BLOCK_FRAMES)
+                            .get(5, TimeUnit.SECONDS);
+            assertArrayEquals(decoded.get(block).samples(), again.samples(), 0.0);
+        }
+        assertTrue(reader.getPackedCacheStats().hitCount() >= 1);
+    }
+
+    @Test
+    void testReadSpanningBlocksIsContiguous() throws Exception {
+        long boundary = BLOCK_FRAMES * 3;
+        AudioData spanning =
+                reader.readSamples(SAMPLE_WAV, boundary - 50, 100).get(5, TimeUnit.SECONDS);
+        AudioData before =
+                reader.readSamples(SAMPLE_WAV, boundary - 50, 50).get(5, TimeUnit.SECONDS);
+        AudioData after = reader.readSamples(SAMPLE_WAV, boundary, 50).get(5, TimeUnit.SECONDS);
+
+        assertEquals(100, spanning.frameCount());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(before.samples()[i], spanning.samples()[i]);
+            assertEquals(after.samples()[i], spanning.samples()[50 + i]);
+        }
+    }
+
+    @Test
+    void testViewMatchesCopiedRead() throws Exception {
+        long start = BLOCK_FRAMES - 500;
+        AudioData copied = reader.readSamples(SAMPLE_WAV, start, 1000).get(5, TimeUnit.SECONDS);
+
+        try (SampleView view = reader.readView(SAMPLE_WAV, start, 1000).get(5, TimeUnit.SECONDS)) {
+            assertEquals(start, view.startFrame());
+            assertEquals(1000, view.frameCount());
+            assertEquals(SAMPLE_WAV_CHANNELS, view.channelCount());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(copied.samples()[i], view.sample(i, 0));
+            }
+
+            double[] dest = new double[1000];
+            view.read(0, dest, 0, 1000);
+            assertArrayEquals(copied.samples(), dest);
+        }
+    }
+
+    @Test
+    void testClosedViewRejectsReads() throws Exception {
+        SampleView view = reader.readView(SAMPLE_WAV, 0, 100).get(5, TimeUnit.SECONDS);
+        view.close();
+
+        assertThrows(IllegalStateException.class, () -> view.sample(0, 0));
+    }
+
+    @Test
+    void testConcurrentReadsShareOneLoad() throws Exception {
+        List<CompletableFuture<AudioData>> reads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            reads.add(reader.readSamples(SAMPLE_WAV, i * 1000L, 100));
+        }
+        reads.add(reader.readSamples(SWEEP_WAV, 0, 100));
+
+        for (CompletableFuture<AudioData> read : reads) {
+            assertEquals(100, read.get(5, TimeUnit.SECONDS).frameCount());
+        }
+
+        // One decode per distinct block; every other caller joined the in-flight decode
+        CacheStats stats = reader.getCacheStats();
+        assertEquals(2, stats.missCount());
+        assertEquals(7, stats.hitCount());
+    }
+
+    @Test
+    void testCancelledReadLeavesCacheUsable() throws Exception {
+        // A whole-file batch read, abandoned straight away
+        CompletableFuture<AudioData> abandoned =
+                reader.readSamples(SAMPLE_WAV, 0, SAMPLE_WAV_FRAMES, ReadPriority.BATCH);
+        abandoned.cancel(true);
+
+        // Blocks whose decode was abandoned are decoded again for the next reader
+        AudioData data =
+                reader.readSamples(SAMPLE_WAV, 0, SAMPLE_WAV_FRAMES).get(5, TimeUnit.SECONDS);
+        assertEquals(SAMPLE_WAV_FRAMES, data.frameCount());
+        assertTrue(abandoned.isCancelled());
+    }
+
+    @Test
+    void testDecodedCopyOnDiskServesLaterReaders(@TempDir Path cacheDir) throws Exception {
+        FmodProperties.SampleReaderProperties properties =
+                new FmodProperties.SampleReaderProperties(
+                        DataSize.ofMegabytes(64),
+                        BLOCK_FRAMES,
+                        0,
+                        4096,
+                        cacheDir.toString(),
+                        DataSize.ofGigabytes(1),
+                        0,
+                        DataSize.ofMegabytes(64),
+                        DataSize.ofMegabytes(64));
+        reader.close();
+        reader = new FmodSampleReader(libraryLoader, properties);
+        AudioData decoded = reader.readSamples(SWEEP_FLAC, 1000, 5000).get(5, TimeUnit.SECONDS);
+
+        // The first open decodes the whole file to disk in the background
+        PcmDiskCache diskCache = new PcmDiskCache(cacheDir, DataSize.ofGigabytes(1).toBytes());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (diskCache.open(SWEEP_FLAC) == null && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertNotNull(diskCache.open(SWEEP_FLAC), "Decoded copy was not written");
+
+        // A new reader maps the copy instead of decoding
+        reader.close();
+        reader = new FmodSampleReader(libraryLoader, properties);
+        AudioData mapped = reader.readSamples(SWEEP_FLAC, 1000, 5000).get(5, TimeUnit.SECONDS);
+
+        assertArrayEquals(decoded.samples(), mapped.samples(), 0.0);
+        assertEquals(0, reader.getCacheStats().requestCount(), "No blocks should be decoded");
+    }
+
+    @Test
+    void testMetadataProbeCachesNothing(@TempDir Path dir) throws Exception {
+        Path cacheDir = dir.resolve("cache");
+        FmodProperties.SampleReaderProperties properties =
+                new FmodProperties.SampleReaderProperties(
+                        DataSize.ofMegabytes(64),
+                        BLOCK_FRAMES,
+                        0,
+                        4096,
+                        cacheDir.toString(),
+                        DataSize.ofGigabytes(1),
+                        0,
+                        DataSize.ofMegabytes(64),
+                        DataSize.ofMegabytes(64));
+        reader.close();
+        reader = new FmodSampleReader(libraryLoader, properties);
+
+        // No header parser claims the name, so FMOD has to open the file
+        Path unparsed = Files.copy(SWEEP_FLAC, dir.resolve("sweep.ogg"));
+        AudioMetadata metadata = reader.getMetadata(unparsed).get(5, TimeUnit.SECONDS);
+        assertEquals(
+                reader.getMetadata(SWEEP_FLAC).get(5, TimeUnit.SECONDS).frameCount(),
+                metadata.frameCount());
+
+        Thread.sleep(1000);
+        PcmDiskCache diskCache = new PcmDiskCache(cacheDir, DataSize.ofGigabytes(1).toBytes());
+        assertNull(diskCache.open(unparsed), "Describing a file must not decode it to disk");
+        assertEquals(0, reader.getCacheStats().requestCount());
+    }
+
     @Test
     void testCloseClearsCache() throws Exception {
         // Load a file
@@ -0,0 +1,106 @@
+package audio.fmod;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import audio.exceptions.AudioEngineException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Tests for leasing FMOD decoder systems. */
+class FmodSystemPoolTest {
+
+    private FmodSystemPool pool;
+    private final List<FmodSystemPool.Lease> leases = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        new FmodLibraryLoader(
+                        new FmodProperties("unpackaged", "standard", FmodDefaults.MACOS_LIB_PATH))
+                .loadNativeLibrary();
+        pool = new FmodSystemPool(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        // Closing waits for outstanding leases, so return them first
+        leases.forEach(FmodSystemPool.Lease::close);
+        pool.close();
+    }
+
+    @Test
+    void testGrowsOnlyWhenEverySystemIsInUse() throws Exception {
+        assertEquals(1, pool.systemCount(), "The first system is created up front");
+
+        FmodSystemPool.Lease first = lease();
+        FmodSystemPool.Lease second = lease();
+
+        assertEquals(2, pool.systemCount());
+        assertNotEquals(first.system(), second.system());
+    }
+
+    @Test
+    void testSharesLeastUsedSystemAtCapacity() throws Exception {
+        FmodSystemPool.Lease first = lease();
+        FmodSystemPool.Lease second = lease();
+        first.close();
+
+        // The released system is idle again, so it is preferred over the busy one
+        FmodSystemPool.Lease third = lease();
+        assertEquals(first.system(), third.system());
+
+        FmodSystemPool.Lease fourth = lease();
+        assertEquals(2, pool.systemCount());
+        assertTrue(
+                fourth.system().equals(first.system()) || fourth.system().equals(second.system()));
+    }
+
+    @Test
+    void testReleasingTwiceCountsOnce() throws Exception {
+        FmodSystemPool.Lease first = lease();
+        FmodSystemPool.Lease second = lease();
+        first.close();
+        first.close();
+        FmodSystemPool.Lease third = lease();
+        second.close();
+
+        // Had the double release counted, the first system would look idle and win the tie
+        assertEquals(second.system(), lease().system());
+        assertEquals(first.system(), third.system());
+    }
+
+    @Test
+    void testClosedPoolRefusesLeases() {
+        pool.close();
+
+        assertThrows(AudioEngineException.class, () -> pool.lease());
+    }
+
+    @Test
+    void testCloseWaitsForOutstandingLeases() throws Exception {
+        FmodSystemPool.Lease held = pool.lease();
+        CompletableFuture<Void> closing = CompletableFuture.runAsync(pool::close);
+
+        Thread.sleep(100);
+        assertFalse(closing.isDone(), "The system is still in use");
+
+        held.close();
+        closing.get(5, TimeUnit.SECONDS);
+        assertThrows(AudioEngineException.class, () -> pool.lease());
+    }
+
+    @Test
+    void testRejectsEmptyPool() {
+        assertThrows(IllegalArgumentException.class, () -> new FmodSystemPool(0));
+    }
+
+    private FmodSystemPool.Lease lease() throws AudioEngineException {
+        FmodSystemPool.Lease lease = pool.lease();
+        leases.add(lease);
+        return lease;
+    }
+}
@@ -0,0 +1,72 @@
+package audio.metadata;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import audio.AudioMetadata;
+import audio.AudioReadException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests for reading metadata from file headers. */
+class AudioHeaderReaderTest {
+
+    private static final Path SAMPLE_WAV = Paths.get("src/test/resources/audio/freerecall.wav");
+    private static final Path SWEEP_FLAC = Paths.get("src/test/resources/audio/sweep.flac");
+
+    @TempDir Path tempDir;
+
+    private final AudioHeaderReader reader = new AudioHeaderReader();
+
+    @Test
+    void testReadsWavHeader() throws Exception {
+        AudioMetadata metadata = reader.read(SAMPLE_WAV);
+
+        assertEquals(44100, metadata.sampleRate());
+        assertEquals(1, metadata.channelCount());
+        assertEquals(16, metadata.bitsPerSample());
+        assertEquals(1993624, metadata.frameCount());
+    }
+
+    @Test
+    void testReadsFlacStreamInfo() throws Exception {
+        AudioMetadata metadata = reader.read(SWEEP_FLAC);
+
+        assertEquals(44100, metadata.sampleRate());
+        assertEquals(2, metadata.channelCount());
+        assertEquals(16, metadata.bitsPerSample());
+        assertEquals(34459, metadata.frameCount());
+        assertEquals("FLAC", metadata.format());
+    }
+
+    @Test
+    void testUnchangedFileIsServedFromCache() throws Exception {
+        Path copy = Files.copy(SAMPLE_WAV, tempDir.resolve("copy.wav"));
+
+        assertSame(reader.read(copy), reader.read(copy));
+    }
+
+    @Test
+    void testModifiedFileIsReadAgain() throws Exception {
+        Path file = Files.copy(SWEEP_FLAC, tempDir.resolve("clip.flac"));
+        assertEquals(34459, reader.read(file).frameCount());
+
+        Files.copy(SAMPLE_WAV, file, StandardCopyOption.REPLACE_EXISTING);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(0));
+
+        // The cached FLAC entry no longer matches, so the (now invalid) header is parsed again
+        assertThrows(AudioReadException.class, () -> reader.read(file));
+    }
+
+    @Test
+    void testUnsupportedFormat() throws Exception {
+        Path ogg = Files.write(tempDir.resolve("clip.ogg"), new byte[] {1, 2, 3});
+
+        assertFalse(AudioHeaderReader.isSupported(ogg));
+        assertNull(reader.read(ogg));
+    }
+}
@@ -0,0 +1,254 @@
+package audio.mp3;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import audio.AudioMetadata;
+import audio.AudioReadException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for Mp3FrameIndex over synthesized MPEG-1 layer III streams. Frame payloads are silent,
+ * which is all the index looks at; decoding is covered by the FMOD reader tests.
+ */
+class Mp3FrameIndexTest {
+
+    // MPEG-1 layer III, no CRC, 128 kbps, 44.1 kHz, stereo; 0x200 sets the padding bit
+    private static final int HEADER = 0xFFFB9000;
+    private static final int FRAME_LENGTH = 417;
+    private static final int ENCODER_DELAY = 576;
+    private static final int ENCODER_PADDING = 1200;
+
+    @TempDir Path tempDir;
+
+    /** Synthesized file bytes along with the offsets its audio frames were written at. */
+    private record Stream(byte[] bytes, List<Long> offsets) {}
+
+    @Test
+    void testIndexesEveryAudioFrame() throws AudioReadException {
+        Stream stream = stream(40, true, false);
+        Mp3FrameIndex index = scan(stream);
+
+        assertEquals(40, index.frameCount());
+        for (int frame = 0; frame < 40; frame++) {
+            assertEquals((long) stream.offsets().get(frame), index.frameOffset(frame));
+        }
+        assertEquals((long) stream.offsets().get(1), index.frameEnd(0));
+        assertEquals(44100, index.sampleRate());
+        assertEquals(2, index.channelCount());
+        assertEquals(1152, index.samplesPerFrame());
+    }
+
+    @Test
+    void testLameTagIsRecordedButNotTrimmed() throws AudioReadException {
+        Mp3FrameIndex index = scan(stream(40, true, false));
+
+        assertEquals(ENCODER_DELAY, index.encoderDelay());
+        assertEquals(ENCODER_PADDING, index.encoderPadding());
+        assertEquals(ENCODER_DELAY + Mp3FrameIndex.DECODER_DELAY, index.leadingSamples());
+        assertEquals(ENCODER_PADDING - Mp3FrameIndex.DECODER_DELAY, index.trailingSamples());
+        assertEquals(40L * 1152, index.totalSamples(), "Playback decodes every frame in full");
+        assertTrue(index.isHeaderLengthExact());
+    }
+
+    @Test
+    void testFrameLookupIsArithmetic() throws AudioReadException {
+        Mp3FrameIndex index = scan(stream(40, true, false));
+
+        assertEquals(0, index.frameContaining(0));
+        assertEquals(0, index.firstSampleOf(0));
+        int frame = index.frameContaining(20_000);
+        assertTrue(index.firstSampleOf(frame) <= 20_000);
+        assertTrue(index.firstSampleOf(frame + 1) > 20_000);
+
+        // Out-of-range positions clamp to the first and last frames
+        assertEquals(0, index.frameContaining(-5000));
+        assertEquals(39, index.frameContaining(Long.MAX_VALUE / 2));
+    }
+
+    @Test
+    void testDecodeStartCoversBitReservoir() throws AudioReadException {
+        Mp3FrameIndex index = scan(stream(40, true, false));
+
+        // The previous frame overlaps, and it may borrow 511 bytes from the ones before it
+        int start = index.decodeStart(10);
+        assertTrue(index.frameOffset(9) - index.frameOffset(start) >= 511);
+        assertTrue(index.frameOffset(9) - index.frameOffset(start + 1) < 511);
+        assertEquals(0, index.decodeStart(0));
+        assertEquals(0, index.decodeStart(1));
+    }
+
+    @Test
+    void testWithoutTagUsesUntrimmedLength() throws AudioReadException {
+        Mp3FrameIndex index = scan(stream(25, false, false));
+
+        assertEquals(25, index.frameCount());
+        assertEquals(0, index.leadingSamples());
+        assertEquals(25L * 1152, index.totalSamples());
+        assertTrue(index.isHeaderLengthExact(), "Constant bitrate streams have exact lengths");
+    }
+
+    @Test
+    void testSkipsTagsJunkAndTruncatedFrame() throws AudioReadException {
+        Stream stream = stream(30, true, true);
+        Mp3FrameIndex index = scan(stream);
+
+        assertEquals(stream.offsets(), offsetsOf(index));
+    }
+
+    @Test
+    void testRejectsDataWithoutFrames() {
+        byte[] bytes = "not an mp3 file at all".repeat(100).getBytes(StandardCharsets.US_ASCII);
+        assertThrows(
+                AudioReadException.class,
+                () -> Mp3FrameIndex.scan(MemorySegment.ofArray(bytes), Path.of("x.mp3"), 0));
+    }
+
+    @Test
+    void testProbeReadsLengthFromLameTag() throws AudioReadException {
+        Stream stream = stream(40, true, true);
+        AudioMetadata metadata =
+                Mp3FrameIndex.probe(MemorySegment.ofArray(stream.bytes()), Path.of("x.mp3"));
+
+        assertEquals(44100, metadata.sampleRate());
+        assertEquals(2, metadata.channelCount());
+        assertEquals(scan(stream).totalSamples(), metadata.frameCount());
+    }
+
+    @Test
+    void testProbeEstimatesUntaggedLengthFromBitrate() throws AudioReadException {
+        Stream stream = stream(25, false, false);
+        AudioMetadata metadata =
+                Mp3FrameIndex.probe(MemorySegment.ofArray(stream.bytes()), Path.of("x.mp3"));
+
+        assertEquals(25L * 1152, metadata.frameCount());
+    }
+
+    @Test
+    void testSidecarRoundTrip() throws IOException {
+        Stream stream = stream(40, true, true);
+        Path file = tempDir.resolve("clip.mp3");
+        Files.write(file, stream.bytes());
+
+        Mp3FrameIndex built = Mp3FrameIndex.loadOrBuild(file);
+        Path sidecar = Mp3FrameIndex.sidecarFor(file);
+        assertTrue(Files.exists(sidecar), "Building the index saves a sidecar");
+
+        Mp3FrameIndex loaded = Mp3FrameIndex.read(sidecar);
+        assertEquals(offsetsOf(built), offsetsOf(loaded));
+        assertEquals(built.frameEnd(39), loaded.frameEnd(39));
+        assertEquals(built.totalSamples(), loaded.totalSamples());
+        assertEquals(built.leadingSamples(), loaded.leadingSamples());
+        assertEquals(built.isHeaderLengthExact(), loaded.isHeaderLengthExact());
+    }
+
+    @Test
+    void testStaleOrCorruptSidecarIsRebuilt() throws IOException {
+        Path file = tempDir.resolve("clip.mp3");
+        Files.write(file, stream(40, true, false).bytes());
+        Mp3FrameIndex.loadOrBuild(file);
+        Path sidecar = Mp3FrameIndex.sidecarFor(file);
+
+        // Replacing the audio changes its size, so the old sidecar no longer applies
+        Files.write(file, stream(12, false, false).bytes());
+        assertEquals(12, Mp3FrameIndex.loadOrBuild(file).frameCount());
+        assertEquals(12, Mp3FrameIndex.read(sidecar).frameCount());
+
+        Files.write(sidecar, new byte[] {1, 2, 3});
+        assertEquals(12, Mp3FrameIndex.loadOrBuild(file).frameCount());
+        assertEquals(12, Mp3FrameIndex.read(sidecar).frameCount());
+    }
+
+    private static Mp3FrameIndex scan(Stream stream) throws AudioReadException {
+        return Mp3FrameIndex.scan(MemorySegment.ofArray(stream.bytes()), Path.of("x.mp3"), 0);
+    }
+
+    private static List<Long> offsetsOf(Mp3FrameIndex index) {
+        List<Long> offsets = new ArrayList<>();
+        for (int frame = 0; frame < index.frameCount(); frame++) {
+            offsets.add(index.frameOffset(frame));
+        }
+        return offsets;
+    }
+
+    /**
+     * Builds a stream of silent frames, padded the way an encoder pads 44.1 kHz frames.
+     *
+     * @param frameCount Audio frames to write
+     * @param infoTag Whether to lead with a Xing/Info frame carrying a LAME tag
+     * @param clutter Whether to add an ID3v2 tag, junk between frames, a truncated last frame and
+     *     an ID3v1 tag, none of which should be indexed
+     */
+    private static Stream stream(int frameCount, boolean infoTag, boolean clutter) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<Long> offsets = new ArrayList<>();
+        if (clutter) {
+            // ID3v2.4 header with a 20-byte syncsafe size, containing a stray sync pattern
+            out.writeBytes(new byte[] {'I', 'D', '3', 4, 0, 0, 0, 0, 0, 20});
+            byte[] body = new byte[20];
+            body[3] = (byte) 0xFF;
+            body[4] = (byte) 0xFB;
+            out.writeBytes(body);
+        }
+        if (infoTag) {
+            out.writeBytes(infoFrame(frameCount));
+        }
+        for (int frame = 0; frame < frameCount; frame++) {
+            if (clutter && frame == frameCount / 2) {
+                out.writeBytes(new byte[] {0x00, (byte) 0xFF, (byte) 0xFB, 0x12, 0x34});
+            }
+            offsets.add((long) out.size());
+            out.writeBytes(frame(frame % 3 == 1));
+        }
+        if (clutter) {
+            out.writeBytes(Arrays.copyOf(frame(false), 100));
+            byte[] id3v1 = new byte[128];
+            id3v1[0] = 'T';
+            id3v1[1] = 'A';
+            id3v1[2] = 'G';
+            out.writeBytes(id3v1);
+        }
+        return new Stream(out.toByteArray(), offsets);
+    }
+
+    private static byte[] frame(boolean padded) {
+        byte[] frame = new byte[FRAME_LENGTH + (padded ? 1 : 0)];
+        int header = HEADER | (padded ? 0x200 : 0);
+        for (int i = 0; i < 4; i++) {
+            frame[i] = (byte) (header >>> (24 - 8 * i));
+        }
+        return frame;
+    }
+
+    private static byte[] infoFrame(int frameCount) {
+        byte[] frame = frame(false);
+        // Stereo MPEG-1 side information is 32 bytes, so the tag starts at byte 36
+        int tag = 36;
+        writeAscii(frame, tag, "Info");
+        frame[tag + 7] = 1; // frame count present
+        for (int i = 0; i < 4; i++) {
+            frame[tag + 8 + i] = (byte) (frameCount >>> (24 - 8 * i));
+        }
+        int lame = tag + 12;
+        writeAscii(frame, lame, "LAME3.100");
+        int packed = ENCODER_DELAY << 12 | ENCODER_PADDING;
+        frame[lame + 21] = (byte) (packed >>> 16);
+        frame[lame + 22] = (byte) (packed >>> 8);
+        frame[lame + 23] = (byte) packed;
+        return frame;
+    }
+
+    private static void writeAscii(byte[] dest, int offset, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, dest, offset, bytes.length);
+    }
+}
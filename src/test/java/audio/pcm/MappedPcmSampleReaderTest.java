@@ -0,0 +1,208 @@
+package audio.pcm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import audio.AudioData;
+import audio.AudioMetadata;
+import audio.AudioReadException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests for the memory-mapped WAV/AIFF reader. Runs without any native audio library. */
+class MappedPcmSampleReaderTest {
+
+    private static final Path SAMPLE_WAV = Paths.get("src/test/resources/audio/freerecall.wav");
+    private static final Path SWEEP_WAV = Paths.get("src/test/resources/audio/sweep.wav");
+
+    // Known properties of freerecall.wav (mono, 44100Hz, 16-bit)
+    private static final int SAMPLE_WAV_RATE = 44100;
+    private static final long SAMPLE_WAV_FRAMES = 1993624;
+    private static final int SAMPLE_WAV_DATA_OFFSET = 44;
+
+    @TempDir Path tempDir;
+
+    private MappedPcmSampleReader reader;
+
+    @BeforeEach
+    void setUp() {
+        reader = new MappedPcmSampleReader();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        reader.close();
+    }
+
+    @Test
+    void testGetMetadataFromHeader() throws Exception {
+        AudioMetadata metadata = reader.getMetadata(SAMPLE_WAV).get(5, TimeUnit.SECONDS);
+
+        assertEquals(SAMPLE_WAV_RATE, metadata.sampleRate());
+        assertEquals(1, metadata.channelCount());
+        assertEquals(16, metadata.bitsPerSample());
+        assertEquals(SAMPLE_WAV_FRAMES, metadata.frameCount());
+        assertEquals("WAV", metadata.format());
+    }
+
+    @Test
+    void testReadMatchesRawPcm() throws Exception {
+        long startFrame = 10000;
+        int frameCount = 1000;
+
+        AudioData data =
+                reader.readSamples(SAMPLE_WAV, startFrame, frameCount).get(5, TimeUnit.SECONDS);
+
+        ByteBuffer raw = ByteBuffer.wrap(Files.readAllBytes(SAMPLE_WAV));
+        raw.order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < frameCount; i++) {
+            short expected = raw.getShort(SAMPLE_WAV_DATA_OFFSET + (int) (startFrame + i) * 2);
+            assertEquals(expected / 32768.0, data.samples()[i], 0.0);
+        }
+        assertEquals(startFrame, data.startFrame());
+        assertEquals(frameCount, data.frameCount());
+    }
+
+    @Test
+    void testStereoReadIsInterleaved() throws Exception {
+        AudioData data = reader.readSamples(SWEEP_WAV, 0, 100).get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, data.channelCount());
+        assertEquals(200, data.samples().length);
+    }
+
+    @Test
+    void testReadPastEofIsTruncated() throws Exception {
+        AudioData data =
+                reader.readSamples(SAMPLE_WAV, SAMPLE_WAV_FRAMES - 50, 100)
+                        .get(5, TimeUnit.SECONDS);
+        assertEquals(50, data.frameCount());
+
+        AudioData beyond =
+                reader.readSamples(SAMPLE_WAV, SAMPLE_WAV_FRAMES + 100, 100)
+                        .get(5, TimeUnit.SECONDS);
+        assertEquals(0, beyond.frameCount());
+    }
+
+    @Test
+    void testBigEndianAiff() throws Exception {
+        short[] values = {0, 16384, -16384, 32767, -32768};
+        Path aiff = writeAiff(values);
+
+        AudioMetadata metadata = reader.getMetadata(aiff).get(5, TimeUnit.SECONDS);
+        assertEquals(44100, metadata.sampleRate());
+        assertEquals("AIFF", metadata.format());
+        assertEquals(values.length, metadata.frameCount());
+
+        AudioData data = reader.readSamples(aiff, 0, values.length).get(5, TimeUnit.SECONDS);
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i] / 32768.0, data.samples()[i], 0.0);
+        }
+    }
+
+    @Test
+    void testTwentyFourBitWav() throws Exception {
+        int[] values = {0, 4194304, -4194304, 8388607, -8388608};
+        ByteBuffer pcm = ByteBuffer.allocate(values.length * 3).order(ByteOrder.LITTLE_ENDIAN);
+        for (int value : values) {
+            pcm.put((byte) value).put((byte) (value >> 8)).put((byte) (value >> 16));
+        }
+        Path wav = writeWav(1, 24, 1, pcm.array());
+
+        AudioData data = reader.readSamples(wav, 1, 4).get(5, TimeUnit.SECONDS);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(values[i + 1] / 8388608.0, data.samples()[i], 0.0);
+        }
+    }
+
+    @Test
+    void testFloatWav() throws Exception {
+        float[] values = {0.25f, -0.5f, 1.0f};
+        ByteBuffer pcm = ByteBuffer.allocate(values.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (float value : values) {
+            pcm.putFloat(value);
+        }
+        Path wav = writeWav(3, 32, 1, pcm.array());
+
+        AudioData data = reader.readSamples(wav, 0, 3).get(5, TimeUnit.SECONDS);
+        assertArrayEquals(new double[] {0.25, -0.5, 1.0}, data.samples(), 0.0);
+    }
+
+    @Test
+    void testRewrittenFileIsMappedAgain() throws Exception {
+        ByteBuffer pcm = ByteBuffer.allocate(3 * 4).order(ByteOrder.LITTLE_ENDIAN);
+        pcm.putFloat(0.25f).putFloat(0.5f).putFloat(0.75f);
+        Path wav = writeWav(3, 32, 1, pcm.array());
+        assertEquals(3, reader.readSamples(wav, 0, 10).get(5, TimeUnit.SECONDS).frameCount());
+
+        // Re-recorded in place, shorter than before
+        pcm = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putFloat(-0.5f);
+        writeWav(3, 32, 1, pcm.array());
+        Files.setLastModifiedTime(wav, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+
+        AudioData data = reader.readSamples(wav, 0, 10).get(5, TimeUnit.SECONDS);
+        assertArrayEquals(new double[] {-0.5}, data.samples(), 0.0);
+    }
+
+    @Test
+    void testNonPcmFileFails() throws Exception {
+        Path text = Paths.get("src/test/resources/audio/wordpool.txt");
+        var future = reader.readSamples(text, 0, 10);
+
+        ExecutionException e =
+                assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(AudioReadException.class, e.getCause());
+    }
+
+    @Test
+    void testCloseRejectsReads() throws Exception {
+        reader.close();
+
+        var future = reader.readSamples(SAMPLE_WAV, 0, 100);
+        assertThrows(Exception.class, () -> future.get(1, TimeUnit.SECONDS));
+    }
+
+    private Path writeWav(int formatTag, int bits, int channels, byte[] pcm) throws IOException {
+        int blockAlign = channels * bits / 8;
+        ByteBuffer buffer = ByteBuffer.allocate(44 + pcm.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put("RIFF".getBytes(StandardCharsets.US_ASCII)).putInt(36 + pcm.length);
+        buffer.put("WAVE".getBytes(StandardCharsets.US_ASCII));
+        buffer.put("fmt ".getBytes(StandardCharsets.US_ASCII)).putInt(16);
+        buffer.putShort((short) formatTag).putShort((short) channels).putInt(44100);
+        buffer.putInt(44100 * blockAlign).putShort((short) blockAlign).putShort((short) bits);
+        buffer.put("data".getBytes(StandardCharsets.US_ASCII)).putInt(pcm.length).put(pcm);
+        Path file = tempDir.resolve("test-" + formatTag + "-" + bits + ".wav");
+        Files.write(file, buffer.array());
+        return file;
+    }
+
+    private Path writeAiff(short[] values) throws IOException {
+        int dataLength = values.length * 2;
+        ByteBuffer buffer = ByteBuffer.allocate(54 + dataLength).order(ByteOrder.BIG_ENDIAN);
+        buffer.put("FORM".getBytes(StandardCharsets.US_ASCII)).putInt(46 + dataLength);
+        buffer.put("AIFF".getBytes(StandardCharsets.US_ASCII));
+        buffer.put("COMM".getBytes(StandardCharsets.US_ASCII)).putInt(18);
+        buffer.putShort((short) 1).putInt(values.length).putShort((short) 16);
+        // 44100 as an 80-bit extended float: 2^15 <= 44100 < 2^16
+        buffer.putShort((short) (16383 + 15)).putLong(44100L << (63 - 15));
+        buffer.put("SSND".getBytes(StandardCharsets.US_ASCII)).putInt(8 + dataLength);
+        buffer.putInt(0).putInt(0);
+        for (short value : values) {
+            buffer.putShort(value);
+        }
+        Path file = tempDir.resolve("test.aiff");
+        Files.write(file, buffer.array());
+        return file;
+    }
+}
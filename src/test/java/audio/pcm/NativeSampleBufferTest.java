@@ -0,0 +1,157 @@
+package audio.pcm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import audio.SampleView;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/** Tests for off-heap sample storage and its reference counting. */
+class NativeSampleBufferTest {
+
+    @Test
+    void testSignedSamplesAreNormalized() {
+        ByteBuffer pcm = ByteBuffer.allocate(12).order(ByteOrder.BIG_ENDIAN);
+        pcm.putShort((short) 0).putShort((short) 16384).putShort((short) -32768);
+        pcm.putShort((short) 32767).putShort((short) -16384).putShort((short) 8192);
+
+        NativeSampleBuffer buffer =
+                NativeSampleBuffer.copyOf(
+                        PcmFormat.Encoding.SIGNED_INT,
+                        16,
+                        ByteOrder.BIG_ENDIAN,
+                        MemorySegment.ofArray(pcm.array()));
+
+        assertEquals(6, buffer.sampleCount());
+        assertEquals(12, buffer.sizeBytes());
+        assertEquals(0.5, buffer.get(1), 0.0);
+        assertEquals(-1.0, buffer.get(2), 0.0);
+        assertEquals(32767 / 32768.0, buffer.get(3), 0.0);
+        double[] dest = new double[4];
+        buffer.read(2, dest, 1, 3);
+        assertArrayEquals(new double[] {0.0, -1.0, 32767 / 32768.0, -0.5}, dest, 0.0);
+        buffer.release();
+    }
+
+    @Test
+    void testInt32KeepsFourBytesPerSample() {
+        ByteBuffer pcm = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        pcm.putInt(1 << 30).putInt(Integer.MIN_VALUE);
+
+        NativeSampleBuffer buffer =
+                NativeSampleBuffer.copyOf(
+                        PcmFormat.Encoding.SIGNED_INT,
+                        32,
+                        ByteOrder.LITTLE_ENDIAN,
+                        MemorySegment.ofArray(pcm.array()));
+
+        assertEquals(8, buffer.sizeBytes());
+        assertEquals(0.5, buffer.get(0), 0.0);
+        assertEquals(-1.0, buffer.get(1), 0.0);
+        buffer.release();
+    }
+
+    @Test
+    void testUnsignedAndPackedFormats() {
+        NativeSampleBuffer unsigned =
+                NativeSampleBuffer.copyOf(
+                        PcmFormat.Encoding.UNSIGNED_INT,
+                        8,
+                        ByteOrder.LITTLE_ENDIAN,
+                        MemorySegment.ofArray(new byte[] {(byte) 0x80, (byte) 0xC0, 0x00}));
+        assertArrayEquals(
+                new double[] {0.0, 0.5, -1.0},
+                new double[] {unsigned.get(0), unsigned.get(1), unsigned.get(2)},
+                0.0);
+
+        byte[] packed = {0x00, 0x00, 0x40, 0x00, 0x00, (byte) 0xC0};
+        NativeSampleBuffer int24 =
+                NativeSampleBuffer.copyOf(
+                        PcmFormat.Encoding.SIGNED_INT,
+                        24,
+                        ByteOrder.LITTLE_ENDIAN,
+                        MemorySegment.ofArray(packed));
+        double[] dest = new double[2];
+        int24.read(0, dest, 0, 2);
+        assertArrayEquals(new double[] {0.5, -0.5}, dest, 0.0);
+
+        unsigned.release();
+        int24.release();
+    }
+
+    @Test
+    void testSplitRegionsAreConcatenated() {
+        ByteBuffer first = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putFloat(0.25f);
+        ByteBuffer second = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putFloat(-0.75f);
+
+        NativeSampleBuffer buffer =
+                NativeSampleBuffer.copyOf(
+                        PcmFormat.Encoding.FLOAT,
+                        32,
+                        ByteOrder.LITTLE_ENDIAN,
+                        MemorySegment.ofArray(first.array()),
+                        MemorySegment.ofArray(second.array()));
+
+        assertEquals(2, buffer.sampleCount());
+        assertEquals(0.25, buffer.get(0), 0.0);
+        assertEquals(-0.75, buffer.get(1), 0.0);
+        buffer.release();
+    }
+
+    @Test
+    void testLastReleaseFreesSamples() {
+        NativeSampleBuffer buffer = silence(100);
+        assertTrue(buffer.retain());
+
+        buffer.release();
+        assertEquals(0.0, buffer.get(99), "One reference is still held");
+
+        buffer.release();
+        assertThrows(IllegalStateException.class, () -> buffer.get(0));
+        assertFalse(buffer.retain(), "A freed buffer cannot be revived");
+        assertThrows(IllegalStateException.class, buffer::release);
+    }
+
+    @Test
+    void testViewKeepsReleasedBlocksReadableUntilClosed() {
+        NativeSampleBuffer first = silence(10);
+        NativeSampleBuffer second = silence(10);
+        SampleView view = new BlockSampleView(List.of(first, second), 0, 10, 44100, 1, 5, 10);
+
+        // The cache evicts both blocks while the view is still open
+        first.release();
+        second.release();
+        double[] dest = new double[10];
+        view.read(0, dest, 0, 10);
+
+        view.close();
+        view.close();
+        assertThrows(IllegalStateException.class, () -> first.get(0));
+        assertThrows(IllegalStateException.class, () -> second.get(0));
+    }
+
+    @Test
+    void testViewOfFreedBlockFails() {
+        NativeSampleBuffer live = silence(10);
+        NativeSampleBuffer freed = silence(10);
+        freed.release();
+
+        assertThrows(
+                IllegalStateException.class,
+                () -> new BlockSampleView(List.of(live, freed), 0, 10, 44100, 1, 0, 20));
+
+        live.release();
+        assertFalse(live.retain(), "The failed view gave back the reference it took");
+    }
+
+    private static NativeSampleBuffer silence(int samples) {
+        return NativeSampleBuffer.copyOf(
+                PcmFormat.Encoding.SIGNED_INT,
+                16,
+                ByteOrder.LITTLE_ENDIAN,
+                MemorySegment.ofArray(new byte[2 * samples]));
+    }
+}
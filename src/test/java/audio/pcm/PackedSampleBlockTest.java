@@ -0,0 +1,122 @@
+package audio.pcm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteOrder;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/** Tests for lossless packing of decoded blocks and the warm tier that holds them. */
+class PackedSampleBlockTest {
+
+    private final Random random = new Random(42);
+
+    @Test
+    void testRoundTripIsExactForEveryFormat() {
+        assertRoundTrip(PcmFormat.Encoding.SIGNED_INT, 8, ByteOrder.LITTLE_ENDIAN, 1);
+        assertRoundTrip(PcmFormat.Encoding.UNSIGNED_INT, 8, ByteOrder.LITTLE_ENDIAN, 2);
+        assertRoundTrip(PcmFormat.Encoding.SIGNED_INT, 16, ByteOrder.LITTLE_ENDIAN, 2);
+        assertRoundTrip(PcmFormat.Encoding.SIGNED_INT, 16, ByteOrder.BIG_ENDIAN, 1);
+        assertRoundTrip(PcmFormat.Encoding.SIGNED_INT, 24, ByteOrder.LITTLE_ENDIAN, 6);
+        assertRoundTrip(PcmFormat.Encoding.SIGNED_INT, 24, ByteOrder.BIG_ENDIAN, 2);
+        assertRoundTrip(PcmFormat.Encoding.SIGNED_INT, 32, ByteOrder.BIG_ENDIAN, 2);
+        assertRoundTrip(PcmFormat.Encoding.FLOAT, 32, ByteOrder.LITTLE_ENDIAN, 2);
+        assertRoundTrip(PcmFormat.Encoding.FLOAT, 64, ByteOrder.LITTLE_ENDIAN, 1);
+    }
+
+    @Test
+    void testSmoothSignalPacksSmallerThanNoise() {
+        int frames = 10_000;
+        byte[] tone = new byte[frames * 2];
+        for (int i = 0; i < frames; i++) {
+            short value = (short) (8000 * Math.sin(i * 0.005));
+            tone[2 * i] = (byte) value;
+            tone[2 * i + 1] = (byte) (value >> 8);
+        }
+        byte[] noise = new byte[frames * 2];
+        random.nextBytes(noise);
+
+        PackedSampleBlock packedTone = pack(tone, PcmFormat.Encoding.SIGNED_INT, 16, 1);
+        PackedSampleBlock packedNoise = pack(noise, PcmFormat.Encoding.SIGNED_INT, 16, 1);
+        PackedSampleBlock packedSilence =
+                pack(new byte[frames * 2], PcmFormat.Encoding.SIGNED_INT, 16, 1);
+
+        assertTrue(packedTone.packedBytes() * 2 < packedTone.unpackedBytes());
+        assertTrue(packedNoise.packedBytes() > packedTone.packedBytes() * 2);
+        assertEquals(
+                (frames + PackedSampleBlock.GROUP_SAMPLES - 1) / PackedSampleBlock.GROUP_SAMPLES,
+                packedSilence.packedBytes(),
+                "Silence costs one width byte per group");
+    }
+
+    @Test
+    void testWarmTierServesCopiesAndReportsRatio() {
+        PackedBlockCache<String> cache = new PackedBlockCache<>(1_000_000);
+        NativeSampleBuffer block = buffer(new byte[20_000], PcmFormat.Encoding.SIGNED_INT, 16);
+
+        cache.add("a", block, 2);
+        block.release();
+        SampleBuffer first = cache.get("a");
+        SampleBuffer second = cache.get("a");
+
+        assertNull(cache.get("b"));
+        assertEquals(10_000, first.sampleCount());
+        first.release();
+        assertEquals(0.0, second.get(9_999), "Each lookup unpacks a buffer of its own");
+        second.release();
+
+        PackedBlockCache.Stats stats = cache.stats();
+        assertEquals(2, stats.hitCount());
+        assertEquals(1, stats.missCount());
+        assertEquals(1, stats.blockCount());
+        assertEquals(20_000, stats.unpackedBytes());
+        assertTrue(stats.compressionRatio() > 100);
+    }
+
+    @Test
+    void testWarmTierWithoutCapacityHoldsNothing() {
+        PackedBlockCache<String> cache = new PackedBlockCache<>(0);
+        NativeSampleBuffer block = buffer(new byte[200], PcmFormat.Encoding.SIGNED_INT, 16);
+
+        cache.add("a", block, 1);
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.stats().blockCount());
+        block.release();
+    }
+
+    private void assertRoundTrip(
+            PcmFormat.Encoding encoding, int bitsPerSample, ByteOrder order, int channelCount) {
+        // Odd length, so the last group is partial
+        byte[] bytes = new byte[(1000 * channelCount + 7) * (bitsPerSample / 8)];
+        random.nextBytes(bytes);
+        NativeSampleBuffer source =
+                NativeSampleBuffer.copyOf(
+                        encoding, bitsPerSample, order, MemorySegment.ofArray(bytes));
+
+        NativeSampleBuffer restored = PackedSampleBlock.pack(source, channelCount).unpack();
+
+        String format = bitsPerSample + "-bit " + encoding + " " + order;
+        assertEquals(source.sampleCount(), restored.sampleCount(), format);
+        assertEquals(-1, source.samples().mismatch(restored.samples()), format);
+        source.release();
+        restored.release();
+    }
+
+    private static PackedSampleBlock pack(
+            byte[] bytes, PcmFormat.Encoding encoding, int bitsPerSample, int channelCount) {
+        NativeSampleBuffer source = buffer(bytes, encoding, bitsPerSample);
+        try {
+            return PackedSampleBlock.pack(source, channelCount);
+        } finally {
+            source.release();
+        }
+    }
+
+    private static NativeSampleBuffer buffer(
+            byte[] bytes, PcmFormat.Encoding encoding, int bitsPerSample) {
+        return NativeSampleBuffer.copyOf(
+                encoding, bitsPerSample, ByteOrder.LITTLE_ENDIAN, MemorySegment.ofArray(bytes));
+    }
+}
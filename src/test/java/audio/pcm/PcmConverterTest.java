@@ -0,0 +1,84 @@
+package audio.pcm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/** Tests that the vectorized conversions agree with the scalar loops. */
+class PcmConverterTest {
+
+    // Odd count and offset so every run ends in a partial vector and loads are unaligned
+    private static final int SAMPLES = 1001;
+    private static final long OFFSET = 3;
+    private static final ByteOrder[] ORDERS = {ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN};
+
+    @Test
+    void testVectorModuleIsEnabledForTests() {
+        assertTrue(PcmConverter.isVectorized(), "tests should run with jdk.incubator.vector");
+    }
+
+    @Test
+    void testIntegerConversionsMatchScalar() {
+        for (int bits : new int[] {8, 16, 24, 32}) {
+            for (ByteOrder order : ORDERS) {
+                assertMatchesScalar(
+                        randomSource(bits), PcmFormat.Encoding.SIGNED_INT, bits, order);
+            }
+        }
+    }
+
+    @Test
+    void testFloatConversionMatchesScalar() {
+        MemorySegment source = MemorySegment.ofArray(new byte[(int) OFFSET + SAMPLES * 4]);
+        for (int i = 0; i < SAMPLES; i++) {
+            source.set(
+                    ValueLayout.JAVA_FLOAT_UNALIGNED, OFFSET + 4L * i, (float) Math.sin(i * 0.01));
+        }
+        assertMatchesScalar(source, PcmFormat.Encoding.FLOAT, 32, ByteOrder.nativeOrder());
+    }
+
+    @Test
+    void testExtremes() {
+        // Most negative and most positive 24-bit samples, little-endian
+        byte[] pcm = {0x00, 0x00, (byte) 0x80, (byte) 0xFF, (byte) 0xFF, 0x7F};
+        double[] dest = new double[2];
+        PcmConverter.toDouble(
+                MemorySegment.ofArray(pcm),
+                0,
+                PcmFormat.Encoding.SIGNED_INT,
+                24,
+                ByteOrder.LITTLE_ENDIAN,
+                dest,
+                0,
+                2);
+        assertEquals(-1.0, dest[0], 0.0);
+        assertEquals(8388607 / 8388608.0, dest[1], 0.0);
+    }
+
+    private static MemorySegment randomSource(int bits) {
+        byte[] bytes = new byte[(int) OFFSET + SAMPLES * bits / 8];
+        new Random(bits).nextBytes(bytes);
+        return MemorySegment.ofArray(bytes);
+    }
+
+    private static void assertMatchesScalar(
+            MemorySegment source, PcmFormat.Encoding encoding, int bits, ByteOrder order) {
+        double[] expectedDoubles = new double[SAMPLES];
+        double[] actualDoubles = new double[SAMPLES];
+        PcmConverter.scalarToDouble(
+                source, OFFSET, encoding, bits, order, expectedDoubles, 0, SAMPLES);
+        PcmConverter.toDouble(source, OFFSET, encoding, bits, order, actualDoubles, 0, SAMPLES);
+        assertArrayEquals(expectedDoubles, actualDoubles, 0.0, bits + "-bit " + order);
+
+        float[] expectedFloats = new float[SAMPLES];
+        float[] actualFloats = new float[SAMPLES];
+        PcmConverter.scalarToFloat(
+                source, OFFSET, encoding, bits, order, expectedFloats, 0, SAMPLES);
+        PcmConverter.toFloat(source, OFFSET, encoding, bits, order, actualFloats, 0, SAMPLES);
+        assertArrayEquals(expectedFloats, actualFloats, 0f, bits + "-bit " + order);
+    }
+}
@@ -0,0 +1,167 @@
+package audio.pcm;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import audio.AudioMetadata;
+import audio.SampleView;
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests for writing, reopening and evicting decoded copies on disk. */
+class PcmDiskCacheTest {
+
+    private static final AudioMetadata STEREO =
+            new AudioMetadata(44100, 2, 16, "44100 Hz, 16 bit, Stereo", 3, 3 / 44100.0);
+
+    @TempDir Path tempDir;
+
+    private Path cacheDir;
+    private Path source;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        cacheDir = tempDir.resolve("cache");
+        source = tempDir.resolve("song.mp3");
+        Files.write(source, new byte[] {1, 2, 3});
+    }
+
+    @Test
+    void testReopenedEntryMatchesWrittenSamples() throws Exception {
+        PcmDiskCache cache = new PcmDiskCache(cacheDir, 1 << 20);
+        write(cache, source, STEREO, 0.5f, -0.5f, 0.25f, -0.25f, 1.0f, -1.0f);
+
+        CachedPcm cached = new PcmDiskCache(cacheDir, 1 << 20).open(source);
+
+        assertNotNull(cached);
+        assertEquals(STEREO, cached.metadata());
+        SampleBuffer tail = cached.slice(1, 10);
+        assertEquals(4, tail.sampleCount());
+        assertEquals(0.25, tail.get(0), 0.0);
+        assertEquals(-1.0, tail.get(3), 0.0);
+        try (SampleView view = cached.view(1, 2)) {
+            assertEquals(2, view.frameCount());
+            assertEquals(-0.25, view.sample(0, 1), 0.0);
+            assertEquals(1.0, view.sample(1, 0), 0.0);
+        }
+    }
+
+    @Test
+    void testFrameCountComesFromAppendedSamples() throws Exception {
+        PcmDiskCache cache = new PcmDiskCache(cacheDir, 1 << 20);
+        // The codec came up one frame short of the length it reported
+        write(cache, source, STEREO, 0.5f, -0.5f, 0.25f, -0.25f);
+
+        assertEquals(2, cache.open(source).metadata().frameCount());
+    }
+
+    @Test
+    void testMissingEntry() throws Exception {
+        assertNull(new PcmDiskCache(cacheDir, 1 << 20).open(source));
+    }
+
+    @Test
+    void testChangedSourceDiscardsEntry() throws Exception {
+        PcmDiskCache cache = new PcmDiskCache(cacheDir, 1 << 20);
+        write(cache, source, STEREO, 0.5f, -0.5f);
+        Files.write(source, new byte[] {4, 5, 6, 7});
+
+        assertNull(cache.open(source));
+        assertEquals(0, cache.sizeBytes(), "The stale entry should be deleted");
+    }
+
+    @Test
+    void testCorruptEntryIsDiscarded() throws Exception {
+        PcmDiskCache cache = new PcmDiskCache(cacheDir, 1 << 20);
+        write(cache, source, STEREO, 0.5f, -0.5f);
+        Path entry = cache.entryFor(source);
+        Files.write(entry, new byte[] {0, 1, 2, 3});
+
+        assertNull(cache.open(source));
+        assertFalse(Files.exists(entry));
+    }
+
+    @Test
+    void testUncommittedWriterLeavesNothing() throws Exception {
+        PcmDiskCache cache = new PcmDiskCache(cacheDir, 1 << 20);
+        try (PcmDiskCache.Writer writer = cache.create(source, STEREO)) {
+            writer.append(floats(0.5f, -0.5f));
+        }
+
+        assertNull(cache.open(source));
+        try (var files = Files.list(cacheDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void testAbandonedWritesAreDeleted() throws Exception {
+        Files.createDirectories(cacheDir);
+        Path abandoned = Files.createTempFile(cacheDir, ".pcm", ".tmp");
+        Path inProgress = Files.createTempFile(cacheDir, ".pcm", ".tmp");
+        Files.setLastModifiedTime(
+                abandoned,
+                FileTime.from(Instant.now().minus(PcmDiskCache.STALE_TEMP_AGE.multipliedBy(2))));
+
+        new PcmDiskCache(cacheDir, 1 << 20);
+
+        assertFalse(Files.exists(abandoned), "Left behind by a process that died mid-write");
+        assertTrue(Files.exists(inProgress), "Possibly still being written by another process");
+    }
+
+    @Test
+    void testTrimEvictsLeastRecentlyUsed() throws Exception {
+        // Each entry is a header plus 1000 stereo frames; two fit, three do not
+        long entryBytes = PcmDiskCache.DATA_OFFSET + 1000 * 2 * 4;
+        PcmDiskCache cache = new PcmDiskCache(cacheDir, 2 * entryBytes + 100);
+        AudioMetadata metadata = new AudioMetadata(44100, 2, 16, "test", 1000, 1000 / 44100.0);
+        float[] samples = new float[2000];
+
+        Path[] sources = new Path[3];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = Files.write(tempDir.resolve(i + ".flac"), new byte[] {(byte) i});
+        }
+        write(cache, sources[0], metadata, samples);
+        write(cache, sources[1], metadata, samples);
+        age(cache.entryFor(sources[0]), 20);
+        age(cache.entryFor(sources[1]), 10);
+
+        // Using the older entry makes the other one the eviction candidate
+        assertNotNull(cache.open(sources[0]));
+        write(cache, sources[2], metadata, samples);
+
+        assertEquals(2 * entryBytes, cache.sizeBytes());
+        assertNotNull(cache.open(sources[0]));
+        assertNull(cache.open(sources[1]));
+        assertNotNull(cache.open(sources[2]));
+    }
+
+    private static void write(
+            PcmDiskCache cache, Path source, AudioMetadata metadata, float... samples)
+            throws IOException {
+        try (PcmDiskCache.Writer writer = cache.create(source, metadata)) {
+            writer.append(floats(samples));
+            writer.commit();
+        }
+    }
+
+    private static SampleBuffer floats(float... samples) {
+        return NativeSampleBuffer.copyOf(
+                PcmFormat.Encoding.FLOAT,
+                32,
+                ByteOrder.nativeOrder(),
+                MemorySegment.ofArray(samples));
+    }
+
+    private static void age(Path entry, int minutes) throws IOException {
+        Instant used = Instant.now().minusSeconds(60L * minutes);
+        Files.setLastModifiedTime(entry, FileTime.from(used));
+    }
+}
@@ -0,0 +1,238 @@
+package audio.peaks;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests for building, querying and persisting peak pyramids. */
+class PeakPyramidTest {
+
+    private static final int RATE = 44100;
+    private static final int CHANNELS = 2;
+
+    // Not a whole number of buckets, so every level ends with a partial bucket
+    private static final int FRAMES = PeakPyramid.BASE_BUCKET_FRAMES * 1000 + 100;
+
+    // One quantization step, the most a stored value can differ from the exact one
+    private static final double STEP = 1.0 / Short.MAX_VALUE;
+
+    @TempDir Path tempDir;
+
+    @Test
+    void testLevelsHalveUpToOneBucket() {
+        PeakPyramid pyramid = build(signal(FRAMES), FRAMES);
+
+        assertEquals(FRAMES, pyramid.frameCount());
+        for (int level = 0; level < pyramid.levelCount(); level++) {
+            assertEquals(
+                    Math.ceilDiv((long) FRAMES, pyramid.bucketFrames(level)),
+                    pyramid.bucketCount(level),
+                    "level " + level);
+        }
+        assertEquals(1, pyramid.bucketCount(pyramid.levelCount() - 1));
+        assertTrue(pyramid.bucketCount(pyramid.levelCount() - 2) > 1);
+    }
+
+    @Test
+    void testAlignedQueryIsExact() {
+        double[] samples = signal(FRAMES);
+        PeakPyramid pyramid = build(samples, FRAMES);
+
+        // Eight level 0 buckets per pixel, so each pixel is exactly one level 3 bucket
+        long start = 16L * PeakPyramid.BASE_BUCKET_FRAMES;
+        int width = 100;
+        long end = start + width * 8L * PeakPyramid.BASE_BUCKET_FRAMES;
+        Peaks peaks = pyramid.query(start, end, width);
+
+        assertEquals(width, peaks.width());
+        assertEquals(CHANNELS, peaks.channelCount());
+        long framesPerPixel = (end - start) / width;
+        for (int pixel = 0; pixel < width; pixel++) {
+            long from = start + pixel * framesPerPixel;
+            for (int channel = 0; channel < CHANNELS; channel++) {
+                double[] exact = summarize(samples, from, from + framesPerPixel, channel);
+                assertEquals(exact[0], peaks.min(pixel, channel), STEP);
+                assertEquals(exact[1], peaks.max(pixel, channel), STEP);
+                assertEquals(exact[2], peaks.rms(pixel, channel), 1e-3);
+            }
+        }
+    }
+
+    @Test
+    void testUnalignedQueryEnclosesSamples() {
+        double[] samples = signal(FRAMES);
+        PeakPyramid pyramid = build(samples, FRAMES);
+
+        long start = 12_345;
+        long end = 200_001;
+        int width = 333;
+        Peaks peaks = pyramid.query(start, end, width);
+
+        double framesPerPixel = (end - start) / (double) width;
+        for (int pixel = 0; pixel < width; pixel++) {
+            long from = start + (long) (pixel * framesPerPixel);
+            long to = start + (long) ((pixel + 1) * framesPerPixel);
+            for (int channel = 0; channel < CHANNELS; channel++) {
+                double[] exact = summarize(samples, from, to, channel);
+                assertTrue(peaks.min(pixel, channel) <= exact[0] + STEP);
+                assertTrue(peaks.max(pixel, channel) >= exact[1] - STEP);
+            }
+        }
+    }
+
+    @Test
+    void testWholeFileQueryMatchesGlobalExtremes() {
+        double[] samples = signal(FRAMES);
+        PeakPyramid pyramid = build(samples, FRAMES);
+
+        Peaks peaks = pyramid.query(0, Long.MAX_VALUE, 1);
+        assertEquals(FRAMES, peaks.endFrame(), "The range is clamped to the file");
+        for (int channel = 0; channel < CHANNELS; channel++) {
+            double[] exact = summarize(samples, 0, FRAMES, channel);
+            assertEquals(exact[0], peaks.min(0, channel), STEP);
+            assertEquals(exact[1], peaks.max(0, channel), STEP);
+            assertEquals(exact[2], peaks.rms(0, channel), 1e-3);
+        }
+    }
+
+    @Test
+    void testEmptyRangesHaveNoPixels() {
+        PeakPyramid pyramid = build(signal(FRAMES), FRAMES);
+
+        assertEquals(0, pyramid.query(FRAMES, FRAMES + 1000, 50).width());
+        assertEquals(0, pyramid.query(100, 100, 50).width());
+        assertEquals(0, pyramid.query(0, FRAMES, 0).width());
+        assertThrows(IllegalArgumentException.class, () -> pyramid.query(-1, 100, 10));
+    }
+
+    @Test
+    void testSidecarRoundTrip() throws IOException {
+        PeakPyramid built = build(signal(FRAMES), FRAMES);
+        Path sidecar = tempDir.resolve("clip.wav.peaks");
+        built.write(sidecar);
+
+        PeakPyramid loaded = PeakPyramid.read(sidecar);
+        assertTrue(loaded.matches(1234, 5678));
+        assertEquals(built.levelCount(), loaded.levelCount());
+        assertEquals(RATE, loaded.sampleRate());
+
+        Peaks expected = built.query(999, 180_000, 640);
+        Peaks actual = loaded.query(999, 180_000, 640);
+        assertArrayEquals(expected.min(), actual.min());
+        assertArrayEquals(expected.max(), actual.max());
+        assertArrayEquals(expected.rms(), actual.rms());
+    }
+
+    @Test
+    void testRejectsCorruptSidecar() throws IOException {
+        Path sidecar = tempDir.resolve("clip.wav.peaks");
+        build(signal(FRAMES), FRAMES).write(sidecar);
+
+        byte[] bytes = Files.readAllBytes(sidecar);
+        Files.write(sidecar, Arrays.copyOf(bytes, bytes.length - 10));
+        assertThrows(IOException.class, () -> PeakPyramid.read(sidecar));
+
+        bytes[4] = 99; // version
+        Files.write(sidecar, bytes);
+        assertThrows(IOException.class, () -> PeakPyramid.read(sidecar));
+    }
+
+    @Test
+    void testEmptyFile() {
+        PeakPyramid pyramid = build(new double[0], 0);
+
+        assertEquals(1, pyramid.levelCount());
+        assertEquals(0, pyramid.bucketCount(0));
+        assertEquals(0, pyramid.query(0, 100, 10).width());
+    }
+
+    @Test
+    void testSnapshotMatchesPyramidOfPrefix() {
+        double[] samples = signal(FRAMES);
+        int prefix = 123_457;
+        PeakPyramidBuilder builder = new PeakPyramidBuilder(RATE, CHANNELS);
+        assertEquals(0, builder.snapshot(1234, 5678).bucketCount(0));
+
+        builder.add(samples, prefix);
+        PeakPyramid snapshot = builder.snapshot(1234, 5678);
+        PeakPyramid expected = build(samples, prefix);
+
+        assertEquals(prefix, snapshot.frameCount());
+        assertEquals(expected.levelCount(), snapshot.levelCount());
+        for (int level = 0; level < expected.levelCount(); level++) {
+            assertEquals(
+                    expected.bucketCount(level), snapshot.bucketCount(level), "level " + level);
+        }
+        // Fine, coarse and whole-prefix widths read the last bucket of low and high levels
+        assertClose(expected.query(0, prefix, 640), snapshot.query(0, prefix, 640));
+        long tail = prefix - 5000;
+        assertClose(expected.query(tail, prefix, 3), snapshot.query(tail, prefix, 3));
+        assertClose(expected.query(0, prefix, 1), snapshot.query(0, prefix, 1));
+
+        // The builder carries on as if no snapshot had been taken
+        double[] rest = Arrays.copyOfRange(samples, prefix * CHANNELS, FRAMES * CHANNELS);
+        builder.add(rest, FRAMES - prefix);
+        Peaks whole = builder.build(1234, 5678).query(0, FRAMES, 500);
+        Peaks unbroken = build(samples, FRAMES).query(0, FRAMES, 500);
+        assertArrayEquals(unbroken.min(), whole.min());
+        assertArrayEquals(unbroken.max(), whole.max());
+        assertArrayEquals(unbroken.rms(), whole.rms());
+
+        // The snapshot shares its buckets with the builder, which must not have changed them
+        assertClose(expected.query(0, prefix, 640), snapshot.query(0, prefix, 640));
+        assertClose(expected.query(tail, prefix, 3), snapshot.query(tail, prefix, 3));
+    }
+
+    private static PeakPyramid build(double[] samples, int frames) {
+        PeakPyramidBuilder builder = new PeakPyramidBuilder(RATE, CHANNELS);
+        // Feed uneven chunks so bucket boundaries fall inside them
+        int chunk = 7_777;
+        double[] buffer = new double[chunk * CHANNELS];
+        for (int frame = 0; frame < frames; frame += chunk) {
+            int count = Math.min(chunk, frames - frame);
+            System.arraycopy(samples, frame * CHANNELS, buffer, 0, count * CHANNELS);
+            builder.add(buffer, count);
+        }
+        return builder.build(1234, 5678);
+    }
+
+    /** Compares summaries to within a quantization step, allowing for summation order. */
+    private static void assertClose(Peaks expected, Peaks actual) {
+        assertEquals(expected.width(), actual.width());
+        assertArrayEquals(expected.min(), actual.min(), (float) STEP);
+        assertArrayEquals(expected.max(), actual.max(), (float) STEP);
+        assertArrayEquals(expected.rms(), actual.rms(), (float) STEP);
+    }
+
+    /** A swelling sine on the left and quieter noise on the right. */
+    private static double[] signal(int frames) {
+        Random random = new Random(42);
+        double[] samples = new double[frames * CHANNELS];
+        for (int frame = 0; frame < frames; frame++) {
+            double envelope = (double) frame / frames;
+            samples[frame * CHANNELS] = envelope * Math.sin(frame * 0.01);
+            samples[frame * CHANNELS + 1] = 0.3 * (random.nextDouble() * 2 - 1);
+        }
+        return samples;
+    }
+
+    /** Exact min, max and RMS of one channel over [from, to). */
+    private static double[] summarize(double[] samples, long from, long to, int channel) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        double squares = 0;
+        for (long frame = from; frame < to; frame++) {
+            double sample = samples[(int) frame * CHANNELS + channel];
+            min = Math.min(min, sample);
+            max = Math.max(max, sample);
+            squares += sample * sample;
+        }
+        return new double[] {min, max, Math.sqrt(squares / (to - from))};
+    }
+}
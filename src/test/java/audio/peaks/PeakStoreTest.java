@@ -0,0 +1,286 @@
+package audio.peaks;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import audio.AudioData;
+import audio.AudioMetadata;
+import audio.AudioReadException;
+import audio.SampleReader;
+import audio.pcm.MappedPcmSampleReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Tests for building and reusing peak sidecars through a sample reader. */
+class PeakStoreTest {
+
+    private static final Path SAMPLE_WAV = Paths.get("src/test/resources/audio/freerecall.wav");
+    private static final Path SWEEP_WAV = Paths.get("src/test/resources/audio/sweep.wav");
+
+    @TempDir Path tempDir;
+
+    private MappedPcmSampleReader reader;
+    private PeakStore store;
+    private Path audioFile;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        reader = new MappedPcmSampleReader();
+        store = new PeakStore(reader);
+        audioFile = tempDir.resolve("sweep.wav");
+        Files.copy(SWEEP_WAV, audioFile);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        store.close();
+        reader.close();
+    }
+
+    @Test
+    void testPeaksMatchSamples() throws Exception {
+        AudioData data =
+                reader.readSamples(audioFile, 0, Integer.MAX_VALUE).get(5, TimeUnit.SECONDS);
+        Peaks peaks = store.getPeaks(audioFile, 0, data.frameCount(), 1).get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, peaks.width());
+        assertEquals(data.channelCount(), peaks.channelCount());
+        for (int channel = 0; channel < data.channelCount(); channel++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int frame = 0; frame < data.frameCount(); frame++) {
+                double sample = data.samples()[frame * data.channelCount() + channel];
+                min = Math.min(min, sample);
+                max = Math.max(max, sample);
+            }
+            assertEquals(min, peaks.min(0, channel), 1.0 / Short.MAX_VALUE);
+            assertEquals(max, peaks.max(0, channel), 1.0 / Short.MAX_VALUE);
+        }
+    }
+
+    @Test
+    void testSidecarIsSavedAndReused() throws Exception {
+        Peaks first = store.getPeaks(audioFile, 0, 30_000, 200).get(5, TimeUnit.SECONDS);
+        Path sidecar = PeakPyramid.sidecarFor(audioFile);
+        assertTrue(Files.exists(sidecar));
+        FileTime saved = Files.getLastModifiedTime(sidecar);
+
+        try (PeakStore other = new PeakStore(reader)) {
+            Peaks second = other.getPeaks(audioFile, 0, 30_000, 200).get(5, TimeUnit.SECONDS);
+            assertArrayEquals(first.min(), second.min());
+            assertArrayEquals(first.max(), second.max());
+            assertArrayEquals(first.rms(), second.rms());
+        }
+        assertEquals(saved, Files.getLastModifiedTime(sidecar), "Sidecar should not be rewritten");
+    }
+
+    @Test
+    void testChangedFileIsRebuilt() throws Exception {
+        assertEquals(2, store.getPyramid(audioFile).get(5, TimeUnit.SECONDS).channelCount());
+
+        Files.copy(SAMPLE_WAV, audioFile, StandardCopyOption.REPLACE_EXISTING);
+        Files.setLastModifiedTime(audioFile, FileTime.fromMillis(1_000_000));
+
+        // A fresh reader, since the first one keeps its mapping of the old file
+        try (MappedPcmSampleReader freshReader = new MappedPcmSampleReader();
+                PeakStore freshStore = new PeakStore(freshReader)) {
+            PeakPyramid rebuilt = freshStore.getPyramid(audioFile).get(5, TimeUnit.SECONDS);
+            assertEquals(1, rebuilt.channelCount());
+            assertEquals(
+                    freshReader.getMetadata(audioFile).get(5, TimeUnit.SECONDS).frameCount(),
+                    rebuilt.frameCount());
+        }
+        assertEquals(1, PeakPyramid.read(PeakPyramid.sidecarFor(audioFile)).channelCount());
+    }
+
+    @Test
+    void testMissingFileFails() {
+        Path missing = tempDir.resolve("missing.wav");
+
+        ExecutionException e =
+                assertThrows(
+                        ExecutionException.class,
+                        () -> store.getPeaks(missing, 0, 1000, 10).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(AudioReadException.class, e.getCause());
+        assertFalse(Files.exists(PeakPyramid.sidecarFor(missing)));
+    }
+
+    @Test
+    void testBuildReportsProgressUpToTheWholeFile() throws Exception {
+        Path longFile = copyLongFile();
+        List<long[]> events = new CopyOnWriteArrayList<>();
+        store.addProgressListener(
+                (file, decoded, total) -> {
+                    assertEquals(longFile, file);
+                    events.add(new long[] {decoded, total});
+                });
+
+        PeakPyramid pyramid = store.getPyramid(longFile).get(5, TimeUnit.SECONDS);
+
+        assertEquals(PeakStore.BUILD_CHUNK_FRAMES, events.getFirst()[0], "First chunk");
+        for (int i = 1; i < events.size(); i++) {
+            assertTrue(events.get(i)[0] > events.get(i - 1)[0], "Progress only moves forward");
+        }
+        assertArrayEquals(
+                new long[] {pyramid.frameCount(), pyramid.frameCount()}, events.getLast());
+
+        // Loading the saved sidecar builds nothing, so reports nothing
+        try (PeakStore other = new PeakStore(reader)) {
+            other.addProgressListener((file, decoded, total) -> fail("Unexpected progress"));
+            other.getPyramid(longFile).get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void testDecodedRangeIsServedWhileBuilding() throws Exception {
+        Path longFile = copyLongFile();
+        long total = reader.getMetadata(longFile).get(5, TimeUnit.SECONDS).frameCount();
+        GatedReader gated = new GatedReader(reader);
+        BlockingQueue<Long> progress = new LinkedBlockingQueue<>();
+
+        try (PeakStore building = new PeakStore(gated)) {
+            building.addProgressListener((file, decoded, totalFrames) -> progress.add(decoded));
+            CompletableFuture<Peaks> whole = building.getPeaks(longFile, 0, total, 100);
+            assertEquals(PeakStore.BUILD_CHUNK_FRAMES, progress.poll(5, TimeUnit.SECONDS));
+
+            CompletableFuture<Peaks> decoded = building.getPeaks(longFile, 0, 1 << 17, 64);
+            assertTrue(decoded.isDone(), "The decoded range is served without waiting");
+            long beyond = PeakStore.BUILD_CHUNK_FRAMES + 1;
+            assertFalse(building.getPeaks(longFile, 0, beyond, 64).isDone());
+            assertFalse(whole.isDone());
+
+            gated.gate.countDown();
+            assertEquals(100, whole.get(5, TimeUnit.SECONDS).width());
+            Peaks complete = building.getPeaks(longFile, 0, 1 << 17, 64).get(5, TimeUnit.SECONDS);
+            assertArrayEquals(complete.min(), decoded.get().min());
+            assertArrayEquals(complete.max(), decoded.get().max());
+            assertArrayEquals(complete.rms(), decoded.get().rms());
+        } finally {
+            gated.gate.countDown();
+        }
+    }
+
+    @Test
+    void testUnderstatedLengthIsReadToTheEnd() throws Exception {
+        Path longFile = copyLongFile();
+        long actual = reader.getMetadata(longFile).get(5, TimeUnit.SECONDS).frameCount();
+
+        try (PeakStore estimating = new PeakStore(new UnderstatingReader(reader))) {
+            PeakPyramid pyramid = estimating.getPyramid(longFile).get(5, TimeUnit.SECONDS);
+            assertEquals(actual, pyramid.frameCount());
+        }
+    }
+
+    @Test
+    void testCloseStopsBuild() throws Exception {
+        Path longFile = copyLongFile();
+        GatedReader gated = new GatedReader(reader);
+        BlockingQueue<Boolean> virtual = new LinkedBlockingQueue<>();
+
+        PeakStore building = new PeakStore(gated);
+        try {
+            building.addProgressListener(
+                    (file, decoded, total) -> virtual.add(Thread.currentThread().isVirtual()));
+            CompletableFuture<PeakPyramid> pyramid = building.getPyramid(longFile);
+            assertEquals(true, virtual.poll(5, TimeUnit.SECONDS), "Builds run on their own");
+
+            building.close();
+            gated.gate.countDown();
+
+            ExecutionException e =
+                    assertThrows(
+                            ExecutionException.class, () -> pyramid.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(AudioReadException.class, e.getCause());
+        } finally {
+            gated.gate.countDown();
+            building.close();
+        }
+    }
+
+    /** Copies a file longer than one build chunk into the temporary directory. */
+    private Path copyLongFile() throws Exception {
+        Path longFile = tempDir.resolve("freerecall.wav");
+        Files.copy(SAMPLE_WAV, longFile);
+        assertTrue(
+                reader.getMetadata(longFile).get(5, TimeUnit.SECONDS).frameCount()
+                        > 2L * PeakStore.BUILD_CHUNK_FRAMES);
+        return longFile;
+    }
+
+    /** Reports half the real length, as a header estimate of a VBR stream might. */
+    private static class UnderstatingReader implements SampleReader {
+        final SampleReader delegate;
+
+        UnderstatingReader(SampleReader delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public CompletableFuture<AudioData> readSamples(
+                Path audioFile, long startFrame, long frameCount) {
+            return delegate.readSamples(audioFile, startFrame, frameCount);
+        }
+
+        @Override
+        public CompletableFuture<AudioMetadata> getMetadata(Path audioFile) {
+            return delegate.getMetadata(audioFile)
+                    .thenApply(
+                            real ->
+                                    new AudioMetadata(
+                                            real.sampleRate(),
+                                            real.channelCount(),
+                                            real.bitsPerSample(),
+                                            real.format(),
+                                            real.frameCount() / 2,
+                                            real.durationSeconds() / 2));
+        }
+
+        @Override
+        public void close() {}
+    }
+
+    /** Holds back every read past the first build chunk until the gate opens. */
+    private static class GatedReader implements SampleReader {
+        final CountDownLatch gate = new CountDownLatch(1);
+        final SampleReader delegate;
+
+        GatedReader(SampleReader delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public CompletableFuture<AudioData> readSamples(
+                Path audioFile, long startFrame, long frameCount) {
+            if (startFrame >= PeakStore.BUILD_CHUNK_FRAMES) {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    return CompletableFuture.failedFuture(e);
+                }
+            }
+            return delegate.readSamples(audioFile, startFrame, frameCount);
+        }
+
+        @Override
+        public CompletableFuture<AudioMetadata> getMetadata(Path audioFile) {
+            return delegate.getMetadata(audioFile);
+        }
+
+        @Override
+        public void close() {}
+    }
+}
@@ -0,0 +1,252 @@
+package playback;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import audio.AudioData;
+import audio.AudioEngine;
+import audio.AudioHandle;
+import audio.AudioMetadata;
+import audio.PlaybackHandle;
+import audio.PlaybackListener;
+import audio.PlaybackState;
+import audio.ReadPriority;
+import audio.SampleReader;
+import audio.SampleView;
+import audio.peaks.PeakStore;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Tests for prefetching around the playhead as progress updates arrive. */
+class PlaybackReadaheadTest {
+
+    private static final int RATE = 44100;
+    private static final long TOTAL = 600L * RATE;
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final List<PlaybackListener> listeners = new ArrayList<>();
+    private RecordingReader reader;
+    private PeakStore peakStore;
+    private PlaybackReadahead readahead;
+    private long now;
+
+    @BeforeEach
+    void setUp() {
+        reader = new RecordingReader();
+        peakStore = new PeakStore(reader);
+        readahead = new PlaybackReadahead(engine(), reader, peakStore, 10.0, () -> now);
+    }
+
+    @AfterEach
+    void tearDown() {
+        readahead.close();
+        peakStore.close();
+    }
+
+    @Test
+    void testRegistersAndUnregisters() {
+        assertEquals(List.of(readahead), listeners);
+        readahead.close();
+        assertEquals(List.of(), listeners);
+    }
+
+    @Test
+    void testPrefetchesWindowAndTopsUpAtHalf() {
+        PlaybackHandle playback = handle("song.wav");
+
+        readahead.onProgress(playback, 0, TOTAL);
+        assertEquals(List.of(new Read(0, 10L * RATE)), reader.reads);
+
+        // More than half the window still decoded ahead; nothing to do
+        playFor(playback, 0, 4);
+        assertEquals(1, reader.reads.size());
+
+        // Less than half left: read on from where the last read ended
+        playFor(playback, 4, 6);
+        assertEquals(2, reader.reads.size());
+        Read topUp = reader.reads.get(1);
+        assertEquals(10L * RATE, topUp.start());
+        assertTrue(topUp.start() + topUp.count() > 14L * RATE);
+    }
+
+    @Test
+    void testSeekCancelsAndRestartsAtNewPosition() {
+        PlaybackHandle playback = handle("song.wav");
+        readahead.onProgress(playback, 0, TOTAL);
+        CompletableFuture<SampleView> first = reader.pending.getFirst();
+
+        now += TICK_NANOS;
+        readahead.onProgress(playback, 120L * RATE, TOTAL);
+
+        assertTrue(first.isCancelled());
+        assertEquals(new Read(120L * RATE, 10L * RATE), reader.reads.getLast());
+
+        now += TICK_NANOS;
+        readahead.onProgress(playback, 30L * RATE, TOTAL);
+        assertEquals(new Read(30L * RATE, 10L * RATE), reader.reads.getLast());
+    }
+
+    @Test
+    void testFastPlaybackWidensWindow() {
+        PlaybackHandle playback = handle("song.wav");
+        readahead.onProgress(playback, 0, TOTAL);
+
+        // Playing at double speed for ten seconds of wall time
+        long position = 0;
+        for (int tick = 0; tick < 100; tick++) {
+            now += TICK_NANOS;
+            position += 2 * RATE / 10;
+            readahead.onProgress(playback, position, TOTAL);
+        }
+
+        assertTrue(reader.pending.stream().noneMatch(CompletableFuture::isCancelled));
+
+        // A fresh window after a seek spans about twenty seconds of audio
+        now += TICK_NANOS;
+        readahead.onProgress(playback, 300L * RATE, TOTAL);
+        Read fresh = reader.reads.getLast();
+        assertEquals(300L * RATE, fresh.start());
+        assertTrue(fresh.count() > 18L * RATE, "Window should widen at double speed");
+    }
+
+    @Test
+    void testWindowStopsAtEndOfFile() {
+        PlaybackHandle playback = handle("song.wav");
+        readahead.onProgress(playback, TOTAL - 2L * RATE, TOTAL);
+
+        assertEquals(new Read(TOTAL - 2L * RATE, 2L * RATE), reader.reads.getLast());
+    }
+
+    @Test
+    void testStopCancelsAndNextFileStartsFresh() {
+        PlaybackHandle playback = handle("song.wav");
+        readahead.onProgress(playback, 0, TOTAL);
+        CompletableFuture<SampleView> first = reader.pending.getFirst();
+
+        readahead.onStateChanged(playback, PlaybackState.STOPPED, PlaybackState.PLAYING);
+        assertTrue(first.isCancelled());
+
+        PlaybackHandle other = handle("other.wav");
+        readahead.onProgress(other, 5L * RATE, TOTAL);
+        assertEquals(Path.of("other.wav"), reader.files.getLast());
+        assertEquals(new Read(5L * RATE, 10L * RATE), reader.reads.getLast());
+    }
+
+    /** Advances playback at normal speed between two times in seconds, returning the position. */
+    private long playFor(PlaybackHandle playback, int fromSecond, int toSecond) {
+        long position = (long) fromSecond * RATE;
+        for (int tick = fromSecond * 10; tick < toSecond * 10; tick++) {
+            now += TICK_NANOS;
+            position += RATE / 10;
+            readahead.onProgress(playback, position, TOTAL);
+        }
+        return position;
+    }
+
+    private AudioEngine engine() {
+        return (AudioEngine)
+                Proxy.newProxyInstance(
+                        AudioEngine.class.getClassLoader(),
+                        new Class<?>[] {AudioEngine.class},
+                        (_, method, args) -> {
+                            switch (method.getName()) {
+                                case "addPlaybackListener" ->
+                                        listeners.add((PlaybackListener) args[0]);
+                                case "removePlaybackListener" -> listeners.remove(args[0]);
+                                default -> throw new UnsupportedOperationException();
+                            }
+                            return null;
+                        });
+    }
+
+    private static PlaybackHandle handle(String file) {
+        AudioHandle audio =
+                new AudioHandle() {
+                    @Override
+                    public String getFilePath() {
+                        return file;
+                    }
+
+                    @Override
+                    public boolean isValid() {
+                        return true;
+                    }
+
+                    @Override
+                    public long getId() {
+                        return 1;
+                    }
+                };
+        return new PlaybackHandle() {
+            @Override
+            public AudioHandle getAudioHandle() {
+                return audio;
+            }
+
+            @Override
+            public long getStartFrame() {
+                return 0;
+            }
+
+            @Override
+            public long getEndFrame() {
+                return TOTAL;
+            }
+
+            @Override
+            public long getId() {
+                return 1;
+            }
+
+            @Override
+            public boolean isActive() {
+                return true;
+            }
+
+            @Override
+            public void close() {}
+        };
+    }
+
+    private record Read(long start, long count) {}
+
+    /** Reader that records prefetches and leaves them pending. */
+    private static class RecordingReader implements SampleReader {
+        final List<Read> reads = new ArrayList<>();
+        final List<Path> files = new ArrayList<>();
+        final List<CompletableFuture<SampleView>> pending = new ArrayList<>();
+
+        @Override
+        public synchronized CompletableFuture<SampleView> readView(
+                Path audioFile, long startFrame, long frameCount, ReadPriority priority) {
+            CompletableFuture<SampleView> read = new CompletableFuture<>();
+            if (priority == ReadPriority.PREFETCH) {
+                reads.add(new Read(startFrame, frameCount));
+                files.add(audioFile);
+                pending.add(read);
+            }
+            return read;
+        }
+
+        @Override
+        public CompletableFuture<AudioData> readSamples(
+                Path audioFile, long startFrame, long frameCount) {
+            return new CompletableFuture<>();
+        }
+
+        @Override
+        public CompletableFuture<AudioMetadata> getMetadata(Path audioFile) {
+            return CompletableFuture.completedFuture(
+                    new AudioMetadata(RATE, 2, 16, "test", TOTAL, TOTAL / (double) RATE));
+        }
+
+        @Override
+        public void close() {}
+    }
+}